@@ -0,0 +1,17 @@
+-- Aggiunge la colonna content_digest a un database creato con una versione precedente di mindharbor_db.sql.
+-- La colonna è generata dal database, quindi viene calcolata per le righe esistenti e mantenuta
+-- aggiornata senza modifiche alle query di scrittura. L'espressione deve restare allineata
+-- con la forma canonica calcolata da ContentDigest.
+USE `mindharbor` ;
+
+ALTER TABLE `Users`
+  ADD COLUMN `content_digest` CHAR(40) GENERATED ALWAYS AS (SHA1(CONCAT_WS(CHAR(31 USING utf8mb4), `Firstname`, `Lastname`, COALESCE(`Gender`, '')))) STORED;
+
+ALTER TABLE `Psychologists`
+  ADD COLUMN `content_digest` CHAR(40) GENERATED ALWAYS AS (SHA1(CONCAT_WS(CHAR(31 USING utf8mb4), COALESCE(`Office`, ''), COALESCE(CAST(`HourlyCost` AS CHAR), '')))) STORED;
+
+ALTER TABLE `Patients`
+  ADD COLUMN `content_digest` CHAR(40) GENERATED ALWAYS AS (SHA1(CONCAT_WS(CHAR(31 USING utf8mb4), COALESCE(CAST(`BirthDate` AS CHAR), ''), COALESCE(`Psychologist`, '')))) STORED;
+
+ALTER TABLE `Appointments`
+  ADD COLUMN `content_digest` CHAR(40) GENERATED ALWAYS AS (SHA1(CONCAT_WS(CHAR(31 USING utf8mb4), CAST(`date` AS CHAR), CAST(`time` AS CHAR), COALESCE(`description`, ''), IF(`notified` = 1, '1', '0')))) STORED;
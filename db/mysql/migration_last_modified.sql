@@ -0,0 +1,20 @@
+-- Aggiunge la colonna last_modified a un database creato con una versione precedente di mindharbor_db.sql.
+-- Le righe esistenti ricevono l'istante della migrazione; la prima sincronizzazione dopo
+-- l'aggiornamento è comunque completa, perché non esiste ancora un watermark.
+USE `mindharbor` ;
+
+ALTER TABLE `Users`
+  ADD COLUMN `last_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+  ADD INDEX `Users_last_modified_idx` (`last_modified` ASC);
+
+ALTER TABLE `Psychologists`
+  ADD COLUMN `last_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+  ADD INDEX `Psychologists_last_modified_idx` (`last_modified` ASC);
+
+ALTER TABLE `Patients`
+  ADD COLUMN `last_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+  ADD INDEX `Patients_last_modified_idx` (`last_modified` ASC);
+
+ALTER TABLE `Appointments`
+  ADD COLUMN `last_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3),
+  ADD INDEX `Appointments_last_modified_idx` (`last_modified` ASC);
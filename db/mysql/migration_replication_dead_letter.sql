@@ -0,0 +1,20 @@
+-- Aggiunge il conteggio dei tentativi a ReplicationOutbox e la tabella ReplicationDeadLetter
+-- a un database creato con una versione precedente di mindharbor_db.sql.
+-- Le modifiche che non si riesce a replicare vengono spostate qui invece di essere rigiocate per sempre.
+USE `mindharbor` ;
+
+ALTER TABLE `ReplicationOutbox`
+  ADD COLUMN `attempts` INT NOT NULL DEFAULT 0 COMMENT 'Tentativi di replay falliti' AFTER `parent_id`;
+
+CREATE TABLE IF NOT EXISTS `mindharbor`.`ReplicationDeadLetter` (
+  `seq` BIGINT NOT NULL,
+  `operation` VARCHAR(10) NOT NULL,
+  `entity_type` VARCHAR(20) NOT NULL,
+  `entity_id` VARCHAR(50) NOT NULL,
+  `parent_id` VARCHAR(50) NULL,
+  `attempts` INT NOT NULL,
+  `reason` VARCHAR(1000) NULL,
+  `failed_at` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`seq`))
+ENGINE = InnoDB
+COMMENT = 'Modifiche MySQL che non è stato possibile replicare su CSV';
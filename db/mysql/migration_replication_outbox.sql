@@ -0,0 +1,14 @@
+-- Aggiunge la tabella ReplicationOutbox a un database creato con una versione precedente di mindharbor_db.sql.
+-- Le modifiche MySQL vi restano finché non sono state replicate su CSV e vengono rigiocate all'avvio successivo.
+USE `mindharbor` ;
+
+CREATE TABLE IF NOT EXISTS `mindharbor`.`ReplicationOutbox` (
+  `seq` BIGINT NOT NULL AUTO_INCREMENT,
+  `operation` VARCHAR(10) NOT NULL,
+  `entity_type` VARCHAR(20) NOT NULL,
+  `entity_id` VARCHAR(50) NOT NULL,
+  `parent_id` VARCHAR(50) NULL COMMENT 'Paziente di un appuntamento inserito',
+  `created_at` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`seq`))
+ENGINE = InnoDB
+COMMENT = 'Modifiche MySQL non ancora replicate su CSV';
@@ -31,7 +31,10 @@ CREATE TABLE IF NOT EXISTS `mindharbor`.`Users` (
   `Lastname` VARCHAR(100) NOT NULL,
   `Type` ENUM('PATIENT', 'PSYCHOLOGIST') NOT NULL,
   `Gender` VARCHAR(20) NULL,
-  PRIMARY KEY (`Username`))
+  `last_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT 'Ultima modifica, usata dalla sincronizzazione incrementale',
+  `content_digest` CHAR(40) GENERATED ALWAYS AS (SHA1(CONCAT_WS(CHAR(31 USING utf8mb4), `Firstname`, `Lastname`, COALESCE(`Gender`, '')))) STORED COMMENT 'Digest dei dati, usato dalla sincronizzazione per confrontare le righe',
+  PRIMARY KEY (`Username`),
+  INDEX `Users_last_modified_idx` (`last_modified` ASC) VISIBLE)
 ENGINE = InnoDB
 COMMENT = 'Contiene le informazioni comuni a tutti gli utenti';
 
@@ -43,7 +46,10 @@ CREATE TABLE IF NOT EXISTS `mindharbor`.`Psychologists` (
   `Username` VARCHAR(50) NOT NULL,
   `Office` VARCHAR(255) NULL,
   `HourlyCost` DECIMAL(10,2) NULL,
+  `last_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT 'Ultima modifica, usata dalla sincronizzazione incrementale',
+  `content_digest` CHAR(40) GENERATED ALWAYS AS (SHA1(CONCAT_WS(CHAR(31 USING utf8mb4), COALESCE(`Office`, ''), COALESCE(CAST(`HourlyCost` AS CHAR), '')))) STORED COMMENT 'Digest dei dati, usato dalla sincronizzazione per confrontare le righe',
   PRIMARY KEY (`Username`),
+  INDEX `Psychologists_last_modified_idx` (`last_modified` ASC) VISIBLE,
   CONSTRAINT `fk_Psychologists_Users`
     FOREIGN KEY (`Username`)
     REFERENCES `mindharbor`.`Users` (`Username`)
@@ -60,7 +66,10 @@ CREATE TABLE IF NOT EXISTS `mindharbor`.`Patients` (
   `Username` VARCHAR(50) NOT NULL,
   `BirthDate` DATE NULL,
   `Psychologist` VARCHAR(50) NULL,
+  `last_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT 'Ultima modifica, usata dalla sincronizzazione incrementale',
+  `content_digest` CHAR(40) GENERATED ALWAYS AS (SHA1(CONCAT_WS(CHAR(31 USING utf8mb4), COALESCE(CAST(`BirthDate` AS CHAR), ''), COALESCE(`Psychologist`, '')))) STORED COMMENT 'Digest dei dati, usato dalla sincronizzazione per confrontare le righe',
   PRIMARY KEY (`Username`),
+  INDEX `Patients_last_modified_idx` (`last_modified` ASC) VISIBLE,
   INDEX `fk_Patients_Psychologists_idx` (`Psychologist` ASC) VISIBLE,
   CONSTRAINT `fk_Patients_Users`
     FOREIGN KEY (`Username`)
@@ -86,7 +95,10 @@ CREATE TABLE IF NOT EXISTS `mindharbor`.`Appointments` (
   `description` TEXT NULL,
   `notified` TINYINT(1) NULL DEFAULT 0 COMMENT '0 = false, 1 = true',
   `patient_username` VARCHAR(50) NOT NULL,
+  `last_modified` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT 'Ultima modifica, usata dalla sincronizzazione incrementale',
+  `content_digest` CHAR(40) GENERATED ALWAYS AS (SHA1(CONCAT_WS(CHAR(31 USING utf8mb4), CAST(`date` AS CHAR), CAST(`time` AS CHAR), COALESCE(`description`, ''), IF(`notified` = 1, '1', '0')))) STORED COMMENT 'Digest dei dati, usato dalla sincronizzazione per confrontare le righe',
   PRIMARY KEY (`id`),
+  INDEX `Appointments_last_modified_idx` (`last_modified` ASC) VISIBLE,
   INDEX `fk_Appointments_Patients_idx` (`patient_username` ASC) VISIBLE,
   UNIQUE INDEX `unique_patient_datetime_idx` (`patient_username` ASC, `date` ASC, `time` ASC) VISIBLE,
   CONSTRAINT `fk_Appointments_Patients`
@@ -98,6 +110,39 @@ ENGINE = InnoDB
 COMMENT = 'Contiene le informazioni sugli appuntamenti';
 
 
+-- -----------------------------------------------------
+-- Table `mindharbor`.`ReplicationOutbox`
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `mindharbor`.`ReplicationOutbox` (
+  `seq` BIGINT NOT NULL AUTO_INCREMENT,
+  `operation` VARCHAR(10) NOT NULL,
+  `entity_type` VARCHAR(20) NOT NULL,
+  `entity_id` VARCHAR(50) NOT NULL,
+  `parent_id` VARCHAR(50) NULL COMMENT 'Paziente di un appuntamento inserito',
+  `attempts` INT NOT NULL DEFAULT 0 COMMENT 'Tentativi di replay falliti',
+  `created_at` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`seq`))
+ENGINE = InnoDB
+COMMENT = 'Modifiche MySQL non ancora replicate su CSV';
+
+
+-- -----------------------------------------------------
+-- Table `mindharbor`.`ReplicationDeadLetter`
+-- -----------------------------------------------------
+CREATE TABLE IF NOT EXISTS `mindharbor`.`ReplicationDeadLetter` (
+  `seq` BIGINT NOT NULL,
+  `operation` VARCHAR(10) NOT NULL,
+  `entity_type` VARCHAR(20) NOT NULL,
+  `entity_id` VARCHAR(50) NOT NULL,
+  `parent_id` VARCHAR(50) NULL,
+  `attempts` INT NOT NULL,
+  `reason` VARCHAR(1000) NULL,
+  `failed_at` TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`seq`))
+ENGINE = InnoDB
+COMMENT = 'Modifiche MySQL che non è stato possibile replicare su CSV';
+
+
 SET SQL_MODE=@OLD_SQL_MODE;
 SET FOREIGN_KEY_CHECKS=@OLD_FOREIGN_KEY_CHECKS;
 SET UNIQUE_CHECKS=@OLD_UNIQUE_CHECKS;
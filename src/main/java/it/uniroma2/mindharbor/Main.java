@@ -1,9 +1,13 @@
 package it.uniroma2.mindharbor;
 
 import it.uniroma2.mindharbor.dao.ConnectionFactory;
+import it.uniroma2.mindharbor.dao.csv.engine.CsvTable;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
 import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
 import it.uniroma2.mindharbor.sync.InitialSyncManager;
+import it.uniroma2.mindharbor.sync.ReplicationQueue;
+import it.uniroma2.mindharbor.sync.SyncProgress;
+import it.uniroma2.mindharbor.utilities.AppConfig;
 import it.uniroma2.mindharbor.utilities.NavigatorSingleton;
 import javafx.application.Application;
 import javafx.stage.Stage;
@@ -49,20 +53,30 @@ public class Main extends Application {
     /**
      * Called when the application is stopping.
      * <p>
-     * This method ensures proper cleanup of resources, including closing the database
-     * connection if MySQL persistence is being used. It performs graceful shutdown
-     * to prevent resource leaks.
+     * This method ensures proper cleanup of resources: it waits for a running initial
+     * synchronization, flushes the changes still waiting
+     * to be replicated, compacts the CSV journals into their files, logs the DAO cache
+     * statistics and closes the database connection pool. It performs graceful shutdown to prevent resource leaks.
      * </p>
      */
     @Override
     public void stop() throws Exception {
-        if (DaoFactoryFacade.getInstance().getPersistenceType() == PersistenceType.MYSQL) {
-            try {
-                ConnectionFactory.closeConnection();
-                logger.info("Database connection closed successfully");
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "Error closing database connection", e);
-            }
+        // La sincronizzazione iniziale può essere ancora in corso e alimenta la coda di replica
+        SyncProgress syncProgress = InitialSyncManager.getCurrentProgress();
+        if (syncProgress != null && !syncProgress.await(AppConfig.getLong("sync.initial.shutdownTimeoutMs", 30000))) {
+            logger.warning("Initial synchronization still running at shutdown: " + syncProgress);
+        }
+        // Prima la replica: scrive ancora su CSV e MySQL
+        ReplicationQueue.getInstance().shutdown(AppConfig.getLong("sync.queue.shutdownFlushTimeoutMs", 10000));
+        CsvTable.compactAll();
+        DaoFactoryFacade.getInstance().getCacheStats()
+                .forEach((cache, stats) -> logger.info("DAO cache " + cache + ": " + stats));
+
+        // Il pool può essere stato aperto anche in modalità CSV, ad esempio dalla sincronizzazione
+        try {
+            ConnectionFactory.closeConnection();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error closing database connection pool", e);
         }
 
         logger.info("Application shutdown complete");
@@ -74,7 +88,7 @@ public class Main extends Application {
      * <p>
      * This method processes command-line arguments to determine persistence and interface types,
      * configures the DAO factory, tests database connectivity with automatic fallback to CSV
-     * if MySQL is unavailable, performs initial data synchronization, and launches the
+     * if MySQL is unavailable, starts the initial data synchronization in the background, and launches the
      * appropriate user interface.
      * </p>
      * <p>
@@ -82,14 +96,15 @@ public class Main extends Application {
      * <ul>
      * <li>If MySQL is specified, tests the database connection</li>
      * <li>If the connection fails, automatically falls back to CSV persistence</li>
-     * <li>Performs initial sync between persistence types if needed</li>
+     * <li>Starts the initial sync between persistence types, which continues while the interface runs</li>
      * </ul>
      * </p>
      *
      * @param args Command-line arguments to configure the application:
      *             <ul>
      *             <li><strong>args[0]</strong> (optional): Persistence type.
-     *                 Values: "mysql" or "csv". Default: "mysql"</li>
+     *                 Values: "mysql", "csv", "binary" or "embedded". Default: "mysql".
+     *                 Without a database the configured local file store is used</li>
      *             <li><strong>args[1]</strong> (optional): Interface type.
      *                 Values: "gui" or "cli". Default: "gui".
      *                 Note: CLI interface is not yet implemented</li>
@@ -109,32 +124,40 @@ public class Main extends Application {
             try {
                 boolean connectionOk = ConnectionFactory.testConnection();
                 if (!connectionOk) {
-                    logger.warning("Database connection test failed. Switching to CSV persistence.");
-                    primaryPersistenceType = PersistenceType.CSV;
+                    logger.warning("Database connection test failed. Switching to " + PersistenceType.local() + " persistence.");
+                    primaryPersistenceType = PersistenceType.local();
                 } else {
                     logger.info("Database connection test successful");
                     primaryPersistenceType = PersistenceType.MYSQL;
                 }
             } catch (Exception e) {
                 logger.log(Level.WARNING, "Error testing database connection: " + e.getMessage());
-                logger.info("Switching to CSV persistence due to connection error");
-                primaryPersistenceType = PersistenceType.CSV;
+                logger.info("Switching to " + PersistenceType.local() + " persistence due to connection error");
+                primaryPersistenceType = PersistenceType.local();
             }
+        } else if ("binary".equals(persistenceType)) {
+            logger.info("Using binary persistence as specified");
+            primaryPersistenceType = PersistenceType.BINARY;
+        } else if ("embedded".equals(persistenceType)) {
+            logger.info("Using embedded persistence as specified");
+            primaryPersistenceType = PersistenceType.EMBEDDED;
         } else {
             logger.info("Using CSV persistence as specified");
             primaryPersistenceType = PersistenceType.CSV;
         }
 
-        InitialSyncManager initialSyncManager = new InitialSyncManager();
-        initialSyncManager.performInitialSync(primaryPersistenceType);
-
         daoFactoryFacade.setPersistenceType(primaryPersistenceType);
 
+        // La sincronizzazione prosegue in background mentre l'interfaccia si avvia
+        InitialSyncManager initialSyncManager = new InitialSyncManager();
+        SyncProgress syncProgress = initialSyncManager.performInitialSyncAsync(primaryPersistenceType);
+
         if ("gui".equals(interfaceType)) {
             logger.info("Launching GUI interface");
             launch(args);
         } else {
             logger.info("Command-line interface requested, but not yet implemented");
+            syncProgress.whenReady().join();
             // @TODO Placeholder for CLI logic
         }
     }
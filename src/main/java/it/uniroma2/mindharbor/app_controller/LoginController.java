@@ -11,8 +11,11 @@ import it.uniroma2.mindharbor.model.Psychologist;
 import it.uniroma2.mindharbor.model.User;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
 import it.uniroma2.mindharbor.session.SessionManager;
+import it.uniroma2.mindharbor.utilities.PasswordUtils;
 import it.uniroma2.mindharbor.utilities.UserType;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * LoginController manages the authentication process for users trying to log in to the MindHarbor application.
  * This class interacts with various data access objects (DAOs)
@@ -54,6 +57,24 @@ public class LoginController extends AbstractController {
         return null;
     }
 
+    /**
+     * Attempts to log in a user without blocking the calling thread.
+     * <p>
+     * The whole {@link #login(CredentialsBean) login}, including the BCrypt verification of the
+     * password, runs on the workers of {@link PasswordUtils#runAsync(PasswordUtils.PasswordTask)}, so
+     * it can be called from the JavaFX application thread. The future completes on a worker thread.
+     * </p>
+     *
+     * @param credentials The credentials provided by the user, containing username, password, and user type.
+     * @return The future logged-in user, or null if authentication fails. It fails with a
+     * {@link java.util.concurrent.CompletionException} wrapping the {@link DAOException} or
+     * {@link UserSessionException} thrown by the login, or with a
+     * {@link java.util.concurrent.RejectedExecutionException} if too many logins are in progress.
+     */
+    public CompletableFuture<User> loginAsync(CredentialsBean credentials) {
+        return PasswordUtils.runAsync(() -> login(credentials));
+    }
+
     /**
      * Stores user session information upon successful login.
      * This method ensures that the user's session is registered in the system,
@@ -10,6 +10,9 @@ import it.uniroma2.mindharbor.exception.UserSessionException;
 import it.uniroma2.mindharbor.model.User;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
 import it.uniroma2.mindharbor.session.SessionManager;
+import it.uniroma2.mindharbor.utilities.PasswordUtils;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * SignUpController manages the registration process for new users in the MindHarbor application.
@@ -38,6 +41,21 @@ public class SignUpController extends AbstractController {
 
     }
 
+    /**
+     * Registers a new patient without blocking the calling thread.
+     * <p>
+     * The whole {@link #registerPatient(PatientBean) registration}, including the BCrypt hashing of the
+     * password, runs on the workers of {@link PasswordUtils#runAsync(PasswordUtils.PasswordTask)}, so
+     * it can be called from the JavaFX application thread. The future completes on a worker thread.
+     * </p>
+     *
+     * @param patientBean The bean containing the patient's information.
+     * @return The future newly created patient, failing as {@link LoginController#loginAsync} does.
+     */
+    public CompletableFuture<User> registerPatientAsync(PatientBean patientBean) {
+        return PasswordUtils.runAsync(() -> registerPatient(patientBean));
+    }
+
     /**
      * Registers a new psychologist in the system.
      *
@@ -57,6 +75,17 @@ public class SignUpController extends AbstractController {
         return psychologist;
     }
 
+    /**
+     * Registers a new psychologist without blocking the calling thread, as
+     * {@link #registerPatientAsync(PatientBean)} does for patients.
+     *
+     * @param psychologistBean The bean containing the psychologist's information.
+     * @return The future newly created psychologist, failing as {@link LoginController#loginAsync} does.
+     */
+    public CompletableFuture<User> registerPsychologistAsync(PsychologistBean psychologistBean) {
+        return PasswordUtils.runAsync(() -> registerPsychologist(psychologistBean));
+    }
+
     /**
      * Checks if the username is available for registration.
      *
@@ -1,11 +1,17 @@
 package it.uniroma2.mindharbor.dao;
 
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
 import it.uniroma2.mindharbor.patterns.observer.DaoObserver;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
 import it.uniroma2.mindharbor.patterns.observer.ObservableDao;
-import java.util.ArrayList;
-import java.util.logging.Logger;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
 
 /**
  * Abstract base class for Data Access Objects that support the Observer pattern.
@@ -16,18 +22,88 @@ import java.util.List;
  * </p>
  * <p>
  * Subclasses should extend this class to gain observer functionality and call
- * {@link #notifyObservers(DaoOperation, String, String, Object)} after performing
- * data operations to notify all registered observers.
+ * {@link #notifyObservers(ChangeEvent)} after performing
+ * data operations to notify all registered observers. Before applying a change they build its
+ * event and pass it to {@link #recordChanges(List)}, or, in a database transaction, to
+ * {@link #recordChanges(Connection, List)} before the commit, so that the observers can record it
+ * durably first.
+ * </p>
+ * <p>
+ * Observers are registered once at startup and notified on every write, so they are kept in a
+ * copy-on-write list: a notification iterates over the current array without locking or copying it.
+ * </p>
+ * <p>
+ * Each DAO knows its persistence type, so the events of changes made by the application can be
+ * given a new {@link Origin} in it, while replicated changes keep the origin they are written with.
  * </p>
  *
  * @see ObservableDao
  * @see DaoObserver
- * @see DaoOperation
+ * @see ChangeEvent
  */
 public abstract class AbstractObservableDao implements ObservableDao {
 
     private static final Logger logger = Logger.getLogger(AbstractObservableDao.class.getName());
-    private final List<DaoObserver> observers = new ArrayList<>();
+    private final CopyOnWriteArrayList<DaoObserver> observers = new CopyOnWriteArrayList<>();
+    private final PersistenceType persistenceType;
+
+    /**
+     * @param persistenceType The persistence type the DAO writes to
+     */
+    protected AbstractObservableDao(PersistenceType persistenceType) {
+        this.persistenceType = persistenceType;
+    }
+
+    /**
+     * Returns the origin of the event of a change.
+     *
+     * @param origin The origin the change was written with, or {@code null} if the application made it
+     * @return The given origin, or a new origin in the persistence type of this DAO
+     */
+    protected Origin originOf(Origin origin) {
+        return origin != null ? origin : Origin.of(persistenceType);
+    }
+
+    /**
+     * Lets the observers record a change before it is applied to a file store.
+     *
+     * @param event The change about to be applied, later passed to {@link #notifyObservers(ChangeEvent)}
+     * @throws DAOException If an observer cannot record it; the change must then not be applied
+     */
+    protected void recordChange(ChangeEvent event) throws DAOException {
+        recordChanges(List.of(event));
+    }
+
+    /**
+     * Lets the observers record changes before they are applied to a file store.
+     *
+     * @param events The changes about to be applied, later passed to the observers once applied
+     * @throws DAOException If an observer cannot record them; the changes must then not be applied
+     */
+    protected void recordChanges(List<? extends ChangeEvent> events) throws DAOException {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (DaoObserver observer : observers) {
+            observer.beforeChanges(events);
+        }
+    }
+
+    /**
+     * Lets the observers record changes inside the transaction applying them, before it commits.
+     *
+     * @param connection The connection of the transaction
+     * @param events     The changes about to be committed, later passed to the observers once committed
+     * @throws SQLException If an observer cannot record them; the transaction must then be rolled back
+     */
+    protected void recordChanges(Connection connection, List<? extends ChangeEvent> events) throws SQLException {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (DaoObserver observer : observers) {
+            observer.beforeChanges(connection, events);
+        }
+    }
 
     /**
      * Adds an observer to the list of observers for this DAO.
@@ -39,10 +115,8 @@ public abstract class AbstractObservableDao implements ObservableDao {
      * @param observer The {@link DaoObserver} to add. Must not be {@code null}.
      */
     @Override
-    public synchronized void addObserver(DaoObserver observer) {
-        if (!observers.contains(observer)) {
-            observers.add(observer);
-        }
+    public void addObserver(DaoObserver observer) {
+        observers.addIfAbsent(observer);
     }
 
     /**
@@ -55,39 +129,51 @@ public abstract class AbstractObservableDao implements ObservableDao {
      * @param observer The {@link DaoObserver} to remove. Must not be {@code null}.
      */
     @Override
-    public synchronized void removeObserver(DaoObserver observer) {
+    public void removeObserver(DaoObserver observer) {
         observers.remove(observer);
     }
 
     /**
      * Notifies all registered observers about a DAO operation.
      * <p>
-     * This method creates a copy of the observers list to avoid
-     * {@code ConcurrentModificationException} and calls the appropriate
-     * observer method based on the operation type. If any observer
-     * throws an exception during notification, it is logged but does
+     * If any observer throws an exception during notification, it is logged but does
      * not affect other observers.
      * </p>
      *
-     * @param operation  The type of operation that was performed (INSERT, UPDATE, DELETE).
-     * @param entityType A string representing the type of entity that was affected.
-     * @param entityId   A string identifier for the specific entity that was affected.
-     * @param entity     The entity object (for INSERT and UPDATE operations), or {@code null} for DELETE.
+     * @param event The change, typed by entity and operation.
      */
     @Override
-    public void notifyObservers(DaoOperation operation, String entityType, String entityId, Object entity) {
-        List<DaoObserver> observersCopy = new ArrayList<>(observers);
-
-        for (DaoObserver observer : observersCopy) {
+    public void notifyObservers(ChangeEvent event) {
+        for (DaoObserver observer : observers) {
             try {
-                switch (operation) {
-                    case INSERT -> observer.onAfterInsert(entityType, entityId, entity);
-                    case UPDATE -> observer.onAfterUpdate(entityType, entityId, entity);
-                    case DELETE -> observer.onAfterDelete(entityType, entityId);
-                }
+                observer.onChange(event);
             } catch (Exception e) {
                 logger.severe("Observer notification failed: " + e.getMessage());
             }
         }
     }
+
+    /**
+     * Notifies all registered observers about an operation applied to a batch of entities.
+     * <p>
+     * Each observer receives a single {@link DaoObserver#onChanges} call for the whole batch.
+     * Empty batches are not notified. As for single events, a failing observer is logged
+     * and does not affect the others.
+     * </p>
+     *
+     * @param events The changes, in the order they were applied.
+     */
+    @Override
+    public void notifyObserversBatch(List<? extends ChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (DaoObserver observer : observers) {
+            try {
+                observer.onChanges(events);
+            } catch (Exception e) {
+                logger.severe("Observer batch notification failed: " + e.getMessage());
+            }
+        }
+    }
 }
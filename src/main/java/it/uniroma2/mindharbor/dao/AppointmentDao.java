@@ -2,9 +2,14 @@ package it.uniroma2.mindharbor.dao;
 
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.patterns.observer.ObservableDao;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
 
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data Access Object interface for Appointment entities.
@@ -25,7 +30,40 @@ public interface AppointmentDao {
      * @param patientUsername  The username of the patient this appointment belongs to
      * @throws DAOException    If there is an error during the save operation
      */
-    void saveAppointment(Appointment appointment, String patientUsername) throws DAOException;
+    default void saveAppointment(Appointment appointment, String patientUsername) throws DAOException {
+        saveAppointment(appointment, patientUsername, null);
+    }
+
+    /**
+     * {@link #saveAppointment(Appointment, String)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #saveAppointment(Appointment, String)}
+     */
+    void saveAppointment(Appointment appointment, String patientUsername, Origin origin) throws DAOException;
+
+    /**
+     * Saves several new appointments of the same patient in a single bulk operation.
+     * <p>
+     * This method is more efficient than saving appointments individually: the records are
+     * written together and observers receive a single batch event.
+     * </p>
+     *
+     * @param appointments     The appointments to be saved
+     * @param patientUsername  The username of the patient the appointments belong to
+     * @throws DAOException    If there is an error during the save operation
+     */
+    default void saveAppointments(List<Appointment> appointments, String patientUsername) throws DAOException {
+        saveAppointments(appointments, patientUsername, null);
+    }
+
+    /**
+     * {@link #saveAppointments(List, String)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #saveAppointments(List, String)}
+     */
+    void saveAppointments(List<Appointment> appointments, String patientUsername, Origin origin) throws DAOException;
 
     /**
      * Retrieves an appointment by its unique identifier.
@@ -49,6 +87,94 @@ public interface AppointmentDao {
      */
     List<Appointment> retrieveAllAppointments() throws DAOException;
 
+    /**
+     * Opens a cursor over all appointments, ordered by ascending ID.
+     * <p>
+     * Unlike {@link #retrieveAllAppointments()}, the appointments are read one at a time
+     * and carry the username of their patient, which makes it possible to compare two
+     * persistence systems with a single merge pass over both tables.
+     * </p>
+     *
+     * @return A cursor over every appointment, to be closed by the caller
+     * @throws DAOException If the cursor cannot be opened
+     */
+    DaoCursor<AppointmentEntry> openAppointmentCursor() throws DAOException;
+
+    /**
+     * Opens a cursor over the appointments inserted or updated at or after the given instant,
+     * ordered by ascending ID. Implementations that do not track changes return every appointment.
+     *
+     * @param sinceMillis The instant, in epoch milliseconds; {@code 0} returns every appointment.
+     * @return A cursor over the changed appointments, to be closed by the caller
+     * @throws DAOException If the cursor cannot be opened
+     */
+    default DaoCursor<AppointmentEntry> openAppointmentCursor(long sinceMillis) throws DAOException {
+        return openAppointmentCursor();
+    }
+
+    /**
+     * Opens a cursor over the appointments whose ID falls in {@code [fromId, toId)}, ordered by ascending ID.
+     * The default implementation skips the other appointments of {@link #openAppointmentCursor()}.
+     *
+     * @param fromId The first ID of the range.
+     * @param toId   The ID following the range.
+     * @return A cursor over the appointments in the range, to be closed by the caller
+     * @throws DAOException If the cursor cannot be opened
+     */
+    default DaoCursor<AppointmentEntry> openAppointmentRangeCursor(long fromId, long toId) throws DAOException {
+        DaoCursor<AppointmentEntry> all = openAppointmentCursor();
+        return new DaoCursor<>() {
+            @Override
+            public AppointmentEntry next() throws DAOException {
+                AppointmentEntry entry;
+                while ((entry = all.next()) != null && entry.appointment().getId() < toId) {
+                    if (entry.appointment().getId() >= fromId) {
+                        return entry;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws DAOException {
+                all.close();
+            }
+        };
+    }
+
+    /**
+     * Summarizes the appointments whose ID falls in {@code [from, to)}, split into {@code parts} equal parts.
+     * The default implementation computes the summaries while scanning {@link #openAppointmentRangeCursor(long, long)}.
+     *
+     * @param from  The first ID of the range.
+     * @param to    The ID following the range.
+     * @param parts The number of parts.
+     * @return The summaries of the parts that contain appointments, keyed by part index.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default Map<Integer, KeyRangeSummary> summarizeAppointments(long from, long to, int parts) throws DAOException {
+        Map<String, String> digests = new HashMap<>();
+        try (DaoCursor<AppointmentEntry> cursor = openAppointmentRangeCursor(from, to)) {
+            AppointmentEntry entry;
+            while ((entry = cursor.next()) != null) {
+                digests.put(String.valueOf(entry.appointment().getId()), entry.digest());
+            }
+        }
+        return KeyRangeSummary.summarize(digests, Long::parseLong, from, to, parts);
+    }
+
+    /**
+     * Retrieves the {@link ContentDigest content digest} of a single appointment.
+     *
+     * @param appointmentId The ID of the appointment.
+     * @return The digest of the appointment, or {@code null} if the appointment does not exist.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default String retrieveAppointmentDigest(int appointmentId) throws DAOException {
+        Appointment appointment = retrieveAppointment(appointmentId);
+        return appointment == null ? null : ContentDigest.of(appointment);
+    }
+
     /**
      * Retrieves all appointments for a specific patient.
      *
@@ -76,6 +202,16 @@ public interface AppointmentDao {
      */
     List<Appointment> retrieveAppointmentsByDate(LocalDate date) throws DAOException;
 
+    /**
+     * Retrieves all appointments scheduled between two dates, both included, ordered by date.
+     *
+     * @param from             The first date of the range
+     * @param to               The last date of the range
+     * @return                 A list of appointments in the range, empty list if none found
+     * @throws DAOException    If there is an error accessing the data storage
+     */
+    List<Appointment> retrieveAppointmentsBetween(LocalDate from, LocalDate to) throws DAOException;
+
     /**
      * Retrieves all appointments that have not been notified to the patient yet.
      *
@@ -91,7 +227,17 @@ public interface AppointmentDao {
      * @param appointment      The appointment with updated information
      * @throws DAOException    If there is an error updating the appointment or if it doesn't exist
      */
-    void updateAppointment(Appointment appointment) throws DAOException;
+    default void updateAppointment(Appointment appointment) throws DAOException {
+        updateAppointment(appointment, null);
+    }
+
+    /**
+     * {@link #updateAppointment(Appointment)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #updateAppointment(Appointment)}
+     */
+    void updateAppointment(Appointment appointment, Origin origin) throws DAOException;
 
     /**
      * Updates the notification status of a specific appointment.
@@ -120,7 +266,17 @@ public interface AppointmentDao {
      * @param appointmentId    The ID of the appointment to delete
      * @throws DAOException    If there is an error during deletion or if the appointment doesn't exist
      */
-    void deleteAppointment(int appointmentId) throws DAOException;
+    default void deleteAppointment(int appointmentId) throws DAOException {
+        deleteAppointment(appointmentId, null);
+    }
+
+    /**
+     * {@link #deleteAppointment(int)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #deleteAppointment(int)}
+     */
+    void deleteAppointment(int appointmentId, Origin origin) throws DAOException;
 
     /**
      * Checks if an appointment with the given ID exists.
@@ -0,0 +1,15 @@
+package it.uniroma2.mindharbor.dao;
+
+import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
+
+/**
+ * An appointment together with the username of the patient it belongs to and its
+ * {@link ContentDigest content digest}, as returned by {@link AppointmentDao#openAppointmentCursor()}.
+ *
+ * @param appointment     The appointment
+ * @param patientUsername The username of the patient the appointment belongs to
+ * @param digest          The content digest of the appointment as stored by the persistence
+ */
+public record AppointmentEntry(Appointment appointment, String patientUsername, String digest) {
+}
@@ -1,25 +1,38 @@
 package it.uniroma2.mindharbor.dao;
 
-import java.io.IOException;
-import java.io.InputStream;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Factory class that provides database connections.
- * This implementation maintains a single connection for the application.
- * Suitable for non-multithreaded applications.
+ * Factory class that provides database connections from a HikariCP connection pool.
+ * <p>
+ * Connections are borrowed for a single operation and must be closed by the caller,
+ * preferably with try-with-resources: closing a pooled connection returns it to the pool.
+ * Concurrent callers therefore work on separate connections and never share transaction state.
+ * </p>
+ * <p>
+ * The pool is configured from {@code config.properties}: besides the JDBC URL and credentials,
+ * the {@code db.pool.*} keys set the pool size, the timeouts, the leak detection threshold and
+ * the validation query, while the {@code db.statements.*} keys control the driver-side
+ * prepared statement cache described in {@link StatementCache}. If the database is
+ * unreachable at startup the pool is not created and the next call to
+ * {@link #getConnection()} tries again.
+ * </p>
+ * <p>
+ * The pool is shared by the UI, replication and synchronization threads and closed on shutdown:
+ * it is created and closed under the class lock and published through a volatile field, which
+ * readers load once per call.
+ * </p>
  */
 public class ConnectionFactory {
     private static final Logger logger = Logger.getLogger(ConnectionFactory.class.getName());
-    private static Connection connection;
-    private static String connectionUrl;
-    private static String user;
-    private static String pass;
+    private static volatile HikariDataSource dataSource;
 
     /**
      * Private constructor to enforce singleton pattern
@@ -28,73 +41,102 @@ public class ConnectionFactory {
 
     static {
         try {
-            loadConfiguration();
-            initializeConnection();
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Failed to load database configuration", e);
+            initializePool();
         } catch (SQLException e) {
-            logger.log(Level.SEVERE, "Failed to initialize database connection", e);
+            logger.log(Level.SEVERE, "Failed to initialize database connection pool", e);
         }
     }
 
     /**
-     * Loads database configuration from the properties file
+     * Builds the pool configuration from the properties file
      */
-    private static void loadConfiguration() throws IOException {
-        try (InputStream input = ConnectionFactory.class.getClassLoader().getResourceAsStream("config.properties")) {
-            if (input == null) {
-                logger.warning("Unable to find config.properties, using default configurations");
-                // Default configuration for development
-                connectionUrl = "jdbc:mysql://localhost:3306/mindharbor";
-                user = "root";
-                pass = "";
-                return;
-            }
+    private static HikariConfig loadConfiguration() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("MindHarborPool");
+        config.setJdbcUrl(AppConfig.getString("jdbcURL", "jdbc:mysql://localhost:3306/mindharbor"));
+        config.setUsername(AppConfig.getString("jdbcUsername", "root"));
+        config.setPassword(AppConfig.getString("jdbcPassword", ""));
+
+        config.setMaximumPoolSize(AppConfig.getInt("db.pool.maximumPoolSize", 10));
+        config.setMinimumIdle(AppConfig.getInt("db.pool.minimumIdle", 2));
+        config.setConnectionTimeout(AppConfig.getLong("db.pool.connectionTimeoutMs", 30000));
+        config.setIdleTimeout(AppConfig.getLong("db.pool.idleTimeoutMs", 600000));
+        config.setMaxLifetime(AppConfig.getLong("db.pool.maxLifetimeMs", 1800000));
+        config.setLeakDetectionThreshold(AppConfig.getLong("db.pool.leakDetectionThresholdMs", 0));
+        config.setValidationTimeout(AppConfig.getLong("db.pool.validationTimeoutMs", 5000));
+
+        // Cache delle prepared statement lato driver, per connessione fisica (vedi StatementCache)
+        config.addDataSourceProperty("cachePrepStmts", String.valueOf(StatementCache.ENABLED));
+        config.addDataSourceProperty("useServerPrepStmts", String.valueOf(StatementCache.ENABLED));
+        config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(StatementCache.CACHE_SIZE));
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", String.valueOf(StatementCache.CACHE_SQL_LIMIT));
+        // Gli inserimenti in batch vengono riscritti dal driver come INSERT multi-riga
+        config.addDataSourceProperty("rewriteBatchedStatements",
+                String.valueOf(AppConfig.getBoolean("db.batch.rewriteStatements", true)));
 
-            Properties properties = new Properties();
-            properties.load(input);
-            connectionUrl = properties.getProperty("jdbcURL");
-            user = properties.getProperty("jdbcUsername");
-            pass = properties.getProperty("jdbcPassword");
-            logger.info("Database configuration loaded successfully");
+        String validationQuery = AppConfig.getString("db.pool.validationQuery", "");
+        if (!validationQuery.isEmpty()) {
+            config.setConnectionTestQuery(validationQuery);
         }
+        return config;
     }
 
     /**
-     * Initializes the database connection
+     * Initializes the connection pool, failing fast if the database is unreachable
+     *
+     * @return the open pool
      */
-    private static void initializeConnection() throws SQLException {
-        if (connectionUrl == null) {
+    private static synchronized HikariDataSource initializePool() throws SQLException {
+        HikariDataSource current = dataSource;
+        if (current != null && !current.isClosed()) {
+            return current;
+        }
+        HikariConfig config = loadConfiguration();
+        if (config.getJdbcUrl() == null || config.getJdbcUrl().isEmpty()) {
             throw new SQLException("Database URL is not configured");
         }
-
-        connection = DriverManager.getConnection(connectionUrl, user, pass);
-        logger.info("Database connection established successfully");
+        try {
+            current = new HikariDataSource(config);
+        } catch (RuntimeException e) {
+            // HikariCP reports an unreachable database with an unchecked PoolInitializationException
+            throw new SQLException("Unable to initialize the connection pool: " + e.getMessage(), e);
+        }
+        dataSource = current;
+        logger.info("Database connection pool initialized successfully");
+        try (Connection connection = current.getConnection()) {
+            StatementCache.recordBaseline(connection);
+        }
+        return current;
     }
 
     /**
-     * Gets the database connection, creating a new one if necessary
+     * Borrows a connection from the pool, creating the pool first if necessary.
+     * The caller must close the connection to return it to the pool.
      *
-     * @return the database connection
-     * @throws SQLException if there is an error getting the connection
+     * @return a pooled database connection
+     * @throws SQLException if no connection can be obtained within the configured timeout
      */
     public static Connection getConnection() throws SQLException {
-        // Check if connection is closed or null and reconnect if needed
-        if (connection == null || connection.isClosed()) {
-            logger.info("Connection is closed or null, reconnecting...");
-            initializeConnection();
+        HikariDataSource current = dataSource;
+        if (current == null || current.isClosed()) {
+            logger.info("Connection pool is not available, initializing...");
+            current = initializePool();
         }
-        return connection;
+        return current.getConnection();
     }
 
     /**
-     * Tests if the database connection is valid
+     * Tests if the database is reachable by borrowing and validating a connection
      *
-     * @return true if the connection is valid, false otherwise
+     * @return true if a valid connection could be obtained, false otherwise
      */
     public static boolean testConnection() {
-        try {
-            return connection != null && !connection.isClosed() && connection.isValid(2);
+        HikariDataSource current = dataSource;
+        if (current == null || current.isClosed()) {
+            return false;
+        }
+        try (Connection connection = current.getConnection()) {
+            return connection.isValid(2);
         } catch (SQLException e) {
             logger.log(Level.WARNING, "Connection test failed", e);
             return false;
@@ -102,16 +144,18 @@ public class ConnectionFactory {
     }
 
     /**
-     * Closes the database connection
+     * Closes the connection pool and every connection it holds
      */
-    public static void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                logger.info("Database connection closed successfully");
+    public static synchronized void closeConnection() {
+        HikariDataSource current = dataSource;
+        if (current != null && !current.isClosed()) {
+            try (Connection connection = current.getConnection()) {
+                StatementCache.logStatistics(connection);
             } catch (SQLException e) {
-                logger.log(Level.WARNING, "Error closing database connection", e);
+                logger.log(Level.FINE, "Cannot read the statement statistics before closing the pool", e);
             }
+            current.close();
+            logger.info("Database connection pool closed successfully");
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package it.uniroma2.mindharbor.dao;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+/**
+ * Forward-only cursor over the records of a persistence system.
+ * <p>
+ * A cursor reads its records one at a time instead of materializing the whole result,
+ * so scanning a large table needs a bounded amount of memory. It may hold resources
+ * such as a database connection until it is closed, so it should be used with
+ * try-with-resources.
+ * </p>
+ *
+ * @param <T> The type of the records returned by the cursor
+ */
+public interface DaoCursor<T> extends AutoCloseable {
+
+    /**
+     * Advances the cursor and returns the next record.
+     *
+     * @return The next record, or {@code null} when the cursor is exhausted
+     * @throws DAOException If the record cannot be read
+     */
+    T next() throws DAOException;
+
+    /**
+     * Releases the resources held by the cursor.
+     *
+     * @throws DAOException If the resources cannot be released
+     */
+    @Override
+    void close() throws DAOException;
+}
@@ -0,0 +1,69 @@
+package it.uniroma2.mindharbor.dao;
+
+import it.uniroma2.mindharbor.utilities.ContentDigest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Summary of the rows whose key falls in a range of the key space: how many they are and the
+ * XOR of their {@link ContentDigest#rowHash(String, String) row hashes}.
+ * <p>
+ * Two persistence systems holding the same rows in a range produce the same summary, so the
+ * synchronization can compare ranges instead of rows and only look inside the ranges whose
+ * summaries differ.
+ * </p>
+ *
+ * @param count The number of rows in the range
+ * @param hash  The hash of the range, as formatted by {@link ContentDigest#rangeHash(long)}
+ */
+public record KeyRangeSummary(long count, String hash) {
+
+    /**
+     * The summary of a range without rows.
+     */
+    public static final KeyRangeSummary EMPTY = new KeyRangeSummary(0, ContentDigest.rangeHash(0));
+
+    /**
+     * Computes the width of each part when the range {@code [from, to)} is split into {@code parts}
+     * parts; the last part may be narrower.
+     *
+     * @param from  The first key position of the range
+     * @param to    The key position following the range
+     * @param parts The number of parts
+     * @return The width of each part, at least 1
+     */
+    public static long partWidth(long from, long to, int parts) {
+        return Math.max(1, (to - from + parts - 1) / parts);
+    }
+
+    /**
+     * Summarizes the rows of {@code [from, to)} split into {@code parts} parts of equal width,
+     * for persistence systems that compute the summaries in memory.
+     *
+     * @param digests  The content digests of the rows, keyed by primary key
+     * @param position The position of a primary key in the key space
+     * @param from     The first key position of the range
+     * @param to       The key position following the range
+     * @param parts    The number of parts
+     * @return The summaries of the parts that contain rows, keyed by part index
+     */
+    public static Map<Integer, KeyRangeSummary> summarize(Map<String, String> digests, ToLongFunction<String> position,
+                                                          long from, long to, int parts) {
+        long width = partWidth(from, to, parts);
+        Map<Integer, long[]> accumulators = new HashMap<>();
+        for (Map.Entry<String, String> entry : digests.entrySet()) {
+            long key = position.applyAsLong(entry.getKey());
+            if (key >= from && key < to) {
+                long[] accumulator = accumulators.computeIfAbsent((int) ((key - from) / width), k -> new long[2]);
+                accumulator[0]++;
+                accumulator[1] ^= ContentDigest.rowHash(entry.getKey(), entry.getValue());
+            }
+        }
+        Map<Integer, KeyRangeSummary> summaries = new HashMap<>();
+        accumulators.forEach((part, accumulator) ->
+                summaries.put(part, new KeyRangeSummary(accumulator[0], ContentDigest.rangeHash(accumulator[1]))));
+        return summaries;
+    }
+}
@@ -5,8 +5,13 @@ import it.uniroma2.mindharbor.beans.UserBean;
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.observer.ObservableDao;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The {@code PatientDao} interface defines data access operations for managing patients.
@@ -26,7 +31,39 @@ public interface PatientDao {
      * @param patient The {@link PatientBean} object containing the patient's details.
      * @throws DAOException If an error occurs while saving the patient or if the patient already exists.
      */
-    void savePatient(PatientBean patient) throws DAOException;
+    default void savePatient(PatientBean patient) throws DAOException {
+        savePatient(patient, null);
+    }
+
+    /**
+     * {@link #savePatient(PatientBean)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #savePatient(PatientBean)}
+     */
+    void savePatient(PatientBean patient, Origin origin) throws DAOException;
+
+    /**
+     * Saves several new patients in a single bulk operation, as when importing them.
+     * <p>
+     * The underlying users and the patient records are written in bulk and observers receive
+     * a single batch event instead of one per patient.
+     * </p>
+     *
+     * @param patients The {@link PatientBean} objects containing the patients' details.
+     * @throws DAOException If an error occurs while saving the patients or if one of them already exists.
+     */
+    default void savePatients(List<PatientBean> patients) throws DAOException {
+        savePatients(patients, null);
+    }
+
+    /**
+     * {@link #savePatients(List)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #savePatients(List)}
+     */
+    void savePatients(List<PatientBean> patients, Origin origin) throws DAOException;
 
     /**
      * Retrieves patient details from the persistence layer based on the username.
@@ -53,6 +90,83 @@ public interface PatientDao {
      */
     List<Patient> retrieveAllPatients() throws DAOException;
 
+    /**
+     * Retrieves the patients whose data changed at or after the given instant.
+     * <p>
+     * A patient counts as changed when either its patient record or its user record was
+     * inserted or updated. Implementations that do not track changes return every patient.
+     * </p>
+     *
+     * @param sinceMillis The instant, in epoch milliseconds; {@code 0} returns every patient.
+     * @return The changed patients, possibly empty.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default List<Patient> retrievePatientsModifiedSince(long sinceMillis) throws DAOException {
+        return retrieveAllPatients();
+    }
+
+    /**
+     * Retrieves the {@link ContentDigest content digest} of the patients whose data changed at or
+     * after the given instant, without materializing them where the storage keeps the digests.
+     * The default implementation computes them from {@link #retrievePatientsModifiedSince(long)}.
+     *
+     * @param sinceMillis The instant, in epoch milliseconds; {@code 0} returns every patient.
+     * @return The digests of the changed patients, keyed by username.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default Map<String, String> retrievePatientDigestsModifiedSince(long sinceMillis) throws DAOException {
+        Map<String, String> digests = new HashMap<>();
+        for (Patient patient : retrievePatientsModifiedSince(sinceMillis)) {
+            digests.put(patient.getUsername(), ContentDigest.of(patient));
+        }
+        return digests;
+    }
+
+    /**
+     * Retrieves the {@link ContentDigest content digest} of the patients whose username falls in
+     * {@code [from, to)} of the {@link ContentDigest#keyPosition(String) key space}.
+     *
+     * @param from The first key position of the range.
+     * @param to   The key position following the range.
+     * @return The digests of the patients in the range, keyed by username.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default Map<String, String> retrievePatientDigestsInRange(long from, long to) throws DAOException {
+        Map<String, String> digests = new HashMap<>(retrievePatientDigestsModifiedSince(0));
+        digests.keySet().removeIf(username -> {
+            long position = ContentDigest.keyPosition(username);
+            return position < from || position >= to;
+        });
+        return digests;
+    }
+
+    /**
+     * Summarizes the patients whose username falls in {@code [from, to)} of the
+     * {@link ContentDigest#keyPosition(String) key space}, split into {@code parts} equal parts.
+     * The default implementation computes the summaries from the digests of every patient.
+     *
+     * @param from  The first key position of the range.
+     * @param to    The key position following the range.
+     * @param parts The number of parts.
+     * @return The summaries of the parts that contain patients, keyed by part index.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default Map<Integer, KeyRangeSummary> summarizePatients(long from, long to, int parts) throws DAOException {
+        return KeyRangeSummary.summarize(retrievePatientDigestsModifiedSince(0), ContentDigest::keyPosition, from, to, parts);
+    }
+
+    /**
+     * Retrieves the {@link ContentDigest content digest} of a single patient.
+     *
+     * @param username The username of the patient.
+     * @return The digest of the patient, or {@code null} if the patient does not exist.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default String retrievePatientDigest(String username) throws DAOException {
+        Patient patient = retrievePatient(username);
+        return patient == null ? null : ContentDigest.of(patient);
+    }
+
     /**
      * Retrieves a list of patients assigned to a specific psychologist.
      * <p>
@@ -81,7 +195,17 @@ public interface PatientDao {
      * @param user    The {@link UserBean} object containing the updated general user details.
      * @throws DAOException If the patient does not exist, or if an error occurs while updating the data.
      */
-    void updatePatient(Patient patient, UserBean user) throws DAOException;
+    default void updatePatient(Patient patient, UserBean user) throws DAOException {
+        updatePatient(patient, user, null);
+    }
+
+    /**
+     * {@link #updatePatient(Patient, UserBean)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #updatePatient(Patient, UserBean)}
+     */
+    void updatePatient(Patient patient, UserBean user, Origin origin) throws DAOException;
 
     /**
      * Deletes a patient from the persistence layer.
@@ -92,5 +216,15 @@ public interface PatientDao {
      * @param username The username of the patient to delete.
      * @throws DAOException If an error occurs while deleting the patient.
      */
-    void deletePatient(String username) throws DAOException;
+    default void deletePatient(String username) throws DAOException {
+        deletePatient(username, null);
+    }
+
+    /**
+     * {@link #deletePatient(String)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #deletePatient(String)}
+     */
+    void deletePatient(String username, Origin origin) throws DAOException;
 }
@@ -5,8 +5,13 @@ import it.uniroma2.mindharbor.beans.UserBean;
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.observer.ObservableDao;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interface for data access operations related to psychologists.
@@ -23,7 +28,36 @@ public interface PsychologistDao {
      * @param psychologist the {@link PsychologistBean} to be saved.
      * @throws DAOException if an error occurs during saving or if the psychologist already exists.
      */
-    void savePsychologist(PsychologistBean psychologist) throws DAOException;
+    default void savePsychologist(PsychologistBean psychologist) throws DAOException {
+        savePsychologist(psychologist, null);
+    }
+
+    /**
+     * {@link #savePsychologist(PsychologistBean)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #savePsychologist(PsychologistBean)}
+     */
+    void savePsychologist(PsychologistBean psychologist, Origin origin) throws DAOException;
+
+    /**
+     * Saves several new psychologists in a single bulk operation, as when importing them.
+     * Observers receive a single batch event instead of one per psychologist.
+     *
+     * @param psychologists the {@link PsychologistBean} objects to be saved.
+     * @throws DAOException if an error occurs during saving or if one of the psychologists already exists.
+     */
+    default void savePsychologists(List<PsychologistBean> psychologists) throws DAOException {
+        savePsychologists(psychologists, null);
+    }
+
+    /**
+     * {@link #savePsychologists(List)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #savePsychologists(List)}
+     */
+    void savePsychologists(List<PsychologistBean> psychologists, Origin origin) throws DAOException;
 
     /**
      * Retrieves a psychologist's data based on their username.
@@ -46,13 +80,100 @@ public interface PsychologistDao {
      */
     List<Psychologist> retrieveAllPsychologists() throws DAOException;
 
+    /**
+     * Retrieves the psychologists whose data changed at or after the given instant.
+     * <p>
+     * A psychologist counts as changed when either its psychologist record or its user record was
+     * inserted or updated. Implementations that do not track changes return every psychologist.
+     * </p>
+     *
+     * @param sinceMillis The instant, in epoch milliseconds; {@code 0} returns every psychologist.
+     * @return The changed psychologists, possibly empty.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default List<Psychologist> retrievePsychologistsModifiedSince(long sinceMillis) throws DAOException {
+        return retrieveAllPsychologists();
+    }
+
+    /**
+     * Retrieves the {@link ContentDigest content digest} of the psychologists whose data changed at
+     * or after the given instant, without materializing them where the storage keeps the digests.
+     * The default implementation computes them from {@link #retrievePsychologistsModifiedSince(long)}.
+     *
+     * @param sinceMillis The instant, in epoch milliseconds; {@code 0} returns every psychologist.
+     * @return The digests of the changed psychologists, keyed by username.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default Map<String, String> retrievePsychologistDigestsModifiedSince(long sinceMillis) throws DAOException {
+        Map<String, String> digests = new HashMap<>();
+        for (Psychologist psychologist : retrievePsychologistsModifiedSince(sinceMillis)) {
+            digests.put(psychologist.getUsername(), ContentDigest.of(psychologist));
+        }
+        return digests;
+    }
+
+    /**
+     * Retrieves the {@link ContentDigest content digest} of the psychologists whose username falls in
+     * {@code [from, to)} of the {@link ContentDigest#keyPosition(String) key space}.
+     *
+     * @param from The first key position of the range.
+     * @param to   The key position following the range.
+     * @return The digests of the psychologists in the range, keyed by username.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default Map<String, String> retrievePsychologistDigestsInRange(long from, long to) throws DAOException {
+        Map<String, String> digests = new HashMap<>(retrievePsychologistDigestsModifiedSince(0));
+        digests.keySet().removeIf(username -> {
+            long position = ContentDigest.keyPosition(username);
+            return position < from || position >= to;
+        });
+        return digests;
+    }
+
+    /**
+     * Summarizes the psychologists whose username falls in {@code [from, to)} of the
+     * {@link ContentDigest#keyPosition(String) key space}, split into {@code parts} equal parts.
+     * The default implementation computes the summaries from the digests of every psychologist.
+     *
+     * @param from  The first key position of the range.
+     * @param to    The key position following the range.
+     * @param parts The number of parts.
+     * @return The summaries of the parts that contain psychologists, keyed by part index.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default Map<Integer, KeyRangeSummary> summarizePsychologists(long from, long to, int parts) throws DAOException {
+        return KeyRangeSummary.summarize(retrievePsychologistDigestsModifiedSince(0), ContentDigest::keyPosition, from, to, parts);
+    }
+
+    /**
+     * Retrieves the {@link ContentDigest content digest} of a single psychologist.
+     *
+     * @param username The username of the psychologist.
+     * @return The digest of the psychologist, or {@code null} if the psychologist does not exist.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    default String retrievePsychologistDigest(String username) throws DAOException {
+        Psychologist psychologist = retrievePsychologist(username);
+        return psychologist == null ? null : ContentDigest.of(psychologist);
+    }
+
     /**
      * Updates an existing psychologist's data.
      *
      * @param psychologist the {@link PsychologistBean} containing the updated data.
      * @throws DAOException if an error occurs during the update.
      */
-    void updatePsychologist(Psychologist psychologist, UserBean bean) throws DAOException;
+    default void updatePsychologist(Psychologist psychologist, UserBean bean) throws DAOException {
+        updatePsychologist(psychologist, bean, null);
+    }
+
+    /**
+     * {@link #updatePsychologist(Psychologist, UserBean)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #updatePsychologist(Psychologist, UserBean)}
+     */
+    void updatePsychologist(Psychologist psychologist, UserBean bean, Origin origin) throws DAOException;
 
     /**
      * Deletes the psychologist identified by the given username from the persistence system.
@@ -60,7 +181,17 @@ public interface PsychologistDao {
      * @param username the username of the psychologist to be deleted.
      * @throws DAOException if an error occurs during the deletion.
      */
-    void deletePsychologist(String username) throws DAOException;
+    default void deletePsychologist(String username) throws DAOException {
+        deletePsychologist(username, null);
+    }
+
+    /**
+     * {@link #deletePsychologist(String)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #deletePsychologist(String)}
+     */
+    void deletePsychologist(String username, Origin origin) throws DAOException;
 
     /**
      * Returns a list of patients associated with the psychologist identified by the given username.
@@ -0,0 +1,116 @@
+package it.uniroma2.mindharbor.dao;
+
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Entry point used by the MySQL DAOs to prepare their statements.
+ * <p>
+ * The statements themselves are cached by the MySQL driver: {@link ConnectionFactory} enables
+ * {@code cachePrepStmts} and {@code useServerPrepStmts}, so a statement closed by a DAO goes back
+ * to the per-connection cache of its physical connection and the next {@code prepareStatement}
+ * with the same SQL reuses the server-side handle instead of parsing and planning again.
+ * </p>
+ * <p>
+ * The driver does not expose its cache statistics, so the effect of the cache is measured on the
+ * server: the {@code Com_stmt_prepare} and {@code Com_stmt_execute} status counters are read when
+ * the pool opens and when it closes, and their difference is logged. The counters are global, so
+ * they also include the statements of any other client of the same server.
+ * </p>
+ */
+public class StatementCache {
+    private static final Logger logger = Logger.getLogger(StatementCache.class.getName());
+    private static final String SELECT_COUNTERS =
+            "SHOW GLOBAL STATUS WHERE Variable_name IN ('Com_stmt_prepare', 'Com_stmt_execute')";
+
+    /**
+     * Whether the driver-level statement cache is enabled ({@code db.statements.cache}).
+     */
+    static final boolean ENABLED = AppConfig.getBoolean("db.statements.cache", true);
+
+    /**
+     * Number of statements cached per connection ({@code db.statements.cacheSize}).
+     */
+    static final int CACHE_SIZE = AppConfig.getInt("db.statements.cacheSize", 250);
+
+    /**
+     * Longest SQL string the driver caches ({@code db.statements.cacheSqlLimit}).
+     */
+    static final int CACHE_SQL_LIMIT = AppConfig.getInt("db.statements.cacheSqlLimit", 2048);
+
+    private static volatile Map<String, Long> baseline;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private StatementCache() {
+        /* no instance */
+    }
+
+    /**
+     * Prepares a statement on the given connection; with the cache enabled the driver reuses
+     * the statement already prepared on the same physical connection.
+     *
+     * @param connection The connection borrowed from the pool.
+     * @param sql        The SQL of the statement, normally a constant of a {@code *Queries} class.
+     * @return The prepared statement; closing it returns it to the driver cache.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    public static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * Reads the statement counters of the server, as the starting point of {@link #logStatistics(Connection)}.
+     *
+     * @param connection A connection borrowed from the pool.
+     */
+    static void recordBaseline(Connection connection) {
+        if (ENABLED) {
+            baseline = readCounters(connection);
+        }
+    }
+
+    /**
+     * Writes to the log how many statements the server prepared and executed since {@link #recordBaseline(Connection)}.
+     *
+     * @param connection A connection borrowed from the pool.
+     */
+    static void logStatistics(Connection connection) {
+        Map<String, Long> start = baseline;
+        if (!ENABLED || start == null) {
+            return;
+        }
+        Map<String, Long> end = readCounters(connection);
+        if (end == null) {
+            return;
+        }
+        long prepared = end.getOrDefault("Com_stmt_prepare", 0L) - start.getOrDefault("Com_stmt_prepare", 0L);
+        long executed = end.getOrDefault("Com_stmt_execute", 0L) - start.getOrDefault("Com_stmt_execute", 0L);
+        logger.log(Level.INFO, "Prepared statements on the server since startup: {0} prepared, {1} executed",
+                new Object[]{prepared, executed});
+    }
+
+    private static Map<String, Long> readCounters(Connection connection) {
+        Map<String, Long> counters = new HashMap<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(SELECT_COUNTERS)) {
+            while (rs.next()) {
+                counters.put(rs.getString(1), rs.getLong(2));
+            }
+            return counters;
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Cannot read the statement counters of the server", e);
+            return null;
+        }
+    }
+}
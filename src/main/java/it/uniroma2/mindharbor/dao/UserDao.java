@@ -3,6 +3,10 @@ package it.uniroma2.mindharbor.dao;
 import it.uniroma2.mindharbor.beans.CredentialsBean;
 import it.uniroma2.mindharbor.beans.UserBean;
 import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.observer.ObservableDao;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.util.List;
 
 /**
  * The {@code UserDao} interface defines data access operations for managing users.
@@ -35,7 +39,39 @@ public interface UserDao {
      * @param user The {@link UserBean} object containing the user's details.
      * @throws DAOException If an error occurs while saving the user or if the user already exists.
      */
-    void saveUser(UserBean user) throws DAOException;
+    default void saveUser(UserBean user) throws DAOException {
+        saveUser(user, null);
+    }
+
+    /**
+     * {@link #saveUser(UserBean)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #saveUser(UserBean)}
+     */
+    void saveUser(UserBean user, Origin origin) throws DAOException;
+
+    /**
+     * Saves several new users in a single bulk operation.
+     * <p>
+     * The users are written together and observers receive a single batch event.
+     * If any username already exists, a {@link DAOException} is thrown and no user is saved.
+     * </p>
+     *
+     * @param users The {@link UserBean} objects containing the users' details.
+     * @throws DAOException If an error occurs while saving the users or if one of them already exists.
+     */
+    default void saveUsers(List<? extends UserBean> users) throws DAOException {
+        saveUsers(users, null);
+    }
+
+    /**
+     * {@link #saveUsers(List)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #saveUsers(List)}
+     */
+    void saveUsers(List<? extends UserBean> users, Origin origin) throws DAOException;
 
     /**
      * Retrieves user details from the persistence layer based on the username.
@@ -59,17 +95,40 @@ public interface UserDao {
      */
     boolean isUsernameTaken(String username) throws DAOException;
 
+    /**
+     * Retrieves the usernames of all the users, to build indexes of the existing usernames.
+     *
+     * @return The usernames, in no particular order.
+     * @throws DAOException If an error occurs while accessing the data storage.
+     */
+    List<String> retrieveAllUsernames() throws DAOException;
+
     /**
      * Updates an existing user's details in the persistence layer.
      * <p>
      * If the user does not exist, a {@link DAOException} is thrown.
      * Otherwise, the user's information is updated.
      * </p>
+     * <p>
+     * Only the user data changed through {@link PatientDao} or {@link PsychologistDao} are replicated
+     * to the other persistence type, password excluded; an update of the user row alone, such as a
+     * password change, is not replicated.
+     * </p>
      *
      * @param user The {@link UserBean} object containing the updated details.
      * @throws DAOException If an error occurs while updating the user.
      */
-    void updateUser(UserBean user) throws DAOException;
+    default void updateUser(UserBean user) throws DAOException {
+        updateUser(user, null);
+    }
+
+    /**
+     * {@link #updateUser(UserBean)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #updateUser(UserBean)}
+     */
+    void updateUser(UserBean user, Origin origin) throws DAOException;
 
     /**
      * Deletes a user from the persistence layer.
@@ -80,5 +139,15 @@ public interface UserDao {
      * @param username The username of the user to delete.
      * @throws DAOException If an error occurs while deleting the user.
      */
-    void deleteUser(String username) throws DAOException;
+    default void deleteUser(String username) throws DAOException {
+        deleteUser(username, null);
+    }
+
+    /**
+     * {@link #deleteUser(String)} for a change with the given origin.
+     *
+     * @param origin The origin of the change, as described in {@link ObservableDao}
+     * @throws DAOException As {@link #deleteUser(String)}
+     */
+    void deleteUser(String username, Origin origin) throws DAOException;
 }
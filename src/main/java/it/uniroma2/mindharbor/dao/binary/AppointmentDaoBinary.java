@@ -0,0 +1,279 @@
+package it.uniroma2.mindharbor.dao.binary;
+
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.AppointmentDao;
+import it.uniroma2.mindharbor.dao.AppointmentEntry;
+import it.uniroma2.mindharbor.dao.DaoCursor;
+import it.uniroma2.mindharbor.dao.binary.constants.AppointmentDaoBinaryConstants;
+import it.uniroma2.mindharbor.dao.binary.constants.PatientDaoBinaryConstants;
+import it.uniroma2.mindharbor.dao.binary.engine.BinaryTable;
+import it.uniroma2.mindharbor.dao.binary.engine.StringDictionary;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public class AppointmentDaoBinary extends AbstractObservableDao implements AppointmentDao {
+
+    private static final BinaryTable appointmentTable = BinaryTable.of(new File(AppointmentDaoBinaryConstants.PATH_NAME_APPOINTMENTS),
+            AppointmentDaoBinaryConstants.INT_COLUMNS, AppointmentDaoBinaryConstants.BIT_COLUMNS);
+    private static final BinaryTable patientTable = BinaryTable.of(new File(PatientDaoBinaryConstants.PATH_NAME_PATIENTS),
+            PatientDaoBinaryConstants.INT_COLUMNS, 0);
+    private static final StringDictionary descriptions = StringDictionary.of(new File(AppointmentDaoBinaryConstants.PATH_NAME_DESCRIPTIONS));
+
+    public AppointmentDaoBinary() {
+        super(PersistenceType.BINARY);
+    }
+
+    @Override
+    public void saveAppointment(Appointment appointment, String patientUsername, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentInserted(appointment, patientUsername, originOf(origin));
+        recordChange(event);
+        appointmentTable.insert(appointment.getId(), toAppointmentWriter(appointment, patientUsername));
+
+        notifyObservers(event);
+    }
+
+    @Override
+    public void saveAppointments(List<Appointment> appointments, String patientUsername, Origin origin) throws DAOException {
+        Map<Integer, Consumer<BinaryTable.Row>> writers = new LinkedHashMap<>();
+        List<ChangeEvent> events = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            writers.put(appointment.getId(), toAppointmentWriter(appointment, patientUsername));
+            events.add(new ChangeEvent.AppointmentInserted(appointment, patientUsername, originOf(origin)));
+        }
+        recordChanges(events);
+        appointmentTable.insertAll(writers); // un solo force per tutto il blocco
+        notifyObserversBatch(events);
+    }
+
+    private Consumer<BinaryTable.Row> toAppointmentWriter(Appointment appointment, String patientUsername) throws DAOException {
+        Consumer<BinaryTable.Row> content = toContentWriter(appointment);
+        int patientId = UserDaoBinary.usernames.intern(patientUsername);
+        return row -> {
+            row.setInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_PATIENT_USERNAME, patientId);
+            content.accept(row);
+        };
+    }
+
+    /**
+     * Encodes the columns an update can change: everything but the ID and the patient.
+     */
+    private Consumer<BinaryTable.Row> toContentWriter(Appointment appointment) throws DAOException {
+        int epochDay = Math.toIntExact(appointment.getDate().toEpochDay());
+        int secondOfDay = appointment.getTime().toSecondOfDay();
+        int description = descriptions.intern(appointment.getDescription());
+        boolean notified = appointment.isNotified();
+        return row -> {
+            row.setInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_DATE, epochDay);
+            row.setInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_TIME, secondOfDay);
+            row.setInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_DESCRIPTION, description);
+            row.setBit(AppointmentDaoBinaryConstants.APPOINTMENT_FLAG_NOTIFIED, notified);
+        };
+    }
+
+    @Override
+    public Appointment retrieveAppointment(int appointmentId) throws DAOException {
+        return appointmentTable.get(appointmentId, AppointmentDaoBinary::toAppointment);
+    }
+
+    @Override
+    public List<Appointment> retrieveAllAppointments() throws DAOException {
+        return appointmentTable.select(null, AppointmentDaoBinary::toAppointment);
+    }
+
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentCursor() throws DAOException {
+        // Si ordinano solo le chiavi: le righe vengono lette dalla tabella una alla volta
+        List<Integer> ids = appointmentTable.keys();
+        Collections.sort(ids);
+        Iterator<Integer> iterator = ids.iterator();
+        return new DaoCursor<>() {
+            @Override
+            public AppointmentEntry next() throws DAOException {
+                while (iterator.hasNext()) {
+                    AppointmentEntry entry = appointmentTable.get(iterator.next(), row -> {
+                        Appointment appointment = toAppointment(row);
+                        return new AppointmentEntry(appointment,
+                                UserDaoBinary.usernames.get(row.getInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_PATIENT_USERNAME)),
+                                ContentDigest.of(appointment));
+                    });
+                    if (entry != null) { // cancellato dopo l'apertura del cursore
+                        return entry;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() {
+                // nessuna risorsa da rilasciare
+            }
+        };
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByPatient(String patientUsername) throws DAOException {
+        int patientId = UserDaoBinary.usernames.find(patientUsername);
+        if (patientId == StringDictionary.NULL_ID) {
+            return new ArrayList<>();
+        }
+        return appointmentTable.select(ofPatient(patientId), AppointmentDaoBinary::toAppointment);
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByPsychologist(String psychologistUsername) throws DAOException {
+        int psychologistId = UserDaoBinary.usernames.find(psychologistUsername);
+        if (psychologistId == StringDictionary.NULL_ID) {
+            return new ArrayList<>();
+        }
+        // Join in un solo passaggio per tabella: prima gli id dei pazienti dello psicologo, ordinati,
+        // poi una sola scansione degli appuntamenti con una ricerca binaria per riga
+        List<Integer> patients = patientTable.select(
+                row -> row.getInt(PatientDaoBinaryConstants.PATIENT_INDEX_PSYCHOLOGIST) == psychologistId,
+                BinaryTable.Row::key);
+        int[] patientIds = patients.stream().mapToInt(Integer::intValue).sorted().toArray();
+        return appointmentTable.select(
+                row -> Arrays.binarySearch(patientIds,
+                        row.getInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_PATIENT_USERNAME)) >= 0,
+                AppointmentDaoBinary::toAppointment);
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByDate(LocalDate date) throws DAOException {
+        int epochDay = Math.toIntExact(date.toEpochDay());
+        return appointmentTable.select(
+                row -> row.getInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_DATE) == epochDay,
+                AppointmentDaoBinary::toAppointment);
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsBetween(LocalDate from, LocalDate to) throws DAOException {
+        int fromDay = Math.toIntExact(from.toEpochDay());
+        int toDay = Math.toIntExact(to.toEpochDay());
+        List<Appointment> appointments = appointmentTable.select(row -> {
+            int epochDay = row.getInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_DATE);
+            return epochDay >= fromDay && epochDay <= toDay;
+        }, AppointmentDaoBinary::toAppointment);
+        appointments.sort(Comparator.comparing(Appointment::getDate).thenComparing(Appointment::getTime));
+        return appointments;
+    }
+
+    @Override
+    public List<Appointment> retrieveUnnotifiedAppointments(String patientUsername) throws DAOException {
+        int patientId = UserDaoBinary.usernames.find(patientUsername);
+        if (patientId == StringDictionary.NULL_ID) {
+            return new ArrayList<>();
+        }
+        return appointmentTable.select(
+                ofPatient(patientId).and(row -> !row.getBit(AppointmentDaoBinaryConstants.APPOINTMENT_FLAG_NOTIFIED)),
+                AppointmentDaoBinary::toAppointment);
+    }
+
+    @Override
+    public void updateAppointment(Appointment appointment, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentUpdated(appointment, originOf(origin));
+        recordChange(event);
+        if (!appointmentTable.update(appointment.getId(), toContentWriter(appointment))) {
+            throw new DAOException(AppointmentDaoBinaryConstants.APPOINTMENT_NOT_FOUND + appointment.getId());
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void updateAppointmentNotificationStatus(int appointmentId, boolean notified) throws DAOException {
+        Appointment updatedAppointment = retrieveAppointment(appointmentId);
+        if (updatedAppointment == null) {
+            throw new DAOException(AppointmentDaoBinaryConstants.APPOINTMENT_NOT_FOUND + appointmentId);
+        }
+        updatedAppointment.setNotified(notified);
+        ChangeEvent event = new ChangeEvent.AppointmentUpdated(updatedAppointment, originOf(null));
+        recordChange(event);
+
+        boolean found = appointmentTable.update(appointmentId,
+                row -> row.setBit(AppointmentDaoBinaryConstants.APPOINTMENT_FLAG_NOTIFIED, notified));
+        if (!found) {
+            throw new DAOException(AppointmentDaoBinaryConstants.APPOINTMENT_NOT_FOUND + appointmentId);
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void updateAppointmentsNotificationStatus(List<Appointment> appointments) throws DAOException {
+        if (appointments == null || appointments.isEmpty()) {
+            return;
+        }
+        Map<Integer, Consumer<BinaryTable.Row>> appointmentsToUpdate = new LinkedHashMap<>();
+        // Solo gli appuntamenti esistenti: un ID sconosciuto produrrebbe un aggiornamento fantasma da replicare
+        Map<Integer, ChangeEvent> events = new LinkedHashMap<>();
+        for (Appointment app : appointments) {
+            boolean notified = app.isNotified();
+            appointmentsToUpdate.put(app.getId(),
+                    row -> row.setBit(AppointmentDaoBinaryConstants.APPOINTMENT_FLAG_NOTIFIED, notified));
+            if (appointmentTable.contains(app.getId())) {
+                events.put(app.getId(), new ChangeEvent.AppointmentUpdated(app, originOf(null)));
+            }
+        }
+        recordChanges(new ArrayList<>(events.values()));
+        Set<Integer> updated = appointmentTable.updateAll(appointmentsToUpdate); // un solo force per tutto il blocco
+
+        events.keySet().retainAll(updated);
+        notifyObserversBatch(new ArrayList<>(events.values()));
+    }
+
+    @Override
+    public void deleteAppointment(int appointmentId, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentDeleted(appointmentId, originOf(origin));
+        recordChange(event);
+        if (!appointmentTable.delete(appointmentId)) {
+            throw new DAOException(AppointmentDaoBinaryConstants.APPOINTMENT_NOT_FOUND + appointmentId);
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public boolean appointmentExists(int appointmentId) throws DAOException {
+        return appointmentTable.contains(appointmentId);
+    }
+
+    @Override
+    public int getNextAppointmentId() throws DAOException {
+        int maxId = 0;
+        for (int id : appointmentTable.keys()) {
+            if (id > maxId) {
+                maxId = id;
+            }
+        }
+        return maxId + 1;
+    }
+
+    private static Predicate<BinaryTable.Row> ofPatient(int patientId) {
+        return row -> row.getInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_PATIENT_USERNAME) == patientId;
+    }
+
+    private static Appointment toAppointment(BinaryTable.Row row) throws DAOException {
+        return new Appointment(
+                row.key(),
+                LocalDate.ofEpochDay(row.getInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_DATE)),
+                LocalTime.ofSecondOfDay(row.getInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_TIME)),
+                descriptions.get(row.getInt(AppointmentDaoBinaryConstants.APPOINTMENT_INDEX_DESCRIPTION)),
+                row.getBit(AppointmentDaoBinaryConstants.APPOINTMENT_FLAG_NOTIFIED));
+    }
+}
@@ -0,0 +1,174 @@
+package it.uniroma2.mindharbor.dao.binary;
+
+import it.uniroma2.mindharbor.beans.PatientBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.PatientDao;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.dao.binary.constants.PatientDaoBinaryConstants;
+import it.uniroma2.mindharbor.dao.binary.constants.UserDaoBinaryConstants;
+import it.uniroma2.mindharbor.dao.binary.engine.BinaryTable;
+import it.uniroma2.mindharbor.dao.binary.engine.StringDictionary;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public class PatientDaoBinary extends AbstractObservableDao implements PatientDao {
+
+    private static final BinaryTable patientTable = BinaryTable.of(new File(PatientDaoBinaryConstants.PATH_NAME_PATIENTS),
+            PatientDaoBinaryConstants.INT_COLUMNS, 0);
+
+    public PatientDaoBinary() {
+        super(PersistenceType.BINARY);
+    }
+
+    @Override
+    public void savePatient(PatientBean patient, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientInserted(patient, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.BINARY);
+        // Rendi l'operazione robusta per la sincronizzazione
+        try {
+            userDao.saveUser(patient, origin);
+        } catch (DAOException e) {
+            if (!e.getMessage().contains(UserDaoBinaryConstants.USER_EXIST)) {
+                throw e;
+            }
+            // Se l'utente esiste già, va bene, la sincronizzazione può procedere.
+        }
+
+        patientTable.insert(UserDaoBinary.usernames.intern(patient.getUsername()), toPatientWriter(patient));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void savePatients(List<PatientBean> patients, Origin origin) throws DAOException {
+        // Come per il singolo inserimento, gli utenti già presenti vengono riutilizzati
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.BINARY);
+        List<PatientBean> newUsers = new ArrayList<>();
+        Map<Integer, Consumer<BinaryTable.Row>> writers = new LinkedHashMap<>();
+        List<ChangeEvent> events = new ArrayList<>(patients.size());
+        for (PatientBean patient : patients) {
+            if (!userDao.isUsernameTaken(patient.getUsername())) {
+                newUsers.add(patient);
+            }
+            writers.put(UserDaoBinary.usernames.intern(patient.getUsername()), toPatientWriter(patient));
+            events.add(new ChangeEvent.PatientInserted(patient, originOf(origin)));
+        }
+        recordChanges(events);
+        userDao.saveUsers(newUsers, origin);
+
+        patientTable.insertAll(writers);
+        notifyObserversBatch(events);
+    }
+
+    private Consumer<BinaryTable.Row> toPatientWriter(PatientBean patient) throws DAOException {
+        // Quando si crea un paziente, non ha ancora uno psicologo assegnato
+        return toPatientWriter(patient.getBirthDate(), "");
+    }
+
+    private Consumer<BinaryTable.Row> toPatientWriter(LocalDate birthDate, String psychologist) throws DAOException {
+        int epochDay = birthDate == null ? BinaryTable.NULL : Math.toIntExact(birthDate.toEpochDay());
+        int psychologistId = UserDaoBinary.usernames.intern(psychologist);
+        return row -> {
+            row.setInt(PatientDaoBinaryConstants.PATIENT_INDEX_BIRTHDATE, epochDay);
+            row.setInt(PatientDaoBinaryConstants.PATIENT_INDEX_PSYCHOLOGIST, psychologistId);
+        };
+    }
+
+    @Override
+    public Patient retrievePatient(String username) throws DAOException {
+        int key = UserDaoBinary.usernames.find(username);
+        return key == StringDictionary.NULL_ID ? null : patientTable.get(key, PatientDaoBinary::toPatient);
+    }
+
+    @Override
+    public List<Patient> retrieveAllPatients() throws DAOException {
+        return toPatients(patientTable.select(null, PatientDaoBinary::toPatient));
+    }
+
+    @Override
+    public List<Patient> retrievePatientsByPsychologist(Psychologist psychologist) throws DAOException {
+        int psychologistId = UserDaoBinary.usernames.find(psychologist.getUsername());
+        if (psychologistId == StringDictionary.NULL_ID) {
+            return Collections.emptyList();
+        }
+        Predicate<BinaryTable.Row> assigned =
+                row -> row.getInt(PatientDaoBinaryConstants.PATIENT_INDEX_PSYCHOLOGIST) == psychologistId;
+        return toPatients(patientTable.select(assigned, PatientDaoBinary::toPatient));
+    }
+
+    @Override
+    public void updatePatient(Patient patient, UserBean user, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientUpdated(patient, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.BINARY);
+        userDao.updateUser(user, origin);
+
+        int key = UserDaoBinary.usernames.find(patient.getUsername());
+        if (key == StringDictionary.NULL_ID ||
+                !patientTable.update(key, toPatientWriter(patient.getBirthday(), patient.getPsychologist()))) {
+            throw new DAOException(PatientDaoBinaryConstants.PATIENT_NOT_FOUND + patient.getUsername());
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void deletePatient(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientDeleted(username, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.BINARY);
+        try {
+            userDao.deleteUser(username, origin);
+        } catch (DAOException e) {
+            if (!e.getMessage().contains(UserDaoBinaryConstants.USER_NOT_FOUND)) {
+                throw e;
+            }
+        }
+
+        int key = UserDaoBinary.usernames.find(username);
+        if (key == StringDictionary.NULL_ID || !patientTable.delete(key)) {
+            throw new DAOException(PatientDaoBinaryConstants.PATIENT_NOT_FOUND + username);
+        }
+        notifyObservers(event);
+    }
+
+    /**
+     * Joins a row of the patient table with its user; patients without a user are skipped by the callers.
+     */
+    private static Patient toPatient(BinaryTable.Row row) throws DAOException {
+        String[] userInfo = UserDaoBinary.userTable.get(row.key(), UserDaoBinary::toUserRecord);
+        if (userInfo == null) {
+            return null;
+        }
+        int birthDate = row.getInt(PatientDaoBinaryConstants.PATIENT_INDEX_BIRTHDATE);
+        return new Patient(
+                userInfo[UserDaoBinaryConstants.USER_INDEX_USERNAME],
+                userInfo[UserDaoBinaryConstants.USER_INDEX_FIRST_NAME],
+                userInfo[UserDaoBinaryConstants.USER_INDEX_LAST_NAME],
+                userInfo[UserDaoBinaryConstants.USER_INDEX_GENDER],
+                UserDaoBinary.usernames.get(row.getInt(PatientDaoBinaryConstants.PATIENT_INDEX_PSYCHOLOGIST)),
+                birthDate == BinaryTable.NULL ? null : LocalDate.ofEpochDay(birthDate)
+        );
+    }
+
+    private static List<Patient> toPatients(List<Patient> joined) {
+        joined.removeIf(Objects::isNull);
+        return joined;
+    }
+}
@@ -0,0 +1,160 @@
+package it.uniroma2.mindharbor.dao.binary;
+
+import it.uniroma2.mindharbor.beans.PsychologistBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.PatientDao;
+import it.uniroma2.mindharbor.dao.PsychologistDao;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.dao.binary.constants.PsychologistDaoBinaryConstants;
+import it.uniroma2.mindharbor.dao.binary.constants.UserDaoBinaryConstants;
+import it.uniroma2.mindharbor.dao.binary.engine.BinaryTable;
+import it.uniroma2.mindharbor.dao.binary.engine.StringDictionary;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+public class PsychologistDaoBinary extends AbstractObservableDao implements PsychologistDao {
+
+    private static final BinaryTable psychologistTable = BinaryTable.of(new File(PsychologistDaoBinaryConstants.PATH_NAME_PSYCHOLOGIST),
+            PsychologistDaoBinaryConstants.INT_COLUMNS, 0);
+
+    public PsychologistDaoBinary() {
+        super(PersistenceType.BINARY);
+    }
+
+    @Override
+    public void savePsychologist(PsychologistBean psychologist, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistInserted(psychologist, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.BINARY);
+        // Rendi l'operazione robusta per la sincronizzazione
+        try {
+            userDao.saveUser(psychologist, origin);
+        } catch (DAOException e) {
+            if (!e.getMessage().contains(UserDaoBinaryConstants.USER_EXIST)) {
+                throw e;
+            }
+            // Se l'utente esiste già, va bene.
+        }
+
+        psychologistTable.insert(UserDaoBinary.usernames.intern(psychologist.getUsername()),
+                toPsychologistWriter(psychologist.getOffice(), String.valueOf(psychologist.getHourlyCost())));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void savePsychologists(List<PsychologistBean> psychologists, Origin origin) throws DAOException {
+        // Come per il singolo inserimento, gli utenti già presenti vengono riutilizzati
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.BINARY);
+        List<PsychologistBean> newUsers = new ArrayList<>();
+        Map<Integer, Consumer<BinaryTable.Row>> writers = new LinkedHashMap<>();
+        List<ChangeEvent> events = new ArrayList<>(psychologists.size());
+        for (PsychologistBean psychologist : psychologists) {
+            if (!userDao.isUsernameTaken(psychologist.getUsername())) {
+                newUsers.add(psychologist);
+            }
+            writers.put(UserDaoBinary.usernames.intern(psychologist.getUsername()),
+                    toPsychologistWriter(psychologist.getOffice(), String.valueOf(psychologist.getHourlyCost())));
+            events.add(new ChangeEvent.PsychologistInserted(psychologist, originOf(origin)));
+        }
+        recordChanges(events);
+        userDao.saveUsers(newUsers, origin);
+
+        psychologistTable.insertAll(writers);
+        notifyObserversBatch(events);
+    }
+
+    private Consumer<BinaryTable.Row> toPsychologistWriter(String office, String hourlyCost) throws DAOException {
+        int officeId = UserDaoBinary.strings.intern(office);
+        int hourlyCostId = UserDaoBinary.strings.intern(hourlyCost);
+        return row -> {
+            row.setInt(PsychologistDaoBinaryConstants.PSYCHOLOGIST_INDEX_OFFICE, officeId);
+            row.setInt(PsychologistDaoBinaryConstants.PSYCHOLOGIST_INDEX_HOURLY_COST, hourlyCostId);
+        };
+    }
+
+    @Override
+    public Psychologist retrievePsychologist(String username) throws DAOException {
+        int key = UserDaoBinary.usernames.find(username);
+        return key == StringDictionary.NULL_ID ? null : psychologistTable.get(key, PsychologistDaoBinary::toPsychologist);
+    }
+
+    @Override
+    public List<Psychologist> retrieveAllPsychologists() throws DAOException {
+        List<Psychologist> psychologists = psychologistTable.select(null, PsychologistDaoBinary::toPsychologist);
+        psychologists.removeIf(Objects::isNull);
+        return psychologists;
+    }
+
+    @Override
+    public void updatePsychologist(Psychologist psychologist, UserBean bean, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistUpdated(psychologist, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.BINARY);
+        userDao.updateUser(bean, origin);
+
+        int key = UserDaoBinary.usernames.find(psychologist.getUsername());
+        if (key == StringDictionary.NULL_ID || !psychologistTable.update(key,
+                toPsychologistWriter(psychologist.getOffice(), psychologist.getHourlyCost()))) {
+            throw new DAOException(PsychologistDaoBinaryConstants.PSYCHOLOGIST_NOT_FOUND + psychologist.getUsername());
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void deletePsychologist(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistDeleted(username, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.BINARY);
+        try {
+            userDao.deleteUser(username, origin);
+        } catch (DAOException e) {
+            if (!e.getMessage().contains(UserDaoBinaryConstants.USER_NOT_FOUND)) {
+                throw e;
+            }
+        }
+
+        int key = UserDaoBinary.usernames.find(username);
+        if (key == StringDictionary.NULL_ID || !psychologistTable.delete(key)) {
+            throw new DAOException(PsychologistDaoBinaryConstants.PSYCHOLOGIST_NOT_FOUND + username);
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public List<Patient> getPatients(Psychologist psychologist) throws DAOException {
+        PatientDao patientDao = DaoFactoryFacade.getInstance().getPatientDao(PersistenceType.BINARY);
+        return patientDao.retrievePatientsByPsychologist(psychologist);
+    }
+
+    /**
+     * Joins a row of the psychologist table with its user; psychologists without a user are skipped by the callers.
+     */
+    private static Psychologist toPsychologist(BinaryTable.Row row) throws DAOException {
+        String[] userInfo = UserDaoBinary.userTable.get(row.key(), UserDaoBinary::toUserRecord);
+        if (userInfo == null) {
+            return null;
+        }
+        return new Psychologist(
+                userInfo[UserDaoBinaryConstants.USER_INDEX_USERNAME],
+                userInfo[UserDaoBinaryConstants.USER_INDEX_FIRST_NAME],
+                userInfo[UserDaoBinaryConstants.USER_INDEX_LAST_NAME],
+                userInfo[UserDaoBinaryConstants.USER_INDEX_GENDER],
+                UserDaoBinary.strings.get(row.getInt(PsychologistDaoBinaryConstants.PSYCHOLOGIST_INDEX_OFFICE)),
+                UserDaoBinary.strings.get(row.getInt(PsychologistDaoBinaryConstants.PSYCHOLOGIST_INDEX_HOURLY_COST))
+        );
+    }
+}
@@ -0,0 +1,158 @@
+package it.uniroma2.mindharbor.dao.binary;
+
+import it.uniroma2.mindharbor.beans.CredentialsBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.dao.binary.constants.UserDaoBinaryConstants;
+import it.uniroma2.mindharbor.dao.binary.engine.BinaryTable;
+import it.uniroma2.mindharbor.dao.binary.engine.StringDictionary;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.PasswordUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public class UserDaoBinary extends AbstractObservableDao implements UserDao {
+
+    static final BinaryTable userTable = BinaryTable.of(new File(UserDaoBinaryConstants.PATH_NAME_USER),
+            UserDaoBinaryConstants.INT_COLUMNS, 0, UserDaoBinaryConstants.PASSWORD_WIDTH);
+    static final StringDictionary usernames = StringDictionary.of(new File(UserDaoBinaryConstants.PATH_NAME_USERNAMES));
+    static final StringDictionary strings = StringDictionary.of(new File(UserDaoBinaryConstants.PATH_NAME_STRINGS));
+
+    /**
+     * Decodes a row of the user table into the record layout returned by {@link #retrieveUser(String)}.
+     *
+     * @param row A row of the user table
+     * @return The user record
+     * @throws DAOException If a dictionary cannot be read
+     */
+    static String[] toUserRecord(BinaryTable.Row row) throws DAOException {
+        String[] userRecord = new String[UserDaoBinaryConstants.RECORD_LENGTH];
+        userRecord[UserDaoBinaryConstants.USER_INDEX_USERNAME] = usernames.get(row.key());
+        userRecord[UserDaoBinaryConstants.USER_INDEX_PASSWORD] =
+                row.getText(UserDaoBinaryConstants.TEXT_COLUMN_PASSWORD);
+        userRecord[UserDaoBinaryConstants.USER_INDEX_FIRST_NAME] =
+                strings.get(row.getInt(UserDaoBinaryConstants.COLUMN_FIRST_NAME));
+        userRecord[UserDaoBinaryConstants.USER_INDEX_LAST_NAME] =
+                strings.get(row.getInt(UserDaoBinaryConstants.COLUMN_LAST_NAME));
+        userRecord[UserDaoBinaryConstants.USER_INDEX_TYPE] =
+                strings.get(row.getInt(UserDaoBinaryConstants.COLUMN_TYPE));
+        userRecord[UserDaoBinaryConstants.USER_INDEX_GENDER] =
+                strings.get(row.getInt(UserDaoBinaryConstants.COLUMN_GENDER));
+        return userRecord;
+    }
+
+    public UserDaoBinary() {
+        super(PersistenceType.BINARY);
+    }
+
+    @Override
+    public void validateUser(CredentialsBean credentials) throws DAOException {
+        String[] userRecord = retrieveUser(credentials.getUsername());
+        if (userRecord != null) {
+            String storedHashedPassword = userRecord[UserDaoBinaryConstants.USER_INDEX_PASSWORD];
+            if (PasswordUtils.checkPassword(credentials.getPassword(), storedHashedPassword)) {
+                credentials.setType(userRecord[UserDaoBinaryConstants.USER_INDEX_TYPE]);
+            }
+        }
+    }
+
+    @Override
+    public void saveUser(UserBean user, Origin origin) throws DAOException {
+        if (isUsernameTaken(user.getUsername())) {
+            throw new DAOException(UserDaoBinaryConstants.USER_EXIST);
+        }
+        ChangeEvent event = new ChangeEvent.UserInserted(user, originOf(origin));
+        recordChange(event);
+        userTable.insert(usernames.intern(user.getUsername()), toUserWriter(user));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void saveUsers(List<? extends UserBean> users, Origin origin) throws DAOException {
+        Map<Integer, Consumer<BinaryTable.Row>> writers = new LinkedHashMap<>();
+        List<ChangeEvent> events = new ArrayList<>(users.size());
+        for (UserBean user : users) {
+            if (isUsernameTaken(user.getUsername())) {
+                throw new DAOException(UserDaoBinaryConstants.USER_EXIST);
+            }
+            writers.put(usernames.intern(user.getUsername()), toUserWriter(user));
+            events.add(new ChangeEvent.UserInserted(user, originOf(origin)));
+        }
+        recordChanges(events);
+        userTable.insertAll(writers); // un solo force per tutto il blocco
+        notifyObserversBatch(events);
+    }
+
+    /**
+     * Encodes the strings of a user before taking the table lock, so the writer cannot fail.
+     * The password hash goes in its own column: interned, every password change would leave
+     * the old hash in the dictionary for good.
+     */
+    private Consumer<BinaryTable.Row> toUserWriter(UserBean user) throws DAOException {
+        String password = PasswordUtils.hashPassword(user.getPassword());
+        userTable.checkText(UserDaoBinaryConstants.TEXT_COLUMN_PASSWORD, password);
+        int firstName = strings.intern(user.getName());
+        int lastName = strings.intern(user.getSurname());
+        int type = strings.intern(user.getType());
+        int gender = strings.intern(user.getGender());
+        return row -> {
+            row.setText(UserDaoBinaryConstants.TEXT_COLUMN_PASSWORD, password);
+            row.setInt(UserDaoBinaryConstants.COLUMN_FIRST_NAME, firstName);
+            row.setInt(UserDaoBinaryConstants.COLUMN_LAST_NAME, lastName);
+            row.setInt(UserDaoBinaryConstants.COLUMN_TYPE, type);
+            row.setInt(UserDaoBinaryConstants.COLUMN_GENDER, gender);
+        };
+    }
+
+    @Override
+    public String[] retrieveUser(String username) throws DAOException {
+        int key = usernames.find(username);
+        return key == StringDictionary.NULL_ID ? null : userTable.get(key, UserDaoBinary::toUserRecord);
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) throws DAOException {
+        int key = usernames.find(username);
+        return key != StringDictionary.NULL_ID && userTable.contains(key);
+    }
+
+    @Override
+    public List<String> retrieveAllUsernames() throws DAOException {
+        List<String> allUsernames = new ArrayList<>();
+        for (Integer key : userTable.keys()) {
+            allUsernames.add(usernames.get(key));
+        }
+        return allUsernames;
+    }
+
+    @Override
+    public void updateUser(UserBean user, Origin origin) throws DAOException {
+        int key = usernames.find(user.getUsername());
+        ChangeEvent event = new ChangeEvent.UserUpdated(user, originOf(origin));
+        recordChange(event);
+        if (key == StringDictionary.NULL_ID || !userTable.update(key, toUserWriter(user))) {
+            throw new DAOException(UserDaoBinaryConstants.USER_NOT_FOUND + user.getUsername());
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void deleteUser(String username, Origin origin) throws DAOException {
+        int key = usernames.find(username);
+        ChangeEvent event = new ChangeEvent.UserDeleted(username, originOf(origin));
+        recordChange(event);
+        if (key == StringDictionary.NULL_ID || !userTable.delete(key)) {
+            throw new DAOException(UserDaoBinaryConstants.USER_NOT_FOUND + username);
+        }
+        notifyObservers(event);
+    }
+}
@@ -0,0 +1,58 @@
+package it.uniroma2.mindharbor.dao.binary.constants;
+
+/**
+ * Constants used by AppointmentDaoBinary for managing the binary storage of appointments.
+ */
+public class AppointmentDaoBinaryConstants {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private AppointmentDaoBinaryConstants() {
+        // Prevent instantiation
+    }
+
+    /**
+     * The directory holding the column files of the appointment table.
+     */
+    public static final String PATH_NAME_APPOINTMENTS = "db/binary/appointment";
+    /**
+     * The dictionary of the appointment descriptions.
+     */
+    public static final String PATH_NAME_DESCRIPTIONS = "db/binary/descriptions.dict";
+    /**
+     * Number of integer columns of the appointment table.
+     */
+    public static final int INT_COLUMNS = 5;
+    /**
+     * Number of bitset columns of the appointment table.
+     */
+    public static final int BIT_COLUMNS = 1;
+    /**
+     * Appointment ID, the primary key.
+     */
+    public static final int APPOINTMENT_INDEX_ID = 0;
+    /**
+     * Date, as epoch day.
+     */
+    public static final int APPOINTMENT_INDEX_DATE = 1;
+    /**
+     * Time, as seconds of the day.
+     */
+    public static final int APPOINTMENT_INDEX_TIME = 2;
+    /**
+     * Username dictionary id of the patient.
+     */
+    public static final int APPOINTMENT_INDEX_PATIENT_USERNAME = 3;
+    /**
+     * Description dictionary id.
+     */
+    public static final int APPOINTMENT_INDEX_DESCRIPTION = 4;
+    /**
+     * Bitset column of the notified flag.
+     */
+    public static final int APPOINTMENT_FLAG_NOTIFIED = 0;
+    /**
+     * Message prefix used when an appointment cannot be found.
+     */
+    public static final String APPOINTMENT_NOT_FOUND = "Appointment not found: ";
+}
@@ -0,0 +1,38 @@
+package it.uniroma2.mindharbor.dao.binary.constants;
+
+/**
+ * Constants used by PatientDaoBinary for managing the binary storage of patients.
+ */
+public class PatientDaoBinaryConstants {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private PatientDaoBinaryConstants() {
+        // Prevent instantiation
+    }
+
+    /**
+     * The directory holding the column files of the patient table.
+     */
+    public static final String PATH_NAME_PATIENTS = "db/binary/patient";
+    /**
+     * Number of integer columns of the patient table.
+     */
+    public static final int INT_COLUMNS = 3;
+    /**
+     * Username dictionary id of the patient, the primary key.
+     */
+    public static final int PATIENT_INDEX_USERNAME = 0;
+    /**
+     * Birth date, as epoch day.
+     */
+    public static final int PATIENT_INDEX_BIRTHDATE = 1;
+    /**
+     * Username dictionary id of the assigned psychologist.
+     */
+    public static final int PATIENT_INDEX_PSYCHOLOGIST = 2;
+    /**
+     * Message prefix used when a patient cannot be found.
+     */
+    public static final String PATIENT_NOT_FOUND = "Patient not found: ";
+}
@@ -0,0 +1,38 @@
+package it.uniroma2.mindharbor.dao.binary.constants;
+
+/**
+ * Constants used by PsychologistDaoBinary for managing the binary storage of psychologists.
+ */
+public class PsychologistDaoBinaryConstants {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private PsychologistDaoBinaryConstants() {
+        // Prevent instantiation
+    }
+
+    /**
+     * The directory holding the column files of the psychologist table.
+     */
+    public static final String PATH_NAME_PSYCHOLOGIST = "db/binary/psychologist";
+    /**
+     * Number of integer columns of the psychologist table.
+     */
+    public static final int INT_COLUMNS = 3;
+    /**
+     * Username dictionary id of the psychologist, the primary key.
+     */
+    public static final int PSYCHOLOGIST_INDEX_USERNAME = 0;
+    /**
+     * String dictionary id of the office.
+     */
+    public static final int PSYCHOLOGIST_INDEX_OFFICE = 1;
+    /**
+     * String dictionary id of the hourly cost, kept as written to preserve its notation.
+     */
+    public static final int PSYCHOLOGIST_INDEX_HOURLY_COST = 2;
+    /**
+     * Message prefix used when a psychologist cannot be found.
+     */
+    public static final String PSYCHOLOGIST_NOT_FOUND = "Psychologist not found: ";
+}
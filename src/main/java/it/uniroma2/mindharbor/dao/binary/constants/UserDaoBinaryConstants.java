@@ -0,0 +1,94 @@
+package it.uniroma2.mindharbor.dao.binary.constants;
+
+/**
+ * Constants used by UserDaoBinary for managing the binary storage of users.
+ * The {@code USER_INDEX_*} indexes are those of the CSV records, so that {@code retrieveUser}
+ * returns the same layout on every persistence type; the {@code COLUMN_*} indexes locate the
+ * values in the columns of the user table.
+ */
+public class UserDaoBinaryConstants {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private UserDaoBinaryConstants() {
+        // Prevent instantiation
+    }
+
+    /**
+     * The directory holding the column files of the user table.
+     */
+    public static final String PATH_NAME_USER = "db/binary/user";
+    /**
+     * The dictionary of the usernames, shared by all the binary tables referring to a user.
+     */
+    public static final String PATH_NAME_USERNAMES = "db/binary/usernames.dict";
+    /**
+     * The dictionary of the other strings of users and psychologists.
+     */
+    public static final String PATH_NAME_STRINGS = "db/binary/strings.dict";
+    /**
+     * Number of fields of a user record.
+     */
+    public static final int RECORD_LENGTH = 6;
+    /**
+     * Record index of the username.
+     */
+    public static final int USER_INDEX_USERNAME = 0;
+    /**
+     * Record index of the password hash.
+     */
+    public static final int USER_INDEX_PASSWORD = 1;
+    /**
+     * Record index of the first name.
+     */
+    public static final int USER_INDEX_FIRST_NAME = 2;
+    /**
+     * Record index of the last name.
+     */
+    public static final int USER_INDEX_LAST_NAME = 3;
+    /**
+     * Record index of the user type.
+     */
+    public static final int USER_INDEX_TYPE = 4;
+    /**
+     * Record index of the gender.
+     */
+    public static final int USER_INDEX_GENDER = 5;
+    /**
+     * Number of integer columns of the user table.
+     */
+    public static final int INT_COLUMNS = 5;
+    /**
+     * Integer column of the string dictionary id of the first name; column 0 is the username id.
+     */
+    public static final int COLUMN_FIRST_NAME = 1;
+    /**
+     * Integer column of the string dictionary id of the last name.
+     */
+    public static final int COLUMN_LAST_NAME = 2;
+    /**
+     * Integer column of the string dictionary id of the user type.
+     */
+    public static final int COLUMN_TYPE = 3;
+    /**
+     * Integer column of the string dictionary id of the gender.
+     */
+    public static final int COLUMN_GENDER = 4;
+    /**
+     * Text column of the password hash, which is unique to each user and changes with the password,
+     * so it is not kept in the string dictionary.
+     */
+    public static final int TEXT_COLUMN_PASSWORD = 0;
+    /**
+     * Size of the password column, the length of a BCrypt hash.
+     */
+    public static final int PASSWORD_WIDTH = 60;
+    /**
+     * Message used when saving a user whose username is already taken.
+     */
+    public static final String USER_EXIST = "User already exists";
+    /**
+     * Message prefix used when a user cannot be found.
+     */
+    public static final String USER_NOT_FOUND = "User not found: ";
+}
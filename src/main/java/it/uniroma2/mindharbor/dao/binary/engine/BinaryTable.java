@@ -0,0 +1,492 @@
+package it.uniroma2.mindharbor.dao.binary.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Columnar table engine backing the binary Data Access Objects.
+ * <p>
+ * A table is a directory holding one memory-mapped file per column: fixed-width 32-bit
+ * {@link IntColumn integer columns}, {@link BitColumn bitset columns} and {@link TextColumn text columns}
+ * of bounded length, plus a bitset of the live rows and a small metadata file with the number of rows
+ * ever allocated. Strings shared by many rows are stored by the DAOs as ids of a {@link StringDictionary},
+ * strings unique to a row in a text column, dates as epoch days and times as seconds of the day, so
+ * every column has a fixed width and row {@code r} of a column is always at the same offset. Integer
+ * column 0 is the primary key of the table.
+ * </p>
+ * <p>
+ * Reading a row never parses anything: {@link Row} reads its values straight from the mapped files.
+ * Queries are full scans of the live rows with a {@link Predicate} on the columns, which for tables
+ * of a few integer columns run at the speed the mapped pages can be read, without secondary indexes
+ * to maintain. Only the position of each key is kept in memory, rebuilt when the table is opened.
+ * </p>
+ * <p>
+ * Deleting a row only clears its live bit; its slot is reused by the next insertion. Changes are
+ * written in place through the mappings and, unless {@code binary.sync} is false, forced to the
+ * storage device before the mutation returns. They are not atomic with respect to a crash: the
+ * operating system writes the dirty pages of the mapped files back in no particular order, so a crash
+ * during a mutation can leave a row with some of its values updated and some not, or a new row live
+ * before all its values reached the disk. Tables that must survive a crash mid-write belong in the
+ * embedded engine, whose writes go through a journal.
+ * </p>
+ * <p>
+ * Tables are shared: {@link #of(File, int, int, int...)} always returns the same instance for the same
+ * directory. Each table is guarded by a read/write lock: queries share the read lock, mutations
+ * hold the write lock.
+ * </p>
+ */
+public class BinaryTable {
+
+    /**
+     * Value stored in integer columns for a missing value.
+     */
+    public static final int NULL = Integer.MIN_VALUE;
+
+    /**
+     * Message prefix used when inserting a row whose primary key is already present.
+     */
+    public static final String DUPLICATE_KEY = "Duplicate key in binary table: ";
+
+    static final String ERR_ACCESS = "Cannot access binary file %s";
+    static final String ERR_FULL = "Binary file %s cannot grow beyond the largest mapping";
+
+    static final boolean SYNC = AppConfig.getBoolean("binary.sync", true);
+
+    private static final Map<String, BinaryTable> tables = new ConcurrentHashMap<>();
+    private static final int KEY = 0;
+    private static final int META_ROWS = 0;
+
+    private final File directory;
+    private final IntColumn[] ints;
+    private final BitColumn[] bits;
+    private final TextColumn[] texts;
+    private final BitColumn live;
+    private final IntColumn meta;
+    private final Map<Integer, Integer> positions = new HashMap<>();
+    private final Deque<Integer> freeRows = new ArrayDeque<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int rowCount;
+    private volatile boolean opened;
+
+    /**
+     * Private constructor, tables are obtained through {@link #of(File, int, int, int...)}.
+     */
+    private BinaryTable(File directory, int intColumns, int bitColumns, int[] textWidths) {
+        this.directory = directory;
+        this.ints = new IntColumn[intColumns];
+        for (int i = 0; i < intColumns; i++) {
+            ints[i] = new IntColumn(new File(directory, "column-" + i + ".int"));
+        }
+        this.bits = new BitColumn[bitColumns];
+        for (int i = 0; i < bitColumns; i++) {
+            bits[i] = new BitColumn(new File(directory, "flag-" + i + ".bit"));
+        }
+        this.texts = new TextColumn[textWidths.length];
+        for (int i = 0; i < textWidths.length; i++) {
+            texts[i] = new TextColumn(new File(directory, "text-" + i + ".txt"), textWidths[i]);
+        }
+        this.live = new BitColumn(new File(directory, "live.bit"));
+        this.meta = new IntColumn(new File(directory, "meta.int"));
+    }
+
+    /**
+     * Returns the shared table stored in the given directory, creating it if needed.
+     * The files are opened lazily, on the first operation performed on the table.
+     *
+     * @param directory  The directory holding the column files.
+     * @param intColumns The number of integer columns, including the key column 0.
+     * @param bitColumns The number of bitset columns.
+     * @param textWidths The largest size, in UTF-8 bytes, of the values of each text column.
+     * @return The table bound to the given directory.
+     */
+    public static BinaryTable of(File directory, int intColumns, int bitColumns, int... textWidths) {
+        return tables.computeIfAbsent(directory.getAbsolutePath(),
+                path -> new BinaryTable(directory, intColumns, bitColumns, textWidths));
+    }
+
+    /**
+     * Checks that a value fits in a text column, so that writers can be built knowing they will not fail.
+     *
+     * @param column The index of a text column.
+     * @param value  The value.
+     * @throws DAOException If the value is longer than the column allows.
+     */
+    public void checkText(int column, String value) throws DAOException {
+        if (!texts[column].fits(value)) {
+            throw new DAOException("Value too long for text column " + column + " of " + this);
+        }
+    }
+
+    /**
+     * Checks whether a row with the given key exists.
+     *
+     * @param key The primary key.
+     * @return {@code true} if the row exists.
+     * @throws DAOException If the table cannot be opened.
+     */
+    public boolean contains(int key) throws DAOException {
+        lockForRead();
+        try {
+            return positions.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the row with the given key.
+     *
+     * @param key    The primary key.
+     * @param mapper The function turning the row into a value; it must not keep the {@link Row}.
+     * @param <T>    The type of the value.
+     * @return The value, or {@code null} if there is no such row.
+     * @throws DAOException If the table cannot be opened or the mapper fails.
+     */
+    public <T> T get(int key, RowMapper<T> mapper) throws DAOException {
+        lockForRead();
+        try {
+            Integer row = positions.get(key);
+            return row == null ? null : mapper.map(new Row(row));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Scans the live rows, in storage order.
+     *
+     * @param filter The condition on the rows, or {@code null} to select all of them.
+     * @param mapper The function turning a selected row into a value; it must not keep the {@link Row}.
+     * @param <T>    The type of the values.
+     * @return The values of the selected rows.
+     * @throws DAOException If the table cannot be opened or the mapper fails.
+     */
+    public <T> List<T> select(Predicate<Row> filter, RowMapper<T> mapper) throws DAOException {
+        lockForRead();
+        try {
+            List<T> selected = new ArrayList<>();
+            Row cursor = new Row(0);
+            for (int row = 0; row < rowCount; row++) {
+                if (live.get(row)) {
+                    cursor.row = row;
+                    if (filter == null || filter.test(cursor)) {
+                        selected.add(mapper.map(cursor));
+                    }
+                }
+            }
+            return selected;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The keys of all the rows, in no particular order.
+     * @throws DAOException If the table cannot be opened.
+     */
+    public List<Integer> keys() throws DAOException {
+        lockForRead();
+        try {
+            return new ArrayList<>(positions.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts a new row.
+     *
+     * @param key    The primary key of the row.
+     * @param writer The function writing the other columns of the row.
+     * @throws DAOException If a row with the same key exists or the files cannot be written.
+     */
+    public void insert(int key, Consumer<Row> writer) throws DAOException {
+        insertAll(Map.of(key, writer));
+    }
+
+    /**
+     * Inserts several rows with a single force to the storage device.
+     * No row is inserted if one of the keys is already present.
+     *
+     * @param writers The functions writing the rows, keyed by primary key.
+     * @throws DAOException If a key is already present or the files cannot be written.
+     */
+    public void insertAll(Map<Integer, Consumer<Row>> writers) throws DAOException {
+        if (writers.isEmpty()) {
+            return;
+        }
+        lockForWrite();
+        try {
+            for (Integer key : writers.keySet()) {
+                if (positions.containsKey(key)) {
+                    throw new DAOException(DUPLICATE_KEY + key);
+                }
+            }
+            reserveRows(rowCount + Math.max(0, writers.size() - freeRows.size()));
+            for (Map.Entry<Integer, Consumer<Row>> entry : writers.entrySet()) {
+                Integer free = freeRows.pollFirst();
+                int row = free != null ? free : rowCount++;
+                Row target = new Row(row);
+                for (BitColumn column : bits) {
+                    column.set(row, false); // uno slot riusato può contenere i flag della riga cancellata
+                }
+                for (TextColumn column : texts) {
+                    column.set(row, null);
+                }
+                target.setInt(KEY, entry.getKey());
+                entry.getValue().accept(target);
+                live.set(row, true);
+                positions.put(entry.getKey(), row);
+            }
+            meta.set(META_ROWS, rowCount);
+            sync();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the row with the given key in place.
+     *
+     * @param key    The primary key.
+     * @param writer The function changing the columns of the row; the key column must not be changed.
+     * @return {@code true} if the row was found.
+     * @throws DAOException If the table cannot be opened.
+     */
+    public boolean update(int key, Consumer<Row> writer) throws DAOException {
+        return !updateAll(Map.of(key, writer)).isEmpty();
+    }
+
+    /**
+     * Updates several rows with a single force to the storage device; missing keys are skipped.
+     *
+     * @param writers The functions changing the rows, keyed by primary key.
+     * @return The keys of the rows updated.
+     * @throws DAOException If the table cannot be opened.
+     */
+    public Set<Integer> updateAll(Map<Integer, Consumer<Row>> writers) throws DAOException {
+        lockForWrite();
+        try {
+            Set<Integer> updated = new LinkedHashSet<>();
+            for (Map.Entry<Integer, Consumer<Row>> entry : writers.entrySet()) {
+                Integer row = positions.get(entry.getKey());
+                if (row != null) {
+                    entry.getValue().accept(new Row(row));
+                    updated.add(entry.getKey());
+                }
+            }
+            if (!updated.isEmpty()) {
+                sync();
+            }
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the row with the given key.
+     *
+     * @param key The primary key.
+     * @return {@code true} if the row was found.
+     * @throws DAOException If the table cannot be opened.
+     */
+    public boolean delete(int key) throws DAOException {
+        lockForWrite();
+        try {
+            Integer row = positions.remove(key);
+            if (row == null) {
+                return false;
+            }
+            live.set(row, false);
+            freeRows.addLast(row);
+            sync();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Acquires the read lock, opening the table first if needed.
+     */
+    private void lockForRead() throws DAOException {
+        if (!opened) {
+            lockForWrite();
+            lock.writeLock().unlock();
+        }
+        lock.readLock().lock();
+    }
+
+    /**
+     * Acquires the write lock, opening the table first if needed.
+     */
+    private void lockForWrite() throws DAOException {
+        lock.writeLock().lock();
+        if (!opened) {
+            try {
+                open();
+            } catch (DAOException | RuntimeException e) {
+                lock.writeLock().unlock();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Maps the column files and rebuilds the position of each key from the live rows.
+     */
+    private void open() throws DAOException {
+        meta.open();
+        live.open();
+        for (IntColumn column : ints) {
+            column.open();
+        }
+        for (BitColumn column : bits) {
+            column.open();
+        }
+        for (TextColumn column : texts) {
+            column.open();
+        }
+        rowCount = meta.get(META_ROWS);
+        reserveRows(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            if (live.get(row)) {
+                positions.put(ints[KEY].get(row), row);
+            } else {
+                freeRows.addLast(row);
+            }
+        }
+        opened = true;
+    }
+
+    private void reserveRows(int rows) throws DAOException {
+        live.reserveRows(rows);
+        for (IntColumn column : ints) {
+            column.reserveRows(rows);
+        }
+        for (BitColumn column : bits) {
+            column.reserveRows(rows);
+        }
+        for (TextColumn column : texts) {
+            column.reserveRows(rows);
+        }
+    }
+
+    private void sync() {
+        if (!SYNC) {
+            return;
+        }
+        for (IntColumn column : ints) {
+            column.force();
+        }
+        for (BitColumn column : bits) {
+            column.force();
+        }
+        for (TextColumn column : texts) {
+            column.force();
+        }
+        live.force();
+        meta.force();
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryTable{" + directory + "}";
+    }
+
+    /**
+     * Turns a row of the table into a value, typically decoding its dictionary ids.
+     *
+     * @param <T> The type of the value.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(Row row) throws DAOException;
+    }
+
+    /**
+     * A view on one row of the table, reading and writing its values directly in the mapped files.
+     * <p>
+     * Rows are only valid inside the function they are passed to: scans reuse the same instance
+     * for every row. Setters may only be called from the writers of insertions and updates.
+     * </p>
+     */
+    public final class Row {
+
+        private int row;
+
+        private Row(int row) {
+            this.row = row;
+        }
+
+        /**
+         * @return The primary key of the row.
+         */
+        public int key() {
+            return ints[KEY].get(row);
+        }
+
+        /**
+         * @param column The index of an integer column.
+         * @return The value of the column, {@link BinaryTable#NULL} if missing.
+         */
+        public int getInt(int column) {
+            return ints[column].get(row);
+        }
+
+        /**
+         * @param column The index of a bitset column.
+         * @return The value of the column.
+         */
+        public boolean getBit(int column) {
+            return bits[column].get(row);
+        }
+
+        /**
+         * @param column The index of a text column.
+         * @return The value of the column, {@code null} if missing.
+         */
+        public String getText(int column) {
+            return texts[column].get(row);
+        }
+
+        /**
+         * @param column The index of an integer column.
+         * @param value  The new value of the column.
+         */
+        public void setInt(int column, int value) {
+            ints[column].set(row, value);
+        }
+
+        /**
+         * @param column The index of a bitset column.
+         * @param value  The new value of the column.
+         */
+        public void setBit(int column, boolean value) {
+            bits[column].set(row, value);
+        }
+
+        /**
+         * @param column The index of a text column.
+         * @param value  The new value of the column; it must fit, see {@link BinaryTable#checkText}.
+         */
+        public void setText(int column, String value) {
+            texts[column].set(row, value);
+        }
+    }
+}
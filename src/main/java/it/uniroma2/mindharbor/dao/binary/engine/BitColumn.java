@@ -0,0 +1,37 @@
+package it.uniroma2.mindharbor.dao.binary.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.io.File;
+
+/**
+ * A mapped column of booleans packed as a bitset: the flag of row {@code r} is bit {@code r % 8}
+ * of byte {@code r / 8}.
+ */
+final class BitColumn extends MappedColumn {
+
+    BitColumn(File file) {
+        super(file);
+    }
+
+    /**
+     * Makes sure the column can hold the given number of rows.
+     *
+     * @param rows The number of rows.
+     * @throws DAOException If the file cannot be extended.
+     */
+    void reserveRows(int rows) throws DAOException {
+        reserve((rows + 7L) >>> 3);
+    }
+
+    boolean get(int row) {
+        return (buffer.get(row >>> 3) & (1 << (row & 7))) != 0;
+    }
+
+    void set(int row, boolean value) {
+        int index = row >>> 3;
+        byte bits = buffer.get(index);
+        int mask = 1 << (row & 7);
+        buffer.put(index, (byte) (value ? bits | mask : bits & ~mask));
+    }
+}
@@ -0,0 +1,35 @@
+package it.uniroma2.mindharbor.dao.binary.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.io.File;
+
+/**
+ * A mapped column of fixed-width 32-bit integers, one per row, stored at offset {@code row * 4}.
+ */
+final class IntColumn extends MappedColumn {
+
+    private static final int WIDTH = Integer.BYTES;
+
+    IntColumn(File file) {
+        super(file);
+    }
+
+    /**
+     * Makes sure the column can hold the given number of rows.
+     *
+     * @param rows The number of rows.
+     * @throws DAOException If the file cannot be extended.
+     */
+    void reserveRows(int rows) throws DAOException {
+        reserve((long) rows * WIDTH);
+    }
+
+    int get(int row) {
+        return buffer.getInt(row * WIDTH);
+    }
+
+    void set(int row, int value) {
+        buffer.putInt(row * WIDTH, value);
+    }
+}
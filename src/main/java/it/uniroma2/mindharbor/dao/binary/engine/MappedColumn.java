@@ -0,0 +1,105 @@
+package it.uniroma2.mindharbor.dao.binary.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A column file of a {@link BinaryTable}, mapped in memory for reading and writing.
+ * <p>
+ * The mapping is larger than the rows actually stored, so that appending a row only writes into
+ * memory already mapped; when a write falls beyond the mapping, the file is remapped with at least
+ * twice the capacity. Values are stored little-endian, so the files do not depend on the platform.
+ * </p>
+ * <p>
+ * Columns are not thread-safe: they are only accessed under the lock of their table.
+ * </p>
+ */
+abstract class MappedColumn {
+
+    /**
+     * The largest capacity, in bytes, of a single mapping.
+     */
+    static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    private static final long INITIAL_CAPACITY = 4096;
+
+    private final File file;
+    private FileChannel channel;
+    protected MappedByteBuffer buffer;
+
+    /**
+     * @param file The file backing the column; it is created on {@link #open()} if missing.
+     */
+    MappedColumn(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the file and maps its whole content.
+     *
+     * @throws DAOException If the file cannot be created or mapped.
+     */
+    void open() throws DAOException {
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            map(Math.max(channel.size(), INITIAL_CAPACITY));
+        } catch (IOException e) {
+            throw new DAOException(String.format(BinaryTable.ERR_ACCESS, file), e);
+        }
+    }
+
+    /**
+     * Makes sure the mapping covers the first {@code bytes} bytes of the file.
+     *
+     * @param bytes The number of bytes that must be addressable.
+     * @throws DAOException If the file cannot be extended or remapped.
+     */
+    void reserve(long bytes) throws DAOException {
+        if (bytes <= buffer.capacity()) {
+            return;
+        }
+        if (bytes > MAX_MAPPED_SIZE) {
+            throw new DAOException(String.format(BinaryTable.ERR_FULL, file));
+        }
+        try {
+            // Mappare oltre la fine del file lo estende
+            map(Math.min(Math.max(bytes, buffer.capacity() * 2L), MAX_MAPPED_SIZE));
+        } catch (IOException e) {
+            throw new DAOException(String.format(BinaryTable.ERR_ACCESS, file), e);
+        }
+    }
+
+    /**
+     * Writes the changes made through the mapping to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Closes the file; the current mapping stays valid until it is garbage collected.
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nessuna modifica viene persa: i dati passano dalla mappatura, non dal canale
+        }
+    }
+
+    private void map(long capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,206 @@
+package it.uniroma2.mindharbor.dao.binary.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dictionary encoding of the strings stored in {@link BinaryTable} columns.
+ * <p>
+ * Every distinct string is given a dense integer id, which is what the tables store, so string
+ * columns keep a fixed width and equality on a string column becomes an integer comparison.
+ * {@code null} is encoded as {@link #NULL_ID} and never stored.
+ * </p>
+ * <p>
+ * The dictionary is append-only: the file is a sequence of entries made of the length of the
+ * string as a little-endian 32-bit integer followed by its UTF-8 bytes, and the id of a string is
+ * the position of its entry. It is read once, on first access, and kept in memory in both
+ * directions. An entry cut short by a crash is truncated when the file is loaded; no table can
+ * refer to it, since rows are written only after their strings. Strings no longer referenced by
+ * any row are not reclaimed, which is why values unique to a row, such as password hashes, are kept
+ * in a text column of the table instead.
+ * </p>
+ * <p>
+ * Dictionaries are shared: {@link #of(File)} always returns the same instance for the same file.
+ * Lookups do not lock; new strings are appended one at a time.
+ * </p>
+ */
+public class StringDictionary {
+
+    /**
+     * The id of {@code null}.
+     */
+    public static final int NULL_ID = -1;
+
+    private static final Logger logger = Logger.getLogger(StringDictionary.class.getName());
+    private static final Map<String, StringDictionary> dictionaries = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[64];
+    private volatile int size;
+    private FileChannel channel;
+    private volatile boolean loaded;
+
+    /**
+     * Private constructor, dictionaries are obtained through {@link #of(File)}.
+     */
+    private StringDictionary(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Returns the shared dictionary stored in the given file, creating it if needed.
+     * The file is read lazily, on the first operation performed on the dictionary.
+     *
+     * @param file The file holding the dictionary.
+     * @return The dictionary bound to the given file.
+     */
+    public static StringDictionary of(File file) {
+        return dictionaries.computeIfAbsent(file.getAbsolutePath(), path -> new StringDictionary(file));
+    }
+
+    /**
+     * Returns the id of a string, without adding it.
+     *
+     * @param value The string.
+     * @return Its id, or {@link #NULL_ID} if the string is {@code null} or not in the dictionary.
+     * @throws DAOException If the dictionary cannot be loaded.
+     */
+    public int find(String value) throws DAOException {
+        if (value == null) {
+            return NULL_ID;
+        }
+        ensureLoaded();
+        Integer id = ids.get(value);
+        return id == null ? NULL_ID : id;
+    }
+
+    /**
+     * Returns the id of a string, adding it to the dictionary if needed.
+     *
+     * @param value The string.
+     * @return Its id, or {@link #NULL_ID} if the string is {@code null}.
+     * @throws DAOException If the dictionary cannot be loaded or the string cannot be written.
+     */
+    public int intern(String value) throws DAOException {
+        int id = find(value);
+        if (id != NULL_ID || value == null) {
+            return id;
+        }
+        synchronized (this) {
+            Integer existing = ids.get(value);
+            if (existing != null) {
+                return existing;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+            entry.putInt(bytes.length).put(bytes).flip();
+            try {
+                while (entry.hasRemaining()) {
+                    channel.write(entry, channel.size());
+                }
+                if (BinaryTable.SYNC) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                throw new DAOException(String.format(BinaryTable.ERR_ACCESS, file), e);
+            }
+            return add(value);
+        }
+    }
+
+    /**
+     * Decodes an id.
+     *
+     * @param id The id of a string, or {@link #NULL_ID}.
+     * @return The string, or {@code null} for {@link #NULL_ID}.
+     * @throws DAOException If the dictionary cannot be loaded.
+     */
+    public String get(int id) throws DAOException {
+        if (id == NULL_ID) {
+            return null;
+        }
+        ensureLoaded();
+        if (id < 0 || id >= size) {
+            throw new DAOException("Unknown dictionary id " + id + " in " + file);
+        }
+        return values[id];
+    }
+
+    private void ensureLoaded() throws DAOException {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    load();
+                    loaded = true;
+                }
+            }
+        }
+    }
+
+    private void load() throws DAOException {
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long length = channel.size();
+            if (length > MappedColumn.MAX_MAPPED_SIZE) {
+                throw new DAOException(String.format(BinaryTable.ERR_FULL, file));
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int position = 0;
+            byte[] scratch = new byte[256];
+            while (position + Integer.BYTES <= length) {
+                int entryLength = buffer.getInt(position);
+                if (entryLength < 0 || position + Integer.BYTES + (long) entryLength > length) {
+                    break;
+                }
+                if (scratch.length < entryLength) {
+                    scratch = new byte[Math.max(entryLength, scratch.length * 2)];
+                }
+                buffer.get(position + Integer.BYTES, scratch, 0, entryLength);
+                add(new String(scratch, 0, entryLength, StandardCharsets.UTF_8));
+                position += Integer.BYTES + entryLength;
+            }
+            if (position < length) {
+                logger.log(Level.WARNING, "Truncating incomplete entry at the end of {0}", file);
+                channel.truncate(position);
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(BinaryTable.ERR_ACCESS, file), e);
+        }
+    }
+
+    /**
+     * Adds a string already written to the file; called under the dictionary's monitor.
+     */
+    private int add(String value) {
+        int id = size;
+        String[] current = values;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = value;
+        values = current;
+        size = id + 1;
+        ids.put(value, id);
+        return id;
+    }
+}
@@ -0,0 +1,70 @@
+package it.uniroma2.mindharbor.dao.binary.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A mapped column of short strings of bounded length, one fixed-width slot per row: a 16-bit
+ * length, stored as length + 1 so that the zeroes of a new slot read as {@code null}, followed by
+ * up to {@code maxBytes} UTF-8 bytes.
+ * <p>
+ * It holds values that are unique to a row, such as password hashes, which a {@link StringDictionary}
+ * would keep forever after every change.
+ * </p>
+ */
+final class TextColumn extends MappedColumn {
+
+    private final int maxBytes;
+    private final int width;
+
+    TextColumn(File file, int maxBytes) {
+        super(file);
+        this.maxBytes = maxBytes;
+        this.width = Short.BYTES + maxBytes;
+    }
+
+    /**
+     * Makes sure the column can hold the given number of rows.
+     *
+     * @param rows The number of rows.
+     * @throws DAOException If the file cannot be extended.
+     */
+    void reserveRows(int rows) throws DAOException {
+        reserve((long) rows * width);
+    }
+
+    /**
+     * @param value A value.
+     * @return {@code true} if the value fits in a slot of the column.
+     */
+    boolean fits(String value) {
+        return value == null || value.getBytes(StandardCharsets.UTF_8).length <= maxBytes;
+    }
+
+    String get(int row) {
+        int offset = row * width;
+        int length = (buffer.getShort(offset) & 0xFFFF) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    void set(int row, String value) {
+        int offset = row * width;
+        if (value == null) {
+            buffer.putShort(offset, (short) 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            throw new IllegalArgumentException("Value of " + bytes.length + " bytes in a column of " + maxBytes);
+        }
+        buffer.put(offset + Short.BYTES, bytes);
+        buffer.putShort(offset, (short) (bytes.length + 1));
+    }
+}
@@ -0,0 +1,134 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.DaoObserver;
+import it.uniroma2.mindharbor.patterns.observer.ObservableDao;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Abstract base class of the caching decorators of the DAOs.
+ * <p>
+ * A decorator wraps the DAO of one persistence type and answers its read methods from
+ * {@link DaoCache caches}, configured with {@code dao.cache.maximumSize}, {@code dao.cache.ttlMs} and
+ * {@code dao.cache.eviction}; the other methods are forwarded to the wrapped DAO. The decorator is
+ * also a {@link DaoObserver}: it is registered on the DAOs of its persistence type and drops the
+ * entries made stale by each change they notify, including the changes made by the synchronization.
+ * </p>
+ * <p>
+ * Observers added to the decorator are added to the wrapped DAO, which raises the notifications.
+ * The model objects held by the caches are mutable, so the decorators return copies of them.
+ * </p>
+ */
+public abstract class AbstractCachingDao implements ObservableDao, DaoObserver {
+
+    private static final boolean ENABLED = AppConfig.getBoolean("dao.cache.enabled", true);
+    private static final int MAXIMUM_SIZE = AppConfig.getInt("dao.cache.maximumSize", 1000);
+    private static final long TTL_MS = AppConfig.getLong("dao.cache.ttlMs", 30000);
+    private static final EvictionPolicy POLICY = EvictionPolicy.fromName(AppConfig.getString("dao.cache.eviction", "tinylfu"));
+
+    private final ObservableDao source;
+    private final Map<String, DaoCache<?, ?>> caches = new LinkedHashMap<>();
+
+    /**
+     * @param source The wrapped DAO
+     */
+    protected AbstractCachingDao(Object source) {
+        this.source = (ObservableDao) source;
+    }
+
+    /**
+     * @return Whether the facade should install the caching decorators, as configured with {@code dao.cache.enabled}
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Creates a cache of the decorator, registered for {@link #cacheStats()}.
+     */
+    final <K, V> DaoCache<K, V> newCache(String name) {
+        DaoCache<K, V> cache = new DaoCache<>(MAXIMUM_SIZE, TTL_MS, POLICY);
+        caches.put(name, cache);
+        return cache;
+    }
+
+    /**
+     * @return A snapshot of the counters of each cache of the decorator, keyed by cache name
+     */
+    public Map<String, CacheStats> cacheStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        for (Map.Entry<String, DaoCache<?, ?>> cache : caches.entrySet()) {
+            stats.put(cache.getKey(), cache.getValue().stats());
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    @Override
+    public void addObserver(DaoObserver observer) {
+        source.addObserver(observer);
+    }
+
+    @Override
+    public void removeObserver(DaoObserver observer) {
+        source.removeObserver(observer);
+    }
+
+    @Override
+    public void notifyObservers(ChangeEvent event) {
+        source.notifyObservers(event);
+    }
+
+    @Override
+    public void notifyObserversBatch(List<? extends ChangeEvent> events) {
+        source.notifyObserversBatch(events);
+    }
+
+    // Gli oggetti letti dai DAO non hanno ancora liste associate: basta copiare i campi
+    static Patient copyOf(Patient patient) {
+        return patient == null ? null : new Patient(patient.getUsername(), patient.getName(), patient.getSurname(),
+                patient.getGender(), patient.getPsychologist(), patient.getBirthday());
+    }
+
+    static Psychologist copyOf(Psychologist psychologist) {
+        return psychologist == null ? null : new Psychologist(psychologist.getUsername(), psychologist.getName(),
+                psychologist.getSurname(), psychologist.getGender(), psychologist.getOffice(), psychologist.getHourlyCost());
+    }
+
+    static Appointment copyOf(Appointment appointment) {
+        return appointment == null ? null : new Appointment(appointment.getId(), appointment.getDate(),
+                appointment.getTime(), appointment.getDescription(), appointment.isNotified());
+    }
+
+    static List<Patient> copyOfPatients(List<Patient> patients) {
+        List<Patient> copies = new ArrayList<>(patients.size());
+        for (Patient patient : patients) {
+            copies.add(copyOf(patient));
+        }
+        return copies;
+    }
+
+    static List<Psychologist> copyOfPsychologists(List<Psychologist> psychologists) {
+        List<Psychologist> copies = new ArrayList<>(psychologists.size());
+        for (Psychologist psychologist : psychologists) {
+            copies.add(copyOf(psychologist));
+        }
+        return copies;
+    }
+
+    static List<Appointment> copyOfAppointments(List<Appointment> appointments) {
+        List<Appointment> copies = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            copies.add(copyOf(appointment));
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,74 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bloom filter of strings: answers "definitely absent" or "possibly present".
+ * <p>
+ * Each string sets {@code k} bits of an array of {@code m} bits, chosen by double hashing of a
+ * 64-bit hash; a string whose bits are not all set has never been added. Sized for the expected
+ * number of strings and false positive rate, as in the usual formulas
+ * {@code m = -n ln p / (ln 2)^2} and {@code k = m / n ln 2}. Strings cannot be removed.
+ * </p>
+ * <p>
+ * Not thread-safe: it is used under the lock of its {@link UsernameFilter}.
+ * </p>
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final long size;
+    private final int hashes;
+
+    /**
+     * @param expectedInsertions The number of strings the filter is sized for
+     * @param falsePositiveRate  The false positive rate at that number of strings, between 0 and 1
+     */
+    BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        int n = Math.max(1, expectedInsertions);
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        this.bits = new long[(int) ((m + 63) / 64)];
+        this.size = bits.length * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+    }
+
+    void add(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, size);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashes; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, size);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes, followed by the MurmurHash3 finalizer to spread the bits.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,27 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+/**
+ * Snapshot of the counters of a {@link DaoCache}.
+ *
+ * @param size          The number of entries in the cache
+ * @param hits          The lookups answered by the cache
+ * @param misses        The lookups that had to read the persistence layer, including expired entries
+ * @param evictions     The entries dropped to keep the cache within its maximum size
+ * @param invalidations The entries dropped because a change notification made them stale
+ */
+public record CacheStats(int size, long hits, long misses, long evictions, long invalidations) {
+
+    /**
+     * @return The fraction of lookups answered by the cache, between 0 and 1; 0 if there were no lookups
+     */
+    public double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d hits=%d misses=%d hitRate=%.1f%% evictions=%d invalidations=%d",
+                size, hits, misses, hitRate() * 100, evictions, invalidations);
+    }
+}
@@ -0,0 +1,161 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import it.uniroma2.mindharbor.dao.AppointmentDao;
+import it.uniroma2.mindharbor.dao.AppointmentEntry;
+import it.uniroma2.mindharbor.dao.DaoCursor;
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caching decorator of an {@link AppointmentDao}.
+ * <p>
+ * Appointments are cached by id, and the results of the searches by patient, psychologist, date and
+ * notification status by search. The change events of updates and deletions do not tell which searches
+ * an appointment belonged to, so any appointment change drops every cached search; a patient change
+ * only drops the searches by psychologist, whose patients may have changed. Bulk reads, cursors,
+ * digests and summaries, used by the synchronization, are not cached.
+ * </p>
+ */
+public final class CachingAppointmentDao extends AbstractCachingDao implements AppointmentDao {
+
+    private static final String BY_PATIENT = "patient:";
+    private static final String BY_PSYCHOLOGIST = "psychologist:";
+    private static final String BY_DATE = "date:";
+    private static final String BETWEEN = "between:";
+    private static final String UNNOTIFIED = "unnotified:";
+
+    private final AppointmentDao delegate;
+    private final DaoCache<Integer, Appointment> appointments = newCache("appointments");
+    private final DaoCache<String, List<Appointment>> searches = newCache("appointmentSearches");
+
+    /**
+     * @param delegate The DAO to decorate
+     */
+    public CachingAppointmentDao(AppointmentDao delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onChange(ChangeEvent event) {
+        if (event.kind() == EntityKind.APPOINTMENT) {
+            appointments.invalidate(Integer.valueOf(event.entityId()));
+            searches.invalidateAll();
+        } else if (event.kind() == EntityKind.PATIENT) {
+            searches.invalidateIf(search -> search.startsWith(BY_PSYCHOLOGIST));
+        }
+    }
+
+    @Override
+    public void saveAppointment(Appointment appointment, String patientUsername, Origin origin) throws DAOException {
+        delegate.saveAppointment(appointment, patientUsername, origin);
+    }
+
+    @Override
+    public void saveAppointments(List<Appointment> appointments, String patientUsername, Origin origin) throws DAOException {
+        delegate.saveAppointments(appointments, patientUsername, origin);
+    }
+
+    @Override
+    public Appointment retrieveAppointment(int appointmentId) throws DAOException {
+        return copyOf(appointments.get(appointmentId, delegate::retrieveAppointment));
+    }
+
+    @Override
+    public List<Appointment> retrieveAllAppointments() throws DAOException {
+        return delegate.retrieveAllAppointments();
+    }
+
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentCursor() throws DAOException {
+        return delegate.openAppointmentCursor();
+    }
+
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentCursor(long sinceMillis) throws DAOException {
+        return delegate.openAppointmentCursor(sinceMillis);
+    }
+
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentRangeCursor(long fromId, long toId) throws DAOException {
+        return delegate.openAppointmentRangeCursor(fromId, toId);
+    }
+
+    @Override
+    public Map<Integer, KeyRangeSummary> summarizeAppointments(long from, long to, int parts) throws DAOException {
+        return delegate.summarizeAppointments(from, to, parts);
+    }
+
+    @Override
+    public String retrieveAppointmentDigest(int appointmentId) throws DAOException {
+        return delegate.retrieveAppointmentDigest(appointmentId);
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByPatient(String patientUsername) throws DAOException {
+        return copyOfAppointments(searches.get(BY_PATIENT + patientUsername,
+                search -> delegate.retrieveAppointmentsByPatient(patientUsername)));
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByPsychologist(String psychologistUsername) throws DAOException {
+        return copyOfAppointments(searches.get(BY_PSYCHOLOGIST + psychologistUsername,
+                search -> delegate.retrieveAppointmentsByPsychologist(psychologistUsername)));
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByDate(LocalDate date) throws DAOException {
+        return copyOfAppointments(searches.get(BY_DATE + date,
+                search -> delegate.retrieveAppointmentsByDate(date)));
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsBetween(LocalDate from, LocalDate to) throws DAOException {
+        return copyOfAppointments(searches.get(BETWEEN + from + ".." + to,
+                search -> delegate.retrieveAppointmentsBetween(from, to)));
+    }
+
+    @Override
+    public List<Appointment> retrieveUnnotifiedAppointments(String patientUsername) throws DAOException {
+        return copyOfAppointments(searches.get(UNNOTIFIED + patientUsername,
+                search -> delegate.retrieveUnnotifiedAppointments(patientUsername)));
+    }
+
+    @Override
+    public void updateAppointment(Appointment appointment, Origin origin) throws DAOException {
+        delegate.updateAppointment(appointment, origin);
+    }
+
+    @Override
+    public void updateAppointmentNotificationStatus(int appointmentId, boolean notified) throws DAOException {
+        delegate.updateAppointmentNotificationStatus(appointmentId, notified);
+    }
+
+    @Override
+    public void updateAppointmentsNotificationStatus(List<Appointment> appointments) throws DAOException {
+        delegate.updateAppointmentsNotificationStatus(appointments);
+    }
+
+    @Override
+    public void deleteAppointment(int appointmentId, Origin origin) throws DAOException {
+        delegate.deleteAppointment(appointmentId, origin);
+    }
+
+    @Override
+    public boolean appointmentExists(int appointmentId) throws DAOException {
+        return delegate.appointmentExists(appointmentId);
+    }
+
+    @Override
+    public int getNextAppointmentId() throws DAOException {
+        return delegate.getNextAppointmentId();
+    }
+}
@@ -0,0 +1,107 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import it.uniroma2.mindharbor.beans.PatientBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
+import it.uniroma2.mindharbor.dao.PatientDao;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caching decorator of a {@link PatientDao}.
+ * <p>
+ * Patients are cached by username and the patients of each psychologist by psychologist username.
+ * A patient is made of its user and patient records, so changes to either drop the patient and every
+ * cached list of patients. Bulk reads, digests and summaries, used by the synchronization, are not cached.
+ * </p>
+ */
+public final class CachingPatientDao extends AbstractCachingDao implements PatientDao {
+
+    private final PatientDao delegate;
+    private final DaoCache<String, Patient> patients = newCache("patients");
+    private final DaoCache<String, List<Patient>> patientsByPsychologist = newCache("patientsByPsychologist");
+
+    /**
+     * @param delegate The DAO to decorate
+     */
+    public CachingPatientDao(PatientDao delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onChange(ChangeEvent event) {
+        if (event.kind() == EntityKind.USER || event.kind() == EntityKind.PATIENT) {
+            patients.invalidate(event.entityId());
+            patientsByPsychologist.invalidateAll();
+        }
+    }
+
+    @Override
+    public void savePatient(PatientBean patient, Origin origin) throws DAOException {
+        delegate.savePatient(patient, origin);
+    }
+
+    @Override
+    public void savePatients(List<PatientBean> patients, Origin origin) throws DAOException {
+        delegate.savePatients(patients, origin);
+    }
+
+    @Override
+    public Patient retrievePatient(String username) throws DAOException {
+        return copyOf(patients.get(username, delegate::retrievePatient));
+    }
+
+    @Override
+    public List<Patient> retrieveAllPatients() throws DAOException {
+        return delegate.retrieveAllPatients();
+    }
+
+    @Override
+    public List<Patient> retrievePatientsModifiedSince(long sinceMillis) throws DAOException {
+        return delegate.retrievePatientsModifiedSince(sinceMillis);
+    }
+
+    @Override
+    public Map<String, String> retrievePatientDigestsModifiedSince(long sinceMillis) throws DAOException {
+        return delegate.retrievePatientDigestsModifiedSince(sinceMillis);
+    }
+
+    @Override
+    public Map<String, String> retrievePatientDigestsInRange(long from, long to) throws DAOException {
+        return delegate.retrievePatientDigestsInRange(from, to);
+    }
+
+    @Override
+    public Map<Integer, KeyRangeSummary> summarizePatients(long from, long to, int parts) throws DAOException {
+        return delegate.summarizePatients(from, to, parts);
+    }
+
+    @Override
+    public String retrievePatientDigest(String username) throws DAOException {
+        return delegate.retrievePatientDigest(username);
+    }
+
+    @Override
+    public List<Patient> retrievePatientsByPsychologist(Psychologist psychologist) throws DAOException {
+        return copyOfPatients(patientsByPsychologist.get(psychologist.getUsername(),
+                username -> delegate.retrievePatientsByPsychologist(psychologist)));
+    }
+
+    @Override
+    public void updatePatient(Patient patient, UserBean user, Origin origin) throws DAOException {
+        delegate.updatePatient(patient, user, origin);
+    }
+
+    @Override
+    public void deletePatient(String username, Origin origin) throws DAOException {
+        delegate.deletePatient(username, origin);
+    }
+}
@@ -0,0 +1,104 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import it.uniroma2.mindharbor.beans.PsychologistBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
+import it.uniroma2.mindharbor.dao.PsychologistDao;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caching decorator of a {@link PsychologistDao}.
+ * <p>
+ * Psychologists are cached by username and dropped when their user or psychologist record changes.
+ * {@link #getPatients(Psychologist)} goes through the patient DAO of the facade, which has its own cache.
+ * Bulk reads, digests and summaries, used by the synchronization, are not cached.
+ * </p>
+ */
+public final class CachingPsychologistDao extends AbstractCachingDao implements PsychologistDao {
+
+    private final PsychologistDao delegate;
+    private final DaoCache<String, Psychologist> psychologists = newCache("psychologists");
+
+    /**
+     * @param delegate The DAO to decorate
+     */
+    public CachingPsychologistDao(PsychologistDao delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onChange(ChangeEvent event) {
+        if (event.kind() == EntityKind.USER || event.kind() == EntityKind.PSYCHOLOGIST) {
+            psychologists.invalidate(event.entityId());
+        }
+    }
+
+    @Override
+    public void savePsychologist(PsychologistBean psychologist, Origin origin) throws DAOException {
+        delegate.savePsychologist(psychologist, origin);
+    }
+
+    @Override
+    public void savePsychologists(List<PsychologistBean> psychologists, Origin origin) throws DAOException {
+        delegate.savePsychologists(psychologists, origin);
+    }
+
+    @Override
+    public Psychologist retrievePsychologist(String username) throws DAOException {
+        return copyOf(psychologists.get(username, delegate::retrievePsychologist));
+    }
+
+    @Override
+    public List<Psychologist> retrieveAllPsychologists() throws DAOException {
+        return delegate.retrieveAllPsychologists();
+    }
+
+    @Override
+    public List<Psychologist> retrievePsychologistsModifiedSince(long sinceMillis) throws DAOException {
+        return delegate.retrievePsychologistsModifiedSince(sinceMillis);
+    }
+
+    @Override
+    public Map<String, String> retrievePsychologistDigestsModifiedSince(long sinceMillis) throws DAOException {
+        return delegate.retrievePsychologistDigestsModifiedSince(sinceMillis);
+    }
+
+    @Override
+    public Map<String, String> retrievePsychologistDigestsInRange(long from, long to) throws DAOException {
+        return delegate.retrievePsychologistDigestsInRange(from, to);
+    }
+
+    @Override
+    public Map<Integer, KeyRangeSummary> summarizePsychologists(long from, long to, int parts) throws DAOException {
+        return delegate.summarizePsychologists(from, to, parts);
+    }
+
+    @Override
+    public String retrievePsychologistDigest(String username) throws DAOException {
+        return delegate.retrievePsychologistDigest(username);
+    }
+
+    @Override
+    public void updatePsychologist(Psychologist psychologist, UserBean bean, Origin origin) throws DAOException {
+        delegate.updatePsychologist(psychologist, bean, origin);
+    }
+
+    @Override
+    public void deletePsychologist(String username, Origin origin) throws DAOException {
+        delegate.deletePsychologist(username, origin);
+    }
+
+    @Override
+    public List<Patient> getPatients(Psychologist psychologist) throws DAOException {
+        return delegate.getPatients(psychologist);
+    }
+}
@@ -0,0 +1,116 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import it.uniroma2.mindharbor.beans.CredentialsBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caching decorator of a {@link UserDao}.
+ * <p>
+ * User records are cached by username, missing users included, and {@link #isUsernameTaken(String)}
+ * is answered from the same cache. Credentials are always validated by the wrapped DAO. Since patients
+ * and psychologists are saved and deleted together with their user, their changes invalidate the
+ * user as well.
+ * </p>
+ * <p>
+ * Unless {@code dao.usernameFilter.enabled} is {@code false}, username checks go through a
+ * {@link UsernameFilter} first, so a username that does not exist is reported as free without a
+ * read of the store. The filter starts building in the background on the first check, so only the
+ * decorators of the persistence types actually used ever read all their usernames.
+ * </p>
+ */
+public final class CachingUserDao extends AbstractCachingDao implements UserDao {
+
+    private final UserDao delegate;
+    private final DaoCache<String, String[]> users = newCache("users");
+    private final UsernameFilter usernameFilter;
+
+    /**
+     * @param delegate The DAO to decorate
+     */
+    public CachingUserDao(UserDao delegate) {
+        super(delegate);
+        this.delegate = delegate;
+        if (UsernameFilter.isEnabled()) {
+            usernameFilter = new UsernameFilter(delegate::retrieveAllUsernames);
+        } else {
+            usernameFilter = null;
+        }
+    }
+
+    @Override
+    public void onChange(ChangeEvent event) {
+        // Un paziente o uno psicologo viene salvato insieme al suo utente, che non sempre notifica un evento USER
+        if (event.kind() == EntityKind.USER || event.kind() == EntityKind.PATIENT || event.kind() == EntityKind.PSYCHOLOGIST) {
+            if (usernameFilter != null && event.operation() == DaoOperation.INSERT) {
+                usernameFilter.added(event.entityId());
+            } else if (usernameFilter != null && event.operation() == DaoOperation.DELETE) {
+                usernameFilter.removed();
+            }
+            users.invalidate(event.entityId());
+        }
+    }
+
+    @Override
+    public Map<String, CacheStats> cacheStats() {
+        if (usernameFilter == null) {
+            return super.cacheStats();
+        }
+        Map<String, CacheStats> stats = new LinkedHashMap<>(super.cacheStats());
+        stats.put("usernameFilter", usernameFilter.stats());
+        return stats;
+    }
+
+    @Override
+    public void validateUser(CredentialsBean credentials) throws DAOException {
+        delegate.validateUser(credentials);
+    }
+
+    @Override
+    public void saveUser(UserBean user, Origin origin) throws DAOException {
+        delegate.saveUser(user, origin);
+    }
+
+    @Override
+    public void saveUsers(List<? extends UserBean> users, Origin origin) throws DAOException {
+        delegate.saveUsers(users, origin);
+    }
+
+    @Override
+    public String[] retrieveUser(String username) throws DAOException {
+        String[] userRecord = users.get(username, delegate::retrieveUser);
+        return userRecord == null ? null : userRecord.clone();
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) throws DAOException {
+        if (usernameFilter != null && !usernameFilter.mightContain(username)) {
+            return false;
+        }
+        return users.get(username, delegate::retrieveUser) != null;
+    }
+
+    @Override
+    public List<String> retrieveAllUsernames() throws DAOException {
+        return delegate.retrieveAllUsernames();
+    }
+
+    @Override
+    public void updateUser(UserBean user, Origin origin) throws DAOException {
+        delegate.updateUser(user, origin);
+    }
+
+    @Override
+    public void deleteUser(String username, Origin origin) throws DAOException {
+        delegate.deleteUser(username, origin);
+    }
+}
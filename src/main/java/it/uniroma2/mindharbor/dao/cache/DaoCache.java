@@ -0,0 +1,196 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Bounded read-through cache of DAO results, with a time to live and an {@link EvictionPolicy}.
+ * <p>
+ * {@link #get(Object, Loader)} returns the cached value of a key, or loads it from the persistence
+ * layer and caches it. {@code null} results are cached as well, so lookups of missing keys (such as
+ * a username check while signing up) are answered without reading the store again.
+ * </p>
+ * <p>
+ * Entries are dropped when they expire, when the cache is full, and when a change notification makes
+ * them stale through {@link #invalidate(Object)} or {@link #invalidateAll()}. Values are loaded outside
+ * the lock of the cache, so a slow read does not block the other lookups; a value loaded while an
+ * invalidation happened is returned to its caller but not cached, since it may predate the change.
+ * </p>
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+final class DaoCache<K, V> {
+
+    /**
+     * Reads a value from the persistence layer on a cache miss.
+     */
+    @FunctionalInterface
+    interface Loader<K, V> {
+        V load(K key) throws DAOException;
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long ttlNanos;
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final FrequencySketch sketch;
+    // Ordine di accesso: il primo elemento è il meno usato di recente
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param maximumSize The maximum number of entries, at least 1
+     * @param ttlMillis   How long an entry stays valid after being loaded; 0 or less for no expiry
+     * @param policy      The eviction policy
+     */
+    DaoCache(int maximumSize, long ttlMillis, EvictionPolicy policy) {
+        int capacity = Math.max(1, maximumSize);
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000 : 0;
+        if (policy == EvictionPolicy.TINY_LFU) {
+            this.windowCapacity = Math.max(1, capacity / 100); // finestra dell'1%, come in W-TinyLFU
+            this.sketch = new FrequencySketch(capacity);
+        } else {
+            this.windowCapacity = capacity;
+            this.sketch = null;
+        }
+        this.mainCapacity = capacity - windowCapacity;
+    }
+
+    /**
+     * Returns the cached value of a key, loading and caching it on a miss.
+     *
+     * @param key    The key
+     * @param loader The read performed on a miss
+     * @return The value, possibly {@code null}
+     * @throws DAOException If the value has to be loaded and the load fails
+     */
+    V get(K key, Loader<K, V> loader) throws DAOException {
+        long loadGeneration;
+        synchronized (this) {
+            if (sketch != null) {
+                sketch.increment(key);
+            }
+            Entry<V> entry = window.get(key);
+            if (entry == null) {
+                entry = main.get(key);
+            }
+            if (entry != null && (ttlNanos == 0 || System.nanoTime() - entry.expiresAt < 0)) {
+                hits++;
+                return entry.value;
+            }
+            if (entry != null) { // scaduto
+                window.remove(key);
+                main.remove(key);
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+        V value = loader.load(key);
+        synchronized (this) {
+            if (generation == loadGeneration) {
+                put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops the entry of a key.
+     *
+     * @param key The key
+     */
+    synchronized void invalidate(K key) {
+        generation++;
+        if (window.remove(key) != null || main.remove(key) != null) {
+            invalidations++;
+        }
+    }
+
+    /**
+     * Drops the entries whose keys match a condition.
+     *
+     * @param condition The condition on the keys
+     */
+    synchronized void invalidateIf(Predicate<K> condition) {
+        generation++;
+        invalidations += removeIf(window, condition) + removeIf(main, condition);
+    }
+
+    /**
+     * Drops every entry.
+     */
+    synchronized void invalidateAll() {
+        generation++;
+        invalidations += window.size() + main.size();
+        window.clear();
+        main.clear();
+    }
+
+    /**
+     * @return A snapshot of the counters of the cache
+     */
+    synchronized CacheStats stats() {
+        return new CacheStats(window.size() + main.size(), hits, misses, evictions, invalidations);
+    }
+
+    private void put(K key, Entry<V> entry) {
+        main.remove(key);
+        window.put(key, entry);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+        Map.Entry<K, Entry<V>> candidate = removeEldest(window);
+        if (mainCapacity == 0) {
+            evictions++;
+        } else if (main.size() < mainCapacity) {
+            main.put(candidate.getKey(), candidate.getValue());
+        } else {
+            // Ammissione TinyLFU: entra nell'area principale solo se più richiesto della sua vittima
+            K victim = main.keySet().iterator().next();
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+                main.remove(victim);
+                main.put(candidate.getKey(), candidate.getValue());
+            }
+            evictions++;
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(LinkedHashMap<K, V> map) {
+        Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+        Map.Entry<K, V> eldest = iterator.next();
+        Map.Entry<K, V> removed = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return removed;
+    }
+
+    private static <K, V> int removeIf(Map<K, V> map, Predicate<K> condition) {
+        int removed = 0;
+        Iterator<K> iterator = map.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (condition.test(iterator.next())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+}
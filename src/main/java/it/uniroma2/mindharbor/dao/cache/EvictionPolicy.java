@@ -0,0 +1,27 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+/**
+ * How a {@link DaoCache} chooses the entry to drop when it is full, configured with {@code dao.cache.eviction}.
+ */
+public enum EvictionPolicy {
+    /**
+     * Drops the least recently used entry.
+     */
+    LRU,
+
+    /**
+     * Window TinyLFU: new entries go to a small LRU window, and an entry leaving the window replaces
+     * the least recently used entry of the main area only if it has been requested more often, as
+     * estimated by a {@link FrequencySketch}. A burst of one-off lookups, such as a synchronization
+     * scanning every patient, cannot flush the entries the application keeps reading.
+     */
+    TINY_LFU;
+
+    /**
+     * @param name The configured name, {@code lru} or {@code tinylfu}, case-insensitive
+     * @return The policy with the given name, {@link #TINY_LFU} if the name is unknown
+     */
+    public static EvictionPolicy fromName(String name) {
+        return "lru".equalsIgnoreCase(name) ? LRU : TINY_LFU;
+    }
+}
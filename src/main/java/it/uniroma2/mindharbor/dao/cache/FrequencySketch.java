@@ -0,0 +1,79 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+/**
+ * Count-min sketch estimating how often each key has been requested recently, for {@link EvictionPolicy#TINY_LFU}.
+ * <p>
+ * Each key increments one saturating 4-bit counter in each of four rows, chosen by four different
+ * hashes; its estimate is the smallest of the four, which can only overestimate the true count.
+ * After a number of increments proportional to the size of the sketch every counter is halved, so
+ * the frequencies follow the recent workload instead of growing forever.
+ * </p>
+ * <p>
+ * Not thread-safe: it is used under the lock of its cache.
+ * </p>
+ */
+final class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97CB3127, 0xB2A37B3D, 0xC3A5C85C, 0x8EBC6AF1};
+
+    private final byte[][] counters;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param capacity The maximum number of entries of the cache
+     */
+    FrequencySketch(int capacity) {
+        int width = Integer.highestOneBit(Math.max(capacity, 16) * 2 - 1); // potenza di due >= capacity
+        this.counters = new byte[ROWS][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * Records a request for the key.
+     */
+    void increment(Object key) {
+        int hash = key.hashCode();
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int index = indexOf(hash, row);
+            if (counters[row][index] < MAX_COUNT) {
+                counters[row][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * @return The estimated number of recent requests for the key
+     */
+    int frequency(Object key) {
+        int hash = key.hashCode();
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, counters[row][indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void reset() {
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>= 1;
+            }
+        }
+        additions /= 2;
+    }
+}
@@ -0,0 +1,172 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link BloomFilter} of the existing usernames, answering most "is this username free" checks
+ * without reading the store.
+ * <p>
+ * The filter is built from all the usernames of the store by a background thread started by the
+ * first check, and kept up to date with the insertions notified by the DAOs. A Bloom filter cannot forget a username, so deleted
+ * users stay in it as false positives until the filter is rebuilt: that happens once the deletions
+ * exceed a quarter of the usernames, once more usernames have been added than it was sized for
+ * (raising its false positive rate), and after {@code dao.usernameFilter.maxAgeMs}, which bounds how
+ * long users added by other instances sharing the same database can go unnoticed. Usernames added
+ * while the filter is being rebuilt are added to the new one as well, so it never misses a user, and
+ * are counted with the ones it was built from.
+ * </p>
+ * <p>
+ * Builds never run on the thread of a check, which may be the JavaFX application thread: a stale
+ * filter starts a rebuild in the background and keeps answering until the new one is ready. Until the
+ * filter has been built once, every check is passed on to the store; after a failed build, the next
+ * attempt waits {@value #RETRY_DELAY_MS} ms.
+ * </p>
+ */
+final class UsernameFilter {
+
+    /**
+     * Reads all the usernames of the store.
+     */
+    @FunctionalInterface
+    interface Source {
+        List<String> usernames() throws DAOException;
+    }
+
+    private static final Logger logger = Logger.getLogger(UsernameFilter.class.getName());
+    private static final boolean ENABLED = AppConfig.getBoolean("dao.usernameFilter.enabled", true);
+    private static final int EXPECTED_USERS = AppConfig.getInt("dao.usernameFilter.expectedUsers", 10000);
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final long MAX_AGE_MS = AppConfig.getLong("dao.usernameFilter.maxAgeMs", 600000);
+    private static final long RETRY_DELAY_MS = 30000;
+
+    private final Source source;
+    private BloomFilter current;
+    private BloomFilter building;
+    private int capacity;
+    private int insertions;
+    private int deletions;
+    private int addedWhileBuilding;
+    private int removedWhileBuilding;
+    private long builtAt;
+    private long retryAt;
+    private long negatives;
+    private long positives;
+
+    /**
+     * @param source The read of all the usernames, used to build the filter
+     */
+    UsernameFilter(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * @return Whether the caching decorator should use the filter, as configured with {@code dao.usernameFilter.enabled}
+     */
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Tells whether a username may exist; a stale filter starts a rebuild in the background.
+     *
+     * @param username The username
+     * @return {@code false} if the username certainly does not exist, {@code true} if the store has to be checked
+     */
+    synchronized boolean mightContain(String username) {
+        if (building == null && isStale()) {
+            startBuild();
+        }
+        boolean result = current == null || current.mightContain(username);
+        if (result) {
+            positives++;
+        } else {
+            negatives++;
+        }
+        return result;
+    }
+
+    /**
+     * Adds a username that has been inserted in the store.
+     *
+     * @param username The username
+     */
+    synchronized void added(String username) {
+        if (current != null) {
+            current.add(username);
+        }
+        if (building != null) {
+            building.add(username);
+            addedWhileBuilding++;
+        }
+        insertions++;
+    }
+
+    /**
+     * Records that a user has been deleted from the store; its username stays in the filter until the next rebuild.
+     */
+    synchronized void removed() {
+        deletions++;
+        if (building != null) {
+            removedWhileBuilding++;
+        }
+    }
+
+    /**
+     * @return The counters of the filter: its usernames, the checks answered without the store as hits
+     * and the checks passed on to the store as misses
+     */
+    synchronized CacheStats stats() {
+        return new CacheStats(current == null ? 0 : insertions - deletions, negatives, positives, 0, 0);
+    }
+
+    private boolean isStale() {
+        if (System.currentTimeMillis() < retryAt) {
+            return false;
+        }
+        return current == null
+                || deletions > insertions / 4
+                || insertions > capacity
+                || (MAX_AGE_MS > 0 && System.currentTimeMillis() - builtAt > MAX_AGE_MS);
+    }
+
+    // Chiamato con il lock del filtro
+    private void startBuild() {
+        int size = Math.max(EXPECTED_USERS, 2 * insertions);
+        building = new BloomFilter(size, FALSE_POSITIVE_RATE);
+        addedWhileBuilding = 0;
+        removedWhileBuilding = 0;
+        Thread builder = new Thread(() -> build(size), "username-filter-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    private void build(int size) {
+        try {
+            List<String> usernames = source.usernames();
+            synchronized (this) {
+                for (String username : usernames) {
+                    building.add(username);
+                }
+                current = building;
+                building = null;
+                capacity = size;
+                // Gli utenti aggiunti durante la lettura possono essere già nell'elenco: contarli due volte anticipa solo la ricostruzione
+                insertions = usernames.size() + addedWhileBuilding;
+                deletions = removedWhileBuilding;
+                builtAt = System.currentTimeMillis();
+            }
+        } catch (DAOException | RuntimeException e) {
+            // Il filtro precedente, se c'è, resta valido: non perde mai un utente inserito
+            logger.log(Level.WARNING, "Unable to build the username filter", e);
+            synchronized (this) {
+                building = null;
+                retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+            }
+        }
+    }
+}
@@ -2,16 +2,18 @@ package it.uniroma2.mindharbor.dao.csv;
 
 import it.uniroma2.mindharbor.dao.AbstractObservableDao;
 import it.uniroma2.mindharbor.dao.AppointmentDao;
-import it.uniroma2.mindharbor.dao.PatientDao;
-import it.uniroma2.mindharbor.dao.PsychologistDao;
+import it.uniroma2.mindharbor.dao.AppointmentEntry;
+import it.uniroma2.mindharbor.dao.DaoCursor;
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
 import it.uniroma2.mindharbor.dao.csv.constants.AppointmentDaoCsvConstants;
+import it.uniroma2.mindharbor.dao.csv.constants.PatientDaoCsvConstants;
+import it.uniroma2.mindharbor.dao.csv.engine.CsvTable;
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Appointment;
-import it.uniroma2.mindharbor.model.Patient;
-import it.uniroma2.mindharbor.model.Psychologist;
-import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
-import it.uniroma2.mindharbor.utilities.CsvUtilities;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
 
 import java.io.File;
 import java.time.LocalDate;
@@ -19,21 +21,77 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class AppointmentDaoCsv extends AbstractObservableDao implements AppointmentDao {
 
     private static final Logger logger = Logger.getLogger(AppointmentDaoCsv.class.getName());
-    private static final File appointmentFile = new File(AppointmentDaoCsvConstants.PATH_NAME_APPOINTMENTS);
+    private static final CsvTable appointmentTable = CsvTable.of(new File(AppointmentDaoCsvConstants.PATH_NAME_APPOINTMENTS),
+            AppointmentDaoCsvConstants.HEADER, AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID);
+    private static final CsvTable patientTable = CsvTable.of(new File(PatientDaoCsvConstants.PATH_NAME_PATIENTS),
+            PatientDaoCsvConstants.HEADER, PatientDaoCsvConstants.PATIENT_INDEX_USERNAME);
+    private static final String INDEX_PATIENT = "patient";
+    private static final String INDEX_DATE = "date";
+    private static final String INDEX_UNNOTIFIED = "unnotified";
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ISO_LOCAL_TIME;
 
+    static {
+        // Indici secondari mantenuti dalla tabella su inserimenti, aggiornamenti e cancellazioni
+        appointmentTable.addIndex(INDEX_PATIENT,
+                record -> column(record, AppointmentDaoCsvConstants.APPOINTMENT_INDEX_PATIENT_USERNAME), false);
+        appointmentTable.addIndex(INDEX_DATE,
+                record -> column(record, AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DATE), true);
+        appointmentTable.addIndex(INDEX_UNNOTIFIED,
+                record -> "false".equals(column(record, AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED))
+                        ? column(record, AppointmentDaoCsvConstants.APPOINTMENT_INDEX_PATIENT_USERNAME)
+                        : null, false);
+        appointmentTable.setDigester(record -> ContentDigest.ofAppointment(
+                LocalDate.parse(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DATE], DATE_FORMATTER),
+                LocalTime.parse(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_TIME], TIME_FORMATTER),
+                record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DESCRIPTION],
+                Boolean.parseBoolean(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED])));
+    }
+
+    public AppointmentDaoCsv() {
+        super(PersistenceType.CSV);
+    }
+
     @Override
-    public void saveAppointment(Appointment appointment, String patientUsername) throws DAOException {
+    public void saveAppointment(Appointment appointment, String patientUsername, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentInserted(appointment, patientUsername, originOf(origin));
+        recordChange(event);
+        appointmentTable.insert(toAppointmentRecord(appointment, patientUsername));
+
+        notifyObservers(event);
+    }
+
+    @Override
+    public void saveAppointments(List<Appointment> appointments, String patientUsername, Origin origin) throws DAOException {
+        List<String[]> appointmentRecords = new ArrayList<>(appointments.size());
+        List<ChangeEvent> events = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            appointmentRecords.add(toAppointmentRecord(appointment, patientUsername));
+            events.add(new ChangeEvent.AppointmentInserted(appointment, patientUsername, originOf(origin)));
+        }
+        recordChanges(events);
+        appointmentTable.insertAll(appointmentRecords); // una sola scrittura per tutto il blocco
+        notifyObserversBatch(events);
+    }
+
+    private String[] toAppointmentRecord(Appointment appointment, String patientUsername) {
         String[] appointmentRecord = new String[AppointmentDaoCsvConstants.HEADER.length];
         appointmentRecord[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID] = String.valueOf(appointment.getId());
         appointmentRecord[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DATE] = appointment.getDate().format(DATE_FORMATTER);
@@ -41,161 +99,165 @@ public class AppointmentDaoCsv extends AbstractObservableDao implements Appointm
         appointmentRecord[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DESCRIPTION] = appointment.getDescription();
         appointmentRecord[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(appointment.isNotified());
         appointmentRecord[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_PATIENT_USERNAME] = patientUsername;
-
-        CsvUtilities.writeFile(appointmentFile, appointmentRecord);
-
-        Object[] syncPackage = {appointment, patientUsername};
-        notifyObservers(DaoOperation.INSERT, "Appointment", String.valueOf(appointment.getId()), syncPackage);
+        return appointmentRecord;
     }
 
     @Override
     public Appointment retrieveAppointment(int appointmentId) throws DAOException {
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        if (!appointmentRecords.isEmpty() && "ID".equals(appointmentRecords.getFirst()[0])) {
-            appointmentRecords.removeFirst();
-        }
+        String[] record = appointmentTable.get(String.valueOf(appointmentId));
+        return record == null ? null : convertRecordToAppointment(record);
+    }
 
-        for (String[] record : appointmentRecords) {
-            if (Integer.parseInt(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID]) == appointmentId) {
-                return convertRecordToAppointment(record);
-            }
-        }
-        return null;
+    @Override
+    public String retrieveAppointmentDigest(int appointmentId) throws DAOException {
+        String id = String.valueOf(appointmentId);
+        return appointmentTable.digests(Collections.singletonList(id)).get(id);
     }
 
     @Override
     public List<Appointment> retrieveAllAppointments() throws DAOException {
         List<Appointment> allAppointments = new ArrayList<>();
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-
-        if (!appointmentRecords.isEmpty() && "ID".equals(appointmentRecords.getFirst()[0])) {
-            appointmentRecords.removeFirst(); // Rimuovi l'header
-        }
-
-        for (String[] record : appointmentRecords) {
+        for (String[] record : appointmentTable.rows()) {
             allAppointments.add(convertRecordToAppointment(record));
         }
         return allAppointments;
     }
 
     @Override
-    public List<Appointment> retrieveAppointmentsByPatient(String patientUsername) throws DAOException {
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        List<Appointment> patientAppointments = new ArrayList<>();
-        if (!appointmentRecords.isEmpty() && "ID".equals(appointmentRecords.getFirst()[0])) {
-            appointmentRecords.removeFirst();
-        }
+    public DaoCursor<AppointmentEntry> openAppointmentCursor() throws DAOException {
+        return openCursor(appointmentTable.keys());
+    }
 
-        for (String[] record : appointmentRecords) {
-            if (record.length > AppointmentDaoCsvConstants.APPOINTMENT_INDEX_PATIENT_USERNAME &&
-                    patientUsername.equals(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_PATIENT_USERNAME])) {
-                patientAppointments.add(convertRecordToAppointment(record));
-            }
-        }
-        return patientAppointments;
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentCursor(long sinceMillis) throws DAOException {
+        return openCursor(appointmentTable.modifiedSince(sinceMillis));
     }
 
     @Override
-    public List<Appointment> retrieveAppointmentsByPsychologist(String psychologistUsername) throws DAOException {
-        List<Appointment> psychologistAppointments = new ArrayList<>();
-        DaoFactoryFacade daoFactoryFacade = DaoFactoryFacade.getInstance();
-        try {
-            PsychologistDao psychologistDao = daoFactoryFacade.getPsychologistDao();
-            Psychologist psychologist = psychologistDao.retrievePsychologist(psychologistUsername);
-            if (psychologist == null) return psychologistAppointments;
+    public DaoCursor<AppointmentEntry> openAppointmentRangeCursor(long fromId, long toId) throws DAOException {
+        return openCursor(keysInRange(fromId, toId));
+    }
 
-            PatientDao patientDao = daoFactoryFacade.getPatientDao();
-            List<Patient> patients = patientDao.retrievePatientsByPsychologist(psychologist);
+    @Override
+    public Map<Integer, KeyRangeSummary> summarizeAppointments(long from, long to, int parts) throws DAOException {
+        return KeyRangeSummary.summarize(appointmentTable.digests(keysInRange(from, to)), Long::parseLong, from, to, parts);
+    }
+
+    private List<String> keysInRange(long fromId, long toId) throws DAOException {
+        return new ArrayList<>(appointmentIds(appointmentTable.keys()).subMap(fromId, true, toId, false).values());
+    }
 
-            for (Patient patient : patients) {
-                psychologistAppointments.addAll(retrieveAppointmentsByPatient(patient.getUsername()));
+    /**
+     * Parses the keys of the appointment table, once, ordering them by ID.
+     * A key that is not a number cannot be ordered or compared with the other persistence,
+     * so it is logged and skipped instead of failing the whole synchronization.
+     *
+     * @return The keys, by appointment ID
+     */
+    private static NavigableMap<Long, String> appointmentIds(Collection<String> keys) {
+        NavigableMap<Long, String> ids = new TreeMap<>();
+        for (String key : keys) {
+            try {
+                ids.put(Long.parseLong(key), key);
+            } catch (NumberFormatException e) {
+                logger.log(Level.WARNING, "Invalid appointment ID in CSV file: " + key);
             }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error retrieving appointments by psychologist", e);
-            throw new DAOException("Error retrieving appointments by psychologist: " + e.getMessage(), e);
         }
-        return psychologistAppointments;
+        return ids;
     }
 
-    @Override
-    public List<Appointment> retrieveAppointmentsByDate(LocalDate date) throws DAOException {
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        List<Appointment> dateAppointments = new ArrayList<>();
-        if (!appointmentRecords.isEmpty() && "ID".equals(appointmentRecords.getFirst()[0])) {
-            appointmentRecords.removeFirst();
-        }
+    private DaoCursor<AppointmentEntry> openCursor(List<String> keys) {
+        // Si ordinano solo le chiavi: i record vengono letti dalla tabella uno alla volta
+        Collection<String> ids = appointmentIds(keys).values();
+        Iterator<String> iterator = ids.iterator();
+        return new DaoCursor<>() {
+            @Override
+            public AppointmentEntry next() throws DAOException {
+                while (iterator.hasNext()) {
+                    String id = iterator.next();
+                    String[] record = appointmentTable.get(id);
+                    if (record != null) { // cancellato dopo l'apertura del cursore
+                        return new AppointmentEntry(convertRecordToAppointment(record),
+                                record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_PATIENT_USERNAME],
+                                appointmentTable.digests(Collections.singletonList(id)).get(id));
+                    }
+                }
+                return null;
+            }
 
-        String dateString = date.format(DATE_FORMATTER);
-        for (String[] record : appointmentRecords) {
-            if (record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DATE].equals(dateString)) {
-                dateAppointments.add(convertRecordToAppointment(record));
+            @Override
+            public void close() {
+                // nessuna risorsa da rilasciare
             }
-        }
-        return dateAppointments;
+        };
     }
 
     @Override
-    public List<Appointment> retrieveUnnotifiedAppointments(String patientUsername) throws DAOException {
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        List<Appointment> unnotifiedAppointments = new ArrayList<>();
-        if (!appointmentRecords.isEmpty() && "ID".equals(appointmentRecords.getFirst()[0])) {
-            appointmentRecords.removeFirst();
-        }
+    public List<Appointment> retrieveAppointmentsByPatient(String patientUsername) throws DAOException {
+        return convertRecordsToAppointments(appointmentTable.lookup(INDEX_PATIENT, patientUsername));
+    }
 
-        for (String[] record : appointmentRecords) {
-            if (patientUsername.equals(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_PATIENT_USERNAME]) &&
-                    "false".equals(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED])) {
-                unnotifiedAppointments.add(convertRecordToAppointment(record));
-            }
+    @Override
+    public List<Appointment> retrieveAppointmentsByPsychologist(String psychologistUsername) throws DAOException {
+        // Join in un solo passaggio: prima l'insieme dei pazienti dello psicologo, poi una sola
+        // selezione sugli appuntamenti (tramite l'indice per paziente, se registrato)
+        Set<String> patientUsernames = new HashSet<>();
+        for (String[] patientRecord : patientTable.selectIn(null, PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST,
+                Set.of(psychologistUsername))) {
+            patientUsernames.add(patientRecord[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME]);
         }
-        return unnotifiedAppointments;
+        return convertRecordsToAppointments(appointmentTable.selectIn(INDEX_PATIENT,
+                AppointmentDaoCsvConstants.APPOINTMENT_INDEX_PATIENT_USERNAME, patientUsernames));
     }
 
     @Override
-    public void updateAppointment(Appointment appointment) throws DAOException {
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        String[] header = appointmentRecords.removeFirst();
-        boolean found = false;
-
-        for (String[] record : appointmentRecords) {
-            if (Integer.parseInt(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID]) == appointment.getId()) {
-                record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DATE] = appointment.getDate().format(DATE_FORMATTER);
-                record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_TIME] = appointment.getTime().format(TIME_FORMATTER);
-                record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DESCRIPTION] = appointment.getDescription();
-                record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(appointment.isNotified());
-                found = true;
-                break;
-            }
-        }
+    public List<Appointment> retrieveAppointmentsByDate(LocalDate date) throws DAOException {
+        return convertRecordsToAppointments(appointmentTable.lookup(INDEX_DATE, date.format(DATE_FORMATTER)));
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsBetween(LocalDate from, LocalDate to) throws DAOException {
+        // Le date ISO si ordinano come stringhe: l'indice ordinato risponde senza scorrere la tabella
+        return convertRecordsToAppointments(appointmentTable.range(INDEX_DATE, from.format(DATE_FORMATTER), to.format(DATE_FORMATTER)));
+    }
+
+    @Override
+    public List<Appointment> retrieveUnnotifiedAppointments(String patientUsername) throws DAOException {
+        return convertRecordsToAppointments(appointmentTable.lookup(INDEX_UNNOTIFIED, patientUsername));
+    }
+
+    @Override
+    public void updateAppointment(Appointment appointment, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentUpdated(appointment, originOf(origin));
+        recordChange(event);
+        boolean found = appointmentTable.update(String.valueOf(appointment.getId()), record -> {
+            record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DATE] = appointment.getDate().format(DATE_FORMATTER);
+            record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_TIME] = appointment.getTime().format(TIME_FORMATTER);
+            record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_DESCRIPTION] = appointment.getDescription();
+            record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(appointment.isNotified());
+        });
         if (!found) {
             throw new DAOException(AppointmentDaoCsvConstants.APPOINTMENT_NOT_FOUND + appointment.getId());
         }
-        CsvUtilities.updateFile(appointmentFile, header, appointmentRecords);
-        notifyObservers(DaoOperation.UPDATE, "Appointment", String.valueOf(appointment.getId()), appointment);
+        notifyObservers(event);
     }
 
     @Override
     public void updateAppointmentNotificationStatus(int appointmentId, boolean notified) throws DAOException {
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        String[] header = appointmentRecords.removeFirst();
-        boolean found = false;
-
-        for (String[] record : appointmentRecords) {
-            if (Integer.parseInt(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID]) == appointmentId) {
-                record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(notified);
-                found = true;
-                break;
-            }
-        }
-        if (!found) {
+        Appointment updatedAppointment = retrieveAppointment(appointmentId);
+        if (updatedAppointment == null) {
             throw new DAOException(AppointmentDaoCsvConstants.APPOINTMENT_NOT_FOUND + appointmentId);
         }
-        CsvUtilities.updateFile(appointmentFile, header, appointmentRecords);
+        updatedAppointment.setNotified(notified);
+        ChangeEvent event = new ChangeEvent.AppointmentUpdated(updatedAppointment, originOf(null));
+        recordChange(event);
 
-        Appointment updatedAppointment = retrieveAppointment(appointmentId);
-        if (updatedAppointment != null) {
-            notifyObservers(DaoOperation.UPDATE, "Appointment", String.valueOf(appointmentId), updatedAppointment);
+        boolean found = appointmentTable.update(String.valueOf(appointmentId),
+                record -> record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(notified));
+        if (!found) {
+            throw new DAOException(AppointmentDaoCsvConstants.APPOINTMENT_NOT_FOUND + appointmentId);
         }
+        notifyObservers(event);
     }
 
     @Override
@@ -203,67 +265,67 @@ public class AppointmentDaoCsv extends AbstractObservableDao implements Appointm
         if (appointments == null || appointments.isEmpty()) {
             return;
         }
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        String[] header = appointmentRecords.removeFirst();
-
-        Map<Integer, Boolean> appointmentsToUpdate = new HashMap<>();
+        Map<String, Consumer<String[]>> appointmentsToUpdate = new LinkedHashMap<>();
+        // Solo gli appuntamenti esistenti: un ID sconosciuto produrrebbe un aggiornamento fantasma da replicare
+        Map<String, ChangeEvent> events = new LinkedHashMap<>();
         for (Appointment app : appointments) {
-            appointmentsToUpdate.put(app.getId(), app.isNotified());
-        }
-
-        for (String[] record : appointmentRecords) {
-            int recordId = Integer.parseInt(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID]);
-            if (appointmentsToUpdate.containsKey(recordId)) {
-                record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(appointmentsToUpdate.get(recordId));
+            String id = String.valueOf(app.getId());
+            String notified = String.valueOf(app.isNotified());
+            appointmentsToUpdate.put(id, record -> record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_NOTIFIED] = notified);
+            if (appointmentTable.contains(id)) {
+                events.put(id, new ChangeEvent.AppointmentUpdated(app, originOf(null)));
             }
         }
-        CsvUtilities.updateFile(appointmentFile, header, appointmentRecords);
+        recordChanges(new ArrayList<>(events.values()));
+        Set<String> updated = appointmentTable.updateAll(appointmentsToUpdate); // una sola riscrittura del file
 
-        for (Appointment appointment : appointments) {
-            notifyObservers(DaoOperation.UPDATE, "Appointment", String.valueOf(appointment.getId()), appointment);
-        }
+        events.keySet().retainAll(updated);
+        notifyObserversBatch(new ArrayList<>(events.values()));
     }
 
     @Override
-    public void deleteAppointment(int appointmentId) throws DAOException {
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        String[] header = appointmentRecords.removeFirst();
-        boolean removed = appointmentRecords.removeIf(record -> Integer.parseInt(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID]) == appointmentId);
-
-        if (!removed) {
+    public void deleteAppointment(int appointmentId, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentDeleted(appointmentId, originOf(origin));
+        recordChange(event);
+        if (!appointmentTable.delete(String.valueOf(appointmentId))) {
             throw new DAOException(AppointmentDaoCsvConstants.APPOINTMENT_NOT_FOUND + appointmentId);
         }
-        CsvUtilities.updateFile(appointmentFile, header, appointmentRecords);
-        notifyObservers(DaoOperation.DELETE, "Appointment", String.valueOf(appointmentId), null);
+        notifyObservers(event);
     }
 
     @Override
     public boolean appointmentExists(int appointmentId) throws DAOException {
-        return retrieveAppointment(appointmentId) != null;
+        return appointmentTable.contains(String.valueOf(appointmentId));
     }
 
     @Override
     public int getNextAppointmentId() throws DAOException {
-        List<String[]> appointmentRecords = CsvUtilities.readAll(appointmentFile);
-        if (appointmentRecords.size() <= 1) { // Solo header o vuoto
-            return 1;
-        }
-        appointmentRecords.removeFirst(); // Rimuovi header
-
         int maxId = 0;
-        for (String[] record : appointmentRecords) {
+        for (String key : appointmentTable.keys()) {
             try {
-                int id = Integer.parseInt(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID]);
+                int id = Integer.parseInt(key);
                 if (id > maxId) {
                     maxId = id;
                 }
             } catch (NumberFormatException e) {
-                logger.log(Level.WARNING, "Invalid appointment ID in CSV file: " + record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID]);
+                logger.log(Level.WARNING, "Invalid appointment ID in CSV file: " + key);
             }
         }
         return maxId + 1;
     }
 
+    private static String column(String[] record, int index) {
+        return record.length > index ? record[index] : null;
+    }
+
+    private List<Appointment> convertRecordsToAppointments(List<String[]> records) throws DAOException {
+        List<Appointment> appointments = new ArrayList<>(records.size());
+        for (String[] record : records) {
+            appointments.add(convertRecordToAppointment(record));
+        }
+        return appointments;
+    }
+
     private Appointment convertRecordToAppointment(String[] record) throws DAOException {
         try {
             int id = Integer.parseInt(record[AppointmentDaoCsvConstants.APPOINTMENT_INDEX_ID]);
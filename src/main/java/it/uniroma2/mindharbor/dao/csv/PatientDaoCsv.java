@@ -7,28 +7,51 @@ import it.uniroma2.mindharbor.dao.PatientDao;
 import it.uniroma2.mindharbor.dao.UserDao;
 import it.uniroma2.mindharbor.dao.csv.constants.PatientDaoCsvConstants;
 import it.uniroma2.mindharbor.dao.csv.constants.UserDaoCsvConstants;
+import it.uniroma2.mindharbor.dao.csv.engine.CsvTable;
+import it.uniroma2.mindharbor.dao.csv.engine.JoinedRecord;
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
-import it.uniroma2.mindharbor.utilities.CsvUtilities;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
 
 import java.io.File;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class PatientDaoCsv extends AbstractObservableDao implements PatientDao {
 
-    private static final File fd = new File(PatientDaoCsvConstants.PATH_NAME_PATIENTS);
+    private static final CsvTable patientTable = CsvTable.of(new File(PatientDaoCsvConstants.PATH_NAME_PATIENTS),
+            PatientDaoCsvConstants.HEADER, PatientDaoCsvConstants.PATIENT_INDEX_USERNAME);
+    private static final CsvTable userTable = CsvTable.of(new File(UserDaoCsvConstants.PATH_NAME_USER),
+            UserDaoCsvConstants.HEADER, UserDaoCsvConstants.USER_INDEX_USERNAME);
+
+    static {
+        patientTable.setDigester(recordPatient -> ContentDigest.ofPatientRow(
+                LocalDate.parse(recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_BIRTHDATE]),
+                recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST]));
+    }
+
+    public PatientDaoCsv() {
+        super(PersistenceType.CSV);
+    }
 
     @Override
-    public void savePatient(PatientBean patient) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
+    public void savePatient(PatientBean patient, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientInserted(patient, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
         // Rendi l'operazione robusta per la sincronizzazione
         try {
-            userDao.saveUser(patient);
+            userDao.saveUser(patient, origin);
         } catch (DAOException e) {
             if (!e.getMessage().contains(UserDaoCsvConstants.USER_EXIST)) {
                 throw e;
@@ -36,19 +59,65 @@ public class PatientDaoCsv extends AbstractObservableDao implements PatientDao {
             // Se l'utente esiste già, va bene, la sincronizzazione può procedere.
         }
 
+        patientTable.insert(toPatientRecord(patient));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void savePatients(List<PatientBean> patients, Origin origin) throws DAOException {
+        // Come per il singolo inserimento, gli utenti già presenti vengono riutilizzati
+        List<PatientBean> newUsers = new ArrayList<>();
+        List<String[]> patientRecords = new ArrayList<>(patients.size());
+        List<ChangeEvent> events = new ArrayList<>(patients.size());
+        Set<String> usernames = new HashSet<>();
+        for (PatientBean patient : patients) {
+            // Tutto viene verificato prima della prima scrittura, così un errore non lascia utenti orfani
+            if (patientTable.contains(patient.getUsername()) || !usernames.add(patient.getUsername())) {
+                throw new DAOException(CsvTable.DUPLICATE_KEY + patient.getUsername());
+            }
+            if (!userTable.contains(patient.getUsername())) {
+                newUsers.add(patient);
+            }
+            patientRecords.add(toPatientRecord(patient));
+            events.add(new ChangeEvent.PatientInserted(patient, originOf(origin)));
+        }
+        recordChanges(events);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
+        userDao.saveUsers(newUsers, origin);
+        try {
+            patientTable.insertAll(patientRecords);
+        } catch (DAOException e) {
+            deleteUsers(userDao, newUsers, origin, e);
+            throw e;
+        }
+        notifyObserversBatch(events);
+    }
+
+    /**
+     * Removes the user rows written by a bulk save whose role rows could not be written.
+     */
+    private static void deleteUsers(UserDao userDao, List<PatientBean> users, Origin origin, DAOException cause) {
+        for (PatientBean user : users) {
+            try {
+                userDao.deleteUser(user.getUsername(), origin);
+            } catch (DAOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    private String[] toPatientRecord(PatientBean patient) {
         String[] patientRecord = new String[PatientDaoCsvConstants.HEADER.length];
         patientRecord[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME] = patient.getUsername();
         patientRecord[PatientDaoCsvConstants.PATIENT_INDEX_BIRTHDATE] = patient.getBirthDate().toString();
         // Quando si crea un paziente, non ha ancora uno psicologo assegnato
         patientRecord[PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST] = "";
-
-        CsvUtilities.writeFile(fd, patientRecord);
-        notifyObservers(DaoOperation.INSERT, "Patient", patient.getUsername(), patient);
+        return patientRecord;
     }
 
     @Override
     public Patient retrievePatient(String username) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
         String[] userInfo = userDao.retrieveUser(username);
         if (userInfo == null) return null; // Se l'utente non esiste, il paziente non può esistere
 
@@ -67,102 +136,94 @@ public class PatientDaoCsv extends AbstractObservableDao implements PatientDao {
 
     @Override
     public List<Patient> retrieveAllPatients() throws DAOException {
-        List<Patient> patients = new ArrayList<>();
-        List<String[]> records = CsvUtilities.readAll(fd);
-        if (!records.isEmpty() && "Username".equals(records.getFirst()[0])) {
-            records.removeFirst(); // Rimuovi header
-        }
+        // Un solo join tra pazienti e utenti invece di una lettura per paziente
+        return toPatients(patientTable.joinOnKey(null, PatientDaoCsvConstants.PATIENT_INDEX_USERNAME, userTable));
+    }
 
-        for (String[] record : records) {
-            // Per ogni paziente nel CSV, recuperiamo i suoi dati utente completi
-            Patient patient = retrievePatient(record[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME]);
-            if (patient != null) {
-                patients.add(patient);
-            }
-        }
-        return patients;
+    @Override
+    public List<Patient> retrievePatientsModifiedSince(long sinceMillis) throws DAOException {
+        // Un paziente è cambiato se è cambiato il suo record o quello del suo utente
+        Set<String> changed = new HashSet<>(patientTable.modifiedSince(sinceMillis));
+        changed.addAll(userTable.modifiedSince(sinceMillis));
+        return toPatients(patientTable.joinOnKey(
+                recordPatient -> changed.contains(recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME]),
+                PatientDaoCsvConstants.PATIENT_INDEX_USERNAME, userTable));
+    }
+
+    @Override
+    public Map<String, String> retrievePatientDigestsModifiedSince(long sinceMillis) throws DAOException {
+        Set<String> changed = new HashSet<>(patientTable.modifiedSince(sinceMillis));
+        changed.addAll(userTable.modifiedSince(sinceMillis));
+        return UserDaoCsv.withUserDigests(patientTable.digests(changed));
+    }
+
+    @Override
+    public String retrievePatientDigest(String username) throws DAOException {
+        return UserDaoCsv.withUserDigests(patientTable.digests(Collections.singletonList(username))).get(username);
     }
 
     @Override
     public List<Patient> retrievePatientsByPsychologist(Psychologist psychologist) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        List<String[]> patientRecords = CsvUtilities.readAll(fd);
-        if (!patientRecords.isEmpty()) patientRecords.removeFirst(); // Rimuovi header
-
-        List<Patient> patients = new ArrayList<>();
-        for (String[] recordPatient : patientRecords) {
-            if (recordPatient.length > PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST &&
-                    psychologist.getUsername().equals(recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST])) {
-
-                String[] userInfo = userDao.retrieveUser(recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME]);
-                if (userInfo != null) {
-                    patients.add(new Patient(
-                            recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME],
-                            userInfo[UserDaoCsvConstants.USER_INDEX_FIRST_NAME],
-                            userInfo[UserDaoCsvConstants.USER_INDEX_LAST_NAME],
-                            userInfo[UserDaoCsvConstants.USER_INDEX_GENDER],
-                            recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST],
-                            LocalDate.parse(recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_BIRTHDATE])
-                    ));
-                }
-            }
-        }
-        return patients;
+        return toPatients(patientTable.joinOnKey(
+                recordPatient -> recordPatient.length > PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST &&
+                        psychologist.getUsername().equals(recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST]),
+                PatientDaoCsvConstants.PATIENT_INDEX_USERNAME, userTable));
     }
 
     @Override
-    public void updatePatient(Patient patient, UserBean user) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        userDao.updateUser(user);
-
-        List<String[]> patientTable = CsvUtilities.readAll(fd);
-        String[] header = patientTable.removeFirst();
-        boolean found = false;
-        for (String[] recordPatient : patientTable) {
-            if (recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME].equals(patient.getUsername())) {
-                recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_BIRTHDATE] = patient.getBirthday().toString();
-                recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST] = patient.getPsychologist();
-                found = true;
-                break;
-            }
-        }
+    public void updatePatient(Patient patient, UserBean user, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientUpdated(patient, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
+        userDao.updateUser(user, origin);
+
+        boolean found = patientTable.update(patient.getUsername(), recordPatient -> {
+            recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_BIRTHDATE] = patient.getBirthday().toString();
+            recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST] = patient.getPsychologist();
+        });
         if (!found) {
             throw new DAOException(PatientDaoCsvConstants.PATIENT_NOT_FOUND + patient.getUsername());
         }
-        CsvUtilities.updateFile(fd, header, patientTable);
-        notifyObservers(DaoOperation.UPDATE, "Patient", patient.getUsername(), patient);
+        notifyObservers(event);
     }
 
     @Override
-    public void deletePatient(String username) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
+    public void deletePatient(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientDeleted(username, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
         try {
-            userDao.deleteUser(username);
+            userDao.deleteUser(username, origin);
         } catch (DAOException e) {
             if (!e.getMessage().contains(UserDaoCsvConstants.USER_NOT_FOUND)) {
                 throw e;
             }
         }
 
-        List<String[]> patientTable = CsvUtilities.readAll(fd);
-        String[] header = patientTable.removeFirst();
-        boolean removed = patientTable.removeIf(recordPatient -> recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME].equals(username));
-        if (!removed) {
+        if (!patientTable.delete(username)) {
             throw new DAOException(PatientDaoCsvConstants.PATIENT_NOT_FOUND + username);
         }
-        CsvUtilities.updateFile(fd, header, patientTable);
-        notifyObservers(DaoOperation.DELETE, "Patient", username, null);
+        notifyObservers(event);
     }
 
-    private String[] retrievePatientRecord(String username) throws DAOException {
-        List<String[]> patientTable = CsvUtilities.readAll(fd);
-        if (!patientTable.isEmpty()) patientTable.removeFirst(); // Rimuovi header
-
-        for (String[] patientRecord : patientTable) {
-            if (patientRecord.length > PatientDaoCsvConstants.PATIENT_INDEX_USERNAME && username.equals(patientRecord[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME])) {
-                return patientRecord;
-            }
+    private List<Patient> toPatients(List<JoinedRecord> joinedRecords) {
+        List<Patient> patients = new ArrayList<>(joinedRecords.size());
+        for (JoinedRecord joined : joinedRecords) {
+            String[] recordPatient = joined.left();
+            String[] userInfo = joined.right();
+            patients.add(new Patient(
+                    recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_USERNAME],
+                    userInfo[UserDaoCsvConstants.USER_INDEX_FIRST_NAME],
+                    userInfo[UserDaoCsvConstants.USER_INDEX_LAST_NAME],
+                    userInfo[UserDaoCsvConstants.USER_INDEX_GENDER],
+                    recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_PSYCOLOGIST],
+                    LocalDate.parse(recordPatient[PatientDaoCsvConstants.PATIENT_INDEX_BIRTHDATE])
+            ));
         }
-        return null;
+        return patients;
+    }
+
+    private String[] retrievePatientRecord(String username) throws DAOException {
+        return patientTable.get(username);
     }
 }
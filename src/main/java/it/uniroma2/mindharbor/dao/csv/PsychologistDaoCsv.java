@@ -8,27 +8,50 @@ import it.uniroma2.mindharbor.dao.PsychologistDao;
 import it.uniroma2.mindharbor.dao.UserDao;
 import it.uniroma2.mindharbor.dao.csv.constants.PsychologistDaoCsvConstants;
 import it.uniroma2.mindharbor.dao.csv.constants.UserDaoCsvConstants;
+import it.uniroma2.mindharbor.dao.csv.engine.CsvTable;
+import it.uniroma2.mindharbor.dao.csv.engine.JoinedRecord;
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
-import it.uniroma2.mindharbor.utilities.CsvUtilities;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class PsychologistDaoCsv extends AbstractObservableDao implements PsychologistDao {
 
-    private static final File fd = new File(PsychologistDaoCsvConstants.PATH_NAME_PSYCHOLOGIST);
+    private static final CsvTable psychologistTable = CsvTable.of(new File(PsychologistDaoCsvConstants.PATH_NAME_PSYCHOLOGIST),
+            PsychologistDaoCsvConstants.HEADER, PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME);
+    private static final CsvTable userTable = CsvTable.of(new File(UserDaoCsvConstants.PATH_NAME_USER),
+            UserDaoCsvConstants.HEADER, UserDaoCsvConstants.USER_INDEX_USERNAME);
+
+    static {
+        psychologistTable.setDigester(recordPsychologist -> ContentDigest.ofPsychologistRow(
+                recordPsychologist[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_OFFICE],
+                recordPsychologist[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_HOURLY_COST]));
+    }
+
+    public PsychologistDaoCsv() {
+        super(PersistenceType.CSV);
+    }
 
     @Override
-    public void savePsychologist(PsychologistBean psychologist) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
+    public void savePsychologist(PsychologistBean psychologist, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistInserted(psychologist, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
         // Rendi l'operazione robusta per la sincronizzazione
         try {
-            userDao.saveUser(psychologist);
+            userDao.saveUser(psychologist, origin);
         } catch (DAOException e) {
             if (!e.getMessage().contains(UserDaoCsvConstants.USER_EXIST)) {
                 throw e;
@@ -36,18 +59,64 @@ public class PsychologistDaoCsv extends AbstractObservableDao implements Psychol
             // Se l'utente esiste già, va bene.
         }
 
+        psychologistTable.insert(toPsychologistRecord(psychologist));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void savePsychologists(List<PsychologistBean> psychologists, Origin origin) throws DAOException {
+        // Come per il singolo inserimento, gli utenti già presenti vengono riutilizzati
+        List<PsychologistBean> newUsers = new ArrayList<>();
+        List<String[]> psychologistRecords = new ArrayList<>(psychologists.size());
+        List<ChangeEvent> events = new ArrayList<>(psychologists.size());
+        Set<String> usernames = new HashSet<>();
+        for (PsychologistBean psychologist : psychologists) {
+            // Tutto viene verificato prima della prima scrittura, così un errore non lascia utenti orfani
+            if (psychologistTable.contains(psychologist.getUsername()) || !usernames.add(psychologist.getUsername())) {
+                throw new DAOException(CsvTable.DUPLICATE_KEY + psychologist.getUsername());
+            }
+            if (!userTable.contains(psychologist.getUsername())) {
+                newUsers.add(psychologist);
+            }
+            psychologistRecords.add(toPsychologistRecord(psychologist));
+            events.add(new ChangeEvent.PsychologistInserted(psychologist, originOf(origin)));
+        }
+        recordChanges(events);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
+        userDao.saveUsers(newUsers, origin);
+        try {
+            psychologistTable.insertAll(psychologistRecords);
+        } catch (DAOException e) {
+            deleteUsers(userDao, newUsers, origin, e);
+            throw e;
+        }
+        notifyObserversBatch(events);
+    }
+
+    /**
+     * Removes the user rows written by a bulk save whose role rows could not be written.
+     */
+    private static void deleteUsers(UserDao userDao, List<PsychologistBean> users, Origin origin, DAOException cause) {
+        for (PsychologistBean user : users) {
+            try {
+                userDao.deleteUser(user.getUsername(), origin);
+            } catch (DAOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+
+    private String[] toPsychologistRecord(PsychologistBean psychologist) {
         String[] psychologistRecord = new String[PsychologistDaoCsvConstants.HEADER.length];
         psychologistRecord[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME] = psychologist.getUsername();
         psychologistRecord[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_OFFICE] = psychologist.getOffice();
         psychologistRecord[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_HOURLY_COST] = String.valueOf(psychologist.getHourlyCost());
-
-        CsvUtilities.writeFile(fd, psychologistRecord);
-        notifyObservers(DaoOperation.INSERT, "Psychologist", psychologist.getUsername(), psychologist);
+        return psychologistRecord;
     }
 
     @Override
     public Psychologist retrievePsychologist(String username) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
         String[] userInfo = userDao.retrieveUser(username);
         if (userInfo == null) return null;
 
@@ -66,80 +135,93 @@ public class PsychologistDaoCsv extends AbstractObservableDao implements Psychol
 
     @Override
     public List<Psychologist> retrieveAllPsychologists() throws DAOException {
-        List<Psychologist> psychologists = new ArrayList<>();
-        List<String[]> records = CsvUtilities.readAll(fd);
-        if (!records.isEmpty() && "Username".equals(records.getFirst()[0])) {
-            records.removeFirst(); // Rimuovi header
-        }
+        // Un solo join tra psicologi e utenti invece di una lettura per psicologo
+        return toPsychologists(psychologistTable.joinOnKey(null,
+                PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME, userTable));
+    }
 
-        for (String[] record : records) {
-            Psychologist psychologist = retrievePsychologist(record[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME]);
-            if (psychologist != null) {
-                psychologists.add(psychologist);
-            }
+    @Override
+    public List<Psychologist> retrievePsychologistsModifiedSince(long sinceMillis) throws DAOException {
+        // Uno psicologo è cambiato se è cambiato il suo record o quello del suo utente
+        Set<String> changed = new HashSet<>(psychologistTable.modifiedSince(sinceMillis));
+        changed.addAll(userTable.modifiedSince(sinceMillis));
+        return toPsychologists(psychologistTable.joinOnKey(
+                recordPsychologist -> changed.contains(recordPsychologist[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME]),
+                PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME, userTable));
+    }
+
+    @Override
+    public Map<String, String> retrievePsychologistDigestsModifiedSince(long sinceMillis) throws DAOException {
+        Set<String> changed = new HashSet<>(psychologistTable.modifiedSince(sinceMillis));
+        changed.addAll(userTable.modifiedSince(sinceMillis));
+        return UserDaoCsv.withUserDigests(psychologistTable.digests(changed));
+    }
+
+    @Override
+    public String retrievePsychologistDigest(String username) throws DAOException {
+        return UserDaoCsv.withUserDigests(psychologistTable.digests(Collections.singletonList(username))).get(username);
+    }
+
+    private List<Psychologist> toPsychologists(List<JoinedRecord> joinedRecords) {
+        List<Psychologist> psychologists = new ArrayList<>(joinedRecords.size());
+        for (JoinedRecord joined : joinedRecords) {
+            String[] psychologistInfo = joined.left();
+            String[] userInfo = joined.right();
+            psychologists.add(new Psychologist(
+                    userInfo[UserDaoCsvConstants.USER_INDEX_USERNAME],
+                    userInfo[UserDaoCsvConstants.USER_INDEX_FIRST_NAME],
+                    userInfo[UserDaoCsvConstants.USER_INDEX_LAST_NAME],
+                    userInfo[UserDaoCsvConstants.USER_INDEX_GENDER],
+                    psychologistInfo[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_OFFICE],
+                    psychologistInfo[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_HOURLY_COST]
+            ));
         }
         return psychologists;
     }
 
     @Override
-    public void updatePsychologist(Psychologist psychologist, UserBean bean) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        userDao.updateUser(bean);
-
-        List<String[]> psychologistTable = CsvUtilities.readAll(fd);
-        String[] header = psychologistTable.removeFirst();
-        boolean found = false;
-        for (String[] recordPsychologist : psychologistTable) {
-            if (recordPsychologist[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME].equals(psychologist.getUsername())) {
-                recordPsychologist[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_OFFICE] = psychologist.getOffice();
-                recordPsychologist[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_HOURLY_COST] = String.valueOf(psychologist.getHourlyCost());
-                found = true;
-                break;
-            }
-        }
+    public void updatePsychologist(Psychologist psychologist, UserBean bean, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistUpdated(psychologist, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
+        userDao.updateUser(bean, origin);
+
+        boolean found = psychologistTable.update(psychologist.getUsername(), recordPsychologist -> {
+            recordPsychologist[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_OFFICE] = psychologist.getOffice();
+            recordPsychologist[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_HOURLY_COST] = String.valueOf(psychologist.getHourlyCost());
+        });
         if (!found) {
             throw new DAOException(PsychologistDaoCsvConstants.PSYCHOLOGIST_NOT_FOUND + psychologist.getUsername());
         }
-        CsvUtilities.updateFile(fd, header, psychologistTable);
-        notifyObservers(DaoOperation.UPDATE, "Psychologist", psychologist.getUsername(), psychologist);
+        notifyObservers(event);
     }
 
     @Override
-    public void deletePsychologist(String username) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
+    public void deletePsychologist(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistDeleted(username, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.CSV);
         try {
-            userDao.deleteUser(username);
+            userDao.deleteUser(username, origin);
         } catch (DAOException e) {
             if (!e.getMessage().contains(UserDaoCsvConstants.USER_NOT_FOUND)) {
                 throw e;
             }
         }
 
-        List<String[]> psychologistTable = CsvUtilities.readAll(fd);
-        String[] header = psychologistTable.removeFirst();
-        boolean removed = psychologistTable.removeIf(record -> record[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME].equals(username));
-        if (!removed) {
+        if (!psychologistTable.delete(username)) {
             throw new DAOException(PsychologistDaoCsvConstants.PSYCHOLOGIST_NOT_FOUND + username);
         }
-        CsvUtilities.updateFile(fd, header, psychologistTable);
-        notifyObservers(DaoOperation.DELETE, "Psychologist", username, null);
+        notifyObservers(event);
     }
 
     @Override
     public List<Patient> getPatients(Psychologist psychologist) throws DAOException {
-        PatientDao patientDao = DaoFactoryFacade.getInstance().getPatientDao();
+        PatientDao patientDao = DaoFactoryFacade.getInstance().getPatientDao(PersistenceType.CSV);
         return patientDao.retrievePatientsByPsychologist(psychologist);
     }
 
     private String[] retrievePsychologistRecord(String username) throws DAOException {
-        List<String[]> psychologistTable = CsvUtilities.readAll(fd);
-        if (!psychologistTable.isEmpty()) psychologistTable.removeFirst(); // Rimuovi header
-
-        for (String[] record : psychologistTable) {
-            if (record.length > PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME && username.equals(record[PsychologistDaoCsvConstants.PSYCHOLOGIST_INDEX_USERNAME])) {
-                return record;
-            }
-        }
-        return null;
+        return psychologistTable.get(username);
     }
-}
\ No newline at end of file
+}
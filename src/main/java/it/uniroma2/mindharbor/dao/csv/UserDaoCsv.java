@@ -5,15 +5,52 @@ import it.uniroma2.mindharbor.beans.UserBean;
 import it.uniroma2.mindharbor.dao.AbstractObservableDao;
 import it.uniroma2.mindharbor.dao.UserDao;
 import it.uniroma2.mindharbor.dao.csv.constants.UserDaoCsvConstants;
+import it.uniroma2.mindharbor.dao.csv.engine.CsvTable;
 import it.uniroma2.mindharbor.exception.DAOException;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
-import it.uniroma2.mindharbor.utilities.CsvUtilities;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
 import it.uniroma2.mindharbor.utilities.PasswordUtils;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class UserDaoCsv extends AbstractObservableDao implements UserDao {
-    private static final File fd = new File(UserDaoCsvConstants.PATH_NAME_USER);
+    private static final CsvTable userTable = CsvTable.of(new File(UserDaoCsvConstants.PATH_NAME_USER),
+            UserDaoCsvConstants.HEADER, UserDaoCsvConstants.USER_INDEX_USERNAME);
+
+    static {
+        userTable.setDigester(userRecord -> ContentDigest.ofUser(
+                userRecord[UserDaoCsvConstants.USER_INDEX_FIRST_NAME],
+                userRecord[UserDaoCsvConstants.USER_INDEX_LAST_NAME],
+                userRecord[UserDaoCsvConstants.USER_INDEX_GENDER]));
+    }
+
+    /**
+     * Combines the digests of patient or psychologist records with the digests of their user records.
+     *
+     * @param roleDigests The digests of the patient or psychologist records, keyed by username
+     * @return The digests of the entities whose user record exists, keyed by username
+     * @throws DAOException If the user table cannot be loaded
+     */
+    static Map<String, String> withUserDigests(Map<String, String> roleDigests) throws DAOException {
+        Map<String, String> userDigests = userTable.digests(roleDigests.keySet());
+        Map<String, String> digests = new HashMap<>();
+        for (Map.Entry<String, String> entry : roleDigests.entrySet()) {
+            String userDigest = userDigests.get(entry.getKey());
+            if (userDigest != null) {
+                digests.put(entry.getKey(), ContentDigest.combine(userDigest, entry.getValue()));
+            }
+        }
+        return digests;
+    }
+
+    public UserDaoCsv() {
+        super(PersistenceType.CSV);
+    }
 
     @Override
     public void validateUser(CredentialsBean credentials) throws DAOException {
@@ -27,88 +64,83 @@ public class UserDaoCsv extends AbstractObservableDao implements UserDao {
     }
 
     @Override
-    public void saveUser(UserBean user) throws DAOException {
+    public void saveUser(UserBean user, Origin origin) throws DAOException {
         if (isUsernameTaken(user.getUsername())) {
             throw new DAOException(UserDaoCsvConstants.USER_EXIST);
         }
-        String hashedPassword = PasswordUtils.hashPassword(user.getPassword());
+        ChangeEvent event = new ChangeEvent.UserInserted(user, originOf(origin));
+        recordChange(event);
+        userTable.insert(toUserRecord(user));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void saveUsers(List<? extends UserBean> users, Origin origin) throws DAOException {
+        List<String[]> userRecords = new ArrayList<>(users.size());
+        List<ChangeEvent> events = new ArrayList<>(users.size());
+        for (UserBean user : users) {
+            if (isUsernameTaken(user.getUsername())) {
+                throw new DAOException(UserDaoCsvConstants.USER_EXIST);
+            }
+            userRecords.add(toUserRecord(user));
+            events.add(new ChangeEvent.UserInserted(user, originOf(origin)));
+        }
+        recordChanges(events);
+        userTable.insertAll(userRecords); // una sola scrittura per tutto il blocco
+        notifyObserversBatch(events);
+    }
 
+    private String[] toUserRecord(UserBean user) {
         String[] userRecord = new String[UserDaoCsvConstants.HEADER.length];
         userRecord[UserDaoCsvConstants.USER_INDEX_USERNAME] = user.getUsername();
-        userRecord[UserDaoCsvConstants.USER_INDEX_PASSWORD] = hashedPassword;
+        userRecord[UserDaoCsvConstants.USER_INDEX_PASSWORD] = PasswordUtils.hashPassword(user.getPassword());
         userRecord[UserDaoCsvConstants.USER_INDEX_FIRST_NAME] = user.getName();
         userRecord[UserDaoCsvConstants.USER_INDEX_LAST_NAME] = user.getSurname();
         userRecord[UserDaoCsvConstants.USER_INDEX_TYPE] = user.getType();
         userRecord[UserDaoCsvConstants.USER_INDEX_GENDER] = user.getGender();
-
-        CsvUtilities.writeFile(fd, userRecord);
-        notifyObservers(DaoOperation.INSERT, "User", user.getUsername(), user);
+        return userRecord;
     }
 
     @Override
     public String[] retrieveUser(String username) throws DAOException {
-        List<String[]> userTable = CsvUtilities.readAll(fd);
-        if (!userTable.isEmpty() && "Username".equals(userTable.getFirst()[0])) {
-            userTable.removeFirst();
-        }
-        for (String[] userRecord : userTable) {
-            if (userRecord.length > UserDaoCsvConstants.USER_INDEX_USERNAME && username.equals(userRecord[UserDaoCsvConstants.USER_INDEX_USERNAME])) {
-                return userRecord;
-            }
-        }
-        return null;
+        return userTable.get(username);
     }
 
     @Override
     public boolean isUsernameTaken(String username) throws DAOException {
-        if (!fd.exists() || fd.length() == 0) {
-            return false;
-        }
-        List<String[]> userTable = CsvUtilities.readAll(fd);
-        if (!userTable.isEmpty()) {
-            userTable.removeFirst();
-        }
-        for (String[] recordUser : userTable) {
-            if (recordUser.length > UserDaoCsvConstants.USER_INDEX_USERNAME &&
-                    username.equals(recordUser[UserDaoCsvConstants.USER_INDEX_USERNAME])) {
-                return true;
-            }
-        }
-        return false;
+        return userTable.contains(username);
     }
 
     @Override
-    public void updateUser(UserBean user) throws DAOException {
-        List<String[]> userTable = CsvUtilities.readAll(fd);
-        String[] header = userTable.removeFirst();
-        boolean found = false;
-        for (String[] recordUser : userTable) {
-            if (recordUser[UserDaoCsvConstants.USER_INDEX_USERNAME].equals(user.getUsername())) {
-                recordUser[UserDaoCsvConstants.USER_INDEX_PASSWORD] = PasswordUtils.hashPassword(user.getPassword()); // Riapplica l'hash
-                recordUser[UserDaoCsvConstants.USER_INDEX_FIRST_NAME] = user.getName();
-                recordUser[UserDaoCsvConstants.USER_INDEX_LAST_NAME] = user.getSurname();
-                recordUser[UserDaoCsvConstants.USER_INDEX_TYPE] = user.getType();
-                recordUser[UserDaoCsvConstants.USER_INDEX_GENDER] = user.getGender();
-                found = true;
-                break;
-            }
-        }
+    public List<String> retrieveAllUsernames() throws DAOException {
+        return userTable.keys();
+    }
+
+    @Override
+    public void updateUser(UserBean user, Origin origin) throws DAOException {
+        String hashedPassword = PasswordUtils.hashPassword(user.getPassword()); // Riapplica l'hash
+        ChangeEvent event = new ChangeEvent.UserUpdated(user, originOf(origin));
+        recordChange(event);
+        boolean found = userTable.update(user.getUsername(), recordUser -> {
+            recordUser[UserDaoCsvConstants.USER_INDEX_PASSWORD] = hashedPassword;
+            recordUser[UserDaoCsvConstants.USER_INDEX_FIRST_NAME] = user.getName();
+            recordUser[UserDaoCsvConstants.USER_INDEX_LAST_NAME] = user.getSurname();
+            recordUser[UserDaoCsvConstants.USER_INDEX_TYPE] = user.getType();
+            recordUser[UserDaoCsvConstants.USER_INDEX_GENDER] = user.getGender();
+        });
         if (!found) {
             throw new DAOException(UserDaoCsvConstants.USER_NOT_FOUND + user.getUsername());
         }
-        CsvUtilities.updateFile(fd, header, userTable);
-        notifyObservers(DaoOperation.UPDATE, "User", user.getUsername(), user);
+        notifyObservers(event);
     }
 
     @Override
-    public void deleteUser(String username) throws DAOException {
-        List<String[]> userTable = CsvUtilities.readAll(fd);
-        String[] header = userTable.removeFirst();
-        boolean removed = userTable.removeIf(recordUser -> recordUser[UserDaoCsvConstants.USER_INDEX_USERNAME].equals(username));
-        if (!removed) {
+    public void deleteUser(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.UserDeleted(username, originOf(origin));
+        recordChange(event);
+        if (!userTable.delete(username)) {
             throw new DAOException(UserDaoCsvConstants.USER_NOT_FOUND + username);
         }
-        CsvUtilities.updateFile(fd, header, userTable);
-        notifyObservers(DaoOperation.DELETE, "User", username, null);
+        notifyObservers(event);
     }
 }
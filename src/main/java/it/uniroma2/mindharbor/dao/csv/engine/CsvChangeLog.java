@@ -0,0 +1,181 @@
+package it.uniroma2.mindharbor.dao.csv.engine;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvMalformedLineException;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.CsvUtilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sidecar metadata file recording when each record of a {@link CsvTable} was last modified.
+ * <p>
+ * CSV files have no room for bookkeeping columns, so the modification times live in
+ * {@code <table file>.modified}: one line per change with the primary key and the time of the
+ * change in epoch milliseconds. Lines are only appended, the last one for a key wins, and the file
+ * is rewritten with one line per live record whenever the table is compacted.
+ * Records that have never been modified since the sidecar was introduced have no line and are
+ * reported with a modification time of {@code 0}.
+ * </p>
+ * <p>
+ * Like {@link CsvJournal}, this class is only accessed while holding the lock of the owning table.
+ * </p>
+ */
+class CsvChangeLog {
+
+    private static final Logger logger = Logger.getLogger(CsvChangeLog.class.getName());
+    private static final String[] HEADER = {"key", "modified"};
+
+    private final File file;
+    private final boolean forceSync;
+    private final Map<String, Long> modifiedAt = new HashMap<>();
+    private int entries;
+    private boolean tornTail;
+
+    /**
+     * Creates the change log associated with a base CSV file.
+     *
+     * @param baseFile  The CSV file of the table.
+     * @param forceSync Whether every append must be forced to the storage device before returning.
+     */
+    CsvChangeLog(File baseFile, boolean forceSync) {
+        this.file = new File(baseFile.getPath() + ".modified");
+        this.forceSync = forceSync;
+    }
+
+    /**
+     * Reads the sidecar file; a truncated trailing line ends the read.
+     *
+     * @throws DAOException If the file cannot be opened.
+     */
+    void load() throws DAOException {
+        modifiedAt.clear();
+        entries = 0;
+        tornTail = false;
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        try (CSVReader reader = CsvUtilities.openReader(file)) {
+            String[] line;
+            while ((line = readLine(reader)) != null) {
+                if (line.length < 2 || HEADER[0].equals(line[0])) {
+                    continue;
+                }
+                try {
+                    modifiedAt.put(line[0], Long.parseLong(line[1]));
+                    entries++;
+                } catch (NumberFormatException e) {
+                    logger.log(Level.WARNING, "Skipping malformed line in {0}: {1}", new Object[]{file, line[0]});
+                }
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(CsvUtilities.ERR_ACCESS, file), e);
+        }
+    }
+
+    /**
+     * Records that the given records have been modified.
+     *
+     * @param keys      The primary keys of the modified records.
+     * @param timestamp The time of the change, in epoch milliseconds.
+     * @throws DAOException If the file cannot be written.
+     */
+    void record(Collection<String> keys, long timestamp) throws DAOException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<String[]> lines = new ArrayList<>(keys.size());
+        String value = String.valueOf(timestamp);
+        for (String key : keys) {
+            lines.add(new String[]{key, value});
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true);
+             CSVWriter writer = new CSVWriter(new OutputStreamWriter(out))) {
+            writer.writeAll(lines);
+            writer.flush();
+            if (forceSync) {
+                out.getChannel().force(false);
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(CsvUtilities.ERR_ACCESS, file), e);
+        }
+        for (String key : keys) {
+            modifiedAt.put(key, timestamp);
+        }
+        entries += lines.size();
+    }
+
+    /**
+     * Forgets a deleted record. Nothing is written: lines of keys that are no longer in the table
+     * are ignored by the table and dropped at the next rewrite.
+     *
+     * @param key The primary key of the deleted record.
+     */
+    void forget(String key) {
+        modifiedAt.remove(key);
+    }
+
+    /**
+     * @param key The primary key of a record.
+     * @return The last modification time of the record, or {@code 0} if it is unknown.
+     */
+    long modifiedAt(String key) {
+        return modifiedAt.getOrDefault(key, 0L);
+    }
+
+    /**
+     * Rewrites the sidecar file with one line per live record.
+     *
+     * @param liveKeys The primary keys currently in the table.
+     * @throws DAOException If the file cannot be rewritten.
+     */
+    void rewrite(Collection<String> liveKeys) throws DAOException {
+        List<String[]> lines = new ArrayList<>();
+        for (String key : liveKeys) {
+            Long timestamp = modifiedAt.get(key);
+            if (timestamp != null) {
+                lines.add(new String[]{key, String.valueOf(timestamp)});
+            }
+        }
+        CsvUtilities.updateFile(file, HEADER, lines);
+        modifiedAt.keySet().retainAll(liveKeys);
+        entries = lines.size();
+        tornTail = false;
+    }
+
+    /**
+     * @return The number of lines in the file, including the ones superseded by later changes.
+     */
+    int size() {
+        return entries;
+    }
+
+    /**
+     * @return {@code true} if the last load stopped at a damaged trailing line.
+     */
+    boolean hasTornTail() {
+        return tornTail;
+    }
+
+    private String[] readLine(CSVReader reader) throws IOException {
+        try {
+            return reader.readNext();
+        } catch (CsvException | CsvMalformedLineException e) {
+            logger.log(Level.WARNING, "Truncated line at the end of {0}, ignoring the rest of the file", file);
+            tornTail = true;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package it.uniroma2.mindharbor.dao.csv.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Secondary index of a {@link CsvTable}, mapping the value of a derived column to the primary
+ * keys of the records that have it.
+ * <p>
+ * The indexed value is computed by an extractor function; records for which the extractor
+ * returns {@code null} are left out of the index, which makes it possible to build partial
+ * indexes (for example only the appointments that have not been notified yet).
+ * A sorted index keeps its values in natural string order and supports range scans.
+ * </p>
+ * <p>
+ * The index is not thread-safe on its own: it is only accessed while holding the lock of the
+ * owning table.
+ * </p>
+ */
+class CsvIndex {
+
+    private final Function<String[], String> extractor;
+    private final Map<String, Set<String>> entries;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param extractor The function computing the indexed value of a record, or {@code null} to skip it.
+     * @param sorted    Whether the index must support range scans.
+     */
+    CsvIndex(Function<String[], String> extractor, boolean sorted) {
+        this.extractor = extractor;
+        this.entries = sorted ? new TreeMap<>() : new HashMap<>();
+    }
+
+    /**
+     * Adds a record to the index.
+     *
+     * @param key         The primary key of the record.
+     * @param tableRecord The record.
+     */
+    void add(String key, String[] tableRecord) {
+        String value = extractor.apply(tableRecord);
+        if (value != null) {
+            entries.computeIfAbsent(value, v -> new LinkedHashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Removes a record from the index.
+     *
+     * @param key         The primary key of the record.
+     * @param tableRecord The record as it was when it was indexed.
+     */
+    void remove(String key, String[] tableRecord) {
+        String value = extractor.apply(tableRecord);
+        if (value == null) {
+            return;
+        }
+        Set<String> keys = entries.get(value);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                entries.remove(value);
+            }
+        }
+    }
+
+    /**
+     * Moves a record inside the index after one of its columns has changed.
+     *
+     * @param key       The primary key of the record.
+     * @param oldRecord The record before the change.
+     * @param newRecord The record after the change.
+     */
+    void replace(String key, String[] oldRecord, String[] newRecord) {
+        String oldValue = extractor.apply(oldRecord);
+        String newValue = extractor.apply(newRecord);
+        if (oldValue == null ? newValue != null : !oldValue.equals(newValue)) {
+            remove(key, oldRecord);
+            add(key, newRecord);
+        }
+    }
+
+    /**
+     * Returns the primary keys of the records whose indexed value equals {@code value}.
+     *
+     * @param value The value to look up.
+     * @return The matching primary keys, possibly empty.
+     */
+    List<String> lookup(String value) {
+        Set<String> keys = entries.get(value);
+        return keys == null ? Collections.emptyList() : new ArrayList<>(keys);
+    }
+
+    /**
+     * Returns the primary keys of the records whose indexed value lies between two bounds, inclusive,
+     * ordered by indexed value.
+     *
+     * @param from The lower bound, or {@code null} for no lower bound.
+     * @param to   The upper bound, or {@code null} for no upper bound.
+     * @return The matching primary keys, possibly empty.
+     * @throws UnsupportedOperationException If the index is not sorted.
+     */
+    List<String> range(String from, String to) {
+        if (!(entries instanceof NavigableMap<String, Set<String>> sortedEntries)) {
+            throw new UnsupportedOperationException("Range scan on an unsorted index");
+        }
+        NavigableMap<String, Set<String>> view = sortedEntries;
+        if (from != null) {
+            view = view.tailMap(from, true);
+        }
+        if (to != null) {
+            view = view.headMap(to, true);
+        }
+        List<String> keys = new ArrayList<>();
+        for (Set<String> valueKeys : view.values()) {
+            keys.addAll(valueKeys);
+        }
+        return keys;
+    }
+
+    /**
+     * Removes every entry from the index.
+     */
+    void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,211 @@
+package it.uniroma2.mindharbor.dao.csv.engine;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvMalformedLineException;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.CsvUtilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only write-ahead journal of a {@link CsvTable}.
+ * <p>
+ * Every mutation of the table is appended to {@code <table file>.journal} as one CSV line whose
+ * first column is the operation ({@code I}, {@code U} or {@code D}) followed by the full record,
+ * or by the primary key only for deletions. A write therefore costs O(record) instead of the
+ * O(table) rewrite performed by {@link CsvUtilities#updateFile(File, String[], java.util.List)}.
+ * </p>
+ * <p>
+ * Entries carry complete rows, so replaying them is idempotent: if the application stops after the
+ * base file has been compacted but before the journal has been truncated, replaying the journal again
+ * over the compacted file yields the same content.
+ * </p>
+ */
+class CsvJournal {
+
+    private static final Logger logger = Logger.getLogger(CsvJournal.class.getName());
+
+    static final String OP_INSERT = "I";
+    static final String OP_UPDATE = "U";
+    static final String OP_DELETE = "D";
+
+    private final File file;
+    private final boolean forceSync;
+    private int entries;
+    private boolean tornTail;
+
+    /**
+     * Creates the journal associated with a base CSV file.
+     *
+     * @param baseFile  The CSV file of the table.
+     * @param forceSync Whether every append must be forced to the storage device before returning.
+     */
+    CsvJournal(File baseFile, boolean forceSync) {
+        this.file = new File(baseFile.getPath() + ".journal");
+        this.forceSync = forceSync;
+    }
+
+    /**
+     * Appends an insert or update entry carrying the full record.
+     *
+     * @param operation   {@link #OP_INSERT} or {@link #OP_UPDATE}.
+     * @param tableRecord The new content of the record.
+     * @throws DAOException If the journal cannot be written.
+     */
+    void appendPut(String operation, String[] tableRecord) throws DAOException {
+        append(Collections.singletonList(putEntry(operation, tableRecord)));
+    }
+
+    /**
+     * Appends one insert or update entry per record with a single write to the journal.
+     *
+     * @param operation    {@link #OP_INSERT} or {@link #OP_UPDATE}.
+     * @param tableRecords The new content of the records.
+     * @throws DAOException If the journal cannot be written.
+     */
+    void appendPutAll(String operation, List<String[]> tableRecords) throws DAOException {
+        List<String[]> batch = new ArrayList<>(tableRecords.size());
+        for (String[] tableRecord : tableRecords) {
+            batch.add(putEntry(operation, tableRecord));
+        }
+        append(batch);
+    }
+
+    /**
+     * Appends a delete entry.
+     *
+     * @param key The primary key of the deleted record.
+     * @throws DAOException If the journal cannot be written.
+     */
+    void appendDelete(String key) throws DAOException {
+        append(Collections.singletonList(new String[]{OP_DELETE, key}));
+    }
+
+    /**
+     * Replays the journal over the rows loaded from the base file.
+     * A truncated or unreadable line, left by a crash during an append, ends the replay: an entry cut
+     * at a field boundary still parses, so insert and update entries must carry exactly one field per
+     * column and delete entries exactly the key. The damaged entry and everything after it are dropped,
+     * and {@link #hasTornTail()} reports it so that the table can compact the journal before appending
+     * after the damaged line.
+     *
+     * @param rows     The rows of the table, keyed by primary key; modified in place.
+     * @param keyIndex The column index of the primary key.
+     * @param columns  The number of columns of the table.
+     * @throws DAOException If the journal cannot be opened.
+     */
+    void replay(Map<String, String[]> rows, int keyIndex, int columns) throws DAOException {
+        entries = 0;
+        tornTail = false;
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        try (CSVReader reader = CsvUtilities.openReader(file)) {
+            String[] entry;
+            while ((entry = readEntry(reader)) != null) {
+                if (!applyEntry(rows, keyIndex, columns, entry)) {
+                    logger.log(Level.WARNING, "Malformed entry in {0}, ignoring the rest of the journal: {1}",
+                            new Object[]{file, Arrays.toString(entry)});
+                    tornTail = true;
+                    break;
+                }
+                entries++;
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(CsvUtilities.ERR_ACCESS, file), e);
+        }
+        if (entries > 0) {
+            logger.log(Level.INFO, "Replayed {0} journal entries from {1}", new Object[]{entries, file});
+        }
+    }
+
+    /**
+     * Empties the journal after its content has been compacted into the base file.
+     *
+     * @throws DAOException If the journal cannot be truncated.
+     */
+    void truncate() throws DAOException {
+        try (FileOutputStream out = new FileOutputStream(file, false)) {
+            if (forceSync) {
+                out.getChannel().force(true);
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(CsvUtilities.ERR_ACCESS, file), e);
+        }
+        entries = 0;
+        tornTail = false;
+    }
+
+    /**
+     * @return The number of entries written since the last compaction.
+     */
+    int size() {
+        return entries;
+    }
+
+    /**
+     * @return {@code true} if the last replay stopped at a damaged trailing entry.
+     */
+    boolean hasTornTail() {
+        return tornTail;
+    }
+
+    private static String[] putEntry(String operation, String[] tableRecord) {
+        String[] entry = new String[tableRecord.length + 1];
+        entry[0] = operation;
+        System.arraycopy(tableRecord, 0, entry, 1, tableRecord.length);
+        return entry;
+    }
+
+    private void append(List<String[]> batch) throws DAOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true);
+             CSVWriter writer = new CSVWriter(new OutputStreamWriter(out))) {
+            writer.writeAll(batch);
+            writer.flush();
+            if (forceSync) {
+                out.getChannel().force(false);
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(CsvUtilities.ERR_ACCESS, file), e);
+        }
+        entries += batch.size();
+    }
+
+    private String[] readEntry(CSVReader reader) throws IOException {
+        try {
+            return reader.readNext();
+        } catch (CsvException | CsvMalformedLineException e) {
+            logger.log(Level.WARNING, "Truncated entry at the end of {0}, ignoring the rest of the journal", file);
+            tornTail = true;
+            return null;
+        }
+    }
+
+    private static boolean applyEntry(Map<String, String[]> rows, int keyIndex, int columns, String[] entry) {
+        if (OP_DELETE.equals(entry[0]) && entry.length == 2) {
+            rows.remove(entry[1]);
+            return true;
+        }
+        if ((OP_INSERT.equals(entry[0]) || OP_UPDATE.equals(entry[0])) && entry.length == columns + 1) {
+            String[] tableRecord = Arrays.copyOfRange(entry, 1, entry.length);
+            rows.put(tableRecord[keyIndex], tableRecord);
+            return true;
+        }
+        return false;
+    }
+}
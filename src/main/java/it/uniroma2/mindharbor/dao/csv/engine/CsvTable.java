@@ -0,0 +1,813 @@
+package it.uniroma2.mindharbor.dao.csv.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+import it.uniroma2.mindharbor.utilities.CsvUtilities;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory table engine backing the CSV Data Access Objects.
+ * <p>
+ * Each CSV file is loaded from disk only once, on first access, and kept in memory
+ * in a hash map keyed by the table's primary key column (appointment ID, username).
+ * Unless {@code csv.reader.mapped} is false, the file is read through a {@link MappedCsvReader},
+ * which decodes a row only after checking its key.
+ * Point lookups are therefore O(1) and do not touch the file system, while every
+ * mutation is written to disk before the in-memory copy is changed, so the file
+ * and the table never diverge.
+ * </p>
+ * <p>
+ * Tables are shared: {@link #of(File, String[], int)} always returns the same
+ * instance for the same file, so DAOs that read each other's data (for example
+ * patients joining users) see a single consistent copy.
+ * </p>
+ * <p>
+ * When the journal is enabled ({@code csv.journal.enabled}, default {@code true}) mutations
+ * are not applied to the CSV file directly but appended to a {@link CsvJournal}; the file is
+ * rewritten only when the journal reaches {@code csv.journal.compactionThreshold} entries,
+ * or explicitly through {@link #compact()} and {@link #compactAll()}. On load the journal is
+ * replayed on top of the file, so no acknowledged write is lost if the application stops
+ * before compacting.
+ * </p>
+ * <p>
+ * The time of the last change of every record is kept in a {@link CsvChangeLog} sidecar file,
+ * so that {@link #modifiedSince(long)} can list the records changed after a given instant
+ * without comparing the whole table.
+ * </p>
+ * <p>
+ * A content digest function can be registered with {@link #setDigester(Function)}; the digest of
+ * each record is computed on first request by {@link #digests(Collection)} and kept in memory
+ * until the record changes, so comparing a table with another copy of the same data does not
+ * need to hand out and compare the records themselves.
+ * </p>
+ * <p>
+ * Secondary indexes can be registered with {@link #addIndex(String, Function, boolean)};
+ * they are built when the table is loaded and kept up to date on every mutation, so
+ * queries on non-key columns become {@link #lookup(String, String)} or
+ * {@link #range(String, String, String)} calls instead of full scans.
+ * </p>
+ * <p>
+ * Each table is guarded by the read/write lock of its file ({@link CsvUtilities#lockFor(File)}):
+ * queries share the read lock and run in parallel, while every mutation holds the write lock for
+ * its whole read-modify-write, from the check of the current records to the write on disk and the
+ * update of the in-memory copy. Tables on different files never wait for each other.
+ * </p>
+ * <p>
+ * Records handed out by this class are defensive copies; callers are free to
+ * modify them without affecting the stored data.
+ * </p>
+ */
+public class CsvTable {
+
+    private static final Logger logger = Logger.getLogger(CsvTable.class.getName());
+    private static final Map<String, CsvTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Message prefix used when inserting a record whose primary key is already present.
+     */
+    public static final String DUPLICATE_KEY = "Duplicate key in CSV table: ";
+
+    private static final boolean JOURNAL_ENABLED = AppConfig.getBoolean("csv.journal.enabled", true);
+    private static final boolean JOURNAL_SYNC = AppConfig.getBoolean("csv.journal.sync", true);
+    private static final int COMPACTION_THRESHOLD = AppConfig.getInt("csv.journal.compactionThreshold", 500);
+    // Su Windows un file mappato non può essere sostituito finché la mappatura non viene raccolta
+    private static final boolean MAPPED_LOAD = AppConfig.getBoolean("csv.reader.mapped",
+            !System.getProperty("os.name", "").startsWith("Windows"));
+
+    private final File file;
+    private final String[] header;
+    private final int keyIndex;
+    private final Map<String, String[]> rows = new LinkedHashMap<>();
+    private final CsvJournal journal;
+    private final CsvChangeLog changeLog;
+    private final Map<String, CsvIndex> indexes = new HashMap<>();
+    private final Map<String, String> digests = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock;
+    private Function<String[], String> digester;
+    private boolean loaded;
+
+    /**
+     * Private constructor, tables are obtained through {@link #of(File, String[], int)}.
+     *
+     * @param file     The CSV file backing the table.
+     * @param header   The header row of the CSV file.
+     * @param keyIndex The column index of the primary key.
+     */
+    private CsvTable(File file, String[] header, int keyIndex) {
+        this.file = file;
+        this.header = header.clone();
+        this.keyIndex = keyIndex;
+        this.lock = CsvUtilities.lockFor(file);
+        this.journal = JOURNAL_ENABLED ? new CsvJournal(file, JOURNAL_SYNC) : null;
+        this.changeLog = new CsvChangeLog(file, JOURNAL_ENABLED && JOURNAL_SYNC);
+    }
+
+    /**
+     * Returns the shared table instance for the given CSV file, creating it if needed.
+     * The file itself is read lazily, on the first operation performed on the table.
+     *
+     * @param file     The CSV file backing the table.
+     * @param header   The header row of the CSV file.
+     * @param keyIndex The column index of the primary key.
+     * @return The table bound to the given file.
+     */
+    public static CsvTable of(File file, String[] header, int keyIndex) {
+        return tables.computeIfAbsent(file.getAbsolutePath(), path -> new CsvTable(file, header, keyIndex));
+    }
+
+    /**
+     * Registers a secondary index on the table. Registering an index name twice has no effect,
+     * so DAOs sharing the same table can declare the indexes they need independently.
+     *
+     * @param name      The name of the index, used by {@link #lookup(String, String)} and {@link #range(String, String, String)}.
+     * @param extractor The function computing the indexed value of a record; records for which it
+     *                  returns {@code null} are not indexed.
+     * @param sorted    Whether the index must keep its values ordered to support range scans.
+     */
+    public void addIndex(String name, Function<String[], String> extractor, boolean sorted) {
+        lock.writeLock().lock();
+        try {
+            if (indexes.containsKey(name)) {
+                return;
+            }
+            CsvIndex index = new CsvIndex(extractor, sorted);
+            if (loaded) {
+                rows.forEach(index::add);
+            }
+            indexes.put(name, index);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers the function computing the content digest of a record. Only the first registration
+     * is kept, so DAOs sharing the same table can declare it independently.
+     *
+     * @param digester The function computing the digest of a record; a runtime exception it throws,
+     *                 such as a {@code DateTimeParseException}, is reported by {@link #digests(Collection)}.
+     */
+    public void setDigester(Function<String[], String> digester) {
+        lock.writeLock().lock();
+        try {
+            if (this.digester == null) {
+                this.digester = digester;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the content digest of the records with the given keys.
+     *
+     * @param keys The primary keys of the records.
+     * @return The digests of the records that exist, keyed by primary key.
+     * @throws DAOException If the table cannot be loaded, or a record cannot be digested (a malformed date).
+     * @throws IllegalStateException If no digester has been registered.
+     */
+    public Map<String, String> digests(Collection<String> keys) throws DAOException {
+        lockForRead();
+        try {
+            if (digester == null) {
+                throw new IllegalStateException("No digester registered on " + file);
+            }
+            Map<String, String> result = new LinkedHashMap<>();
+            for (String key : keys) {
+                String[] tableRecord = rows.get(key);
+                if (tableRecord != null) {
+                    result.put(key, digest(key, tableRecord));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Computes, or takes from memory, the digest of a record, reporting a record the digester
+     * cannot parse as a {@link DAOException} naming the file and the key.
+     */
+    private String digest(String key, String[] tableRecord) throws DAOException {
+        try {
+            return digests.computeIfAbsent(key, k -> digester.apply(tableRecord));
+        } catch (RuntimeException e) {
+            throw new DAOException("Error digesting record " + key + " of " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Retrieves the records whose indexed value equals the given one.
+     *
+     * @param indexName The name of the index to use.
+     * @param value     The value to look up.
+     * @return A copy of every matching record, possibly empty.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public List<String[]> lookup(String indexName, String value) throws DAOException {
+        lockForRead();
+        try {
+            return copiesOf(index(indexName).lookup(value));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the records whose indexed value lies between two bounds, inclusive, ordered by that value.
+     *
+     * @param indexName The name of a sorted index.
+     * @param from      The lower bound, or {@code null} for no lower bound.
+     * @param to        The upper bound, or {@code null} for no upper bound.
+     * @return A copy of every matching record, possibly empty.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public List<String[]> range(String indexName, String from, String to) throws DAOException {
+        lockForRead();
+        try {
+            return copiesOf(index(indexName).range(from, to));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the records whose value in a column is one of the given values, as in a SQL
+     * {@code WHERE column IN (...)} clause. When an index with the given name exists it is used
+     * for the lookups, otherwise the table is scanned a single time.
+     *
+     * @param indexName The name of an index on {@code column}, or {@code null} if none is known.
+     * @param column    The index of the column to match.
+     * @param values    The accepted values.
+     * @return A copy of every matching record, possibly empty.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public List<String[]> selectIn(String indexName, int column, Collection<String> values) throws DAOException {
+        lockForRead();
+        try {
+            if (values.isEmpty()) {
+                return new ArrayList<>();
+            }
+            CsvIndex index = indexName == null ? null : indexes.get(indexName);
+            if (index != null) {
+                List<String> keys = new ArrayList<>();
+                for (String value : new LinkedHashSet<>(values)) {
+                    keys.addAll(index.lookup(value));
+                }
+                return copiesOf(keys);
+            }
+
+            Set<String> accepted = values instanceof Set<String> set ? set : new HashSet<>(values);
+            List<String[]> matches = new ArrayList<>();
+            for (String[] tableRecord : rows.values()) {
+                if (tableRecord.length > column && accepted.contains(tableRecord[column])) {
+                    matches.add(tableRecord.clone());
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Joins the records of this table accepted by a filter with the records of another table whose
+     * primary key equals one of their columns (an inner equi-join on a foreign key, such as patients
+     * with users). Each table is read once and the other side is probed through its key map, so the
+     * cost is linear in the number of records instead of one lookup round per record.
+     * Records without a match in {@code keyTable} are left out.
+     *
+     * @param filter           The condition the records of this table must satisfy, or {@code null} to accept all.
+     * @param foreignKeyColumn The column of this table holding the primary key of {@code keyTable}.
+     * @param keyTable         The table to join with.
+     * @return The joined pairs, in the order of this table.
+     * @throws DAOException If one of the tables cannot be loaded.
+     */
+    public List<JoinedRecord> joinOnKey(Predicate<String[]> filter, int foreignKeyColumn, CsvTable keyTable) throws DAOException {
+        // The two tables are locked one after the other, never together, to rule out lock-order deadlocks
+        List<String[]> leftRecords = select(filter);
+        List<String> foreignKeys = new ArrayList<>(leftRecords.size());
+        for (String[] leftRecord : leftRecords) {
+            foreignKeys.add(leftRecord[foreignKeyColumn]);
+        }
+        Map<String, String[]> rightRecords = keyTable.getAll(foreignKeys);
+
+        List<JoinedRecord> joined = new ArrayList<>(leftRecords.size());
+        for (String[] leftRecord : leftRecords) {
+            String[] rightRecord = rightRecords.get(leftRecord[foreignKeyColumn]);
+            if (rightRecord != null) {
+                joined.add(new JoinedRecord(leftRecord, rightRecord));
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * Retrieves the records of this table accepted by a filter.
+     *
+     * @param filter The condition the records must satisfy, or {@code null} to accept all.
+     * @return A copy of every matching record in file order.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public List<String[]> select(Predicate<String[]> filter) throws DAOException {
+        lockForRead();
+        try {
+            List<String[]> matches = new ArrayList<>();
+            for (String[] tableRecord : rows.values()) {
+                if (filter == null || filter.test(tableRecord)) {
+                    matches.add(tableRecord.clone());
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the records with the given primary keys.
+     *
+     * @param keys The primary keys to look up; unknown keys are ignored.
+     * @return A copy of every record found, keyed by primary key.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public Map<String, String[]> getAll(Collection<String> keys) throws DAOException {
+        lockForRead();
+        try {
+            Map<String, String[]> found = new HashMap<>();
+            for (String key : keys) {
+                String[] tableRecord = rows.get(key);
+                if (tableRecord != null) {
+                    found.put(key, tableRecord.clone());
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the record with the given primary key.
+     *
+     * @param key The primary key value.
+     * @return A copy of the record, or {@code null} if no record has that key.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public String[] get(String key) throws DAOException {
+        lockForRead();
+        try {
+            String[] tableRecord = rows.get(key);
+            return tableRecord == null ? null : tableRecord.clone();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks whether a record with the given primary key exists.
+     *
+     * @param key The primary key value.
+     * @return {@code true} if the key is present, {@code false} otherwise.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public boolean contains(String key) throws DAOException {
+        lockForRead();
+        try {
+            return rows.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all records of the table in file order.
+     *
+     * @return A list containing a copy of every record.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public List<String[]> rows() throws DAOException {
+        lockForRead();
+        try {
+            List<String[]> copy = new ArrayList<>(rows.size());
+            for (String[] tableRecord : rows.values()) {
+                copy.add(tableRecord.clone());
+            }
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the primary keys of all records in file order.
+     *
+     * @return A list with every primary key of the table.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public List<String> keys() throws DAOException {
+        lockForRead();
+        try {
+            return new ArrayList<>(rows.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the primary keys of the records inserted or updated at or after the given instant.
+     *
+     * @param sinceMillis The instant, in epoch milliseconds; {@code 0} returns every key.
+     * @return The matching primary keys, in file order.
+     * @throws DAOException If the table cannot be loaded.
+     */
+    public List<String> modifiedSince(long sinceMillis) throws DAOException {
+        lockForRead();
+        try {
+            List<String> keys = new ArrayList<>();
+            for (String key : rows.keySet()) {
+                if (changeLog.modifiedAt(key) >= sinceMillis) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the journal of every table loaded so far into its CSV file.
+     * Called on application shutdown so that the CSV files are self-contained.
+     */
+    public static void compactAll() {
+        for (CsvTable table : tables.values()) {
+            try {
+                table.compact();
+            } catch (DAOException e) {
+                logger.log(Level.WARNING, "Failed to compact CSV table " + table.file, e);
+            }
+        }
+    }
+
+    /**
+     * Appends a new record to the table and to the end of the CSV file.
+     *
+     * @param tableRecord The record to insert.
+     * @throws DAOException If a record with the same key exists or the file cannot be written.
+     */
+    public void insert(String[] tableRecord) throws DAOException {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+            String key = tableRecord[keyIndex];
+            if (rows.containsKey(key)) {
+                throw new DAOException(DUPLICATE_KEY + key);
+            }
+            if (journal != null) {
+                journal.appendPut(CsvJournal.OP_INSERT, tableRecord);
+            } else {
+                if (!file.exists() || file.length() == 0) {
+                    CsvUtilities.writeFile(file, header);
+                }
+                CsvUtilities.writeFile(file, tableRecord);
+            }
+            String[] stored = tableRecord.clone();
+            rows.put(key, stored);
+            for (CsvIndex index : indexes.values()) {
+                index.add(key, stored);
+            }
+            changeLog.record(Collections.singletonList(key), System.currentTimeMillis());
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends several new records with a single write, to the journal or to the end of the CSV file.
+     * The batch is rejected as a whole if any key already exists or appears twice in it.
+     *
+     * @param tableRecords The records to insert, in order.
+     * @throws DAOException If a key is duplicated or the file cannot be written.
+     */
+    public void insertAll(List<String[]> tableRecords) throws DAOException {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+            Set<String> batchKeys = new HashSet<>();
+            for (String[] tableRecord : tableRecords) {
+                String key = tableRecord[keyIndex];
+                if (rows.containsKey(key) || !batchKeys.add(key)) {
+                    throw new DAOException(DUPLICATE_KEY + key);
+                }
+            }
+            if (tableRecords.isEmpty()) {
+                return;
+            }
+            if (journal != null) {
+                journal.appendPutAll(CsvJournal.OP_INSERT, tableRecords);
+            } else {
+                if (!file.exists() || file.length() == 0) {
+                    CsvUtilities.writeFile(file, header);
+                }
+                CsvUtilities.writeFile(file, tableRecords);
+            }
+            for (String[] tableRecord : tableRecords) {
+                String[] stored = tableRecord.clone();
+                rows.put(stored[keyIndex], stored);
+                for (CsvIndex index : indexes.values()) {
+                    index.add(stored[keyIndex], stored);
+                }
+            }
+            changeLog.record(batchKeys, System.currentTimeMillis());
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the record with the given key by applying a mutator to a copy of it.
+     * The change is persisted before the in-memory copy is replaced.
+     *
+     * @param key     The primary key of the record to update.
+     * @param mutator The function that modifies the record's columns in place.
+     * @return {@code true} if the record was found and updated, {@code false} otherwise.
+     * @throws DAOException If the file cannot be rewritten.
+     */
+    public boolean update(String key, Consumer<String[]> mutator) throws DAOException {
+        return !updateAll(Map.of(key, mutator)).isEmpty();
+    }
+
+    /**
+     * Updates several records at once; without journal the file is rewritten a single time.
+     * Keys that are not present in the table are ignored.
+     *
+     * @param mutators The mutators to apply, keyed by primary key.
+     * @return The keys of the records that were updated.
+     * @throws DAOException If the file cannot be rewritten.
+     */
+    public Set<String> updateAll(Map<String, Consumer<String[]>> mutators) throws DAOException {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+            Map<String, String[]> updated = new LinkedHashMap<>();
+            for (Map.Entry<String, Consumer<String[]>> entry : mutators.entrySet()) {
+                String[] current = rows.get(entry.getKey());
+                if (current != null) {
+                    String[] copy = current.clone();
+                    entry.getValue().accept(copy);
+                    copy[keyIndex] = entry.getKey(); // the primary key is immutable
+                    updated.put(entry.getKey(), copy);
+                }
+            }
+            if (updated.isEmpty()) {
+                return Set.of();
+            }
+
+            if (journal != null) {
+                for (String[] tableRecord : updated.values()) {
+                    journal.appendPut(CsvJournal.OP_UPDATE, tableRecord);
+                }
+            } else {
+                List<String[]> content = new ArrayList<>(rows.size());
+                for (Map.Entry<String, String[]> entry : rows.entrySet()) {
+                    content.add(updated.getOrDefault(entry.getKey(), entry.getValue()));
+                }
+                CsvUtilities.updateFile(file, header, content);
+            }
+            for (Map.Entry<String, String[]> entry : updated.entrySet()) {
+                String[] previous = rows.put(entry.getKey(), entry.getValue());
+                digests.remove(entry.getKey());
+                for (CsvIndex index : indexes.values()) {
+                    index.replace(entry.getKey(), previous, entry.getValue());
+                }
+            }
+            changeLog.record(updated.keySet(), System.currentTimeMillis());
+            compactIfNeeded();
+            return updated.keySet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the record with the given key from the table and the file.
+     *
+     * @param key The primary key of the record to delete.
+     * @return {@code true} if the record existed and was deleted, {@code false} otherwise.
+     * @throws DAOException If the file cannot be rewritten.
+     */
+    public boolean delete(String key) throws DAOException {
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+            if (!rows.containsKey(key)) {
+                return false;
+            }
+            if (journal != null) {
+                journal.appendDelete(key);
+            } else {
+                List<String[]> content = new ArrayList<>(rows.size());
+                for (Map.Entry<String, String[]> entry : rows.entrySet()) {
+                    if (!entry.getKey().equals(key)) {
+                        content.add(entry.getValue());
+                    }
+                }
+                CsvUtilities.updateFile(file, header, content);
+            }
+            String[] removed = rows.remove(key);
+            digests.remove(key);
+            for (CsvIndex index : indexes.values()) {
+                index.remove(key, removed);
+            }
+            changeLog.forget(key);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the current content of the table to the CSV file and empties the journal,
+     * then rewrites the change log with one line per record.
+     * The file is replaced atomically and durably before the journal is truncated, and replaying a
+     * journal that could not be truncated is harmless, so a crash at any point leaves the table recoverable.
+     *
+     * @throws DAOException If the file cannot be rewritten or the journal cannot be truncated.
+     */
+    public void compact() throws DAOException {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+            if (journal != null && (journal.size() > 0 || journal.hasTornTail())) {
+                // updateFile rende persistenti il file e il rename: solo dopo il journal può essere svuotato
+                CsvUtilities.updateFile(file, header, new ArrayList<>(rows.values()));
+                journal.truncate();
+            }
+            if (changeLog.size() > rows.size() || changeLog.hasTornTail()) {
+                changeLog.rewrite(rows.keySet());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Discards the in-memory content so that the next operation reloads the file.
+     * Useful when the CSV file has been modified outside the application.
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            rows.clear();
+            digests.clear();
+            for (CsvIndex index : indexes.values()) {
+                index.clear();
+            }
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Acquires the read lock, loading the table first under the write lock if needed.
+     * On return the caller holds the read lock and must release it.
+     *
+     * @throws DAOException If the table cannot be loaded; no lock is held then.
+     */
+    private void lockForRead() throws DAOException {
+        lock.readLock().lock();
+        if (loaded) {
+            return;
+        }
+        lock.readLock().unlock();
+        lock.writeLock().lock();
+        try {
+            ensureLoaded();
+            lock.readLock().lock(); // downgrade: nobody can change the table before the read
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private CsvIndex index(String name) {
+        CsvIndex index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown index on " + file + ": " + name);
+        }
+        return index;
+    }
+
+    private List<String[]> copiesOf(List<String> keys) {
+        List<String[]> copy = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            copy.add(rows.get(key).clone());
+        }
+        return copy;
+    }
+
+    private void compactIfNeeded() throws DAOException {
+        if ((journal != null && journal.size() >= COMPACTION_THRESHOLD)
+                || changeLog.size() >= rows.size() + COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Loads the rows of the CSV file through a {@link MappedCsvReader}: the key of each row is decoded
+     * first, and the rest of the row only if the row is kept.
+     */
+    private void loadMapped() throws DAOException {
+        MappedCsvReader reader = MappedCsvReader.open(file);
+        int i = 0;
+        while (reader.next()) {
+            if (i++ == 0 && header[0].equals(reader.field(0))) {
+                continue;
+            }
+            if (reader.fieldCount() <= keyIndex) {
+                logger.log(Level.WARNING, "Skipping malformed row {0} in {1}", new Object[]{i - 1, file});
+                continue;
+            }
+            String key = reader.field(keyIndex);
+            if (rows.containsKey(key)) {
+                logger.log(Level.WARNING, "Skipping duplicated key {0} in {1}", new Object[]{key, file});
+            } else {
+                rows.put(key, reader.record());
+            }
+        }
+    }
+
+    /**
+     * Loads the rows of the CSV file through {@link CsvUtilities#readAll(File)}.
+     */
+    private void loadParsed() throws DAOException {
+        List<String[]> content = CsvUtilities.readAll(file);
+        int start = (!content.isEmpty() && header[0].equals(content.get(0)[0])) ? 1 : 0;
+        for (int i = start; i < content.size(); i++) {
+            String[] tableRecord = content.get(i);
+            if (tableRecord.length <= keyIndex) {
+                logger.log(Level.WARNING, "Skipping malformed row {0} in {1}", new Object[]{i, file});
+            } else if (rows.putIfAbsent(tableRecord[keyIndex], tableRecord) != null) {
+                logger.log(Level.WARNING, "Skipping duplicated key {0} in {1}", new Object[]{tableRecord[keyIndex], file});
+            }
+        }
+    }
+
+    /**
+     * Loads the CSV file into memory if it has not been loaded yet and replays the journal on top of it.
+     * The header row is skipped and malformed or duplicated rows are ignored.
+     *
+     * @throws DAOException If the file cannot be read or parsed.
+     */
+    private void ensureLoaded() throws DAOException {
+        if (loaded) {
+            return;
+        }
+        rows.clear();
+        digests.clear();
+        if (file.exists() && file.length() > 0) {
+            if (MAPPED_LOAD && file.length() <= MappedCsvReader.MAX_MAPPED_SIZE) {
+                loadMapped();
+            } else {
+                loadParsed();
+            }
+        }
+        if (journal != null) {
+            journal.replay(rows, keyIndex, header.length);
+        }
+        changeLog.load();
+        for (CsvIndex index : indexes.values()) {
+            index.clear();
+            rows.forEach(index::add);
+        }
+        loaded = true;
+        if ((journal != null && journal.hasTornTail()) || changeLog.hasTornTail()) {
+            compact(); // never append after a damaged entry
+        }
+    }
+}
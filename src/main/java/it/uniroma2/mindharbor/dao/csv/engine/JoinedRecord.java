@@ -0,0 +1,10 @@
+package it.uniroma2.mindharbor.dao.csv.engine;
+
+/**
+ * A pair of records produced by {@link CsvTable#joinOnKey(java.util.function.Predicate, int, CsvTable)}.
+ *
+ * @param left  The record of the table the join was started from.
+ * @param right The record of the joined table whose primary key matches the foreign key of {@code left}.
+ */
+public record JoinedRecord(String[] left, String[] right) {
+}
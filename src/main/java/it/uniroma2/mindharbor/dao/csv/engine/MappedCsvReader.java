@@ -0,0 +1,234 @@
+package it.uniroma2.mindharbor.dao.csv.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.CsvUtilities;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Forward-only reader of a CSV file mapped in memory.
+ * <p>
+ * The file is mapped with {@link FileChannel#map} and scanned directly on its bytes: {@link #next()}
+ * only locates the boundaries of the fields of the next record, without copying or decoding them.
+ * A field is turned into a {@code String} only when asked for with {@link #field(int)}, and the whole
+ * record only with {@link #record()}, so the caller can look at the key column and decode nothing
+ * else for the records it is going to skip. The file is never copied into a char buffer as a whole.
+ * </p>
+ * <p>
+ * Records follow RFC 4180, as written by {@link CsvUtilities}: fields separated by commas, optionally
+ * enclosed in double quotes, with quotes inside a quoted field doubled. Quoted fields may contain
+ * separators and line breaks. Records end with {@code \n}, as {@link com.opencsv.CSVWriter} writes them,
+ * and empty lines are skipped; a carriage return is an ordinary character, kept in the field, and a
+ * backslash is never an escape. This is the grammar of {@link CsvUtilities#openReader(File)}, so a
+ * file reads back the same through either reader. Since the separator, the quote and the line feed
+ * are ASCII characters, they can never appear inside a multibyte UTF-8 sequence, which makes the
+ * byte-level scan safe.
+ * </p>
+ * <p>
+ * Files larger than {@link #MAX_MAPPED_SIZE} cannot be mapped in a single buffer and must be read
+ * with {@link CsvUtilities#readAll(File)}.
+ * </p>
+ */
+final class MappedCsvReader {
+
+    /**
+     * The largest file that can be mapped.
+     */
+    static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    private static final byte QUOTE = '"';
+    private static final byte SEPARATOR = ',';
+    private static final byte LF = '\n';
+
+    private final MappedByteBuffer buffer;
+    private final int limit;
+    private int position;
+    private int fieldCount;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private boolean[] escaped = new boolean[8];
+    private byte[] scratch = new byte[256];
+
+    private MappedCsvReader(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+    }
+
+    /**
+     * Maps a CSV file for reading.
+     *
+     * @param file The file to map; it must not be larger than {@link #MAX_MAPPED_SIZE}.
+     * @return A reader positioned before the first record.
+     * @throws DAOException If the file cannot be opened or mapped.
+     */
+    static MappedCsvReader open(File file) throws DAOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // La mappatura resta valida anche dopo la chiusura del canale
+            return new MappedCsvReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new DAOException(String.format(CsvUtilities.ERR_ACCESS, file), e);
+        }
+    }
+
+    /**
+     * Advances to the next record, locating its fields without decoding them.
+     *
+     * @return {@code true} if there is a record, {@code false} at the end of the file.
+     * @throws DAOException If the last record ends inside a quoted field.
+     */
+    boolean next() throws DAOException {
+        while (position < limit && buffer.get(position) == LF) {
+            position++;
+        }
+        if (position >= limit) {
+            return false;
+        }
+        fieldCount = 0;
+        while (true) {
+            int end = buffer.get(position) == QUOTE ? scanQuoted() : scanPlain();
+            if (end >= limit) {
+                position = limit;
+                return true;
+            }
+            byte delimiter = buffer.get(end);
+            position = end + 1;
+            if (delimiter == SEPARATOR) {
+                if (position >= limit) {
+                    addField(position, position, false); // trailing empty field
+                    return true;
+                }
+                continue;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return The number of fields of the current record.
+     */
+    int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Decodes one field of the current record.
+     *
+     * @param column The index of the field.
+     * @return The value of the field.
+     * @throws IndexOutOfBoundsException If the record has no such field.
+     */
+    String field(int column) {
+        if (column >= fieldCount) {
+            throw new IndexOutOfBoundsException("Column " + column + " of a record with " + fieldCount + " fields");
+        }
+        int length = ends[column] - starts[column];
+        if (length == 0) {
+            return "";
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(starts[column], scratch, 0, length);
+        if (escaped[column]) {
+            length = unescape(length);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes all the fields of the current record.
+     *
+     * @return The record.
+     */
+    String[] record() {
+        String[] tableRecord = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            tableRecord[i] = field(i);
+        }
+        return tableRecord;
+    }
+
+    /**
+     * Scans a quoted field starting at the current position.
+     *
+     * @return The position of the delimiter following the closing quote, or {@code limit}.
+     */
+    private int scanQuoted() throws DAOException {
+        int start = position + 1;
+        int i = start;
+        boolean doubled = false;
+        while (true) {
+            if (i >= limit) {
+                throw new DAOException("Unterminated quoted field at byte " + position);
+            }
+            if (buffer.get(i) == QUOTE) {
+                if (i + 1 < limit && buffer.get(i + 1) == QUOTE) {
+                    doubled = true;
+                    i += 2;
+                    continue;
+                }
+                break;
+            }
+            i++;
+        }
+        addField(start, i, doubled);
+        // Eventuali caratteri tra la virgoletta di chiusura e il separatore vengono ignorati
+        int end = i + 1;
+        while (end < limit && !isDelimiter(buffer.get(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Scans an unquoted field starting at the current position.
+     *
+     * @return The position of the delimiter following the field, or {@code limit}.
+     */
+    private int scanPlain() {
+        int end = position;
+        while (end < limit && !isDelimiter(buffer.get(end))) {
+            end++;
+        }
+        addField(position, end, false);
+        return end;
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == SEPARATOR || b == LF;
+    }
+
+    private void addField(int start, int end, boolean doubledQuotes) {
+        if (fieldCount == starts.length) {
+            starts = Arrays.copyOf(starts, fieldCount * 2);
+            ends = Arrays.copyOf(ends, fieldCount * 2);
+            escaped = Arrays.copyOf(escaped, fieldCount * 2);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = doubledQuotes;
+        fieldCount++;
+    }
+
+    /**
+     * Collapses the doubled quotes of the field copied in the scratch buffer.
+     *
+     * @return The length of the unescaped field.
+     */
+    private int unescape(int length) {
+        int out = 0;
+        for (int in = 0; in < length; in++) {
+            scratch[out++] = scratch[in];
+            if (scratch[in] == QUOTE) {
+                in++; // salta la seconda virgoletta
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,256 @@
+package it.uniroma2.mindharbor.dao.embedded;
+
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.AppointmentDao;
+import it.uniroma2.mindharbor.dao.AppointmentEntry;
+import it.uniroma2.mindharbor.dao.DaoCursor;
+import it.uniroma2.mindharbor.dao.embedded.constants.AppointmentDaoEmbeddedConstants;
+import it.uniroma2.mindharbor.dao.embedded.constants.PatientDaoEmbeddedConstants;
+import it.uniroma2.mindharbor.dao.embedded.engine.EmbeddedStore;
+import it.uniroma2.mindharbor.dao.embedded.engine.EmbeddedTable;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class AppointmentDaoEmbedded extends AbstractObservableDao implements AppointmentDao {
+
+    private static final EmbeddedTable appointmentTable = EmbeddedTable.of(EmbeddedStore.getDefault(),
+            AppointmentDaoEmbeddedConstants.TABLE_NAME, AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_ID, true);
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ISO_LOCAL_TIME;
+
+    static {
+        // Indici secondari mantenuti dalla tabella nella stessa transazione di ogni modifica
+        appointmentTable.addIndex(AppointmentDaoEmbeddedConstants.INDEX_PATIENT,
+                appointmentRecord -> appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_PATIENT_USERNAME]);
+        appointmentTable.addIndex(AppointmentDaoEmbeddedConstants.INDEX_DATE,
+                appointmentRecord -> appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_DATE]);
+        appointmentTable.addIndex(AppointmentDaoEmbeddedConstants.INDEX_UNNOTIFIED,
+                appointmentRecord -> "false".equals(appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_NOTIFIED])
+                        ? appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_PATIENT_USERNAME]
+                        : null);
+    }
+
+    public AppointmentDaoEmbedded() {
+        super(PersistenceType.EMBEDDED);
+    }
+
+    @Override
+    public void saveAppointment(Appointment appointment, String patientUsername, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentInserted(appointment, patientUsername, originOf(origin));
+        recordChange(event);
+        appointmentTable.insert(toAppointmentRecord(appointment, patientUsername));
+
+        notifyObservers(event);
+    }
+
+    @Override
+    public void saveAppointments(List<Appointment> appointments, String patientUsername, Origin origin) throws DAOException {
+        List<String[]> appointmentRecords = new ArrayList<>(appointments.size());
+        List<ChangeEvent> events = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            appointmentRecords.add(toAppointmentRecord(appointment, patientUsername));
+            events.add(new ChangeEvent.AppointmentInserted(appointment, patientUsername, originOf(origin)));
+        }
+        recordChanges(events);
+        appointmentTable.insertAll(appointmentRecords); // una sola transazione per tutto il blocco
+        notifyObserversBatch(events);
+    }
+
+    private String[] toAppointmentRecord(Appointment appointment, String patientUsername) {
+        String[] appointmentRecord = new String[AppointmentDaoEmbeddedConstants.COLUMNS];
+        appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_ID] = String.valueOf(appointment.getId());
+        appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_DATE] = appointment.getDate().format(DATE_FORMATTER);
+        appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_TIME] = appointment.getTime().format(TIME_FORMATTER);
+        appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_DESCRIPTION] = appointment.getDescription();
+        appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(appointment.isNotified());
+        appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_PATIENT_USERNAME] = patientUsername;
+        return appointmentRecord;
+    }
+
+    @Override
+    public Appointment retrieveAppointment(int appointmentId) throws DAOException {
+        String[] appointmentRecord = appointmentTable.get(String.valueOf(appointmentId));
+        return appointmentRecord == null ? null : toAppointment(appointmentRecord);
+    }
+
+    @Override
+    public List<Appointment> retrieveAllAppointments() throws DAOException {
+        return toAppointments(appointmentTable.rows());
+    }
+
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentCursor() throws DAOException {
+        // Le chiavi sono già in ordine numerico: i record vengono letti dall'albero uno alla volta
+        Iterator<String> iterator = appointmentTable.keys().iterator();
+        return new DaoCursor<>() {
+            @Override
+            public AppointmentEntry next() throws DAOException {
+                while (iterator.hasNext()) {
+                    String[] appointmentRecord = appointmentTable.get(iterator.next());
+                    if (appointmentRecord != null) { // cancellato dopo l'apertura del cursore
+                        Appointment appointment = toAppointment(appointmentRecord);
+                        return new AppointmentEntry(appointment,
+                                appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_PATIENT_USERNAME],
+                                ContentDigest.of(appointment));
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() {
+                // nessuna risorsa da rilasciare
+            }
+        };
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByPatient(String patientUsername) throws DAOException {
+        return toAppointments(appointmentTable.lookup(AppointmentDaoEmbeddedConstants.INDEX_PATIENT, patientUsername));
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByPsychologist(String psychologistUsername) throws DAOException {
+        // Prima i pazienti dello psicologo, poi i loro appuntamenti: entrambi tramite indice
+        List<Appointment> appointments = new ArrayList<>();
+        for (String[] patientRecord : PatientDaoEmbedded.patientTable.lookup(
+                PatientDaoEmbeddedConstants.INDEX_PSYCHOLOGIST, psychologistUsername)) {
+            appointments.addAll(retrieveAppointmentsByPatient(
+                    patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_USERNAME]));
+        }
+        return appointments;
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsByDate(LocalDate date) throws DAOException {
+        return toAppointments(appointmentTable.lookup(AppointmentDaoEmbeddedConstants.INDEX_DATE, date.format(DATE_FORMATTER)));
+    }
+
+    @Override
+    public List<Appointment> retrieveAppointmentsBetween(LocalDate from, LocalDate to) throws DAOException {
+        return toAppointments(appointmentTable.range(AppointmentDaoEmbeddedConstants.INDEX_DATE,
+                from.format(DATE_FORMATTER), to.format(DATE_FORMATTER)));
+    }
+
+    @Override
+    public List<Appointment> retrieveUnnotifiedAppointments(String patientUsername) throws DAOException {
+        return toAppointments(appointmentTable.lookup(AppointmentDaoEmbeddedConstants.INDEX_UNNOTIFIED, patientUsername));
+    }
+
+    @Override
+    public void updateAppointment(Appointment appointment, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentUpdated(appointment, originOf(origin));
+        recordChange(event);
+        boolean found = appointmentTable.update(String.valueOf(appointment.getId()), appointmentRecord -> {
+            appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_DATE] = appointment.getDate().format(DATE_FORMATTER);
+            appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_TIME] = appointment.getTime().format(TIME_FORMATTER);
+            appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_DESCRIPTION] = appointment.getDescription();
+            appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(appointment.isNotified());
+        });
+        if (!found) {
+            throw new DAOException(AppointmentDaoEmbeddedConstants.APPOINTMENT_NOT_FOUND + appointment.getId());
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void updateAppointmentNotificationStatus(int appointmentId, boolean notified) throws DAOException {
+        Appointment updatedAppointment = retrieveAppointment(appointmentId);
+        if (updatedAppointment == null) {
+            throw new DAOException(AppointmentDaoEmbeddedConstants.APPOINTMENT_NOT_FOUND + appointmentId);
+        }
+        updatedAppointment.setNotified(notified);
+        ChangeEvent event = new ChangeEvent.AppointmentUpdated(updatedAppointment, originOf(null));
+        recordChange(event);
+
+        boolean found = appointmentTable.update(String.valueOf(appointmentId), appointmentRecord ->
+                appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_NOTIFIED] = String.valueOf(notified));
+        if (!found) {
+            throw new DAOException(AppointmentDaoEmbeddedConstants.APPOINTMENT_NOT_FOUND + appointmentId);
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void updateAppointmentsNotificationStatus(List<Appointment> appointments) throws DAOException {
+        if (appointments == null || appointments.isEmpty()) {
+            return;
+        }
+        Map<String, Consumer<String[]>> appointmentsToUpdate = new LinkedHashMap<>();
+        // Solo gli appuntamenti esistenti: un ID sconosciuto produrrebbe un aggiornamento fantasma da replicare
+        Map<String, ChangeEvent> events = new LinkedHashMap<>();
+        for (Appointment app : appointments) {
+            String id = String.valueOf(app.getId());
+            String notified = String.valueOf(app.isNotified());
+            appointmentsToUpdate.put(id,
+                    appointmentRecord -> appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_NOTIFIED] = notified);
+            if (appointmentTable.contains(id)) {
+                events.put(id, new ChangeEvent.AppointmentUpdated(app, originOf(null)));
+            }
+        }
+        recordChanges(new ArrayList<>(events.values()));
+        Set<String> updated = appointmentTable.updateAll(appointmentsToUpdate); // una sola transazione
+
+        events.keySet().retainAll(updated);
+        notifyObserversBatch(new ArrayList<>(events.values()));
+    }
+
+    @Override
+    public void deleteAppointment(int appointmentId, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentDeleted(appointmentId, originOf(origin));
+        recordChange(event);
+        if (!appointmentTable.delete(String.valueOf(appointmentId))) {
+            throw new DAOException(AppointmentDaoEmbeddedConstants.APPOINTMENT_NOT_FOUND + appointmentId);
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public boolean appointmentExists(int appointmentId) throws DAOException {
+        return appointmentTable.contains(String.valueOf(appointmentId));
+    }
+
+    @Override
+    public int getNextAppointmentId() throws DAOException {
+        // Le chiavi numeriche sono ordinate: l'ultima è la più grande
+        List<String> keys = appointmentTable.keys();
+        return keys.isEmpty() ? 1 : Integer.parseInt(keys.get(keys.size() - 1)) + 1;
+    }
+
+    private List<Appointment> toAppointments(List<String[]> appointmentRecords) throws DAOException {
+        List<Appointment> appointments = new ArrayList<>(appointmentRecords.size());
+        for (String[] appointmentRecord : appointmentRecords) {
+            appointments.add(toAppointment(appointmentRecord));
+        }
+        return appointments;
+    }
+
+    private Appointment toAppointment(String[] appointmentRecord) throws DAOException {
+        try {
+            int id = Integer.parseInt(appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_ID]);
+            LocalDate date = LocalDate.parse(appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_DATE], DATE_FORMATTER);
+            LocalTime time = LocalTime.parse(appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_TIME], TIME_FORMATTER);
+            String description = appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_DESCRIPTION];
+            boolean notified = Boolean.parseBoolean(appointmentRecord[AppointmentDaoEmbeddedConstants.APPOINTMENT_INDEX_NOTIFIED]);
+            return new Appointment(id, date, time, description, notified);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new DAOException("Error converting embedded record to Appointment: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package it.uniroma2.mindharbor.dao.embedded;
+
+import it.uniroma2.mindharbor.beans.PatientBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.PatientDao;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.dao.embedded.constants.PatientDaoEmbeddedConstants;
+import it.uniroma2.mindharbor.dao.embedded.constants.UserDaoEmbeddedConstants;
+import it.uniroma2.mindharbor.dao.embedded.engine.EmbeddedStore;
+import it.uniroma2.mindharbor.dao.embedded.engine.EmbeddedTable;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PatientDaoEmbedded extends AbstractObservableDao implements PatientDao {
+
+    static final EmbeddedTable patientTable = EmbeddedTable.of(EmbeddedStore.getDefault(),
+            PatientDaoEmbeddedConstants.TABLE_NAME, PatientDaoEmbeddedConstants.PATIENT_INDEX_USERNAME, false);
+
+    static {
+        // I pazienti senza psicologo assegnato non entrano nell'indice
+        patientTable.addIndex(PatientDaoEmbeddedConstants.INDEX_PSYCHOLOGIST, patientRecord -> {
+            String psychologist = patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_PSYCHOLOGIST];
+            return psychologist == null || psychologist.isEmpty() ? null : psychologist;
+        });
+    }
+
+    public PatientDaoEmbedded() {
+        super(PersistenceType.EMBEDDED);
+    }
+
+    @Override
+    public void savePatient(PatientBean patient, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientInserted(patient, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.EMBEDDED);
+        // Rendi l'operazione robusta per la sincronizzazione
+        try {
+            userDao.saveUser(patient, origin);
+        } catch (DAOException e) {
+            if (!e.getMessage().contains(UserDaoEmbeddedConstants.USER_EXIST)) {
+                throw e;
+            }
+            // Se l'utente esiste già, va bene, la sincronizzazione può procedere.
+        }
+
+        patientTable.insert(toPatientRecord(patient));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void savePatients(List<PatientBean> patients, Origin origin) throws DAOException {
+        // Come per il singolo inserimento, gli utenti già presenti vengono riutilizzati
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.EMBEDDED);
+        List<PatientBean> newUsers = new ArrayList<>();
+        List<String[]> patientRecords = new ArrayList<>(patients.size());
+        List<ChangeEvent> events = new ArrayList<>(patients.size());
+        for (PatientBean patient : patients) {
+            if (!userDao.isUsernameTaken(patient.getUsername())) {
+                newUsers.add(patient);
+            }
+            patientRecords.add(toPatientRecord(patient));
+            events.add(new ChangeEvent.PatientInserted(patient, originOf(origin)));
+        }
+        recordChanges(events);
+        userDao.saveUsers(newUsers, origin);
+
+        patientTable.insertAll(patientRecords);
+        notifyObserversBatch(events);
+    }
+
+    private String[] toPatientRecord(PatientBean patient) {
+        String[] patientRecord = new String[PatientDaoEmbeddedConstants.COLUMNS];
+        patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_USERNAME] = patient.getUsername();
+        patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_BIRTHDATE] = patient.getBirthDate().toString();
+        // Quando si crea un paziente, non ha ancora uno psicologo assegnato
+        patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_PSYCHOLOGIST] = "";
+        return patientRecord;
+    }
+
+    @Override
+    public Patient retrievePatient(String username) throws DAOException {
+        String[] patientRecord = patientTable.get(username);
+        return patientRecord == null ? null : toPatient(patientRecord);
+    }
+
+    @Override
+    public List<Patient> retrieveAllPatients() throws DAOException {
+        return toPatients(patientTable.rows());
+    }
+
+    @Override
+    public List<Patient> retrievePatientsByPsychologist(Psychologist psychologist) throws DAOException {
+        return toPatients(patientTable.lookup(PatientDaoEmbeddedConstants.INDEX_PSYCHOLOGIST, psychologist.getUsername()));
+    }
+
+    @Override
+    public void updatePatient(Patient patient, UserBean user, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientUpdated(patient, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.EMBEDDED);
+        userDao.updateUser(user, origin);
+
+        boolean found = patientTable.update(patient.getUsername(), patientRecord -> {
+            patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_BIRTHDATE] = patient.getBirthday().toString();
+            patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_PSYCHOLOGIST] = patient.getPsychologist();
+        });
+        if (!found) {
+            throw new DAOException(PatientDaoEmbeddedConstants.PATIENT_NOT_FOUND + patient.getUsername());
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void deletePatient(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientDeleted(username, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.EMBEDDED);
+        try {
+            userDao.deleteUser(username, origin);
+        } catch (DAOException e) {
+            if (!e.getMessage().contains(UserDaoEmbeddedConstants.USER_NOT_FOUND)) {
+                throw e;
+            }
+        }
+
+        if (!patientTable.delete(username)) {
+            throw new DAOException(PatientDaoEmbeddedConstants.PATIENT_NOT_FOUND + username);
+        }
+        notifyObservers(event);
+    }
+
+    private List<Patient> toPatients(List<String[]> patientRecords) throws DAOException {
+        List<Patient> patients = new ArrayList<>(patientRecords.size());
+        for (String[] patientRecord : patientRecords) {
+            Patient patient = toPatient(patientRecord);
+            if (patient != null) {
+                patients.add(patient);
+            }
+        }
+        return patients;
+    }
+
+    /**
+     * Joins a patient record with the record of its user.
+     *
+     * @return The patient, or {@code null} if its user does not exist
+     */
+    private static Patient toPatient(String[] patientRecord) throws DAOException {
+        String[] userInfo = UserDaoEmbedded.userTable.get(patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_USERNAME]);
+        if (userInfo == null) {
+            return null; // Se l'utente non esiste, il paziente non può esistere
+        }
+        return new Patient(
+                userInfo[UserDaoEmbeddedConstants.USER_INDEX_USERNAME],
+                userInfo[UserDaoEmbeddedConstants.USER_INDEX_FIRST_NAME],
+                userInfo[UserDaoEmbeddedConstants.USER_INDEX_LAST_NAME],
+                userInfo[UserDaoEmbeddedConstants.USER_INDEX_GENDER],
+                patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_PSYCHOLOGIST],
+                LocalDate.parse(patientRecord[PatientDaoEmbeddedConstants.PATIENT_INDEX_BIRTHDATE])
+        );
+    }
+}
@@ -0,0 +1,159 @@
+package it.uniroma2.mindharbor.dao.embedded;
+
+import it.uniroma2.mindharbor.beans.PsychologistBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.PatientDao;
+import it.uniroma2.mindharbor.dao.PsychologistDao;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.dao.embedded.constants.PsychologistDaoEmbeddedConstants;
+import it.uniroma2.mindharbor.dao.embedded.constants.UserDaoEmbeddedConstants;
+import it.uniroma2.mindharbor.dao.embedded.engine.EmbeddedStore;
+import it.uniroma2.mindharbor.dao.embedded.engine.EmbeddedTable;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PsychologistDaoEmbedded extends AbstractObservableDao implements PsychologistDao {
+
+    private static final EmbeddedTable psychologistTable = EmbeddedTable.of(EmbeddedStore.getDefault(),
+            PsychologistDaoEmbeddedConstants.TABLE_NAME, PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_USERNAME, false);
+
+    public PsychologistDaoEmbedded() {
+        super(PersistenceType.EMBEDDED);
+    }
+
+    @Override
+    public void savePsychologist(PsychologistBean psychologist, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistInserted(psychologist, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.EMBEDDED);
+        // Rendi l'operazione robusta per la sincronizzazione
+        try {
+            userDao.saveUser(psychologist, origin);
+        } catch (DAOException e) {
+            if (!e.getMessage().contains(UserDaoEmbeddedConstants.USER_EXIST)) {
+                throw e;
+            }
+            // Se l'utente esiste già, va bene.
+        }
+
+        psychologistTable.insert(toPsychologistRecord(psychologist));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void savePsychologists(List<PsychologistBean> psychologists, Origin origin) throws DAOException {
+        // Come per il singolo inserimento, gli utenti già presenti vengono riutilizzati
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.EMBEDDED);
+        List<PsychologistBean> newUsers = new ArrayList<>();
+        List<String[]> psychologistRecords = new ArrayList<>(psychologists.size());
+        List<ChangeEvent> events = new ArrayList<>(psychologists.size());
+        for (PsychologistBean psychologist : psychologists) {
+            if (!userDao.isUsernameTaken(psychologist.getUsername())) {
+                newUsers.add(psychologist);
+            }
+            psychologistRecords.add(toPsychologistRecord(psychologist));
+            events.add(new ChangeEvent.PsychologistInserted(psychologist, originOf(origin)));
+        }
+        recordChanges(events);
+        userDao.saveUsers(newUsers, origin);
+
+        psychologistTable.insertAll(psychologistRecords);
+        notifyObserversBatch(events);
+    }
+
+    private String[] toPsychologistRecord(PsychologistBean psychologist) {
+        String[] psychologistRecord = new String[PsychologistDaoEmbeddedConstants.COLUMNS];
+        psychologistRecord[PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_USERNAME] = psychologist.getUsername();
+        psychologistRecord[PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_OFFICE] = psychologist.getOffice();
+        psychologistRecord[PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_HOURLY_COST] = String.valueOf(psychologist.getHourlyCost());
+        return psychologistRecord;
+    }
+
+    @Override
+    public Psychologist retrievePsychologist(String username) throws DAOException {
+        String[] psychologistRecord = psychologistTable.get(username);
+        return psychologistRecord == null ? null : toPsychologist(psychologistRecord);
+    }
+
+    @Override
+    public List<Psychologist> retrieveAllPsychologists() throws DAOException {
+        List<Psychologist> psychologists = new ArrayList<>();
+        for (String[] psychologistRecord : psychologistTable.rows()) {
+            Psychologist psychologist = toPsychologist(psychologistRecord);
+            if (psychologist != null) {
+                psychologists.add(psychologist);
+            }
+        }
+        return psychologists;
+    }
+
+    @Override
+    public void updatePsychologist(Psychologist psychologist, UserBean bean, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistUpdated(psychologist, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.EMBEDDED);
+        userDao.updateUser(bean, origin);
+
+        boolean found = psychologistTable.update(psychologist.getUsername(), psychologistRecord -> {
+            psychologistRecord[PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_OFFICE] = psychologist.getOffice();
+            psychologistRecord[PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_HOURLY_COST] = String.valueOf(psychologist.getHourlyCost());
+        });
+        if (!found) {
+            throw new DAOException(PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_NOT_FOUND + psychologist.getUsername());
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void deletePsychologist(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistDeleted(username, originOf(origin));
+        recordChange(event);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.EMBEDDED);
+        try {
+            userDao.deleteUser(username, origin);
+        } catch (DAOException e) {
+            if (!e.getMessage().contains(UserDaoEmbeddedConstants.USER_NOT_FOUND)) {
+                throw e;
+            }
+        }
+
+        if (!psychologistTable.delete(username)) {
+            throw new DAOException(PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_NOT_FOUND + username);
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public List<Patient> getPatients(Psychologist psychologist) throws DAOException {
+        PatientDao patientDao = DaoFactoryFacade.getInstance().getPatientDao(PersistenceType.EMBEDDED);
+        return patientDao.retrievePatientsByPsychologist(psychologist);
+    }
+
+    /**
+     * Joins a psychologist record with its user; psychologists without a user are skipped by the callers.
+     */
+    private static Psychologist toPsychologist(String[] psychologistRecord) throws DAOException {
+        String[] userInfo = UserDaoEmbedded.userTable.get(
+                psychologistRecord[PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_USERNAME]);
+        if (userInfo == null) {
+            return null;
+        }
+        return new Psychologist(
+                userInfo[UserDaoEmbeddedConstants.USER_INDEX_USERNAME],
+                userInfo[UserDaoEmbeddedConstants.USER_INDEX_FIRST_NAME],
+                userInfo[UserDaoEmbeddedConstants.USER_INDEX_LAST_NAME],
+                userInfo[UserDaoEmbeddedConstants.USER_INDEX_GENDER],
+                psychologistRecord[PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_OFFICE],
+                psychologistRecord[PsychologistDaoEmbeddedConstants.PSYCHOLOGIST_INDEX_HOURLY_COST]
+        );
+    }
+}
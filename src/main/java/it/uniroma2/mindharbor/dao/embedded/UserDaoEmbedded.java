@@ -0,0 +1,119 @@
+package it.uniroma2.mindharbor.dao.embedded;
+
+import it.uniroma2.mindharbor.beans.CredentialsBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.dao.embedded.constants.UserDaoEmbeddedConstants;
+import it.uniroma2.mindharbor.dao.embedded.engine.EmbeddedStore;
+import it.uniroma2.mindharbor.dao.embedded.engine.EmbeddedTable;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.PasswordUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserDaoEmbedded extends AbstractObservableDao implements UserDao {
+
+    static final EmbeddedTable userTable = EmbeddedTable.of(EmbeddedStore.getDefault(),
+            UserDaoEmbeddedConstants.TABLE_NAME, UserDaoEmbeddedConstants.USER_INDEX_USERNAME, false);
+
+    public UserDaoEmbedded() {
+        super(PersistenceType.EMBEDDED);
+    }
+
+    @Override
+    public void validateUser(CredentialsBean credentials) throws DAOException {
+        String[] userRecord = retrieveUser(credentials.getUsername());
+        if (userRecord != null) {
+            String storedHashedPassword = userRecord[UserDaoEmbeddedConstants.USER_INDEX_PASSWORD];
+            if (PasswordUtils.checkPassword(credentials.getPassword(), storedHashedPassword)) {
+                credentials.setType(userRecord[UserDaoEmbeddedConstants.USER_INDEX_TYPE]);
+            }
+        }
+    }
+
+    @Override
+    public void saveUser(UserBean user, Origin origin) throws DAOException {
+        if (isUsernameTaken(user.getUsername())) {
+            throw new DAOException(UserDaoEmbeddedConstants.USER_EXIST);
+        }
+        ChangeEvent event = new ChangeEvent.UserInserted(user, originOf(origin));
+        recordChange(event);
+        userTable.insert(toUserRecord(user));
+        notifyObservers(event);
+    }
+
+    @Override
+    public void saveUsers(List<? extends UserBean> users, Origin origin) throws DAOException {
+        List<String[]> userRecords = new ArrayList<>(users.size());
+        List<ChangeEvent> events = new ArrayList<>(users.size());
+        for (UserBean user : users) {
+            if (isUsernameTaken(user.getUsername())) {
+                throw new DAOException(UserDaoEmbeddedConstants.USER_EXIST);
+            }
+            userRecords.add(toUserRecord(user));
+            events.add(new ChangeEvent.UserInserted(user, originOf(origin)));
+        }
+        recordChanges(events);
+        userTable.insertAll(userRecords); // una sola transazione per tutto il blocco
+        notifyObserversBatch(events);
+    }
+
+    private String[] toUserRecord(UserBean user) {
+        String[] userRecord = new String[UserDaoEmbeddedConstants.COLUMNS];
+        userRecord[UserDaoEmbeddedConstants.USER_INDEX_USERNAME] = user.getUsername();
+        userRecord[UserDaoEmbeddedConstants.USER_INDEX_PASSWORD] = PasswordUtils.hashPassword(user.getPassword());
+        userRecord[UserDaoEmbeddedConstants.USER_INDEX_FIRST_NAME] = user.getName();
+        userRecord[UserDaoEmbeddedConstants.USER_INDEX_LAST_NAME] = user.getSurname();
+        userRecord[UserDaoEmbeddedConstants.USER_INDEX_TYPE] = user.getType();
+        userRecord[UserDaoEmbeddedConstants.USER_INDEX_GENDER] = user.getGender();
+        return userRecord;
+    }
+
+    @Override
+    public String[] retrieveUser(String username) throws DAOException {
+        return userTable.get(username);
+    }
+
+    @Override
+    public boolean isUsernameTaken(String username) throws DAOException {
+        return userTable.contains(username);
+    }
+
+    @Override
+    public List<String> retrieveAllUsernames() throws DAOException {
+        return userTable.keys();
+    }
+
+    @Override
+    public void updateUser(UserBean user, Origin origin) throws DAOException {
+        String hashedPassword = PasswordUtils.hashPassword(user.getPassword()); // Riapplica l'hash
+        ChangeEvent event = new ChangeEvent.UserUpdated(user, originOf(origin));
+        recordChange(event);
+        boolean found = userTable.update(user.getUsername(), userRecord -> {
+            userRecord[UserDaoEmbeddedConstants.USER_INDEX_PASSWORD] = hashedPassword;
+            userRecord[UserDaoEmbeddedConstants.USER_INDEX_FIRST_NAME] = user.getName();
+            userRecord[UserDaoEmbeddedConstants.USER_INDEX_LAST_NAME] = user.getSurname();
+            userRecord[UserDaoEmbeddedConstants.USER_INDEX_TYPE] = user.getType();
+            userRecord[UserDaoEmbeddedConstants.USER_INDEX_GENDER] = user.getGender();
+        });
+        if (!found) {
+            throw new DAOException(UserDaoEmbeddedConstants.USER_NOT_FOUND + user.getUsername());
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void deleteUser(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.UserDeleted(username, originOf(origin));
+        recordChange(event);
+        if (!userTable.delete(username)) {
+            throw new DAOException(UserDaoEmbeddedConstants.USER_NOT_FOUND + username);
+        }
+        notifyObservers(event);
+    }
+}
@@ -0,0 +1,62 @@
+package it.uniroma2.mindharbor.dao.embedded.constants;
+
+/**
+ * Constants used by AppointmentDaoEmbedded for managing the embedded storage of appointments.
+ */
+public class AppointmentDaoEmbeddedConstants {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private AppointmentDaoEmbeddedConstants() {
+        // Prevent instantiation
+    }
+
+    /**
+     * The name of the appointment table in the embedded store.
+     */
+    public static final String TABLE_NAME = "appointment";
+    /**
+     * Number of columns of an appointment record.
+     */
+    public static final int COLUMNS = 6;
+    /**
+     * Index of the appointment ID column, the primary key.
+     */
+    public static final int APPOINTMENT_INDEX_ID = 0;
+    /**
+     * Index of the date column, in ISO format.
+     */
+    public static final int APPOINTMENT_INDEX_DATE = 1;
+    /**
+     * Index of the time column, in ISO format.
+     */
+    public static final int APPOINTMENT_INDEX_TIME = 2;
+    /**
+     * Index of the description column.
+     */
+    public static final int APPOINTMENT_INDEX_DESCRIPTION = 3;
+    /**
+     * Index of the notified status column.
+     */
+    public static final int APPOINTMENT_INDEX_NOTIFIED = 4;
+    /**
+     * Index of the patient username column.
+     */
+    public static final int APPOINTMENT_INDEX_PATIENT_USERNAME = 5;
+    /**
+     * Name of the secondary index on the patient username.
+     */
+    public static final String INDEX_PATIENT = "patient";
+    /**
+     * Name of the secondary index on the date.
+     */
+    public static final String INDEX_DATE = "date";
+    /**
+     * Name of the secondary index of the appointments not notified yet, on the patient username.
+     */
+    public static final String INDEX_UNNOTIFIED = "unnotified";
+    /**
+     * Message prefix used when an appointment cannot be found.
+     */
+    public static final String APPOINTMENT_NOT_FOUND = "Appointment not found: ";
+}
@@ -0,0 +1,42 @@
+package it.uniroma2.mindharbor.dao.embedded.constants;
+
+/**
+ * Constants used by PatientDaoEmbedded for managing the embedded storage of patients.
+ */
+public class PatientDaoEmbeddedConstants {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private PatientDaoEmbeddedConstants() {
+        // Prevent instantiation
+    }
+
+    /**
+     * The name of the patient table in the embedded store.
+     */
+    public static final String TABLE_NAME = "patient";
+    /**
+     * Number of columns of a patient record.
+     */
+    public static final int COLUMNS = 3;
+    /**
+     * Index of the username column, the primary key.
+     */
+    public static final int PATIENT_INDEX_USERNAME = 0;
+    /**
+     * Index of the birthdate column, in ISO format.
+     */
+    public static final int PATIENT_INDEX_BIRTHDATE = 1;
+    /**
+     * Index of the assigned psychologist column, empty if no psychologist is assigned.
+     */
+    public static final int PATIENT_INDEX_PSYCHOLOGIST = 2;
+    /**
+     * Name of the secondary index on the assigned psychologist.
+     */
+    public static final String INDEX_PSYCHOLOGIST = "psychologist";
+    /**
+     * Message prefix used when a patient cannot be found.
+     */
+    public static final String PATIENT_NOT_FOUND = "Patient not found: ";
+}
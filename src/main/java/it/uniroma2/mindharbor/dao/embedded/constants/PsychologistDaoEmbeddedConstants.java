@@ -0,0 +1,38 @@
+package it.uniroma2.mindharbor.dao.embedded.constants;
+
+/**
+ * Constants used by PsychologistDaoEmbedded for managing the embedded storage of psychologists.
+ */
+public class PsychologistDaoEmbeddedConstants {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private PsychologistDaoEmbeddedConstants() {
+        // Prevent instantiation
+    }
+
+    /**
+     * The name of the psychologist table in the embedded store.
+     */
+    public static final String TABLE_NAME = "psychologist";
+    /**
+     * Number of columns of a psychologist record.
+     */
+    public static final int COLUMNS = 3;
+    /**
+     * Index of the username column, the primary key.
+     */
+    public static final int PSYCHOLOGIST_INDEX_USERNAME = 0;
+    /**
+     * Index of the office location column.
+     */
+    public static final int PSYCHOLOGIST_INDEX_OFFICE = 1;
+    /**
+     * Index of the hourly cost column.
+     */
+    public static final int PSYCHOLOGIST_INDEX_HOURLY_COST = 2;
+    /**
+     * Message prefix used when a psychologist cannot be found.
+     */
+    public static final String PSYCHOLOGIST_NOT_FOUND = "Psychologist not found: ";
+}
@@ -0,0 +1,56 @@
+package it.uniroma2.mindharbor.dao.embedded.constants;
+
+/**
+ * Constants used by UserDaoEmbedded for managing the embedded storage of users.
+ * The records have the same layout as the CSV records, so that {@code retrieveUser}
+ * returns the same layout on every persistence type.
+ */
+public class UserDaoEmbeddedConstants {
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private UserDaoEmbeddedConstants() {
+        // Prevent instantiation
+    }
+
+    /**
+     * The name of the user table in the embedded store.
+     */
+    public static final String TABLE_NAME = "user";
+    /**
+     * Number of columns of a user record.
+     */
+    public static final int COLUMNS = 6;
+    /**
+     * Index of the username column, the primary key.
+     */
+    public static final int USER_INDEX_USERNAME = 0;
+    /**
+     * Index of the password hash column.
+     */
+    public static final int USER_INDEX_PASSWORD = 1;
+    /**
+     * Index of the first name column.
+     */
+    public static final int USER_INDEX_FIRST_NAME = 2;
+    /**
+     * Index of the last name column.
+     */
+    public static final int USER_INDEX_LAST_NAME = 3;
+    /**
+     * Index of the user type column.
+     */
+    public static final int USER_INDEX_TYPE = 4;
+    /**
+     * Index of the gender column.
+     */
+    public static final int USER_INDEX_GENDER = 5;
+    /**
+     * Message used when saving a user whose username is already taken.
+     */
+    public static final String USER_EXIST = "User already exists";
+    /**
+     * Message prefix used when a user cannot be found.
+     */
+    public static final String USER_NOT_FOUND = "User not found: ";
+}
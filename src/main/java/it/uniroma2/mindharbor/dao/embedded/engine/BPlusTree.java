@@ -0,0 +1,216 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A B+tree of an {@link EmbeddedStore}, mapping byte keys to byte values in unsigned lexicographic order.
+ * <p>
+ * The root page of each tree is recorded by name in the header of the store. Lookups descend from the
+ * root to a leaf, reading one node per level through the {@link BufferPool}; range scans then follow
+ * the chain of leaves. Inserting into a full node splits it and adds a separator to the parent, up to
+ * a new root when the root itself splits.
+ * </p>
+ * <p>
+ * Removing a key does not merge nodes: a leaf that becomes empty stays in the chain until keys are
+ * inserted into it again. Workloads that delete most of a tree leave it sparser than needed, but never
+ * taller, and lookups stay logarithmic in the number of keys ever stored.
+ * </p>
+ * <p>
+ * Trees are not thread-safe on their own: they are used inside the read and write operations of
+ * their store, which hold its lock.
+ * </p>
+ */
+final class BPlusTree {
+
+    /**
+     * Receives the entries of a range scan.
+     */
+    @FunctionalInterface
+    interface EntryVisitor {
+        /**
+         * @return {@code false} to stop the scan.
+         */
+        boolean visit(byte[] key, byte[] value) throws DAOException;
+    }
+
+    private record Split(byte[] separator, int right) {
+    }
+
+    private final EmbeddedStore store;
+    private final String name;
+
+    BPlusTree(EmbeddedStore store, String name) {
+        this.store = store;
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * @return The value of the key, or {@code null} if the key is absent.
+     */
+    byte[] get(byte[] key) throws DAOException {
+        int root = store.root(name);
+        if (root == Node.NO_PAGE) {
+            return null;
+        }
+        Node leaf = findLeaf(root, key);
+        int index = leaf.search(key);
+        return index >= 0 ? leaf.values.get(index) : null;
+    }
+
+    /**
+     * Inserts a key or replaces its value.
+     *
+     * @return The previous value, or {@code null} if the key was absent.
+     * @throws DAOException If the entry does not fit in a page or a node cannot be read.
+     */
+    byte[] put(byte[] key, byte[] value) throws DAOException {
+        if (Node.entrySize(key, value) > Node.MAX_ENTRY_SIZE) {
+            throw new DAOException(String.format(EmbeddedStore.ERR_ENTRY_TOO_LARGE, name));
+        }
+        int root = store.root(name);
+        if (root == Node.NO_PAGE) {
+            Node leaf = store.newNode(true);
+            leaf.keys.add(key);
+            leaf.values.add(value);
+            store.setRoot(name, leaf.pageId);
+            return null;
+        }
+        byte[][] previous = new byte[1][];
+        Split split = insert(store.pool().get(root), key, value, previous);
+        if (split != null) {
+            Node newRoot = store.newNode(false);
+            newRoot.children.add(root);
+            newRoot.keys.add(split.separator());
+            newRoot.children.add(split.right());
+            store.setRoot(name, newRoot.pageId);
+        }
+        return previous[0];
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @return The removed value, or {@code null} if the key was absent.
+     */
+    byte[] remove(byte[] key) throws DAOException {
+        int root = store.root(name);
+        if (root == Node.NO_PAGE) {
+            return null;
+        }
+        Node leaf = findLeaf(root, key);
+        int index = leaf.search(key);
+        if (index < 0) {
+            return null;
+        }
+        leaf.keys.remove(index);
+        store.pool().markDirty(leaf);
+        return leaf.values.remove(index);
+    }
+
+    /**
+     * Visits the entries with keys between two bounds, in key order.
+     *
+     * @param from    The first key, inclusive, or {@code null} to start from the smallest key.
+     * @param to      The last key, exclusive, or {@code null} to go up to the largest key.
+     * @param visitor The visitor of the entries.
+     */
+    void scan(byte[] from, byte[] to, EntryVisitor visitor) throws DAOException {
+        int root = store.root(name);
+        if (root == Node.NO_PAGE) {
+            return;
+        }
+        Node leaf;
+        int index;
+        if (from == null) {
+            leaf = store.pool().get(root);
+            while (!leaf.leaf) {
+                leaf = store.pool().get(leaf.children.get(0));
+            }
+            index = 0;
+        } else {
+            leaf = findLeaf(root, from);
+            index = leaf.search(from);
+            index = index >= 0 ? index : -index - 1;
+        }
+        while (true) {
+            for (; index < leaf.keys.size(); index++) {
+                byte[] key = leaf.keys.get(index);
+                if (to != null && Arrays.compareUnsigned(key, to) >= 0) {
+                    return;
+                }
+                if (!visitor.visit(key, leaf.values.get(index))) {
+                    return;
+                }
+            }
+            if (leaf.next == Node.NO_PAGE) {
+                return;
+            }
+            leaf = store.pool().get(leaf.next);
+            index = 0;
+        }
+    }
+
+    private Node findLeaf(int root, byte[] key) throws DAOException {
+        Node node = store.pool().get(root);
+        while (!node.leaf) {
+            node = store.pool().get(node.children.get(node.childIndex(key)));
+        }
+        return node;
+    }
+
+    private Split insert(Node node, byte[] key, byte[] value, byte[][] previous) throws DAOException {
+        if (node.leaf) {
+            int index = node.search(key);
+            if (index >= 0) {
+                previous[0] = node.values.set(index, value);
+            } else {
+                node.keys.add(-index - 1, key);
+                node.values.add(-index - 1, value);
+            }
+            store.pool().markDirty(node);
+            return node.overflows() ? splitLeaf(node) : null;
+        }
+        int childIndex = node.childIndex(key);
+        Split split = insert(store.pool().get(node.children.get(childIndex)), key, value, previous);
+        if (split == null) {
+            return null;
+        }
+        node.keys.add(childIndex, split.separator());
+        node.children.add(childIndex + 1, split.right());
+        store.pool().markDirty(node);
+        return node.overflows() ? splitInternal(node) : null;
+    }
+
+    private Split splitLeaf(Node left) throws DAOException {
+        int at = left.splitPoint();
+        Node right = store.newNode(true);
+        moveTail(left.keys, right.keys, at);
+        moveTail(left.values, right.values, at);
+        right.next = left.next;
+        left.next = right.pageId;
+        return new Split(right.keys.get(0), right.pageId);
+    }
+
+    private Split splitInternal(Node left) throws DAOException {
+        int at = left.splitPoint();
+        Node right = store.newNode(false);
+        byte[] separator = left.keys.get(at);
+        moveTail(left.keys, right.keys, at + 1);
+        left.keys.remove(at); // il separatore sale nel padre
+        moveTail(left.children, right.children, at + 1);
+        return new Split(separator, right.pageId);
+    }
+
+    private static <T> void moveTail(List<T> from, List<T> to, int at) {
+        List<T> tail = from.subList(at, from.size());
+        to.addAll(tail);
+        tail.clear();
+    }
+}
@@ -0,0 +1,106 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of the decoded {@link Node nodes} of a {@link PageFile}, with least-recently-used eviction.
+ * <p>
+ * Nodes changed by a write transaction are marked dirty and stay in the pool until the transaction
+ * {@link #markClean() commits} or {@link #discardDirty() rolls back}; they are never evicted. The pool
+ * is trimmed back to its capacity only {@link #evict() between operations}, so the nodes an operation is
+ * working on cannot be evicted under it, and the pool can temporarily exceed its capacity by the
+ * height of the trees.
+ * </p>
+ */
+final class BufferPool {
+
+    private final PageFile pageFile;
+    private final int capacity;
+    private final Map<Integer, Node> nodes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> dirty = new LinkedHashSet<>();
+
+    /**
+     * @param pageFile The file the nodes are read from.
+     * @param capacity The number of nodes kept in memory between operations.
+     */
+    BufferPool(PageFile pageFile, int capacity) {
+        this.pageFile = pageFile;
+        this.capacity = Math.max(capacity, 16);
+    }
+
+    /**
+     * Returns a node, reading it from the file if it is not cached.
+     *
+     * @param pageId The page of the node.
+     * @return The node.
+     * @throws DAOException If the page cannot be read or decoded.
+     */
+    synchronized Node get(int pageId) throws DAOException {
+        Node node = nodes.get(pageId);
+        if (node != null) {
+            return node;
+        }
+        node = Node.decode(pageId, pageFile.read(pageId));
+        nodes.put(pageId, node);
+        return node;
+    }
+
+    /**
+     * Registers a node changed or created by the current write transaction.
+     *
+     * @param node The node.
+     */
+    synchronized void markDirty(Node node) {
+        nodes.put(node.pageId, node);
+        dirty.add(node.pageId);
+    }
+
+    /**
+     * Encodes the dirty nodes, as the transaction is about to be committed.
+     *
+     * @return The page images to write, keyed by page number.
+     */
+    synchronized Map<Integer, ByteBuffer> dirtyPages() {
+        Map<Integer, ByteBuffer> pages = new LinkedHashMap<>();
+        for (Integer pageId : dirty) {
+            pages.put(pageId, nodes.get(pageId).encode());
+        }
+        return pages;
+    }
+
+    /**
+     * Marks the dirty nodes clean, once the transaction has been committed.
+     */
+    synchronized void markClean() {
+        dirty.clear();
+    }
+
+    /**
+     * Drops the nodes changed by a failed transaction; they are read again from the file on next access.
+     */
+    synchronized void discardDirty() {
+        for (Integer pageId : dirty) {
+            nodes.remove(pageId);
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Evicts the least recently used clean nodes until the pool is back within its capacity.
+     */
+    synchronized void evict() {
+        Iterator<Map.Entry<Integer, Node>> iterator = nodes.entrySet().iterator();
+        while (nodes.size() > capacity && iterator.hasNext()) {
+            if (!dirty.contains(iterator.next().getKey())) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encodings of the keys and records stored in the trees of an {@link EmbeddedStore}.
+ * <p>
+ * Keys are encoded so that their unsigned byte order is the natural order of the values: integers as
+ * four big-endian bytes with the sign bit flipped, strings as their UTF-8 bytes followed by the
+ * terminator {@code 00 01}, with any {@code 00} byte of the string escaped as {@code 00 FF}. The
+ * terminator makes a string key sort before every longer string it is a prefix of, and lets composite
+ * keys be built by concatenation.
+ * </p>
+ * <p>
+ * Records are the number of fields as a short, followed by each field as its length in bytes
+ * ({@code -1} for {@code null}) and its UTF-8 bytes.
+ * </p>
+ */
+final class Codec {
+
+    private Codec() {
+        /* no instance */
+    }
+
+    static byte[] ofInt(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(value ^ Integer.MIN_VALUE).array();
+    }
+
+    static byte[] ofString(String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream key = new ByteArrayOutputStream(utf8.length + 2);
+        for (byte b : utf8) {
+            key.write(b);
+            if (b == 0) {
+                key.write(0xFF);
+            }
+        }
+        key.write(0);
+        key.write(1);
+        return key.toByteArray();
+    }
+
+    static byte[] concat(byte[] first, byte[] second) {
+        byte[] key = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, key, first.length, second.length);
+        return key;
+    }
+
+    /**
+     * @return The smallest key greater than every key starting with the prefix, or {@code null} if there is none.
+     */
+    static byte[] prefixEnd(byte[] prefix) {
+        byte[] end = prefix.clone();
+        for (int i = end.length - 1; i >= 0; i--) {
+            if (end[i] != (byte) 0xFF) {
+                end[i]++;
+                return Arrays.copyOf(end, i + 1);
+            }
+        }
+        return null;
+    }
+
+    static byte[] ofRecord(String[] tableRecord) {
+        byte[][] fields = new byte[tableRecord.length][];
+        int size = Short.BYTES;
+        for (int i = 0; i < tableRecord.length; i++) {
+            fields[i] = tableRecord[i] == null ? null : tableRecord[i].getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + (fields[i] == null ? 0 : fields[i].length);
+        }
+        ByteBuffer encoded = ByteBuffer.allocate(size).putShort((short) fields.length);
+        for (byte[] field : fields) {
+            if (field == null) {
+                encoded.putInt(-1);
+            } else {
+                encoded.putInt(field.length).put(field);
+            }
+        }
+        return encoded.array();
+    }
+
+    static String[] toRecord(byte[] encoded) throws DAOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            String[] tableRecord = new String[buffer.getShort()];
+            for (int i = 0; i < tableRecord.length; i++) {
+                int length = buffer.getInt();
+                if (length >= 0) {
+                    tableRecord[i] = new String(encoded, buffer.position(), length, StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + length);
+                }
+            }
+            return tableRecord;
+        } catch (RuntimeException e) {
+            throw new DAOException("Corrupted record in embedded store", e);
+        }
+    }
+}
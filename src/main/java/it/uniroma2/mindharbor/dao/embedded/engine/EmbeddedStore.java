@@ -0,0 +1,274 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embedded single-file storage engine backing the embedded Data Access Objects.
+ * <p>
+ * The store is one {@link PageFile} of fixed-size pages holding any number of named {@link BPlusTree
+ * B+trees}. Page 0 is the header: a magic number, the number of allocated pages and the root page of
+ * each tree. Pages are cached in a {@link BufferPool} of {@code embedded.bufferPool.pages} nodes with
+ * least-recently-used eviction, so the upper levels of the trees, which every lookup goes through,
+ * stay in memory while the file can be much larger than the pool.
+ * </p>
+ * <p>
+ * All the work is done inside {@link #read(Action)} and {@link #write(Action)} operations. Reads share
+ * the lock of the store; a write holds it exclusively and is a transaction: the pages it changed are
+ * committed together through the page journal when it returns, or dropped if it throws, so a write that
+ * updates a table and its secondary indexes is applied entirely or not at all. Commits are forced to
+ * the storage device unless {@code embedded.sync} is false.
+ * </p>
+ * <p>
+ * Stores are shared: {@link #of(File)} always returns the same instance for the same file. The file is
+ * opened lazily, on the first operation.
+ * </p>
+ */
+public class EmbeddedStore {
+
+    static final String ERR_ACCESS = "Cannot access embedded store file %s";
+    static final String ERR_ENTRY_TOO_LARGE = "Record too large for a page of the embedded tree %s";
+
+    private static final int MAGIC = 0x4D484442;
+    private static final int HEADER_PAGE = 0;
+    private static final boolean SYNC = AppConfig.getBoolean("embedded.sync", true);
+    private static final int POOL_PAGES = AppConfig.getInt("embedded.bufferPool.pages", 1024);
+    private static final String DEFAULT_FILE = AppConfig.getString("embedded.file", "db/embedded/mindharbor.db");
+    private static final Map<String, EmbeddedStore> stores = new ConcurrentHashMap<>();
+
+    /**
+     * Work performed on the trees of the store while holding its lock.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    interface Action<T> {
+        T run() throws DAOException;
+    }
+
+    private final File file;
+    private final PageFile pageFile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, BPlusTree> trees = new ConcurrentHashMap<>();
+    private Map<String, Integer> roots = new LinkedHashMap<>();
+    private Map<String, Integer> committedRoots;
+    private int pageCount;
+    private int committedPageCount;
+    private boolean headerDirty;
+    private BufferPool pool;
+    private volatile boolean opened;
+
+    /**
+     * Private constructor, stores are obtained through {@link #of(File)}.
+     */
+    private EmbeddedStore(File file) {
+        this.file = file;
+        this.pageFile = new PageFile(file, SYNC);
+    }
+
+    /**
+     * Returns the shared store kept in the given file, creating it if needed.
+     *
+     * @param file The file of the store.
+     * @return The store bound to the given file.
+     */
+    public static EmbeddedStore of(File file) {
+        return stores.computeIfAbsent(file.getAbsolutePath(), path -> new EmbeddedStore(file));
+    }
+
+    /**
+     * @return The store configured with {@code embedded.file}.
+     */
+    public static EmbeddedStore getDefault() {
+        return of(new File(DEFAULT_FILE));
+    }
+
+    /**
+     * Runs an operation that only reads the trees, sharing the lock with other readers.
+     */
+    <T> T read(Action<T> action) throws DAOException {
+        lockForRead();
+        try {
+            return action.run();
+        } finally {
+            if (!lock.isWriteLockedByCurrentThread()) {
+                pool.evict(); // mai durante una scrittura: i suoi nodi devono restare quelli in uso
+            }
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs an operation that changes the trees as a transaction, holding the lock exclusively.
+     * Operations must not be nested.
+     */
+    <T> T write(Action<T> action) throws DAOException {
+        lockForWrite();
+        try {
+            T result;
+            try {
+                result = action.run();
+            } catch (DAOException | RuntimeException e) {
+                rollback();
+                throw e;
+            }
+            commit();
+            pool.evict();
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The tree with the given name; it is created by the first insertion.
+     */
+    BPlusTree tree(String name) {
+        return trees.computeIfAbsent(name, treeName -> new BPlusTree(this, treeName));
+    }
+
+    /**
+     * @return Whether a tree with the given name has ever been created in the file.
+     */
+    boolean hasTree(String name) {
+        return roots.containsKey(name);
+    }
+
+    /**
+     * Creates an empty tree, if it does not exist yet.
+     */
+    void createTree(String name) {
+        if (!hasTree(name)) {
+            setRoot(name, newNode(true).pageId);
+        }
+    }
+
+    int root(String name) {
+        return roots.getOrDefault(name, Node.NO_PAGE);
+    }
+
+    void setRoot(String name, int pageId) {
+        roots.put(name, pageId);
+        headerDirty = true;
+    }
+
+    Node newNode(boolean leaf) {
+        Node node = new Node(pageCount++, leaf);
+        headerDirty = true;
+        pool.markDirty(node);
+        return node;
+    }
+
+    BufferPool pool() {
+        return pool;
+    }
+
+    /**
+     * Acquires the read lock, opening the store first if needed.
+     */
+    private void lockForRead() throws DAOException {
+        if (!opened) {
+            lockForWrite();
+            lock.writeLock().unlock();
+        }
+        lock.readLock().lock();
+    }
+
+    /**
+     * Acquires the write lock, opening the store first if needed.
+     */
+    private void lockForWrite() throws DAOException {
+        lock.writeLock().lock();
+        if (!opened) {
+            try {
+                open();
+            } catch (DAOException | RuntimeException e) {
+                lock.writeLock().unlock();
+                throw e;
+            }
+        }
+    }
+
+    private void open() throws DAOException {
+        int pages = pageFile.open();
+        pool = new BufferPool(pageFile, POOL_PAGES);
+        roots = new LinkedHashMap<>();
+        if (pages == 0) {
+            pageCount = 1; // la pagina 0 è l'intestazione
+            headerDirty = true;
+            pageFile.commit(Map.of(HEADER_PAGE, encodeHeader()));
+        } else {
+            decodeHeader(pageFile.read(HEADER_PAGE));
+        }
+        headerDirty = false;
+        committedRoots = new LinkedHashMap<>(roots);
+        committedPageCount = pageCount;
+        opened = true;
+    }
+
+    private void commit() throws DAOException {
+        Map<Integer, ByteBuffer> pages = pool.dirtyPages();
+        if (headerDirty) {
+            pages.put(HEADER_PAGE, encodeHeader());
+        }
+        try {
+            pageFile.commit(pages);
+        } catch (DAOException e) {
+            // Il file potrebbe essere stato scritto in parte: lo stato viene riletto, dal journal se completo
+            pageFile.close();
+            opened = false;
+            throw e;
+        }
+        pool.markClean();
+        headerDirty = false;
+        committedRoots = new LinkedHashMap<>(roots);
+        committedPageCount = pageCount;
+    }
+
+    private void rollback() {
+        pool.discardDirty();
+        roots = new LinkedHashMap<>(committedRoots);
+        pageCount = committedPageCount;
+        headerDirty = false;
+    }
+
+    private ByteBuffer encodeHeader() throws DAOException {
+        ByteBuffer page = ByteBuffer.allocate(PageFile.PAGE_SIZE);
+        page.putInt(MAGIC).putInt(pageCount).putInt(roots.size());
+        for (Map.Entry<String, Integer> root : roots.entrySet()) {
+            byte[] name = root.getKey().getBytes(StandardCharsets.UTF_8);
+            if (page.remaining() < Short.BYTES + name.length + Integer.BYTES) {
+                throw new DAOException("Too many trees in embedded store " + file);
+            }
+            page.putShort((short) name.length).put(name).putInt(root.getValue());
+        }
+        page.rewind();
+        return page;
+    }
+
+    private void decodeHeader(ByteBuffer page) throws DAOException {
+        if (page.getInt() != MAGIC) {
+            throw new DAOException(file + " is not an embedded store file");
+        }
+        pageCount = page.getInt();
+        int count = page.getInt();
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[page.getShort()];
+            page.get(name);
+            roots.put(new String(name, StandardCharsets.UTF_8), page.getInt());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddedStore{" + file + "}";
+    }
+}
@@ -0,0 +1,350 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A table of records stored in an {@link EmbeddedStore}, with the same record model as the CSV tables.
+ * <p>
+ * The records live in a B+tree on the primary key column, encoded as a number or as a string, so
+ * point lookups read one page per level of the tree and {@link #rows()} returns the records in key
+ * order. Secondary indexes registered with {@link #addIndex(String, Function)} are B+trees of their
+ * own, whose keys are the indexed value followed by the primary key: {@link #lookup(String, String)}
+ * and {@link #range(String, String, String)} scan the matching index entries and fetch the records
+ * by primary key, instead of reading the whole table.
+ * </p>
+ * <p>
+ * Every mutation is one write transaction of the store, covering the records and all the indexes.
+ * Tables are shared: {@link #of(EmbeddedStore, String, int, boolean)} always returns the same
+ * instance for the same store and name. Records handed out by this class are decoded copies;
+ * callers are free to modify them.
+ * </p>
+ */
+public class EmbeddedTable {
+
+    /**
+     * Message prefix used when inserting a record whose primary key is already present.
+     */
+    public static final String DUPLICATE_KEY = "Duplicate key in embedded table: ";
+
+    private static final Map<String, EmbeddedTable> tables = new ConcurrentHashMap<>();
+
+    private record Index(BPlusTree tree, Function<String[], String> extractor) {
+    }
+
+    private final EmbeddedStore store;
+    private final String name;
+    private final int keyIndex;
+    private final boolean numericKey;
+    private final BPlusTree primary;
+    private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+    private volatile boolean indexesReady;
+
+    /**
+     * Private constructor, tables are obtained through {@link #of(EmbeddedStore, String, int, boolean)}.
+     */
+    private EmbeddedTable(EmbeddedStore store, String name, int keyIndex, boolean numericKey) {
+        this.store = store;
+        this.name = name;
+        this.keyIndex = keyIndex;
+        this.numericKey = numericKey;
+        this.primary = store.tree(name);
+    }
+
+    /**
+     * Returns the shared table with the given name, creating it if needed.
+     *
+     * @param store      The store holding the table.
+     * @param name       The name of the table.
+     * @param keyIndex   The column index of the primary key.
+     * @param numericKey Whether the primary key is an integer, to be ordered numerically.
+     * @return The table.
+     */
+    public static EmbeddedTable of(EmbeddedStore store, String name, int keyIndex, boolean numericKey) {
+        return tables.computeIfAbsent(store + "/" + name, id -> new EmbeddedTable(store, name, keyIndex, numericKey));
+    }
+
+    /**
+     * Registers a secondary index on the table. Registering an index name twice has no effect,
+     * so DAOs sharing the same table can declare the indexes they need independently. An index
+     * missing from the file is built from the records on the first operation on the table.
+     *
+     * @param indexName The name of the index.
+     * @param extractor The function computing the indexed value of a record; records for which it
+     *                  returns {@code null} are not indexed.
+     */
+    public void addIndex(String indexName, Function<String[], String> extractor) {
+        if (indexes.putIfAbsent(indexName, new Index(store.tree(name + "#" + indexName), extractor)) == null) {
+            indexesReady = false;
+        }
+    }
+
+    /**
+     * @param key The primary key.
+     * @return {@code true} if a record with the key exists.
+     * @throws DAOException If the store cannot be read.
+     */
+    public boolean contains(String key) throws DAOException {
+        ensureIndexes();
+        byte[] encodedKey = primaryKey(key);
+        return store.read(() -> primary.get(encodedKey) != null);
+    }
+
+    /**
+     * @param key The primary key.
+     * @return The record, or {@code null} if there is none.
+     * @throws DAOException If the store cannot be read.
+     */
+    public String[] get(String key) throws DAOException {
+        ensureIndexes();
+        byte[] encodedKey = primaryKey(key);
+        return store.read(() -> {
+            byte[] encoded = primary.get(encodedKey);
+            return encoded == null ? null : Codec.toRecord(encoded);
+        });
+    }
+
+    /**
+     * @return All the records, in primary key order.
+     * @throws DAOException If the store cannot be read.
+     */
+    public List<String[]> rows() throws DAOException {
+        ensureIndexes();
+        return store.read(() -> {
+            List<String[]> rows = new ArrayList<>();
+            primary.scan(null, null, (key, value) -> rows.add(Codec.toRecord(value)));
+            return rows;
+        });
+    }
+
+    /**
+     * @return The primary keys of all the records, in key order.
+     * @throws DAOException If the store cannot be read.
+     */
+    public List<String> keys() throws DAOException {
+        List<String[]> rows = rows();
+        List<String> keys = new ArrayList<>(rows.size());
+        for (String[] tableRecord : rows) {
+            keys.add(tableRecord[keyIndex]);
+        }
+        return keys;
+    }
+
+    /**
+     * Retrieves the records whose indexed value equals the given one.
+     *
+     * @param indexName The name of the index to use.
+     * @param value     The value to look up.
+     * @return The matching records, in primary key order, possibly empty.
+     * @throws DAOException If the store cannot be read.
+     */
+    public List<String[]> lookup(String indexName, String value) throws DAOException {
+        byte[] prefix = Codec.ofString(value);
+        return scanIndex(indexName, prefix, Codec.prefixEnd(prefix));
+    }
+
+    /**
+     * Retrieves the records whose indexed value lies between two bounds, inclusive, ordered by that value.
+     *
+     * @param indexName The name of the index to use.
+     * @param from      The lower bound, or {@code null} for no lower bound.
+     * @param to        The upper bound, or {@code null} for no upper bound.
+     * @return The matching records, possibly empty.
+     * @throws DAOException If the store cannot be read.
+     */
+    public List<String[]> range(String indexName, String from, String to) throws DAOException {
+        return scanIndex(indexName, from == null ? null : Codec.ofString(from),
+                to == null ? null : Codec.prefixEnd(Codec.ofString(to)));
+    }
+
+    /**
+     * Inserts a new record.
+     *
+     * @param tableRecord The record to insert.
+     * @throws DAOException If a record with the same key exists or the store cannot be written.
+     */
+    public void insert(String[] tableRecord) throws DAOException {
+        insertAll(Collections.singletonList(tableRecord));
+    }
+
+    /**
+     * Inserts several records in a single transaction; no record is inserted if one of the keys is present.
+     *
+     * @param tableRecords The records to insert.
+     * @throws DAOException If a key is already present or the store cannot be written.
+     */
+    public void insertAll(List<String[]> tableRecords) throws DAOException {
+        if (tableRecords.isEmpty()) {
+            return;
+        }
+        ensureIndexes();
+        Map<String, byte[]> keys = new LinkedHashMap<>();
+        for (String[] tableRecord : tableRecords) {
+            if (keys.put(tableRecord[keyIndex], primaryKey(tableRecord[keyIndex])) != null) {
+                throw new DAOException(DUPLICATE_KEY + tableRecord[keyIndex]);
+            }
+        }
+        store.write(() -> {
+            for (String[] tableRecord : tableRecords) {
+                byte[] key = keys.get(tableRecord[keyIndex]);
+                if (primary.put(key, Codec.ofRecord(tableRecord)) != null) {
+                    throw new DAOException(DUPLICATE_KEY + tableRecord[keyIndex]); // annulla l'intera transazione
+                }
+                addToIndexes(tableRecord, key);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Updates the record with the given key by applying a mutator to a copy of it.
+     *
+     * @param key     The primary key of the record to update.
+     * @param mutator The function that modifies the record's columns in place; the key must not change.
+     * @return {@code true} if the record was found and updated, {@code false} otherwise.
+     * @throws DAOException If the store cannot be written.
+     */
+    public boolean update(String key, Consumer<String[]> mutator) throws DAOException {
+        return !updateAll(Map.of(key, mutator)).isEmpty();
+    }
+
+    /**
+     * Updates several records in a single transaction. Keys that are not present in the table are ignored.
+     *
+     * @param mutators The mutators to apply, keyed by primary key.
+     * @return The keys of the records that were updated.
+     * @throws DAOException If the store cannot be written.
+     */
+    public Set<String> updateAll(Map<String, Consumer<String[]>> mutators) throws DAOException {
+        ensureIndexes();
+        return store.write(() -> {
+            Set<String> updated = new LinkedHashSet<>();
+            for (Map.Entry<String, Consumer<String[]>> mutator : mutators.entrySet()) {
+                byte[] key = primaryKey(mutator.getKey());
+                byte[] previous = primary.get(key);
+                if (previous != null) {
+                    String[] oldRecord = Codec.toRecord(previous);
+                    String[] newRecord = oldRecord.clone();
+                    mutator.getValue().accept(newRecord);
+                    primary.put(key, Codec.ofRecord(newRecord));
+                    removeFromIndexes(oldRecord, key);
+                    addToIndexes(newRecord, key);
+                    updated.add(mutator.getKey());
+                }
+            }
+            return updated;
+        });
+    }
+
+    /**
+     * Deletes the record with the given key.
+     *
+     * @param key The primary key.
+     * @return {@code true} if the record was found and deleted.
+     * @throws DAOException If the store cannot be written.
+     */
+    public boolean delete(String key) throws DAOException {
+        ensureIndexes();
+        byte[] encodedKey = primaryKey(key);
+        return store.write(() -> {
+            byte[] previous = primary.remove(encodedKey);
+            if (previous == null) {
+                return false;
+            }
+            removeFromIndexes(Codec.toRecord(previous), encodedKey);
+            return true;
+        });
+    }
+
+    private List<String[]> scanIndex(String indexName, byte[] from, byte[] to) throws DAOException {
+        ensureIndexes();
+        Index index = indexes.get(indexName);
+        if (index == null) {
+            throw new IllegalArgumentException("No index " + indexName + " on embedded table " + name);
+        }
+        return store.read(() -> {
+            List<byte[]> keys = new ArrayList<>();
+            index.tree().scan(from, to, (indexKey, primaryKey) -> keys.add(primaryKey));
+            List<String[]> rows = new ArrayList<>(keys.size());
+            for (byte[] key : keys) {
+                byte[] encoded = primary.get(key);
+                if (encoded != null) {
+                    rows.add(Codec.toRecord(encoded));
+                }
+            }
+            return rows;
+        });
+    }
+
+    private void addToIndexes(String[] tableRecord, byte[] key) throws DAOException {
+        for (Index index : indexes.values()) {
+            String value = index.extractor().apply(tableRecord);
+            if (value != null) {
+                index.tree().put(Codec.concat(Codec.ofString(value), key), key);
+            }
+        }
+    }
+
+    private void removeFromIndexes(String[] tableRecord, byte[] key) throws DAOException {
+        for (Index index : indexes.values()) {
+            String value = index.extractor().apply(tableRecord);
+            if (value != null) {
+                index.tree().remove(Codec.concat(Codec.ofString(value), key));
+            }
+        }
+    }
+
+    /**
+     * Builds the registered indexes that are missing from the file, from the records of the table.
+     */
+    private void ensureIndexes() throws DAOException {
+        if (indexesReady) {
+            return;
+        }
+        store.write(() -> {
+            for (Map.Entry<String, Index> entry : indexes.entrySet()) {
+                BPlusTree tree = entry.getValue().tree();
+                if (!store.hasTree(tree.name())) {
+                    store.createTree(tree.name());
+                    List<byte[][]> records = new ArrayList<>();
+                    primary.scan(null, null, (key, value) -> records.add(new byte[][]{key, value}));
+                    Function<String[], String> extractor = entry.getValue().extractor();
+                    for (byte[][] stored : records) {
+                        String value = extractor.apply(Codec.toRecord(stored[1]));
+                        if (value != null) {
+                            tree.put(Codec.concat(Codec.ofString(value), stored[0]), stored[0]);
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+        indexesReady = true;
+    }
+
+    private byte[] primaryKey(String key) throws DAOException {
+        if (!numericKey) {
+            return Codec.ofString(key);
+        }
+        try {
+            return Codec.ofInt(Integer.parseInt(key));
+        } catch (NumberFormatException e) {
+            throw new DAOException("Invalid key " + key + " for embedded table " + name, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EmbeddedTable{" + name + "}";
+    }
+}
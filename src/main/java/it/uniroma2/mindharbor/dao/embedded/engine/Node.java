@@ -0,0 +1,161 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A node of a {@link BPlusTree}, stored in one page of the {@link PageFile}.
+ * <p>
+ * Leaves hold sorted keys with their values and the page of the next leaf, so range scans can follow
+ * the chain without going back to the parent. Internal nodes hold {@code n} separator keys and
+ * {@code n + 1} children: child {@code i} holds the keys between separator {@code i - 1}, inclusive,
+ * and separator {@code i}, exclusive.
+ * </p>
+ * <p>
+ * A page is laid out as a type byte, the number of entries as a short and a link (the next leaf, or
+ * the first child), followed by the entries: the length of the key as a short and its bytes, then
+ * either the length of the value and its bytes or the page of the child. Nodes are decoded once, when
+ * read into the {@link BufferPool}, and encoded again only when written back.
+ * </p>
+ */
+final class Node {
+
+    static final int NO_PAGE = -1;
+
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+    private static final int HEADER_SIZE = 1 + Short.BYTES + Integer.BYTES;
+
+    /**
+     * The largest entry accepted, so that splitting an overflowing node always yields two nodes that fit.
+     */
+    static final int MAX_ENTRY_SIZE = (PageFile.PAGE_SIZE - HEADER_SIZE) / 4;
+
+    final int pageId;
+    final boolean leaf;
+    final List<byte[]> keys = new ArrayList<>();
+    final List<byte[]> values;
+    final List<Integer> children;
+    int next = NO_PAGE;
+
+    Node(int pageId, boolean leaf) {
+        this.pageId = pageId;
+        this.leaf = leaf;
+        this.values = leaf ? new ArrayList<>() : null;
+        this.children = leaf ? null : new ArrayList<>();
+    }
+
+    /**
+     * Finds a key among the keys of the node.
+     *
+     * @return The index of the key, or {@code -(insertion point) - 1} as {@link java.util.Collections#binarySearch}.
+     */
+    int search(byte[] key) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(keys.get(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @return The index of the child of an internal node that may contain the key.
+     */
+    int childIndex(byte[] key) {
+        int index = search(key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    static int entrySize(byte[] key, byte[] value) {
+        return Short.BYTES + key.length + (value == null ? Integer.BYTES : Short.BYTES + value.length);
+    }
+
+    int encodedSize() {
+        int size = HEADER_SIZE;
+        for (int i = 0; i < keys.size(); i++) {
+            size += entrySize(keys.get(i), leaf ? values.get(i) : null);
+        }
+        return size;
+    }
+
+    boolean overflows() {
+        return encodedSize() > PageFile.PAGE_SIZE;
+    }
+
+    /**
+     * @return The index at which the node should be split so that both halves hold about the same bytes.
+     */
+    int splitPoint() {
+        int half = (encodedSize() - HEADER_SIZE) / 2;
+        int size = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            size += entrySize(keys.get(i), leaf ? values.get(i) : null);
+            if (size >= half) {
+                return Math.max(1, Math.min(i + 1, keys.size() - 1));
+            }
+        }
+        return keys.size() / 2;
+    }
+
+    ByteBuffer encode() {
+        ByteBuffer page = ByteBuffer.allocate(PageFile.PAGE_SIZE);
+        page.put(leaf ? LEAF : INTERNAL);
+        page.putShort((short) keys.size());
+        page.putInt(leaf ? next : children.get(0));
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            page.putShort((short) key.length).put(key);
+            if (leaf) {
+                byte[] value = values.get(i);
+                page.putShort((short) value.length).put(value);
+            } else {
+                page.putInt(children.get(i + 1));
+            }
+        }
+        page.rewind();
+        return page;
+    }
+
+    static Node decode(int pageId, ByteBuffer page) throws DAOException {
+        byte type = page.get();
+        if (type != LEAF && type != INTERNAL) {
+            throw new DAOException("Corrupted page " + pageId + " in embedded store");
+        }
+        Node node = new Node(pageId, type == LEAF);
+        int count = Short.toUnsignedInt(page.getShort());
+        int link = page.getInt();
+        if (node.leaf) {
+            node.next = link;
+        } else {
+            node.children.add(link);
+        }
+        for (int i = 0; i < count; i++) {
+            node.keys.add(bytes(page, Short.toUnsignedInt(page.getShort())));
+            if (node.leaf) {
+                node.values.add(bytes(page, Short.toUnsignedInt(page.getShort())));
+            } else {
+                node.children.add(page.getInt());
+            }
+        }
+        return node;
+    }
+
+    private static byte[] bytes(ByteBuffer page, int length) {
+        byte[] bytes = new byte[length];
+        page.get(bytes);
+        return bytes;
+    }
+}
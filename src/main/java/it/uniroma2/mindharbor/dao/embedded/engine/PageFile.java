@@ -0,0 +1,195 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The single file of an {@link EmbeddedStore}, read and written in fixed-size pages.
+ * <p>
+ * Pages are written only by {@link #commit(Map)}, which makes a set of page writes atomic: the new
+ * images are first appended to {@code <file>.journal} followed by a commit marker, then written in
+ * place, and the journal is cleared last. If the application stops while the pages are being written,
+ * the complete journal found at the next {@link #open()} is applied again; a journal without its
+ * marker belongs to a commit that never happened and is discarded. A B+tree split, which changes
+ * several pages, is therefore never seen half done.
+ * </p>
+ */
+final class PageFile {
+
+    /**
+     * The size of a page, in bytes.
+     */
+    static final int PAGE_SIZE = 8192;
+
+    private static final Logger logger = Logger.getLogger(PageFile.class.getName());
+    private static final int COMMIT_MARKER = 0x4D48434B;
+    private static final int JOURNAL_ENTRY_SIZE = Integer.BYTES + PAGE_SIZE;
+
+    private final File file;
+    private final File journal;
+    private final boolean forceSync;
+    private FileChannel channel;
+
+    /**
+     * @param file      The file of the store.
+     * @param forceSync Whether commits must be forced to the storage device before returning.
+     */
+    PageFile(File file, boolean forceSync) {
+        this.file = file;
+        this.journal = new File(file.getPath() + ".journal");
+        this.forceSync = forceSync;
+    }
+
+    /**
+     * Opens the file, completing the last commit if it was interrupted.
+     *
+     * @return The number of pages in the file.
+     * @throws DAOException If the file cannot be opened or recovered.
+     */
+    int open() throws DAOException {
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+            return (int) (channel.size() / PAGE_SIZE);
+        } catch (IOException e) {
+            throw new DAOException(String.format(EmbeddedStore.ERR_ACCESS, file), e);
+        }
+    }
+
+    /**
+     * Reads a page.
+     *
+     * @param pageId The page number.
+     * @return A buffer holding the page, positioned at its start.
+     * @throws DAOException If the page cannot be read.
+     */
+    ByteBuffer read(int pageId) throws DAOException {
+        ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+        try {
+            long position = (long) pageId * PAGE_SIZE;
+            while (page.hasRemaining()) {
+                if (channel.read(page, position + page.position()) < 0) {
+                    throw new IOException("Page " + pageId + " is beyond the end of the file");
+                }
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(EmbeddedStore.ERR_ACCESS, file), e);
+        }
+        page.flip();
+        return page;
+    }
+
+    /**
+     * Writes a set of pages atomically.
+     *
+     * @param pages The new images of the pages, keyed by page number.
+     * @throws DAOException If the pages cannot be written; a commit that reached the journal is completed
+     *                      at the next {@link #open()}, any other leaves the file as before the call.
+     */
+    void commit(Map<Integer, ByteBuffer> pages) throws DAOException {
+        if (pages.isEmpty()) {
+            return;
+        }
+        try (FileChannel log = FileChannel.open(journal.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer entry = ByteBuffer.allocate(JOURNAL_ENTRY_SIZE);
+            for (Map.Entry<Integer, ByteBuffer> page : pages.entrySet()) {
+                entry.clear();
+                entry.putInt(page.getKey()).put(page.getValue().duplicate()).flip();
+                writeFully(log, entry);
+            }
+            writeFully(log, ByteBuffer.allocate(2 * Integer.BYTES).putInt(pages.size()).putInt(COMMIT_MARKER).flip());
+            if (forceSync) {
+                log.force(false); // il journal deve essere durevole prima di toccare il file
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(EmbeddedStore.ERR_ACCESS, journal), e);
+        }
+        try {
+            writePages(pages);
+            clearJournal();
+        } catch (IOException e) {
+            // Il journal completo resta su disco e verrà riapplicato alla prossima apertura
+            throw new DAOException(String.format(EmbeddedStore.ERR_ACCESS, file), e);
+        }
+    }
+
+    /**
+     * Closes the file; it can be opened again with {@link #open()}.
+     */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing " + file, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        if (!journal.exists()) {
+            return;
+        }
+        try (FileChannel log = FileChannel.open(journal.toPath(), StandardOpenOption.READ)) {
+            long length = log.size();
+            if (length >= 2L * Integer.BYTES) {
+                ByteBuffer trailer = ByteBuffer.allocate(2 * Integer.BYTES);
+                log.read(trailer, length - trailer.capacity());
+                trailer.flip();
+                int count = trailer.getInt();
+                if (trailer.getInt() == COMMIT_MARKER && length == (long) count * JOURNAL_ENTRY_SIZE + trailer.capacity()) {
+                    logger.log(Level.WARNING, "Completing interrupted commit of {0} pages in {1}", new Object[]{count, file});
+                    Map<Integer, ByteBuffer> pages = new LinkedHashMap<>();
+                    ByteBuffer entry = ByteBuffer.allocate(JOURNAL_ENTRY_SIZE);
+                    for (int i = 0; i < count; i++) {
+                        entry.clear();
+                        log.read(entry, (long) i * JOURNAL_ENTRY_SIZE);
+                        entry.flip();
+                        int pageId = entry.getInt();
+                        pages.put(pageId, ByteBuffer.allocate(PAGE_SIZE).put(entry).flip());
+                    }
+                    writePages(pages);
+                }
+            }
+        }
+        clearJournal();
+    }
+
+    private void writePages(Map<Integer, ByteBuffer> pages) throws IOException {
+        for (Map.Entry<Integer, ByteBuffer> page : pages.entrySet()) {
+            ByteBuffer image = page.getValue().duplicate();
+            long position = (long) page.getKey() * PAGE_SIZE;
+            while (image.hasRemaining()) {
+                channel.write(image, position + image.position());
+            }
+        }
+        if (forceSync) {
+            channel.force(false);
+        }
+    }
+
+    private void clearJournal() throws IOException {
+        try (FileChannel log = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE)) {
+            log.truncate(0);
+        }
+    }
+
+    private static void writeFully(FileChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+}
@@ -2,23 +2,31 @@ package it.uniroma2.mindharbor.dao.mysql;
 
 import it.uniroma2.mindharbor.dao.AbstractObservableDao;
 import it.uniroma2.mindharbor.dao.AppointmentDao;
+import it.uniroma2.mindharbor.dao.AppointmentEntry;
 import it.uniroma2.mindharbor.dao.ConnectionFactory;
+import it.uniroma2.mindharbor.dao.DaoCursor;
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
+import it.uniroma2.mindharbor.dao.StatementCache;
+import it.uniroma2.mindharbor.dao.mysql.constants.AppointmentDaoMySqlConstants;
 import it.uniroma2.mindharbor.dao.mysql.constants.AppointmentDaoMySqlQueries;
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Appointment;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Date;
 import java.sql.Time;
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,33 +43,78 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
         }
     }
 
+    public AppointmentDaoMySql() {
+        super(PersistenceType.MYSQL);
+    }
+
     @Override
-    public void saveAppointment(Appointment appointment, String patientUsername) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.INSERT_APPOINTMENT)) {
-            stmt.setInt(1, appointment.getId());
-            stmt.setDate(2, Date.valueOf(appointment.getDate()));
-            stmt.setTime(3, Time.valueOf(appointment.getTime()));
-            stmt.setString(4, appointment.getDescription());
-            stmt.setBoolean(5, appointment.isNotified());
-            stmt.setString(6, patientUsername);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException("Failed to save appointment, no rows affected.");
+    public void saveAppointment(Appointment appointment, String patientUsername, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentInserted(appointment, patientUsername, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.INSERT_APPOINTMENT)) {
+                stmt.setInt(1, appointment.getId());
+                stmt.setDate(2, Date.valueOf(appointment.getDate()));
+                stmt.setTime(3, Time.valueOf(appointment.getTime()));
+                stmt.setString(4, appointment.getDescription());
+                stmt.setBoolean(5, appointment.isNotified());
+                stmt.setString(6, patientUsername);
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException("Failed to save appointment, no rows affected.");
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error saving appointment", e);
             throw new DAOException("Error saving appointment: " + e.getMessage(), e);
         }
-        Object[] syncPackage = {appointment, patientUsername};
-        notifyObservers(DaoOperation.INSERT, "Appointment", String.valueOf(appointment.getId()), syncPackage);
+        notifyObservers(event);
+    }
+
+    @Override
+    public void saveAppointments(List<Appointment> appointments, String patientUsername, Origin origin) throws DAOException {
+        if (appointments.isEmpty()) {
+            return;
+        }
+        List<ChangeEvent> events = new ArrayList<>(appointments.size());
+        // Con rewriteBatchedStatements il driver invia il batch come un'unica INSERT multi-riga
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.INSERT_APPOINTMENT)) {
+                for (Appointment appointment : appointments) {
+                    stmt.setInt(1, appointment.getId());
+                    stmt.setDate(2, Date.valueOf(appointment.getDate()));
+                    stmt.setTime(3, Time.valueOf(appointment.getTime()));
+                    stmt.setString(4, appointment.getDescription());
+                    stmt.setBoolean(5, appointment.isNotified());
+                    stmt.setString(6, patientUsername);
+                    stmt.addBatch();
+                    events.add(new ChangeEvent.AppointmentInserted(appointment, patientUsername, originOf(origin)));
+                }
+                stmt.executeBatch();
+                recordChanges(connection, events);
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error saving appointments", e);
+            throw new DAOException("Error saving appointments: " + e.getMessage(), e);
+        }
+        notifyObserversBatch(events);
     }
 
     @Override
     public Appointment retrieveAppointment(int appointmentId) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.SELECT_APPOINTMENT_BY_ID)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.SELECT_APPOINTMENT_BY_ID)) {
             stmt.setInt(1, appointmentId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -75,11 +128,24 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
         }
     }
 
+    @Override
+    public String retrieveAppointmentDigest(int appointmentId) throws DAOException {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.SELECT_APPOINTMENT_DIGEST_BY_ID)) {
+            stmt.setInt(1, appointmentId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(AppointmentDaoMySqlConstants.COLUMN_CONTENT_DIGEST) : null;
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error retrieving appointment digest: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public List<Appointment> retrieveAllAppointments() throws DAOException {
         List<Appointment> allAppointments = new ArrayList<>();
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.SELECT_ALL_APPOINTMENTS);
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.SELECT_ALL_APPOINTMENTS);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 allAppointments.add(extractAppointmentFromResultSet(rs));
@@ -91,11 +157,51 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
         return allAppointments;
     }
 
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentCursor() throws DAOException {
+        return openCursor(AppointmentDaoMySqlQueries.SELECT_ALL_APPOINTMENTS_ORDERED_BY_ID);
+    }
+
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentCursor(long sinceMillis) throws DAOException {
+        return openCursor(AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_MODIFIED_SINCE, new Timestamp(sinceMillis));
+    }
+
+    @Override
+    public DaoCursor<AppointmentEntry> openAppointmentRangeCursor(long fromId, long toId) throws DAOException {
+        return openCursor(AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_IN_RANGE, fromId, toId);
+    }
+
+    @Override
+    public Map<Integer, KeyRangeSummary> summarizeAppointments(long from, long to, int parts) throws DAOException {
+        try (Connection connection = getConnection()) {
+            return RangeSummaryQuery.run(connection, AppointmentDaoMySqlQueries.SUMMARIZE_APPOINTMENTS_IN_RANGE, from, to, parts);
+        } catch (SQLException e) {
+            throw new DAOException("Error summarizing appointments: " + e.getMessage(), e);
+        }
+    }
+
+    private DaoCursor<AppointmentEntry> openCursor(String query, Object... parameters) throws DAOException {
+        Connection connection = getConnection();
+        try {
+            PreparedStatement stmt = StatementCache.prepare(connection, query);
+            for (int i = 0; i < parameters.length; i++) {
+                stmt.setObject(i + 1, parameters[i]);
+            }
+            // Il driver MySQL legge le righe in streaming invece di caricare l'intero risultato in memoria
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            return new AppointmentCursor(connection, stmt, stmt.executeQuery());
+        } catch (SQLException e) {
+            closeQuietly(connection);
+            throw new DAOException(AppointmentDaoMySqlConstants.ERROR_READING_APPOINTMENT_CURSOR + e.getMessage(), e);
+        }
+    }
+
     @Override
     public List<Appointment> retrieveAppointmentsByPatient(String patientUsername) throws DAOException {
         List<Appointment> appointments = new ArrayList<>();
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_BY_PATIENT)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_BY_PATIENT)) {
             stmt.setString(1, patientUsername);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -112,8 +218,8 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
     @Override
     public List<Appointment> retrieveAppointmentsByPsychologist(String psychologistUsername) throws DAOException {
         List<Appointment> appointments = new ArrayList<>();
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_BY_PSYCHOLOGIST)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_BY_PSYCHOLOGIST)) {
             stmt.setString(1, psychologistUsername);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -130,8 +236,8 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
     @Override
     public List<Appointment> retrieveAppointmentsByDate(LocalDate date) throws DAOException {
         List<Appointment> appointments = new ArrayList<>();
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_BY_DATE)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_BY_DATE)) {
             stmt.setDate(1, Date.valueOf(date));
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -145,11 +251,30 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
         return appointments;
     }
 
+    @Override
+    public List<Appointment> retrieveAppointmentsBetween(LocalDate from, LocalDate to) throws DAOException {
+        List<Appointment> appointments = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.SELECT_APPOINTMENTS_BETWEEN_DATES)) {
+            stmt.setDate(1, Date.valueOf(from));
+            stmt.setDate(2, Date.valueOf(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    appointments.add(extractAppointmentFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving appointments between dates", e);
+            throw new DAOException("Error retrieving appointments between dates: " + e.getMessage(), e);
+        }
+        return appointments;
+    }
+
     @Override
     public List<Appointment> retrieveUnnotifiedAppointments(String patientUsername) throws DAOException {
         List<Appointment> appointments = new ArrayList<>();
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.SELECT_UNNOTIFIED_APPOINTMENTS)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.SELECT_UNNOTIFIED_APPOINTMENTS)) {
             stmt.setString(1, patientUsername);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -164,46 +289,65 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
     }
 
     @Override
-    public void updateAppointment(Appointment appointment) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.UPDATE_APPOINTMENT)) {
-            stmt.setDate(1, Date.valueOf(appointment.getDate()));
-            stmt.setTime(2, Time.valueOf(appointment.getTime()));
-            stmt.setString(3, appointment.getDescription());
-            stmt.setBoolean(4, appointment.isNotified());
-            stmt.setInt(5, appointment.getId());
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException("Appointment not found: " + appointment.getId());
+    public void updateAppointment(Appointment appointment, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentUpdated(appointment, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.UPDATE_APPOINTMENT)) {
+                stmt.setDate(1, Date.valueOf(appointment.getDate()));
+                stmt.setTime(2, Time.valueOf(appointment.getTime()));
+                stmt.setString(3, appointment.getDescription());
+                stmt.setBoolean(4, appointment.isNotified());
+                stmt.setInt(5, appointment.getId());
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException("Appointment not found: " + appointment.getId());
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error updating appointment", e);
             throw new DAOException("Error updating appointment: " + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.UPDATE, "Appointment", String.valueOf(appointment.getId()), appointment);
+        notifyObservers(event);
     }
 
     @Override
     public void updateAppointmentNotificationStatus(int appointmentId, boolean notified) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.UPDATE_APPOINTMENT_NOTIFICATION)) {
-            stmt.setBoolean(1, notified);
-            stmt.setInt(2, appointmentId);
+        // L'evento va scritto nell'outbox insieme all'aggiornamento, quindi l'appuntamento si legge prima
+        Appointment appointment = retrieveAppointment(appointmentId);
+        if (appointment == null) {
+            throw new DAOException("Appointment not found: " + appointmentId);
+        }
+        appointment.setNotified(notified);
+        ChangeEvent event = new ChangeEvent.AppointmentUpdated(appointment, originOf(null));
+
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.UPDATE_APPOINTMENT_NOTIFICATION)) {
+                stmt.setBoolean(1, notified);
+                stmt.setInt(2, appointmentId);
 
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException("Appointment not found: " + appointmentId);
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException("Appointment not found: " + appointmentId);
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error updating appointment notification status", e);
             throw new DAOException("Error updating appointment notification status: " + e.getMessage(), e);
         }
-
-        Appointment updatedAppointment = retrieveAppointment(appointmentId);
-        if (updatedAppointment != null) {
-            notifyObservers(DaoOperation.UPDATE, "Appointment", String.valueOf(appointmentId), updatedAppointment);
-        }
+        notifyObservers(event);
     }
 
     @Override
@@ -212,59 +356,65 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
             return;
         }
 
-        Connection connection = getConnection();
-        try {
+        List<ChangeEvent> events = new ArrayList<>(appointments.size());
+        // La transazione usa una connessione presa in prestito solo per questa operazione:
+        // l'auto-commit viene ripristinato dal pool quando la connessione viene restituita
+        try (Connection connection = getConnection()) {
             connection.setAutoCommit(false);
-            try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.UPDATE_APPOINTMENT_NOTIFICATION)) {
+            try (PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.UPDATE_APPOINTMENT_NOTIFICATION)) {
                 for (Appointment appointment : appointments) {
                     stmt.setBoolean(1, appointment.isNotified());
                     stmt.setInt(2, appointment.getId());
                     stmt.addBatch();
                 }
-                stmt.executeBatch();
+                int[] counts = stmt.executeBatch();
+                // Solo gli appuntamenti esistenti: un ID sconosciuto produrrebbe un aggiornamento fantasma da replicare
+                for (int i = 0; i < appointments.size(); i++) {
+                    if (i >= counts.length || counts[i] != 0) {
+                        events.add(new ChangeEvent.AppointmentUpdated(appointments.get(i), originOf(null)));
+                    }
+                }
+                recordChanges(connection, events);
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
             }
-            connection.commit();
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException rollbackEx) {
-                logger.log(Level.SEVERE, "Error rolling back transaction", rollbackEx);
-            }
             logger.log(Level.SEVERE, "Error updating appointment notification statuses", e);
             throw new DAOException("Error updating appointment notification statuses: " + e.getMessage(), e);
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException resetEx) {
-                logger.log(Level.WARNING, "Error resetting auto-commit", resetEx);
-            }
-        }
-
-        for (Appointment appointment : appointments) {
-            notifyObservers(DaoOperation.UPDATE, "Appointment", String.valueOf(appointment.getId()), appointment);
         }
+        notifyObserversBatch(events);
     }
 
     @Override
-    public void deleteAppointment(int appointmentId) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.DELETE_APPOINTMENT)) {
-            stmt.setInt(1, appointmentId);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException("Appointment not found: " + appointmentId);
+    public void deleteAppointment(int appointmentId, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.AppointmentDeleted(appointmentId, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.DELETE_APPOINTMENT)) {
+                stmt.setInt(1, appointmentId);
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException("Appointment not found: " + appointmentId);
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error deleting appointment", e);
             throw new DAOException("Error deleting appointment: " + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.DELETE, "Appointment", String.valueOf(appointmentId), null);
+        notifyObservers(event);
     }
 
     @Override
     public boolean appointmentExists(int appointmentId) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(AppointmentDaoMySqlQueries.CHECK_APPOINTMENT_EXISTS)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.CHECK_APPOINTMENT_EXISTS)) {
             stmt.setInt(1, appointmentId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -280,9 +430,9 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
 
     @Override
     public int getNextAppointmentId() throws DAOException {
-        Connection connection = getConnection();
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(AppointmentDaoMySqlQueries.GET_MAX_APPOINTMENT_ID)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, AppointmentDaoMySqlQueries.GET_MAX_APPOINTMENT_ID);
+             ResultSet rs = stmt.executeQuery()) {
             if (rs.next()) {
                 return rs.getInt(1) + 1;
             }
@@ -293,6 +443,22 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
         }
     }
 
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException rollbackEx) {
+            logger.log(Level.SEVERE, "Error rolling back transaction", rollbackEx);
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Error closing connection", e);
+        }
+    }
+
     private Appointment extractAppointmentFromResultSet(ResultSet rs) throws SQLException {
         int id = rs.getInt("id");
         LocalDate date = rs.getDate("date").toLocalDate();
@@ -301,4 +467,65 @@ public class AppointmentDaoMySql extends AbstractObservableDao implements Appoin
         boolean notified = rs.getBoolean("notified");
         return new Appointment(id, date, time, description, notified);
     }
-}
\ No newline at end of file
+
+    /**
+     * Cursor streaming the rows of a query; owns the connection it was opened on.
+     */
+    private class AppointmentCursor implements DaoCursor<AppointmentEntry> {
+        private final Connection connection;
+        private final PreparedStatement stmt;
+        private final ResultSet rs;
+
+        AppointmentCursor(Connection connection, PreparedStatement stmt, ResultSet rs) {
+            this.connection = connection;
+            this.stmt = stmt;
+            this.rs = rs;
+        }
+
+        @Override
+        public AppointmentEntry next() throws DAOException {
+            try {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new AppointmentEntry(extractAppointmentFromResultSet(rs),
+                        rs.getString(AppointmentDaoMySqlConstants.COLUMN_PATIENT_USERNAME),
+                        rs.getString(AppointmentDaoMySqlConstants.COLUMN_CONTENT_DIGEST));
+            } catch (SQLException e) {
+                throw new DAOException(AppointmentDaoMySqlConstants.ERROR_READING_APPOINTMENT_CURSOR + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() throws DAOException {
+            // Chiude risultato, statement e connessione in quest'ordine, anche se una chiusura fallisce
+            SQLException failure = null;
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                failure = suppress(failure, e);
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                failure = suppress(failure, e);
+            }
+            if (failure != null) {
+                throw new DAOException(AppointmentDaoMySqlConstants.ERROR_READING_APPOINTMENT_CURSOR + failure.getMessage(), failure);
+            }
+        }
+
+        private static SQLException suppress(SQLException failure, SQLException e) {
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+            return failure;
+        }
+    }
+}
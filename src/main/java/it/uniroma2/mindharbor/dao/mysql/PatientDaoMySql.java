@@ -4,6 +4,8 @@ import it.uniroma2.mindharbor.beans.PatientBean;
 import it.uniroma2.mindharbor.beans.UserBean;
 import it.uniroma2.mindharbor.dao.AbstractObservableDao;
 import it.uniroma2.mindharbor.dao.ConnectionFactory;
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
+import it.uniroma2.mindharbor.dao.StatementCache;
 import it.uniroma2.mindharbor.dao.PatientDao;
 import it.uniroma2.mindharbor.dao.UserDao;
 import it.uniroma2.mindharbor.dao.mysql.constants.PatientDaoMySqlQueries;
@@ -11,16 +13,21 @@ import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
 
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,32 +44,77 @@ public class PatientDaoMySql extends AbstractObservableDao implements PatientDao
         }
     }
 
+    public PatientDaoMySql() {
+        super(PersistenceType.MYSQL);
+    }
+
     @Override
-    public void savePatient(PatientBean patient) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        userDao.saveUser(patient);
-
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PatientDaoMySqlQueries.INSERT_PATIENT)) {
-            stmt.setString(1, patient.getUsername());
-            stmt.setDate(2, Date.valueOf(patient.getBirthDate()));
-            stmt.setString(3, null);
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException("Failed to save patient, no rows affected.");
+    public void savePatient(PatientBean patient, Origin origin) throws DAOException {
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.MYSQL);
+        userDao.saveUser(patient, origin);
+
+        ChangeEvent event = new ChangeEvent.PatientInserted(patient, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.INSERT_PATIENT)) {
+                stmt.setString(1, patient.getUsername());
+                stmt.setDate(2, Date.valueOf(patient.getBirthDate()));
+                stmt.setString(3, null);
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException("Failed to save patient, no rows affected.");
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error saving patient", e);
             throw new DAOException("Error saving patient: " + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.INSERT, "Patient", patient.getUsername(), patient);
+        notifyObservers(event);
+    }
+
+    @Override
+    public void savePatients(List<PatientBean> patients, Origin origin) throws DAOException {
+        if (patients.isEmpty()) {
+            return;
+        }
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.MYSQL);
+        userDao.saveUsers(patients, origin);
+
+        List<ChangeEvent> events = new ArrayList<>(patients.size());
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.INSERT_PATIENT)) {
+                for (PatientBean patient : patients) {
+                    stmt.setString(1, patient.getUsername());
+                    stmt.setDate(2, Date.valueOf(patient.getBirthDate()));
+                    stmt.setString(3, null);
+                    stmt.addBatch();
+                    events.add(new ChangeEvent.PatientInserted(patient, originOf(origin)));
+                }
+                stmt.executeBatch();
+                recordChanges(connection, events);
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error saving patients", e);
+            throw new DAOException("Error saving patients: " + e.getMessage(), e);
+        }
+        notifyObserversBatch(events);
     }
 
     @Override
     public Patient retrievePatient(String username) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PatientDaoMySqlQueries.SELECT_PATIENT_BY_USERNAME)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.SELECT_PATIENT_BY_USERNAME)) {
             stmt.setString(1, username);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -79,8 +131,8 @@ public class PatientDaoMySql extends AbstractObservableDao implements PatientDao
     @Override
     public List<Patient> retrieveAllPatients() throws DAOException {
         List<Patient> patients = new ArrayList<>();
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PatientDaoMySqlQueries.SELECT_ALL_PATIENTS);
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.SELECT_ALL_PATIENTS);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 patients.add(extractPatientFromResultSet(rs));
@@ -91,11 +143,89 @@ public class PatientDaoMySql extends AbstractObservableDao implements PatientDao
         return patients;
     }
 
+    @Override
+    public List<Patient> retrievePatientsModifiedSince(long sinceMillis) throws DAOException {
+        List<Patient> patients = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.SELECT_PATIENTS_MODIFIED_SINCE)) {
+            Timestamp since = new Timestamp(sinceMillis);
+            stmt.setTimestamp(1, since);
+            stmt.setTimestamp(2, since);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    patients.add(extractPatientFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error retrieving modified patients: " + e.getMessage(), e);
+        }
+        return patients;
+    }
+
+    @Override
+    public Map<String, String> retrievePatientDigestsModifiedSince(long sinceMillis) throws DAOException {
+        Map<String, String> digests = new HashMap<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.SELECT_PATIENT_DIGESTS_MODIFIED_SINCE)) {
+            Timestamp since = new Timestamp(sinceMillis);
+            stmt.setTimestamp(1, since);
+            stmt.setTimestamp(2, since);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    digests.put(rs.getString("Username"), rs.getString("content_digest"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error retrieving patient digests: " + e.getMessage(), e);
+        }
+        return digests;
+    }
+
+    @Override
+    public Map<String, String> retrievePatientDigestsInRange(long from, long to) throws DAOException {
+        Map<String, String> digests = new HashMap<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.SELECT_PATIENT_DIGESTS_IN_RANGE)) {
+            stmt.setLong(1, from);
+            stmt.setLong(2, to);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    digests.put(rs.getString("Username"), rs.getString("content_digest"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error retrieving patient digests: " + e.getMessage(), e);
+        }
+        return digests;
+    }
+
+    @Override
+    public Map<Integer, KeyRangeSummary> summarizePatients(long from, long to, int parts) throws DAOException {
+        try (Connection connection = getConnection()) {
+            return RangeSummaryQuery.run(connection, PatientDaoMySqlQueries.SUMMARIZE_PATIENTS_IN_RANGE, from, to, parts);
+        } catch (SQLException e) {
+            throw new DAOException("Error summarizing patients: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String retrievePatientDigest(String username) throws DAOException {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.SELECT_PATIENT_DIGEST_BY_USERNAME)) {
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString("content_digest") : null;
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error retrieving patient digest: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public List<Patient> retrievePatientsByPsychologist(Psychologist psychologist) throws DAOException {
         List<Patient> patients = new ArrayList<>();
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PatientDaoMySqlQueries.SELECT_PATIENTS_BY_PSYCHOLOGIST)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.SELECT_PATIENTS_BY_PSYCHOLOGIST)) {
             stmt.setString(1, psychologist.getUsername());
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
@@ -110,35 +240,51 @@ public class PatientDaoMySql extends AbstractObservableDao implements PatientDao
     }
 
     @Override
-    public void updatePatient(Patient patient, UserBean user) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        userDao.updateUser(user);
-
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PatientDaoMySqlQueries.UPDATE_PATIENT)) {
-            stmt.setDate(1, Date.valueOf(patient.getBirthday()));
-            stmt.setString(2, patient.getPsychologist());
-            stmt.setString(3, patient.getUsername());
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException("Patient not found: " + patient.getUsername());
+    public void updatePatient(Patient patient, UserBean user, Origin origin) throws DAOException {
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.MYSQL);
+        userDao.updateUser(user, origin);
+
+        ChangeEvent event = new ChangeEvent.PatientUpdated(patient, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.UPDATE_PATIENT)) {
+                stmt.setDate(1, Date.valueOf(patient.getBirthday()));
+                stmt.setString(2, patient.getPsychologist());
+                stmt.setString(3, patient.getUsername());
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException("Patient not found: " + patient.getUsername());
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error updating patient", e);
             throw new DAOException("Error updating patient: " + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.UPDATE, "Patient", patient.getUsername(), patient);
+        notifyObservers(event);
     }
 
     @Override
-    public void deletePatient(String username) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PatientDaoMySqlQueries.DELETE_PATIENT)) {
-            stmt.setString(1, username);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException("Patient not found: " + username);
+    public void deletePatient(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PatientDeleted(username, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, PatientDaoMySqlQueries.DELETE_PATIENT)) {
+                stmt.setString(1, username);
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException("Patient not found: " + username);
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             logger.log(Level.SEVERE, "Error deleting patient", e);
@@ -146,10 +292,10 @@ public class PatientDaoMySql extends AbstractObservableDao implements PatientDao
         }
 
         // Delete the associated user record
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        userDao.deleteUser(username);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.MYSQL);
+        userDao.deleteUser(username, origin);
 
-        notifyObservers(DaoOperation.DELETE, "Patient", username, null);
+        notifyObservers(event);
     }
 
     private Patient extractPatientFromResultSet(ResultSet rs) throws SQLException {
@@ -161,4 +307,12 @@ public class PatientDaoMySql extends AbstractObservableDao implements PatientDao
         LocalDate birthDate = rs.getDate("BirthDate").toLocalDate();
         return new Patient(username, firstName, lastName, gender, psychologist, birthDate);
     }
+
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException rollbackEx) {
+            logger.log(Level.SEVERE, "Error rolling back transaction", rollbackEx);
+        }
+    }
 }
\ No newline at end of file
@@ -4,6 +4,8 @@ import it.uniroma2.mindharbor.beans.PsychologistBean;
 import it.uniroma2.mindharbor.beans.UserBean;
 import it.uniroma2.mindharbor.dao.AbstractObservableDao;
 import it.uniroma2.mindharbor.dao.ConnectionFactory;
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
+import it.uniroma2.mindharbor.dao.StatementCache;
 import it.uniroma2.mindharbor.dao.PatientDao;
 import it.uniroma2.mindharbor.dao.PsychologistDao;
 import it.uniroma2.mindharbor.dao.UserDao;
@@ -13,14 +15,19 @@ import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,31 +43,75 @@ public class PsychologistDaoMySql extends AbstractObservableDao implements Psych
         }
     }
 
+    public PsychologistDaoMySql() {
+        super(PersistenceType.MYSQL);
+    }
+
+    @Override
+    public void savePsychologist(PsychologistBean psychologist, Origin origin) throws DAOException {
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.MYSQL);
+        userDao.saveUser(psychologist, origin);
+
+        ChangeEvent event = new ChangeEvent.PsychologistInserted(psychologist, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.INSERT_PSYCHOLOGIST)) {
+                stmt.setString(1, psychologist.getUsername());
+                stmt.setString(2, psychologist.getOffice());
+                stmt.setDouble(3, psychologist.getHourlyCost());
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException(PsychologistDaoMySqlConstants.FAILED_TO_SAVE_PSYCHOLOGIST);
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DAOException(PsychologistDaoMySqlConstants.ERROR_SAVING_PSYCHOLOGIST + e.getMessage(), e);
+        }
+        notifyObservers(event);
+    }
+
     @Override
-    public void savePsychologist(PsychologistBean psychologist) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        userDao.saveUser(psychologist);
-
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PsychologistDaoMySqlQueries.INSERT_PSYCHOLOGIST)) {
-            stmt.setString(1, psychologist.getUsername());
-            stmt.setString(2, psychologist.getOffice());
-            stmt.setDouble(3, psychologist.getHourlyCost());
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException(PsychologistDaoMySqlConstants.FAILED_TO_SAVE_PSYCHOLOGIST);
+    public void savePsychologists(List<PsychologistBean> psychologists, Origin origin) throws DAOException {
+        if (psychologists.isEmpty()) {
+            return;
+        }
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.MYSQL);
+        userDao.saveUsers(psychologists, origin);
+
+        List<ChangeEvent> events = new ArrayList<>(psychologists.size());
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.INSERT_PSYCHOLOGIST)) {
+                for (PsychologistBean psychologist : psychologists) {
+                    stmt.setString(1, psychologist.getUsername());
+                    stmt.setString(2, psychologist.getOffice());
+                    stmt.setDouble(3, psychologist.getHourlyCost());
+                    stmt.addBatch();
+                    events.add(new ChangeEvent.PsychologistInserted(psychologist, originOf(origin)));
+                }
+                stmt.executeBatch();
+                recordChanges(connection, events);
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             throw new DAOException(PsychologistDaoMySqlConstants.ERROR_SAVING_PSYCHOLOGIST + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.INSERT, "Psychologist", psychologist.getUsername(), psychologist);
+        notifyObserversBatch(events);
     }
 
     @Override
     public Psychologist retrievePsychologist(String username) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PsychologistDaoMySqlQueries.SELECT_PSYCHOLOGIST_BY_USERNAME)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.SELECT_PSYCHOLOGIST_BY_USERNAME)) {
             stmt.setString(1, username);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -76,8 +127,8 @@ public class PsychologistDaoMySql extends AbstractObservableDao implements Psych
     @Override
     public List<Psychologist> retrieveAllPsychologists() throws DAOException {
         List<Psychologist> psychologists = new ArrayList<>();
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PsychologistDaoMySqlQueries.SELECT_ALL_PSYCHOLOGISTS);
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.SELECT_ALL_PSYCHOLOGISTS);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 psychologists.add(extractPsychologistFromResultSet(rs));
@@ -89,48 +140,142 @@ public class PsychologistDaoMySql extends AbstractObservableDao implements Psych
     }
 
     @Override
-    public void updatePsychologist(Psychologist psychologist, UserBean bean) throws DAOException {
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        userDao.updateUser(bean);
-
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PsychologistDaoMySqlQueries.UPDATE_PSYCHOLOGIST)) {
-            stmt.setString(1, psychologist.getOffice());
-            stmt.setString(2, psychologist.getHourlyCost());
-            stmt.setString(3, psychologist.getUsername());
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException(PsychologistDaoMySqlConstants.PSYCHOLOGIST_NOT_FOUND + psychologist.getUsername());
+    public List<Psychologist> retrievePsychologistsModifiedSince(long sinceMillis) throws DAOException {
+        List<Psychologist> psychologists = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.SELECT_PSYCHOLOGISTS_MODIFIED_SINCE)) {
+            Timestamp since = new Timestamp(sinceMillis);
+            stmt.setTimestamp(1, since);
+            stmt.setTimestamp(2, since);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    psychologists.add(extractPsychologistFromResultSet(rs));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error retrieving modified psychologists: " + e.getMessage(), e);
+        }
+        return psychologists;
+    }
+
+    @Override
+    public Map<String, String> retrievePsychologistDigestsModifiedSince(long sinceMillis) throws DAOException {
+        Map<String, String> digests = new HashMap<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.SELECT_PSYCHOLOGIST_DIGESTS_MODIFIED_SINCE)) {
+            Timestamp since = new Timestamp(sinceMillis);
+            stmt.setTimestamp(1, since);
+            stmt.setTimestamp(2, since);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    digests.put(rs.getString(PsychologistDaoMySqlConstants.COLUMN_USERNAME), rs.getString(PsychologistDaoMySqlConstants.COLUMN_CONTENT_DIGEST));
+                }
             }
         } catch (SQLException e) {
-            throw new DAOException(PsychologistDaoMySqlConstants.ERROR_UPDATING_PSYCHOLOGIST + e.getMessage(), e);
+            throw new DAOException("Error retrieving psychologist digests: " + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.UPDATE, "Psychologist", psychologist.getUsername(), psychologist);
+        return digests;
     }
 
     @Override
-    public void deletePsychologist(String username) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(PsychologistDaoMySqlQueries.DELETE_PSYCHOLOGIST)) {
+    public Map<String, String> retrievePsychologistDigestsInRange(long from, long to) throws DAOException {
+        Map<String, String> digests = new HashMap<>();
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.SELECT_PSYCHOLOGIST_DIGESTS_IN_RANGE)) {
+            stmt.setLong(1, from);
+            stmt.setLong(2, to);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    digests.put(rs.getString(PsychologistDaoMySqlConstants.COLUMN_USERNAME), rs.getString(PsychologistDaoMySqlConstants.COLUMN_CONTENT_DIGEST));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error retrieving psychologist digests: " + e.getMessage(), e);
+        }
+        return digests;
+    }
+
+    @Override
+    public Map<Integer, KeyRangeSummary> summarizePsychologists(long from, long to, int parts) throws DAOException {
+        try (Connection connection = getConnection()) {
+            return RangeSummaryQuery.run(connection, PsychologistDaoMySqlQueries.SUMMARIZE_PSYCHOLOGISTS_IN_RANGE, from, to, parts);
+        } catch (SQLException e) {
+            throw new DAOException("Error summarizing psychologists: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String retrievePsychologistDigest(String username) throws DAOException {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.SELECT_PSYCHOLOGIST_DIGEST_BY_USERNAME)) {
             stmt.setString(1, username);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException(PsychologistDaoMySqlConstants.PSYCHOLOGIST_NOT_FOUND + username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(PsychologistDaoMySqlConstants.COLUMN_CONTENT_DIGEST) : null;
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error retrieving psychologist digest: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void updatePsychologist(Psychologist psychologist, UserBean bean, Origin origin) throws DAOException {
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.MYSQL);
+        userDao.updateUser(bean, origin);
+
+        ChangeEvent event = new ChangeEvent.PsychologistUpdated(psychologist, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.UPDATE_PSYCHOLOGIST)) {
+                stmt.setString(1, psychologist.getOffice());
+                stmt.setString(2, psychologist.getHourlyCost());
+                stmt.setString(3, psychologist.getUsername());
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException(PsychologistDaoMySqlConstants.PSYCHOLOGIST_NOT_FOUND + psychologist.getUsername());
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DAOException(PsychologistDaoMySqlConstants.ERROR_UPDATING_PSYCHOLOGIST + e.getMessage(), e);
+        }
+        notifyObservers(event);
+    }
+
+    @Override
+    public void deletePsychologist(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.PsychologistDeleted(username, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, PsychologistDaoMySqlQueries.DELETE_PSYCHOLOGIST)) {
+                stmt.setString(1, username);
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException(PsychologistDaoMySqlConstants.PSYCHOLOGIST_NOT_FOUND + username);
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             throw new DAOException(PsychologistDaoMySqlConstants.ERROR_DELETING_PSYCHOLOGIST + e.getMessage(), e);
         }
 
-        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao();
-        userDao.deleteUser(username);
+        UserDao userDao = DaoFactoryFacade.getInstance().getUserDao(PersistenceType.MYSQL);
+        userDao.deleteUser(username, origin);
 
-        notifyObservers(DaoOperation.DELETE, "Psychologist", username, null);
+        notifyObservers(event);
     }
 
     @Override
     public List<Patient> getPatients(Psychologist psychologist) throws DAOException {
-        PatientDao patientDao = DaoFactoryFacade.getInstance().getPatientDao();
+        PatientDao patientDao = DaoFactoryFacade.getInstance().getPatientDao(PersistenceType.MYSQL);
         return patientDao.retrievePatientsByPsychologist(psychologist);
     }
 
@@ -143,4 +288,12 @@ public class PsychologistDaoMySql extends AbstractObservableDao implements Psych
         String hourlyCost = String.valueOf(rs.getDouble(PsychologistDaoMySqlConstants.COLUMN_HOURLY_COST));
         return new Psychologist(username, firstName, lastName, gender, office, hourlyCost);
     }
+
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException rollbackEx) {
+            logger.log(Level.SEVERE, "Error rolling back transaction", rollbackEx);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+package it.uniroma2.mindharbor.dao.mysql;
+
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
+import it.uniroma2.mindharbor.dao.StatementCache;
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the queries summarizing a key range of a table into parts of equal width.
+ * <p>
+ * The queries take as parameters the start of the range, the width of a part, the start and
+ * the end of the range, and return one row per non-empty part with its index, the number of rows
+ * and the hash of the part, so that the database computes the summaries without sending the rows.
+ * </p>
+ */
+final class RangeSummaryQuery {
+
+    private RangeSummaryQuery() {
+        /* no instance */
+    }
+
+    static Map<Integer, KeyRangeSummary> run(Connection connection, String query, long from, long to, int parts)
+            throws DAOException {
+        Map<Integer, KeyRangeSummary> summaries = new HashMap<>();
+        try (PreparedStatement stmt = StatementCache.prepare(connection, query)) {
+            stmt.setLong(1, from);
+            stmt.setLong(2, KeyRangeSummary.partWidth(from, to, parts));
+            stmt.setLong(3, from);
+            stmt.setLong(4, to);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    summaries.put(rs.getInt("part"), new KeyRangeSummary(rs.getLong("row_count"), rs.getString("range_hash")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error summarizing key range: " + e.getMessage(), e);
+        }
+        return summaries;
+    }
+}
@@ -4,11 +4,14 @@ import it.uniroma2.mindharbor.beans.CredentialsBean;
 import it.uniroma2.mindharbor.beans.UserBean;
 import it.uniroma2.mindharbor.dao.AbstractObservableDao;
 import it.uniroma2.mindharbor.dao.ConnectionFactory;
+import it.uniroma2.mindharbor.dao.StatementCache;
 import it.uniroma2.mindharbor.dao.UserDao;
 import it.uniroma2.mindharbor.dao.mysql.constants.UserDaoMySqlConstants;
 import it.uniroma2.mindharbor.dao.mysql.constants.UserDaoMySqlQueries;
 import it.uniroma2.mindharbor.exception.DAOException;
-import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
 import it.uniroma2.mindharbor.utilities.PasswordUtils;
 
 import java.sql.*;
@@ -30,6 +33,10 @@ public class UserDaoMySql extends AbstractObservableDao implements UserDao {
         }
     }
 
+    public UserDaoMySql() {
+        super(PersistenceType.MYSQL);
+    }
+
     @Override
     public void validateUser(CredentialsBean credentials) throws DAOException {
         String[] user = retrieveUser(credentials.getUsername());
@@ -43,35 +50,83 @@ public class UserDaoMySql extends AbstractObservableDao implements UserDao {
     }
 
     @Override
-    public void saveUser(UserBean user) throws DAOException {
+    public void saveUser(UserBean user, Origin origin) throws DAOException {
         if (isUsernameTaken(user.getUsername())) {
             throw new DAOException(UserDaoMySqlConstants.USERNAME_ALREADY_EXISTS + user.getUsername());
         }
 
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(UserDaoMySqlQueries.INSERT_USER)) {
-            String hashedPassword = PasswordUtils.hashPassword(user.getPassword());
-            stmt.setString(1, user.getUsername());
-            stmt.setString(2, hashedPassword);
-            stmt.setString(3, user.getName());
-            stmt.setString(4, user.getSurname());
-            stmt.setString(5, user.getType());
-            stmt.setString(6, user.getGender());
-
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException(UserDaoMySqlConstants.FAILED_TO_SAVE_USER);
+        String hashedPassword = PasswordUtils.hashPassword(user.getPassword());
+        ChangeEvent event = new ChangeEvent.UserInserted(user, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, UserDaoMySqlQueries.INSERT_USER)) {
+                stmt.setString(1, user.getUsername());
+                stmt.setString(2, hashedPassword);
+                stmt.setString(3, user.getName());
+                stmt.setString(4, user.getSurname());
+                stmt.setString(5, user.getType());
+                stmt.setString(6, user.getGender());
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException(UserDaoMySqlConstants.FAILED_TO_SAVE_USER);
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             throw new DAOException(UserDaoMySqlConstants.ERROR_SAVING_USER + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.INSERT, "User", user.getUsername(), user);
+        notifyObservers(event);
+    }
+
+    @Override
+    public void saveUsers(List<? extends UserBean> users, Origin origin) throws DAOException {
+        if (users.isEmpty()) {
+            return;
+        }
+        List<ChangeEvent> events = new ArrayList<>(users.size());
+        // Gli hash BCrypt si calcolano prima di prendere una connessione dal pool
+        List<String> passwords = new ArrayList<>(users.size());
+        for (UserBean user : users) {
+            passwords.add(user.getPassword());
+        }
+        List<String> hashes = PasswordUtils.hashPasswords(passwords);
+        // Un'unica transazione con inserimenti in batch: un username duplicato annulla l'intero blocco
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, UserDaoMySqlQueries.INSERT_USER)) {
+                for (int i = 0; i < users.size(); i++) {
+                    UserBean user = users.get(i);
+                    stmt.setString(1, user.getUsername());
+                    stmt.setString(2, hashes.get(i));
+                    stmt.setString(3, user.getName());
+                    stmt.setString(4, user.getSurname());
+                    stmt.setString(5, user.getType());
+                    stmt.setString(6, user.getGender());
+                    stmt.addBatch();
+                    events.add(new ChangeEvent.UserInserted(user, originOf(origin)));
+                }
+                stmt.executeBatch();
+                recordChanges(connection, events);
+                connection.commit();
+            } catch (SQLException e) {
+                rollback(connection);
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DAOException(UserDaoMySqlConstants.ERROR_SAVING_USER + e.getMessage(), e);
+        }
+        notifyObserversBatch(events);
     }
 
     @Override
     public String[] retrieveUser(String username) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(UserDaoMySqlQueries.SELECT_USER_BY_USERNAME)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, UserDaoMySqlQueries.SELECT_USER_BY_USERNAME)) {
             stmt.setString(1, username);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -93,8 +148,8 @@ public class UserDaoMySql extends AbstractObservableDao implements UserDao {
 
     @Override
     public boolean isUsernameTaken(String username) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(UserDaoMySqlQueries.CHECK_USERNAME_EXISTS)) {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, UserDaoMySqlQueries.CHECK_USERNAME_EXISTS)) {
             stmt.setString(1, username);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
@@ -108,50 +163,89 @@ public class UserDaoMySql extends AbstractObservableDao implements UserDao {
     }
 
     @Override
-    public void updateUser(UserBean user) throws DAOException {
+    public List<String> retrieveAllUsernames() throws DAOException {
+        try (Connection connection = getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, UserDaoMySqlQueries.SELECT_ALL_USERNAMES);
+             ResultSet rs = stmt.executeQuery()) {
+            List<String> usernames = new ArrayList<>();
+            while (rs.next()) {
+                usernames.add(rs.getString(UserDaoMySqlConstants.COLUMN_USERNAME));
+            }
+            return usernames;
+        } catch (SQLException e) {
+            throw new DAOException(UserDaoMySqlConstants.ERROR_RETRIEVING_USER + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void updateUser(UserBean user, Origin origin) throws DAOException {
         String[] currentUser = retrieveUser(user.getUsername());
         if (currentUser == null) {
             throw new DAOException(UserDaoMySqlConstants.USER_NOT_FOUND + user.getUsername());
         }
 
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(UserDaoMySqlQueries.UPDATE_USER)) {
-            String passwordToStore;
-            if (user.getPassword() != null && !user.getPassword().isEmpty() && !PasswordUtils.checkPassword(user.getPassword(), currentUser[1])) {
-                passwordToStore = PasswordUtils.hashPassword(user.getPassword());
-            } else {
-                passwordToStore = currentUser[1];
-            }
-
-            stmt.setString(1, passwordToStore);
-            stmt.setString(2, user.getName());
-            stmt.setString(3, user.getSurname());
-            stmt.setString(4, user.getType());
-            stmt.setString(5, user.getGender());
-            stmt.setString(6, user.getUsername());
+        String passwordToStore;
+        if (user.getPassword() != null && !user.getPassword().isEmpty() && !PasswordUtils.checkPassword(user.getPassword(), currentUser[1])) {
+            passwordToStore = PasswordUtils.hashPassword(user.getPassword());
+        } else {
+            passwordToStore = currentUser[1];
+        }
 
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException(UserDaoMySqlConstants.USER_NOT_FOUND + user.getUsername());
+        ChangeEvent event = new ChangeEvent.UserUpdated(user, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, UserDaoMySqlQueries.UPDATE_USER)) {
+                stmt.setString(1, passwordToStore);
+                stmt.setString(2, user.getName());
+                stmt.setString(3, user.getSurname());
+                stmt.setString(4, user.getType());
+                stmt.setString(5, user.getGender());
+                stmt.setString(6, user.getUsername());
+
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException(UserDaoMySqlConstants.USER_NOT_FOUND + user.getUsername());
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             throw new DAOException(UserDaoMySqlConstants.ERROR_UPDATING_USER + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.UPDATE, "User", user.getUsername(), user);
+        notifyObservers(event);
     }
 
     @Override
-    public void deleteUser(String username) throws DAOException {
-        Connection connection = getConnection();
-        try (PreparedStatement stmt = connection.prepareStatement(UserDaoMySqlQueries.DELETE_USER)) {
-            stmt.setString(1, username);
-            int rowsAffected = stmt.executeUpdate();
-            if (rowsAffected == 0) {
-                throw new DAOException(UserDaoMySqlConstants.USER_NOT_FOUND + username);
+    public void deleteUser(String username, Origin origin) throws DAOException {
+        ChangeEvent event = new ChangeEvent.UserDeleted(username, originOf(origin));
+        try (Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = StatementCache.prepare(connection, UserDaoMySqlQueries.DELETE_USER)) {
+                stmt.setString(1, username);
+                int rowsAffected = stmt.executeUpdate();
+                if (rowsAffected == 0) {
+                    throw new DAOException(UserDaoMySqlConstants.USER_NOT_FOUND + username);
+                }
+                recordChanges(connection, List.of(event));
+                connection.commit();
+            } catch (SQLException | DAOException e) {
+                rollback(connection);
+                throw e;
             }
         } catch (SQLException e) {
             throw new DAOException(UserDaoMySqlConstants.ERROR_DELETING_USER + e.getMessage(), e);
         }
-        notifyObservers(DaoOperation.DELETE, "User", username, null);
+        notifyObservers(event);
+    }
+
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException rollbackEx) {
+            logger.log(Level.SEVERE, "Error rolling back transaction", rollbackEx);
+        }
     }
 }
@@ -21,6 +21,8 @@ public class AppointmentDaoMySqlConstants {
     public static final String COLUMN_TIME = "time";
     public static final String COLUMN_DESCRIPTION = "description";
     public static final String COLUMN_NOTIFIED = "notified";
+    public static final String COLUMN_PATIENT_USERNAME = "patient_username";
+    public static final String COLUMN_CONTENT_DIGEST = "content_digest";
 
     // Error messages
     public static final String APPOINTMENT_NOT_FOUND = "Appointment not found: ";
@@ -38,5 +40,6 @@ public class AppointmentDaoMySqlConstants {
     public static final String ERROR_UPDATING_APPOINTMENT_NOTIFICATION_STATUSES = "Error updating appointment notification statuses ";
     public static final String ERROR_RESETTING_AUTO_COMMIT = "Error resetting auto commit ";
     public static final String ERROR_CHECKING_IF_APPOINTMENT_EXISTS = "Error checking if appointment exists ";
+    public static final String ERROR_READING_APPOINTMENT_CURSOR = "Error reading appointment cursor ";
     public static final String ERROR_GETTING_NEXT_APPOINTMENT = "Error getting next appointment ID ";
 }
\ No newline at end of file
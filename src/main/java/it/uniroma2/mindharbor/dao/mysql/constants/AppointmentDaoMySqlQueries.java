@@ -30,6 +30,42 @@ public class AppointmentDaoMySqlQueries {
 
     public static final String SELECT_ALL_APPOINTMENTS = "SELECT * FROM Appointments";
 
+    /**
+     * SQL query to select the content digest of an appointment by ID.
+     */
+    public static final String SELECT_APPOINTMENT_DIGEST_BY_ID =
+            "SELECT content_digest FROM Appointments WHERE id = ?";
+
+    /**
+     * SQL query to stream all appointments in ascending ID order.
+     */
+    public static final String SELECT_ALL_APPOINTMENTS_ORDERED_BY_ID =
+            "SELECT * FROM Appointments ORDER BY id";
+
+    /**
+     * SQL query to stream the appointments changed since a given time, in ascending ID order.
+     */
+    public static final String SELECT_APPOINTMENTS_MODIFIED_SINCE =
+            "SELECT * FROM Appointments WHERE last_modified >= ? ORDER BY id";
+
+    /**
+     * SQL query to stream the appointments with an ID in a given range, in ascending ID order.
+     */
+    public static final String SELECT_APPOINTMENTS_IN_RANGE =
+            "SELECT * FROM Appointments WHERE id >= ? AND id < ? ORDER BY id";
+
+    /**
+     * SQL query to summarize the appointments with an ID in a given range, split into parts of equal
+     * width: the parameters are the start of the range, the width of a part, the start and the end
+     * of the range. Each part has the number of rows and the XOR of their row hashes.
+     */
+    public static final String SUMMARIZE_APPOINTMENTS_IN_RANGE =
+            "SELECT (id - ?) DIV ? AS part, COUNT(*) AS row_count, " +
+                    "LPAD(LOWER(HEX(BIT_XOR(CAST(CONV(LEFT(SHA1(CONCAT(id, ':', content_digest)), 16), 16, 10) AS UNSIGNED)))), 16, '0') AS range_hash " +
+                    "FROM Appointments " +
+                    "WHERE id >= ? AND id < ? " +
+                    "GROUP BY part";
+
     /**
      * SQL query to select all appointments for a specific patient.
      */
@@ -53,6 +89,12 @@ public class AppointmentDaoMySqlQueries {
     public static final String SELECT_APPOINTMENTS_BY_DATE =
             "SELECT * FROM Appointments WHERE date = ? ORDER BY time";
 
+    /**
+     * SQL query to select all appointments between two dates, both included.
+     */
+    public static final String SELECT_APPOINTMENTS_BETWEEN_DATES =
+            "SELECT * FROM Appointments WHERE date BETWEEN ? AND ? ORDER BY date, time";
+
     /**
      * SQL query to select all unnoticed appointments for a specific patient.
      */
@@ -22,6 +22,7 @@ public class PatientDaoMySqlConstants {
     public static final String COLUMN_GENDER = "Gender";
     public static final String COLUMN_PSYCHOLOGIST = "Psychologist";
     public static final String COLUMN_BIRTH_DATE = "BirthDate";
+    public static final String COLUMN_CONTENT_DIGEST = "content_digest";
 
     // Error messages
     public static final String PATIENT_NOT_FOUND = "Patient not found: ";
@@ -22,6 +22,7 @@ public class PsychologistDaoMySqlConstants {
     public static final String COLUMN_GENDER = "Gender";
     public static final String COLUMN_OFFICE = "Office";
     public static final String COLUMN_HOURLY_COST = "HourlyCost";
+    public static final String COLUMN_CONTENT_DIGEST = "content_digest";
 
     // Error messages
     public static final String PSYCHOLOGIST_NOT_FOUND = "Psychologist not found: ";
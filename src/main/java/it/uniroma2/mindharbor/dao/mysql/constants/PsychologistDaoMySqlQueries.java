@@ -33,6 +33,15 @@ public class PsychologistDaoMySqlQueries {
 
     public static final String SELECT_ALL_PSYCHOLOGISTS = "SELECT p.Username, u.Firstname, u.Lastname, u.Gender, p.Office, p.HourlyCost FROM Psychologists p JOIN Users u ON p.Username = u.Username";
 
+    /**
+     * SQL query to select the psychologists whose psychologist or user row changed since a given time.
+     */
+    public static final String SELECT_PSYCHOLOGISTS_MODIFIED_SINCE =
+            "SELECT p.Username, u.Firstname, u.Lastname, u.Gender, p.Office, p.HourlyCost " +
+                    "FROM Psychologists p " +
+                    "JOIN Users u ON p.Username = u.Username " +
+                    "WHERE p.last_modified >= ? OR u.last_modified >= ?";
+
     /**
      * SQL query to update a psychologist's information.
      */
@@ -53,4 +62,46 @@ public class PsychologistDaoMySqlQueries {
                     "FROM Patients p " +
                     "JOIN Users u ON p.Username = u.Username " +
                     "WHERE p.Psychologist = ?";
+
+    /**
+     * SQL query to select the content digest of the psychologists whose psychologist or user row changed since a given time.
+     * The digest combines the digests generated by the database for the two rows.
+     */
+    public static final String SELECT_PSYCHOLOGIST_DIGESTS_MODIFIED_SINCE =
+            "SELECT p.Username, SHA1(CONCAT(u.content_digest, p.content_digest)) AS content_digest " +
+                    "FROM Psychologists p " +
+                    "JOIN Users u ON p.Username = u.Username " +
+                    "WHERE p.last_modified >= ? OR u.last_modified >= ?";
+
+    /**
+     * SQL query to select the content digest of a psychologist by username.
+     */
+    public static final String SELECT_PSYCHOLOGIST_DIGEST_BY_USERNAME =
+            "SELECT SHA1(CONCAT(u.content_digest, p.content_digest)) AS content_digest " +
+                    "FROM Psychologists p " +
+                    "JOIN Users u ON p.Username = u.Username " +
+                    "WHERE p.Username = ?";
+
+    /**
+     * SQL query to select the content digest of the psychologists whose username has a CRC-32 in a given range.
+     */
+    public static final String SELECT_PSYCHOLOGIST_DIGESTS_IN_RANGE =
+            "SELECT p.Username, SHA1(CONCAT(u.content_digest, p.content_digest)) AS content_digest " +
+                    "FROM Psychologists p " +
+                    "JOIN Users u ON p.Username = u.Username " +
+                    "WHERE CRC32(p.Username) >= ? AND CRC32(p.Username) < ?";
+
+    /**
+     * SQL query to summarize the psychologists whose username has a CRC-32 in a given range, split into parts
+     * of equal width: the parameters are the start of the range, the width of a part, the start
+     * and the end of the range. Each part has the number of rows and the XOR of their row hashes.
+     */
+    public static final String SUMMARIZE_PSYCHOLOGISTS_IN_RANGE =
+            "SELECT (CRC32(p.Username) - ?) DIV ? AS part, COUNT(*) AS row_count, " +
+                    "LPAD(LOWER(HEX(BIT_XOR(CAST(CONV(LEFT(SHA1(CONCAT(p.Username, ':', " +
+                    "SHA1(CONCAT(u.content_digest, p.content_digest)))), 16), 16, 10) AS UNSIGNED)))), 16, '0') AS range_hash " +
+                    "FROM Psychologists p " +
+                    "JOIN Users u ON p.Username = u.Username " +
+                    "WHERE CRC32(p.Username) >= ? AND CRC32(p.Username) < ? " +
+                    "GROUP BY part";
 }
@@ -0,0 +1,45 @@
+package it.uniroma2.mindharbor.dao.mysql.constants;
+
+/**
+ * Constant class containing the SQL queries of the MySQL replication outbox.
+ */
+public class ReplicationOutboxMySqlQueries {
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private ReplicationOutboxMySqlQueries() {
+        // Prevent instantiation
+    }
+
+    /**
+     * SQL query to append a change to the outbox.
+     */
+    public static final String INSERT_OUTBOX_ENTRY =
+            "INSERT INTO ReplicationOutbox (operation, entity_type, entity_id, parent_id) VALUES (?, ?, ?, ?)";
+
+    /**
+     * SQL query to remove an acknowledged change.
+     */
+    public static final String DELETE_OUTBOX_ENTRY =
+            "DELETE FROM ReplicationOutbox WHERE seq = ?";
+
+    /**
+     * SQL query to read the changes not acknowledged yet, in the order they were made.
+     */
+    public static final String SELECT_PENDING_OUTBOX_ENTRIES =
+            "SELECT seq, operation, entity_type, entity_id, parent_id, attempts FROM ReplicationOutbox ORDER BY seq";
+
+    /**
+     * SQL query to count a failed replay of a change.
+     */
+    public static final String INCREMENT_OUTBOX_ATTEMPTS =
+            "UPDATE ReplicationOutbox SET attempts = attempts + 1 WHERE seq = ?";
+
+    /**
+     * SQL query to move a change that cannot be replicated to the dead letter table.
+     */
+    public static final String INSERT_DEAD_LETTER =
+            "INSERT INTO ReplicationDeadLetter (seq, operation, entity_type, entity_id, parent_id, attempts, reason) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE attempts = VALUES(attempts), reason = VALUES(reason)";
+}
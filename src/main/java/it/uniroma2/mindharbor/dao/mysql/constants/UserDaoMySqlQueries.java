@@ -41,6 +41,12 @@ public class UserDaoMySqlQueries {
     public static final String CHECK_USERNAME_EXISTS =
             "SELECT COUNT(*) FROM Users WHERE Username = ?";
 
+    /**
+     * SQL query to select the usernames of all the users.
+     */
+    public static final String SELECT_ALL_USERNAMES =
+            "SELECT Username FROM Users";
+
     /**
      * SQL query to update an existing user.
      */
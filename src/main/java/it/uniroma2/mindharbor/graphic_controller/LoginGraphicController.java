@@ -2,13 +2,13 @@ package it.uniroma2.mindharbor.graphic_controller;
 
 import it.uniroma2.mindharbor.app_controller.LoginController;
 import it.uniroma2.mindharbor.beans.CredentialsBean;
-import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.exception.UserSessionException;
 import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
 import it.uniroma2.mindharbor.model.User;
 import it.uniroma2.mindharbor.utilities.LabelDuration;
 import it.uniroma2.mindharbor.utilities.NavigatorSingleton;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
@@ -16,6 +16,8 @@ import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -62,28 +64,54 @@ public class LoginGraphicController {
             new LabelDuration().duration(msgLbl, "Please enter your username and password");
             return;
         }
-        try {
-            CredentialsBean credentials = new CredentialsBean.Builder<>()
-                    .username(username)
-                    .password(password)
-                    .build();
+        CredentialsBean credentials = new CredentialsBean.Builder<>()
+                .username(username)
+                .password(password)
+                .build();
 
-            User loggedUser = loginController.login(credentials);
-            if (loggedUser == null) {
-                new LabelDuration().duration(msgLbl, "Invalid credentials");
+        // La verifica BCrypt richiede centinaia di ms: la UI resta reattiva mentre gira sui worker
+        loginButton.setDisable(true);
+        loginController.loginAsync(credentials).whenComplete((loggedUser, error) -> Platform.runLater(() -> {
+            loginButton.setDisable(false);
+            if (error == null) {
+                onLoginCompleted(loggedUser);
             } else {
-                if (loggedUser instanceof Patient) {
-                    homePatient();
-                } else if (loggedUser instanceof Psychologist) {
-                    homePsychologist();
-                }
+                onLoginFailed(username, error instanceof CompletionException ? error.getCause() : error);
             }
-        } catch (DAOException e) {
-            logger.log(Level.SEVERE, e, () -> String.format("Error while logging in %s", username));
-            new LabelDuration().duration(msgLbl, "Login failed");
-        } catch (UserSessionException e) {
-            logger.log(Level.INFO, e, () -> String.format("User %s already logged in", username));
+        }));
+    }
+
+    /**
+     * Navigates to the home screen of the logged-in user, on the JavaFX application thread.
+     *
+     * @param loggedUser The logged-in user, or null if authentication failed
+     */
+    private void onLoginCompleted(User loggedUser) {
+        if (loggedUser == null) {
+            new LabelDuration().duration(msgLbl, "Invalid credentials");
+        } else if (loggedUser instanceof Patient) {
+            homePatient();
+        } else if (loggedUser instanceof Psychologist) {
+            homePsychologist();
+        }
+    }
+
+    /**
+     * Reports a failed login, on the JavaFX application thread.
+     *
+     * @param username The username of the login attempt
+     * @param error    The cause of the failure
+     */
+    private void onLoginFailed(String username, Throwable error) {
+        if (error instanceof UserSessionException) {
+            logger.log(Level.INFO, error, () -> String.format("User %s already logged in", username));
             new LabelDuration().duration(msgLbl, "User already logged in");
+        } else if (error instanceof RejectedExecutionException) {
+            logger.log(Level.WARNING, error, () -> String.format("Too many logins in progress, rejected %s", username));
+            new LabelDuration().duration(msgLbl, "Server busy, please try again");
+        } else {
+            logger.log(Level.SEVERE, error, () -> String.format("Error while logging in %s", username));
+            new LabelDuration().duration(msgLbl, "Login failed");
         }
     }
 
@@ -8,6 +8,7 @@ import it.uniroma2.mindharbor.model.User;
 import it.uniroma2.mindharbor.utilities.LabelDuration;
 import it.uniroma2.mindharbor.utilities.NavigatorSingleton;
 import it.uniroma2.mindharbor.utilities.SignUpDataSingleton;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.DatePicker;
@@ -16,6 +17,8 @@ import javafx.stage.Stage;
 
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -86,38 +89,60 @@ public class SignUpPatientGraphicController {
             return;
         }
 
-        try {
-            // Create PatientBean object with all necessary data
-            PatientBean patientBean = new PatientBean.Builder()
-                    .username(username)
-                    .password(password)
-                    .name(name)
-                    .surname(surname)
-                    .gender(gender)
-                    .type("PATIENT")
-                    .birthDate(birthDate)
-                    .build();
-
-            // Register patient through application controller
-            User registeredUser = signUpController.registerPatient(patientBean);
-            if (registeredUser != null) {
-                // Clear data from singleton after successful registration
-                SignUpDataSingleton.getInstance().clearUserData();
-                // Navigate to patient home after registration
-                navigateToPatientHome();
+        // Create PatientBean object with all necessary data
+        PatientBean patientBean = new PatientBean.Builder()
+                .username(username)
+                .password(password)
+                .name(name)
+                .surname(surname)
+                .gender(gender)
+                .type("PATIENT")
+                .birthDate(birthDate)
+                .build();
+
+        // L'hash BCrypt della password richiede centinaia di ms: la registrazione gira sui worker
+        signUpButton.setDisable(true);
+        signUpController.registerPatientAsync(patientBean).whenComplete((registeredUser, error) -> Platform.runLater(() -> {
+            signUpButton.setDisable(false);
+            if (error == null) {
+                onRegistrationCompleted(registeredUser);
             } else {
-                new LabelDuration().duration(msgLbl, "Registration failed");
+                onRegistrationFailed(error instanceof CompletionException ? error.getCause() : error);
             }
-        } catch (DAOException e) {
-            logger.log(Level.SEVERE, "Error during patient registration", e);
-            if (e.getMessage().contains("already exists")) {
+        }));
+    }
+
+    /**
+     * Navigates to the home screen of the registered patient, on the JavaFX application thread.
+     */
+    private void onRegistrationCompleted(User registeredUser) {
+        if (registeredUser != null) {
+            // Clear data from singleton after successful registration
+            SignUpDataSingleton.getInstance().clearUserData();
+            // Navigate to patient home after registration
+            navigateToPatientHome();
+        } else {
+            new LabelDuration().duration(msgLbl, "Registration failed");
+        }
+    }
+
+    /**
+     * Reports a failed registration, on the JavaFX application thread.
+     */
+    private void onRegistrationFailed(Throwable error) {
+        if (error instanceof UserSessionException) {
+            logger.log(Level.SEVERE, "Error creating user session", error);
+            new LabelDuration().duration(msgLbl, "Session error: " + error.getMessage());
+        } else if (error instanceof RejectedExecutionException) {
+            logger.log(Level.WARNING, "Too many registrations in progress", error);
+            new LabelDuration().duration(msgLbl, "Server busy, please try again");
+        } else {
+            logger.log(Level.SEVERE, "Error during patient registration", error);
+            if (error instanceof DAOException && error.getMessage().contains("already exists")) {
                 new LabelDuration().duration(msgLbl, "Username already exists");
             } else {
-                new LabelDuration().duration(msgLbl, "Registration error: " + e.getMessage());
+                new LabelDuration().duration(msgLbl, "Registration error: " + error.getMessage());
             }
-        } catch (UserSessionException e) {
-            logger.log(Level.SEVERE, "Error creating user session", e);
-            new LabelDuration().duration(msgLbl, "Session error: " + e.getMessage());
         }
     }
 
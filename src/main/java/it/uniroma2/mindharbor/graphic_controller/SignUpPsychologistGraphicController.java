@@ -8,6 +8,7 @@ import it.uniroma2.mindharbor.model.User;
 import it.uniroma2.mindharbor.utilities.LabelDuration;
 import it.uniroma2.mindharbor.utilities.NavigatorSingleton;
 import it.uniroma2.mindharbor.utilities.SignUpDataSingleton;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
@@ -15,6 +16,8 @@ import javafx.scene.control.TextField;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -93,40 +96,61 @@ public class SignUpPsychologistGraphicController {
             return;
         }
 
-        try {
-            // Create PsychologistBean object with all necessary data
-            PsychologistBean psychologistBean = new PsychologistBean.Builder()
-                    .username(username)
-                    .password(password)
-                    .name(name)
-                    .surname(surname)
-                    .gender(gender)
-                    .type("PSYCHOLOGIST")
-                    .office(office)
-                    .hourlyCost(hourlyCost)
-                    .build();
-
-            // Register psychologist through application controller
-            User registeredUser = signUpController.registerPsychologist(psychologistBean);
-
-            if (registeredUser != null) {
-                // Clear data from singleton after successful registration
-                SignUpDataSingleton.getInstance().clearUserData();
-                // Navigate to psychologist home after registration
-                navigateToPsychologistHome();
+        // Create PsychologistBean object with all necessary data
+        PsychologistBean psychologistBean = new PsychologistBean.Builder()
+                .username(username)
+                .password(password)
+                .name(name)
+                .surname(surname)
+                .gender(gender)
+                .type("PSYCHOLOGIST")
+                .office(office)
+                .hourlyCost(hourlyCost)
+                .build();
+
+        // L'hash BCrypt della password richiede centinaia di ms: la registrazione gira sui worker
+        signUpButton.setDisable(true);
+        signUpController.registerPsychologistAsync(psychologistBean).whenComplete((registeredUser, error) -> Platform.runLater(() -> {
+            signUpButton.setDisable(false);
+            if (error == null) {
+                onRegistrationCompleted(registeredUser);
             } else {
-                new LabelDuration().duration(msgLbl, "Registration failed");
+                onRegistrationFailed(error instanceof CompletionException ? error.getCause() : error);
             }
-        } catch (DAOException e) {
-            logger.log(Level.SEVERE, "Error during psychologist registration", e);
-            if (e.getMessage().contains("already exists")) {
+        }));
+    }
+
+    /**
+     * Navigates to the home screen of the registered psychologist, on the JavaFX application thread.
+     */
+    private void onRegistrationCompleted(User registeredUser) {
+        if (registeredUser != null) {
+            // Clear data from singleton after successful registration
+            SignUpDataSingleton.getInstance().clearUserData();
+            // Navigate to psychologist home after registration
+            navigateToPsychologistHome();
+        } else {
+            new LabelDuration().duration(msgLbl, "Registration failed");
+        }
+    }
+
+    /**
+     * Reports a failed registration, on the JavaFX application thread.
+     */
+    private void onRegistrationFailed(Throwable error) {
+        if (error instanceof UserSessionException) {
+            logger.log(Level.SEVERE, "Error creating user session", error);
+            new LabelDuration().duration(msgLbl, "Session error: " + error.getMessage());
+        } else if (error instanceof RejectedExecutionException) {
+            logger.log(Level.WARNING, "Too many registrations in progress", error);
+            new LabelDuration().duration(msgLbl, "Server busy, please try again");
+        } else {
+            logger.log(Level.SEVERE, "Error during psychologist registration", error);
+            if (error instanceof DAOException && error.getMessage().contains("already exists")) {
                 new LabelDuration().duration(msgLbl, "Username already exists");
             } else {
-                new LabelDuration().duration(msgLbl, "Registration error: " + e.getMessage());
+                new LabelDuration().duration(msgLbl, "Registration error: " + error.getMessage());
             }
-        } catch (UserSessionException e) {
-            logger.log(Level.SEVERE, "Error creating user session", e);
-            new LabelDuration().duration(msgLbl, "Session error: " + e.getMessage());
         }
     }
 
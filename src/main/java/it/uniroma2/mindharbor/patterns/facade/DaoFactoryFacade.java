@@ -4,6 +4,12 @@ import it.uniroma2.mindharbor.dao.AppointmentDao;
 import it.uniroma2.mindharbor.dao.PatientDao;
 import it.uniroma2.mindharbor.dao.PsychologistDao;
 import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.dao.cache.AbstractCachingDao;
+import it.uniroma2.mindharbor.dao.cache.CacheStats;
+import it.uniroma2.mindharbor.dao.cache.CachingAppointmentDao;
+import it.uniroma2.mindharbor.dao.cache.CachingPatientDao;
+import it.uniroma2.mindharbor.dao.cache.CachingPsychologistDao;
+import it.uniroma2.mindharbor.dao.cache.CachingUserDao;
 import it.uniroma2.mindharbor.patterns.factory.AppointmentDaoFactory;
 import it.uniroma2.mindharbor.patterns.factory.PatientDaoFactory;
 import it.uniroma2.mindharbor.patterns.factory.PsychologistDaoFactory;
@@ -11,6 +17,12 @@ import it.uniroma2.mindharbor.patterns.factory.UserDaoFactory;
 import it.uniroma2.mindharbor.patterns.observer.ObservableDao;
 import it.uniroma2.mindharbor.sync.CrossPersistenceSyncObserver;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Facade that provides a unified interface to all DAO factories and manages cross-persistence synchronization.
  * <p>
@@ -26,13 +38,24 @@ import it.uniroma2.mindharbor.sync.CrossPersistenceSyncObserver;
  * The facade automatically configures the appropriate synchronization observers
  * based on the current persistence type:
  * <ul>
- *   <li>When using <strong>MySQL</strong> as primary: syncs changes to CSV</li>
- *   <li>When using <strong>CSV</strong> as primary: syncs changes to MySQL</li>
+ *   <li>When using <strong>MySQL</strong> as primary: syncs changes to the local file store (CSV, binary or embedded)</li>
+ *   <li>When using <strong>CSV</strong>, <strong>BINARY</strong> or <strong>EMBEDDED</strong> as primary: syncs changes to MySQL</li>
  * </ul>
  * </p>
  * <p>
- * DAOs are cached after first creation and cleared when persistence type changes,
- * ensuring optimal performance while maintaining consistency.
+ * The DAOs of a persistence type, with the observer and the outbox of its synchronization, are
+ * built together the first time the type is needed and then kept for the life of the application.
+ * Setting the persistence type builds those of the type and of its {@link PersistenceType#counterpart()
+ * counterpart}, the target of its synchronization; the other types are never built unless asked for,
+ * so a CSV session does not create the files of the binary and embedded stores. The no-argument
+ * getters return the DAOs of the current persistence type, while the overloads taking a
+ * {@link PersistenceType} let synchronization code target a specific backend without changing the
+ * global configuration. The facade can be shared freely between threads.
+ * </p>
+ * <p>
+ * Unless {@code dao.cache.enabled} is false, each DAO of the registry is wrapped in a caching
+ * decorator, registered as an observer of the DAOs of its persistence type so that every notified
+ * change drops the cached entries it makes stale. {@link #getCacheStats()} exposes their hit rates.
  * </p>
  *
  * @see it.uniroma2.mindharbor.patterns.factory Factory classes for DAO creation
@@ -42,21 +65,68 @@ import it.uniroma2.mindharbor.sync.CrossPersistenceSyncObserver;
 public class DaoFactoryFacade {
     private static DaoFactoryFacade instance;
 
-    private PersistenceType persistenceType;
-    private UserDao userDao;
-    private PatientDao patientDao;
-    private PsychologistDao psychologistDao;
-    private AppointmentDao appointmentDao;
-
-    // Observer per le due direzioni di sync
-    private final CrossPersistenceSyncObserver mysqlToCsvObserver = new CrossPersistenceSyncObserver(PersistenceType.MYSQL);
-    private final CrossPersistenceSyncObserver csvToMysqlObserver = new CrossPersistenceSyncObserver(PersistenceType.CSV);
+    private volatile PersistenceType persistenceType;
+    private final Map<PersistenceType, Backend> backends = new ConcurrentHashMap<>();
 
     /**
      * Private constructor to enforce Singleton pattern.
+     * <p>
+     * No DAO is built here: the persistence type is not known yet.
+     * </p>
      */
     private DaoFactoryFacade() {
-        /* no  instance */
+    }
+
+    /**
+     * Returns the DAOs of a persistence type, building them on first use.
+     */
+    private Backend backend(PersistenceType type) {
+        Objects.requireNonNull(type, "Persistence type not set");
+        Backend backend = backends.get(type);
+        return backend != null ? backend : build(type);
+    }
+
+    /**
+     * Builds the DAOs of a persistence type, unless another thread just did.
+     * <p>
+     * Not a {@code computeIfAbsent}: building the DAOs of one type may look up those of another,
+     * which a {@link ConcurrentHashMap} does not allow from inside its mapping function.
+     * </p>
+     */
+    private synchronized Backend build(PersistenceType type) {
+        Backend backend = backends.get(type);
+        if (backend == null) {
+            backend = new Backend(type);
+            backends.put(type, backend);
+        }
+        return backend;
+    }
+
+    private static <T> T observe(T dao, CrossPersistenceSyncObserver observer) {
+        ((ObservableDao) dao).addObserver(observer);
+        return dao;
+    }
+
+    /**
+     * Returns the counters of the DAO caches, such as their hit rates.
+     *
+     * @return A snapshot of the counters of each cache of the persistence types built so far, keyed by
+     *         persistence type and cache name (for example {@code CSV.patients}); empty if caching is disabled
+     */
+    public Map<String, CacheStats> getCacheStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        for (PersistenceType type : PersistenceType.values()) {
+            Backend backend = backends.get(type);
+            if (backend == null) {
+                continue;
+            }
+            for (AbstractCachingDao decorator : backend.caching) {
+                for (Map.Entry<String, CacheStats> cache : decorator.cacheStats().entrySet()) {
+                    stats.put(type + "." + cache.getKey(), cache.getValue());
+                }
+            }
+        }
+        return stats;
     }
 
     /**
@@ -79,119 +149,149 @@ public class DaoFactoryFacade {
     /**
      * Gets the currently configured persistence type.
      *
-     * @return The current persistence type (MYSQL or CSV)
+     * @return The current persistence type (MYSQL, CSV, BINARY or EMBEDDED)
      */
     public PersistenceType getPersistenceType() {
         return persistenceType;
     }
 
     /**
-     * Sets the persistence type and clears the DAO cache if the type changes.
+     * Sets the persistence type used by the no-argument getters.
      * <p>
-     * When the persistence type changes, all cached DAO instances are cleared
-     * to ensure that subsequent requests create DAOs of the correct type with
-     * appropriate observer configurations.
+     * The DAOs of the type and of its counterpart are built now, if not yet, so that the
+     * synchronization between them is in place before the first change.
      * </p>
      *
      * @param persistenceType The new persistence type to use
      */
     public void setPersistenceType(PersistenceType persistenceType) {
-        if (this.persistenceType != persistenceType) {
-            this.persistenceType = persistenceType;
-            // Pulisci la cache dei DAO quando cambi tipo
-            this.userDao = null;
-            this.patientDao = null;
-            this.psychologistDao = null;
-            this.appointmentDao = null;
-        }
+        backend(persistenceType);
+        backend(persistenceType.counterpart());
+        this.persistenceType = persistenceType;
     }
 
     /**
-     * Gets a UserDao instance configured for the current persistence type.
-     * <p>
-     * This method implements lazy initialization and caching. If no UserDao
-     * exists, it creates one using the appropriate factory and configures
-     * the cross-persistence synchronization observer.
-     * </p>
+     * Gets the UserDao of the current persistence type.
      *
      * @return A UserDao instance with synchronization capabilities
      */
     public UserDao getUserDao() {
-        if (userDao == null) {
-            userDao = new UserDaoFactory().getUserDao(this.persistenceType);
-            // Collega l'observer giusto al momento della creazione
-            if (this.persistenceType == PersistenceType.MYSQL) {
-                ((ObservableDao) userDao).addObserver(mysqlToCsvObserver);
-            } else {
-                ((ObservableDao) userDao).addObserver(csvToMysqlObserver);
-            }
-        }
-        return userDao;
+        return getUserDao(persistenceType);
     }
 
     /**
-            * Gets a PatientDao instance configured for the current persistence type.
-            * <p>
-     * This method implements lazy initialization and caching. If no PatientDao
-     * exists, it creates one using the appropriate factory and configures
-     * the cross-persistence synchronization observer.
-     * </p>
-            *
-            * @return A PatientDao instance with synchronization capabilities
+     * Gets the UserDao of the given persistence type.
+     *
+     * @param persistenceType The backend to access
+     * @return A UserDao instance with synchronization capabilities
+     */
+    public UserDao getUserDao(PersistenceType persistenceType) {
+        return backend(persistenceType).userDao;
+    }
+
+    /**
+     * Gets the PatientDao of the current persistence type.
+     *
+     * @return A PatientDao instance with synchronization capabilities
      */
     public PatientDao getPatientDao() {
-        if (patientDao == null) {
-            patientDao = new PatientDaoFactory().getPatientDao(this.persistenceType);
-            if (this.persistenceType == PersistenceType.MYSQL) {
-                ((ObservableDao) patientDao).addObserver(mysqlToCsvObserver);
-            } else {
-                ((ObservableDao) patientDao).addObserver(csvToMysqlObserver);
-            }
-        }
-        return patientDao;
+        return getPatientDao(persistenceType);
     }
 
     /**
-     * Gets a PsychologistDao instance configured for the current persistence type.
-     * <p>
-     * This method implements lazy initialization and caching. If no PsychologistDao
-     * exists, it creates one using the appropriate factory and configures
-     * the cross-persistence synchronization observer.
-     * </p>
+     * Gets the PatientDao of the given persistence type.
+     *
+     * @param persistenceType The backend to access
+     * @return A PatientDao instance with synchronization capabilities
+     */
+    public PatientDao getPatientDao(PersistenceType persistenceType) {
+        return backend(persistenceType).patientDao;
+    }
+
+    /**
+     * Gets the PsychologistDao of the current persistence type.
      *
      * @return A PsychologistDao instance with synchronization capabilities
      */
     public PsychologistDao getPsychologistDao() {
-        if (psychologistDao == null) {
-            psychologistDao = new PsychologistDaoFactory().getPsychologistDao(this.persistenceType);
-            if (this.persistenceType == PersistenceType.MYSQL) {
-                ((ObservableDao) psychologistDao).addObserver(mysqlToCsvObserver);
-            } else {
-                ((ObservableDao) psychologistDao).addObserver(csvToMysqlObserver);
-            }
-        }
-        return psychologistDao;
+        return getPsychologistDao(persistenceType);
     }
 
     /**
-     * Gets an AppointmentDao instance configured for the current persistence type.
-     * <p>
-     * This method implements lazy initialization and caching. If no AppointmentDao
-     * exists, it creates one using the appropriate factory and configures
-     * the cross-persistence synchronization observer.
-     * </p>
+     * Gets the PsychologistDao of the given persistence type.
+     *
+     * @param persistenceType The backend to access
+     * @return A PsychologistDao instance with synchronization capabilities
+     */
+    public PsychologistDao getPsychologistDao(PersistenceType persistenceType) {
+        return backend(persistenceType).psychologistDao;
+    }
+
+    /**
+     * Gets the AppointmentDao of the current persistence type.
      *
      * @return An AppointmentDao instance with synchronization capabilities
      */
     public AppointmentDao getAppointmentDao() {
-        if (appointmentDao == null) {
-            appointmentDao = new AppointmentDaoFactory().getAppointmentDao(this.persistenceType);
-            if (this.persistenceType == PersistenceType.MYSQL) {
-                ((ObservableDao) appointmentDao).addObserver(mysqlToCsvObserver);
+        return getAppointmentDao(persistenceType);
+    }
+
+    /**
+     * Gets the AppointmentDao of the given persistence type.
+     *
+     * @param persistenceType The backend to access
+     * @return An AppointmentDao instance with synchronization capabilities
+     */
+    public AppointmentDao getAppointmentDao(PersistenceType persistenceType) {
+        return backend(persistenceType).appointmentDao;
+    }
+
+    /**
+     * The DAOs of one persistence type, observed by the synchronization towards its counterpart
+     * and, if caching is enabled, wrapped in the caching decorators.
+     */
+    private static final class Backend {
+
+        private final UserDao userDao;
+        private final PatientDao patientDao;
+        private final PsychologistDao psychologistDao;
+        private final AppointmentDao appointmentDao;
+        private final List<AbstractCachingDao> caching;
+
+        Backend(PersistenceType type) {
+            // Un observer per direzione di sync, condiviso da tutti i DAO della sorgente
+            CrossPersistenceSyncObserver observer = new CrossPersistenceSyncObserver(type);
+            UserDao users = observe(new UserDaoFactory().getUserDao(type), observer);
+            PatientDao patients = observe(new PatientDaoFactory().getPatientDao(type), observer);
+            PsychologistDao psychologists = observe(new PsychologistDaoFactory().getPsychologistDao(type), observer);
+            AppointmentDao appointments = observe(new AppointmentDaoFactory().getAppointmentDao(type), observer);
+
+            if (AbstractCachingDao.isEnabled()) {
+                CachingUserDao cachingUserDao = new CachingUserDao(users);
+                CachingPatientDao cachingPatientDao = new CachingPatientDao(patients);
+                CachingPsychologistDao cachingPsychologistDao = new CachingPsychologistDao(psychologists);
+                CachingAppointmentDao cachingAppointmentDao = new CachingAppointmentDao(appointments);
+                List<AbstractCachingDao> decorators = List.of(cachingUserDao, cachingPatientDao,
+                        cachingPsychologistDao, cachingAppointmentDao);
+                // Ogni cache ascolta tutti i DAO del suo tipo: un paziente dipende anche dal suo utente
+                for (AbstractCachingDao decorator : decorators) {
+                    for (AbstractCachingDao source : decorators) {
+                        source.addObserver(decorator);
+                    }
+                }
+                this.caching = decorators;
+                users = cachingUserDao;
+                patients = cachingPatientDao;
+                psychologists = cachingPsychologistDao;
+                appointments = cachingAppointmentDao;
             } else {
-                ((ObservableDao) appointmentDao).addObserver(csvToMysqlObserver);
+                this.caching = List.of();
             }
+
+            this.userDao = users;
+            this.patientDao = patients;
+            this.psychologistDao = psychologists;
+            this.appointmentDao = appointments;
         }
-        return appointmentDao;
     }
-}
\ No newline at end of file
+}
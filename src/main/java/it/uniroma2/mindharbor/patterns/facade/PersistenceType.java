@@ -1,5 +1,7 @@
 package it.uniroma2.mindharbor.patterns.facade;
 
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
 /**
  * Enumeration representing the available persistence mechanisms in MindHarbor.
  * <p>
@@ -12,12 +14,16 @@ package it.uniroma2.mindharbor.patterns.facade;
  * <ul>
  *   <li><strong>MYSQL</strong>: Full relational database with ACID properties, optimal for production</li>
  *   <li><strong>CSV</strong>: Simple file-based storage, ideal for development and testing</li>
+ *   <li><strong>BINARY</strong>: Columnar memory-mapped files, for fast local scans without a database</li>
+ *   <li><strong>EMBEDDED</strong>: Single-file B+tree store, for indexed offline access without a database</li>
  * </ul>
  * </p>
  * <p>
  * The application can operate with either persistence type as primary, while
  * maintaining automatic synchronization with the secondary type through the
- * Observer pattern implementation.
+ * Observer pattern implementation. MySQL is paired with one local file store,
+ * chosen with {@code persistence.local} ({@code csv}, {@code binary} or
+ * {@code embedded}, default {@code csv}); see {@link #counterpart()}.
  * </p>
  *
  * @see it.uniroma2.mindharbor.patterns.factory Factory classes for DAO creation
@@ -44,5 +50,57 @@ public enum PersistenceType {
      * feasible. Data is stored in human-readable format for easy inspection.
      * </p>
      */
-    CSV
+    CSV,
+
+    /**
+     * Binary columnar file persistence.
+     * <p>
+     * Stores each column in its own memory-mapped file of fixed-width values:
+     * dates as epoch days, times as seconds of the day, flags as bitsets and
+     * strings as ids of an append-only dictionary. Rows are read in place
+     * without parsing, so scans are much faster than on CSV files, at the
+     * cost of a format that is not human-readable.
+     * </p>
+     */
+    BINARY,
+
+    /**
+     * Embedded B+tree file persistence.
+     * <p>
+     * Stores all the tables in a single file of fixed-size pages, each table
+     * as a B+tree on its primary key with secondary trees on the columns
+     * the DAOs search by, and caches the pages in a buffer pool with LRU
+     * eviction. Lookups read a few pages instead of a whole file, and every
+     * change is committed atomically through a page journal.
+     * </p>
+     */
+    EMBEDDED;
+
+    private static final PersistenceType LOCAL = localType(AppConfig.getString("persistence.local", "csv"));
+
+    /**
+     * Returns the persistence type kept synchronized with this one.
+     * <p>
+     * MySQL is paired with the configured local file store, and every file store with MySQL.
+     * </p>
+     *
+     * @return The secondary persistence type when this one is the primary
+     */
+    public PersistenceType counterpart() {
+        return this == MYSQL ? LOCAL : MYSQL;
+    }
+
+    /**
+     * @return The configured local file store, used when MySQL is not available
+     */
+    public static PersistenceType local() {
+        return LOCAL;
+    }
+
+    private static PersistenceType localType(String name) {
+        if ("binary".equalsIgnoreCase(name)) {
+            return BINARY;
+        }
+        return "embedded".equalsIgnoreCase(name) ? EMBEDDED : CSV;
+    }
 }
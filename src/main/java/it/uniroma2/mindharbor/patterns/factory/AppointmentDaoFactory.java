@@ -1,7 +1,9 @@
 package it.uniroma2.mindharbor.patterns.factory;
 
 import it.uniroma2.mindharbor.dao.AppointmentDao;
+import it.uniroma2.mindharbor.dao.binary.AppointmentDaoBinary;
 import it.uniroma2.mindharbor.dao.csv.AppointmentDaoCsv;
+import it.uniroma2.mindharbor.dao.embedded.AppointmentDaoEmbedded;
 import it.uniroma2.mindharbor.dao.mysql.AppointmentDaoMySql;
 import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
 
@@ -10,14 +12,16 @@ import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
  * <p>
  * This factory implementation follows the Factory Method pattern to abstract
  * the creation of AppointmentDao objects. It allows the application to work
- * with different persistence mechanisms (CSV files or MySQL database) without
+ * with different persistence mechanisms (CSV files, MySQL database, binary columnar files or the embedded B+tree store) without
  * coupling the client code to specific implementations.
  * </p>
  * <p>
- * The factory supports two persistence strategies:
+ * The factory supports three persistence strategies:
  * <ul>
  *   <li><strong>CSV</strong>: File-based storage using CSV format</li>
  *   <li><strong>MySQL</strong>: Relational database storage</li>
+ *   <li><strong>Binary</strong>: Memory-mapped columnar files</li>
+ *   <li><strong>Embedded</strong>: Single-file B+tree store with secondary indexes</li>
  * </ul>
  * </p>
  *
@@ -43,6 +47,8 @@ public class AppointmentDaoFactory {
         return switch (persistenceType) {
             case CSV -> createAppointmentDaoCsv();
             case MYSQL -> createAppointmentDaoMySql();
+            case BINARY -> createAppointmentDaoBinary();
+            case EMBEDDED -> createAppointmentDaoEmbedded();
         };
     }
 
@@ -73,4 +79,24 @@ public class AppointmentDaoFactory {
     private AppointmentDao createAppointmentDaoMySql() {
         return new AppointmentDaoMySql();
     }
+
+    /**
+     * Creates a new instance of {@link AppointmentDaoBinary}, which is a specific implementation
+     * of {@link AppointmentDao} that stores data in memory-mapped columnar files.
+     *
+     * @return A new instance of {@link AppointmentDaoBinary}.
+     */
+    private AppointmentDao createAppointmentDaoBinary() {
+        return new AppointmentDaoBinary();
+    }
+
+    /**
+     * Creates a new instance of {@link AppointmentDaoEmbedded}, which is a specific implementation
+     * of {@link AppointmentDao} that stores data in the B+trees of the embedded single-file store.
+     *
+     * @return A new instance of {@link AppointmentDaoEmbedded}.
+     */
+    private AppointmentDao createAppointmentDaoEmbedded() {
+        return new AppointmentDaoEmbedded();
+    }
 }
@@ -1,14 +1,16 @@
 package it.uniroma2.mindharbor.patterns.factory;
 
 import it.uniroma2.mindharbor.dao.PatientDao;
+import it.uniroma2.mindharbor.dao.binary.PatientDaoBinary;
 import it.uniroma2.mindharbor.dao.csv.PatientDaoCsv;
+import it.uniroma2.mindharbor.dao.embedded.PatientDaoEmbedded;
 import it.uniroma2.mindharbor.dao.mysql.PatientDaoMySql;
 import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
 
 /**
  * Factory class for creating instances of {@link PatientDao} according to the specified persistence type.
  * Using the Factory pattern, this class abstracts the instantiation of PatientDao objects, allowing the rest of the application
- * to remain decoupled from the specifics of data storage mechanisms, such as CSV files or MySQL databases.
+ * to remain decoupled from the specifics of data storage mechanisms, such as CSV files, binary columnar files, the embedded B+tree store or MySQL databases.
  * <p>
  * This abstraction aids in the flexibility and scalability of the application by facilitating easy switches between different storage types.
  * </p>
@@ -27,6 +29,8 @@ public class PatientDaoFactory {
         return switch (persistenceType) {
             case CSV -> createPatientDaoCsv();
             case MYSQL -> createPatientDaoMySql();
+            case BINARY -> createPatientDaoBinary();
+            case EMBEDDED -> createPatientDaoEmbedded();
         };
     }
 
@@ -51,4 +55,24 @@ public class PatientDaoFactory {
     private PatientDao createPatientDaoMySql() {
         return new PatientDaoMySql();
     }
+
+    /**
+     * Creates a new instance of {@link PatientDaoBinary}, which is a specific implementation
+     * of {@link PatientDao} that stores data in memory-mapped columnar files.
+     *
+     * @return A new instance of {@link PatientDaoBinary}.
+     */
+    private PatientDao createPatientDaoBinary() {
+        return new PatientDaoBinary();
+    }
+
+    /**
+     * Creates a new instance of {@link PatientDaoEmbedded}, which is a specific implementation
+     * of {@link PatientDao} that stores data in the B+trees of the embedded single-file store.
+     *
+     * @return A new instance of {@link PatientDaoEmbedded}.
+     */
+    private PatientDao createPatientDaoEmbedded() {
+        return new PatientDaoEmbedded();
+    }
 }
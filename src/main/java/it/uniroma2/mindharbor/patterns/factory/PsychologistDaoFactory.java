@@ -1,14 +1,16 @@
 package it.uniroma2.mindharbor.patterns.factory;
 
 import it.uniroma2.mindharbor.dao.PsychologistDao;
+import it.uniroma2.mindharbor.dao.binary.PsychologistDaoBinary;
 import it.uniroma2.mindharbor.dao.csv.PsychologistDaoCsv;
+import it.uniroma2.mindharbor.dao.embedded.PsychologistDaoEmbedded;
 import it.uniroma2.mindharbor.dao.mysql.PsychologistDaoMySql;
 import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
 
 /**
  * Factory class for creating instances of {@link PsychologistDao} based on the specified persistence type.
  * This class implements the Factory pattern to encapsulate the instantiation of PsychologistDao objects,
- * allowing for flexible data storage options via CSV or MySQL databases depending on runtime decisions.
+ * allowing for flexible data storage options via CSV files, binary columnar files, the embedded B+tree store or MySQL databases depending on runtime decisions.
  * <p>
  * Usage of this factory ensures that the rest of the application remains decoupled from the specifics
  * of data persistence mechanism implementations.
@@ -18,7 +20,7 @@ public class PsychologistDaoFactory {
     /**
      * Retrieves a {@link PsychologistDao} instance tailored to the specified persistence type.
      * This method uses the Factory pattern to instantiate DAOs dynamically based on the persistence
-     * mechanism specified, which can be either CSV or MySQL. This method simplifies the switch between different
+     * mechanism specified, which can be CSV, MySQL, binary or embedded. This method simplifies the switch between different
      * data storage strategies without modifying the consuming code.
      *
      * @param persistenceType The type of persistence to use (e.g., CSV, MySQL), dictated by the needs of the application context.
@@ -28,6 +30,8 @@ public class PsychologistDaoFactory {
         return switch (persistenceType) {
             case CSV -> createPsychologistDaoCsv();
             case MYSQL -> createPsychologistDaoMySql();
+            case BINARY -> createPsychologistDaoBinary();
+            case EMBEDDED -> createPsychologistDaoEmbedded();
         };
     }
 
@@ -53,4 +57,24 @@ public class PsychologistDaoFactory {
     private PsychologistDao createPsychologistDaoMySql() {
         return new PsychologistDaoMySql();
     }
+
+    /**
+     * Creates a new instance of {@link PsychologistDaoBinary}, which is a specific implementation
+     * of {@link PsychologistDao} that stores data in memory-mapped columnar files.
+     *
+     * @return A new instance of {@link PsychologistDaoBinary}.
+     */
+    private PsychologistDao createPsychologistDaoBinary() {
+        return new PsychologistDaoBinary();
+    }
+
+    /**
+     * Creates a new instance of {@link PsychologistDaoEmbedded}, which is a specific implementation
+     * of {@link PsychologistDao} that stores data in the B+trees of the embedded single-file store.
+     *
+     * @return A new instance of {@link PsychologistDaoEmbedded}.
+     */
+    private PsychologistDao createPsychologistDaoEmbedded() {
+        return new PsychologistDaoEmbedded();
+    }
 }
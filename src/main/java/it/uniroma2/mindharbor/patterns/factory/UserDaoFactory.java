@@ -1,7 +1,9 @@
 package it.uniroma2.mindharbor.patterns.factory;
 
 import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.dao.binary.UserDaoBinary;
 import it.uniroma2.mindharbor.dao.csv.UserDaoCsv;
+import it.uniroma2.mindharbor.dao.embedded.UserDaoEmbedded;
 import it.uniroma2.mindharbor.dao.mysql.UserDaoMySql;
 import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
 
@@ -15,13 +17,15 @@ public class UserDaoFactory {
      * This method determines which type of DAO to instantiate based on the provided
      * {@link PersistenceType}.
      *
-     * @param persistenceType The persistence type specifying the storage mechanism (CSV or MySQL).
+     * @param persistenceType The persistence type specifying the storage mechanism (CSV, MySQL, binary or embedded).
      * @return An instance of {@link UserDao} suitable for the specified persistence type.
      */
     public UserDao getUserDao(PersistenceType persistenceType) {
         return switch (persistenceType) {
             case CSV -> createUserDaoCsv();
             case MYSQL -> createUserDaoMySql();
+            case BINARY -> createUserDaoBinary();
+            case EMBEDDED -> createUserDaoEmbedded();
         };
     }
 
@@ -44,4 +48,24 @@ public class UserDaoFactory {
     private UserDao createUserDaoMySql() {
         return new UserDaoMySql();
     }
+
+    /**
+     * Creates a new instance of {@link UserDaoBinary}, which is a specific implementation
+     * of {@link UserDao} that stores data in memory-mapped columnar files.
+     *
+     * @return A new instance of {@link UserDaoBinary}.
+     */
+    private UserDao createUserDaoBinary() {
+        return new UserDaoBinary();
+    }
+
+    /**
+     * Creates a new instance of {@link UserDaoEmbedded}, which is a specific implementation
+     * of {@link UserDao} that stores data in the B+trees of the embedded single-file store.
+     *
+     * @return A new instance of {@link UserDaoEmbedded}.
+     */
+    private UserDao createUserDaoEmbedded() {
+        return new UserDaoEmbedded();
+    }
 }
@@ -0,0 +1,325 @@
+package it.uniroma2.mindharbor.patterns.observer;
+
+import it.uniroma2.mindharbor.beans.PatientBean;
+import it.uniroma2.mindharbor.beans.PsychologistBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+
+/**
+ * A change applied by an observable DAO, delivered to its {@link DaoObserver}s.
+ * <p>
+ * There is one record type per entity and operation, each carrying exactly the data of that
+ * change: insertions carry the Bean received from the UI layer (appointments also the patient
+ * they belong to), updates the Model with the new field values, deletions only the identifier.
+ * The entity {@link #kind()} and the {@link #operation()} are constants of the record type, so
+ * observers can dispatch on them without looking at the payload.
+ * </p>
+ * <p>
+ * Every event also carries its {@link Origin}, which tells the observers whether the change
+ * was made in their persistence type or is the echo of a change replicated from another one.
+ * </p>
+ *
+ * @see DaoObserver#onChange(ChangeEvent)
+ */
+public sealed interface ChangeEvent {
+
+    /**
+     * @return The type of the changed entity.
+     */
+    EntityKind kind();
+
+    /**
+     * @return The operation performed on the entity.
+     */
+    DaoOperation operation();
+
+    /**
+     * @return The unique identifier of the changed entity.
+     */
+    String entityId();
+
+    /**
+     * @return Where the change was first applied; equal to the origin of the replicated change
+     * for the events raised while replicating it.
+     */
+    Origin origin();
+
+    /**
+     * A user has been inserted.
+     *
+     * @param user   The inserted user
+     * @param origin Where the change was first applied
+     */
+    record UserInserted(UserBean user, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.USER;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.INSERT;
+        }
+
+        @Override
+        public String entityId() {
+            return user.getUsername();
+        }
+    }
+
+    /**
+     * The data of a user have been updated.
+     *
+     * @param user   The updated user
+     * @param origin Where the change was first applied
+     */
+    record UserUpdated(UserBean user, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.USER;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.UPDATE;
+        }
+
+        @Override
+        public String entityId() {
+            return user.getUsername();
+        }
+    }
+
+    /**
+     * A user has been deleted.
+     *
+     * @param username The username of the deleted user
+     * @param origin   Where the change was first applied
+     */
+    record UserDeleted(String username, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.USER;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.DELETE;
+        }
+
+        @Override
+        public String entityId() {
+            return username;
+        }
+    }
+
+    /**
+     * A patient has been inserted.
+     *
+     * @param patient The inserted patient, with its user data
+     * @param origin  Where the change was first applied
+     */
+    record PatientInserted(PatientBean patient, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.PATIENT;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.INSERT;
+        }
+
+        @Override
+        public String entityId() {
+            return patient.getUsername();
+        }
+    }
+
+    /**
+     * The data of a patient have been updated.
+     *
+     * @param patient The patient with the new field values
+     * @param origin  Where the change was first applied
+     */
+    record PatientUpdated(Patient patient, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.PATIENT;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.UPDATE;
+        }
+
+        @Override
+        public String entityId() {
+            return patient.getUsername();
+        }
+    }
+
+    /**
+     * A patient has been deleted.
+     *
+     * @param username The username of the deleted patient
+     * @param origin   Where the change was first applied
+     */
+    record PatientDeleted(String username, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.PATIENT;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.DELETE;
+        }
+
+        @Override
+        public String entityId() {
+            return username;
+        }
+    }
+
+    /**
+     * A psychologist has been inserted.
+     *
+     * @param psychologist The inserted psychologist, with its user data
+     * @param origin       Where the change was first applied
+     */
+    record PsychologistInserted(PsychologistBean psychologist, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.PSYCHOLOGIST;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.INSERT;
+        }
+
+        @Override
+        public String entityId() {
+            return psychologist.getUsername();
+        }
+    }
+
+    /**
+     * The data of a psychologist have been updated.
+     *
+     * @param psychologist The psychologist with the new field values
+     * @param origin       Where the change was first applied
+     */
+    record PsychologistUpdated(Psychologist psychologist, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.PSYCHOLOGIST;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.UPDATE;
+        }
+
+        @Override
+        public String entityId() {
+            return psychologist.getUsername();
+        }
+    }
+
+    /**
+     * A psychologist has been deleted.
+     *
+     * @param username The username of the deleted psychologist
+     * @param origin   Where the change was first applied
+     */
+    record PsychologistDeleted(String username, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.PSYCHOLOGIST;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.DELETE;
+        }
+
+        @Override
+        public String entityId() {
+            return username;
+        }
+    }
+
+    /**
+     * An appointment has been inserted.
+     *
+     * @param appointment     The inserted appointment
+     * @param patientUsername The username of the patient the appointment belongs to
+     * @param origin          Where the change was first applied
+     */
+    record AppointmentInserted(Appointment appointment, String patientUsername, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.APPOINTMENT;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.INSERT;
+        }
+
+        @Override
+        public String entityId() {
+            return String.valueOf(appointment.getId());
+        }
+    }
+
+    /**
+     * The data of an appointment have been updated.
+     *
+     * @param appointment The appointment with the new field values
+     * @param origin      Where the change was first applied
+     */
+    record AppointmentUpdated(Appointment appointment, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.APPOINTMENT;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.UPDATE;
+        }
+
+        @Override
+        public String entityId() {
+            return String.valueOf(appointment.getId());
+        }
+    }
+
+    /**
+     * An appointment has been deleted.
+     *
+     * @param appointmentId The identifier of the deleted appointment
+     * @param origin        Where the change was first applied
+     */
+    record AppointmentDeleted(int appointmentId, Origin origin) implements ChangeEvent {
+        @Override
+        public EntityKind kind() {
+            return EntityKind.APPOINTMENT;
+        }
+
+        @Override
+        public DaoOperation operation() {
+            return DaoOperation.DELETE;
+        }
+
+        @Override
+        public String entityId() {
+            return String.valueOf(appointmentId);
+        }
+    }
+}
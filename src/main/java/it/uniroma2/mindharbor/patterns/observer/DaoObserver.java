@@ -1,5 +1,11 @@
 package it.uniroma2.mindharbor.patterns.observer;
 
+import it.uniroma2.mindharbor.exception.DAOException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
 /**
  * Defines the contract for observers in the DAO Observer pattern implementation.
  * <p>
@@ -9,59 +15,70 @@ package it.uniroma2.mindharbor.patterns.observer;
  * and MySQL database.
  * </p>
  * <p>
- * Each method corresponds to a specific type of database operation and
- * receives appropriate data for that operation type:
+ * Every change is delivered as a typed {@link ChangeEvent}, whose record type tells the entity
+ * and the operation and carries the appropriate data:
  * <ul>
  *   <li><strong>Insert</strong>: Complete entity data for replication</li>
  *   <li><strong>Update</strong>: Modified entity data for synchronization</li>
  *   <li><strong>Delete</strong>: Entity identifier for removal</li>
  * </ul>
  * </p>
+ * <p>
+ * An observer that must not lose a change, such as the replication outbox, can also record it
+ * before it is applied through {@link #beforeChanges(List)}, or inside the database transaction
+ * applying it through {@link #beforeChanges(Connection, List)}; the same event instances are then
+ * passed to {@link #onChange(ChangeEvent)} or {@link #onChanges(List)} once the change is applied.
+ * </p>
  *
  * @see ObservableDao for the observable interface
  * @see it.uniroma2.mindharbor.sync.CrossPersistenceSyncObserver for concrete implementation
- * @see DaoOperation for operation types
+ * @see ChangeEvent for the event types
  */
 public interface DaoObserver {
 
     /**
-     * Called after an entity has been successfully inserted into the data store.
-     * <p>
-     * This method receives the complete entity data, typically as a Bean object
-     * from the UI layer. Observers can use this data to replicate the insertion
-     * in other persistence systems or perform additional processing.
-     * </p>
+     * Called after a change has been successfully applied to the data store.
      *
-     * @param entityType The type of entity that was inserted (e.g., "Patient", "Psychologist")
-     * @param entityId The unique identifier of the inserted entity
-     * @param entity The complete entity data, typically a Bean object
+     * @param event The change
      */
-    void onAfterInsert(String entityType, String entityId, Object entity);
+    void onChange(ChangeEvent event);
 
     /**
-     * Called after an entity has been successfully updated in the data store.
+     * Called once after a bulk operation has been successfully applied to several entities.
      * <p>
-     * This method receives the updated entity data, typically as a Model object
-     * containing the new field values. Observers can use this data to replicate
-     * the update in other persistence systems.
+     * Bulk operations (such as {@code saveAppointments} or the batched notification update) raise a single
+     * notification instead of one per entity, so that observers can replicate the whole batch at once.
+     * The default implementation falls back to {@link #onChange(ChangeEvent)}, one call per event.
      * </p>
      *
-     * @param entityType The type of entity that was updated
-     * @param entityId The unique identifier of the updated entity
-     * @param entity The updated entity data, typically a Model object
+     * @param events The changes, in the order they were applied
      */
-    void onAfterUpdate(String entityType, String entityId, Object entity);
+    default void onChanges(List<? extends ChangeEvent> events) {
+        for (ChangeEvent event : events) {
+            onChange(event);
+        }
+    }
 
     /**
-     * Called after an entity has been successfully deleted from the data store.
-     * <p>
-     * This method receives only the entity identifier, as the entity no longer
-     * exists. Observers can use the identifier to replicate the deletion in
-     * other persistence systems.
-     * </p>
+     * Called by a file store before it applies changes. The changes may still fail afterwards,
+     * in which case no notification follows.
+     *
+     * @param events The changes about to be applied
+     * @throws DAOException If the changes cannot be recorded; the DAO then does not apply them
+     */
+    default void beforeChanges(List<? extends ChangeEvent> events) throws DAOException {
+        /* nothing to record by default */
+    }
+
+    /**
+     * Called by the MySQL DAOs inside the transaction applying changes, before it commits: whatever
+     * the observer writes with the given connection is committed or rolled back with the changes.
      *
-     * @param entityType The type of entity that was deleted
-     * @param entityId The unique identifier of the deleted entity
+     * @param connection The connection of the transaction, not to be committed nor closed
+     * @param events     The changes about to be committed
+     * @throws SQLException If the changes cannot be recorded; the DAO then rolls the transaction back
      */
-    void onAfterDelete(String entityType, String entityId);
+    default void beforeChanges(Connection connection, List<? extends ChangeEvent> events) throws SQLException {
+        /* nothing to record by default */
+    }
 }
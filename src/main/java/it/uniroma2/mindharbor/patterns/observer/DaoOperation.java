@@ -17,7 +17,7 @@ package it.uniroma2.mindharbor.patterns.observer;
  * </ul>
  * </p>
  *
- * @see ObservableDao#notifyObservers(DaoOperation, String, String, Object)
+ * @see ChangeEvent#operation()
  * @see DaoObserver for methods handling each operation type
  */
 public enum DaoOperation {
@@ -0,0 +1,53 @@
+package it.uniroma2.mindharbor.patterns.observer;
+
+/**
+ * Enumeration of the entity types whose changes are observed in the DAO layer.
+ * <p>
+ * Observers index their handlers by kind, for example with an {@link java.util.EnumMap},
+ * instead of comparing entity type names on every event.
+ * </p>
+ *
+ * @see ChangeEvent#kind()
+ */
+public enum EntityKind {
+    USER("User"),
+    PATIENT("Patient"),
+    PSYCHOLOGIST("Psychologist"),
+    APPOINTMENT("Appointment");
+
+    private static final EntityKind[] VALUES = values();
+
+    private final String label;
+
+    EntityKind(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return The name of the entity type, as used in logs and persisted records.
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Returns the kind with the given label.
+     *
+     * @param label The name of the entity type, as returned by {@link #label()}
+     * @return The corresponding kind
+     * @throws IllegalArgumentException If no kind has that label
+     */
+    public static EntityKind fromLabel(String label) {
+        for (EntityKind kind : VALUES) {
+            if (kind.label.equals(label)) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Unknown entity type: " + label);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
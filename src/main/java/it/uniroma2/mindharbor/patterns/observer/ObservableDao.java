@@ -1,5 +1,7 @@
 package it.uniroma2.mindharbor.patterns.observer;
 
+import java.util.List;
+
 /**
  * Defines the contract for observable Data Access Objects in the Observer pattern implementation.
  * <p>
@@ -13,6 +15,13 @@ package it.uniroma2.mindharbor.patterns.observer;
  * notify them when data operations occur, enabling real-time synchronization
  * between different persistence mechanisms.
  * </p>
+ * <p>
+ * Every write operation of the DAOs has an overload taking an {@link Origin}, which the DAO
+ * puts on the {@link ChangeEvent} it notifies. The application passes {@code null}, and the
+ * DAO stamps the change with a new origin in its own persistence type; the synchronization
+ * passes the origin of the change it is replicating, so that the observers recognise the
+ * change as already replicated and do not send it back where it came from.
+ * </p>
  *
  * @see DaoObserver for the observer interface
  * @see it.uniroma2.mindharbor.sync.CrossPersistenceSyncObserver for concrete observer implementation
@@ -51,10 +60,15 @@ public interface ObservableDao {
      * about the change.
      * </p>
      *
-     * @param operation The type of operation performed (INSERT, UPDATE, DELETE)
-     * @param entityType The type of entity that was modified (e.g., "User", "Patient")
-     * @param entityId The unique identifier of the affected entity
-     * @param entity The entity object (for INSERT/UPDATE) or null (for DELETE)
+     * @param event The change, typed by entity and operation
+     */
+    void notifyObservers(ChangeEvent event);
+
+    /**
+     * Notifies all registered observers about an operation applied to a batch of entities,
+     * raising a single notification for the whole batch.
+     *
+     * @param events The changes, in the order they were applied
      */
-    void notifyObservers(DaoOperation operation, String entityType, String entityId, Object entity);
+    void notifyObserversBatch(List<? extends ChangeEvent> events);
 }
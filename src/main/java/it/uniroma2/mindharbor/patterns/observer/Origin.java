@@ -0,0 +1,46 @@
+package it.uniroma2.mindharbor.patterns.observer;
+
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The origin of a {@link ChangeEvent}: the persistence type where the change was first applied
+ * and the identifier of the event that started it.
+ * <p>
+ * A change made by the application gets a new origin in the persistence type it is written to.
+ * When the change is replicated to another persistence type, the replicated write carries the
+ * original origin, so the events it raises can be recognized as echoes by the observers of the
+ * target persistence type, whatever thread or executor the replication runs on.
+ * </p>
+ *
+ * @param source  The persistence type where the change was first applied
+ * @param eventId The identifier of the event that started the change, unique within the running application
+ */
+public record Origin(PersistenceType source, long eventId) {
+
+    private static final AtomicLong nextEventId = new AtomicLong();
+
+    /**
+     * Creates the origin of a new change.
+     *
+     * @param source The persistence type where the change is applied
+     * @return An origin with a new event identifier
+     */
+    public static Origin of(PersistenceType source) {
+        return new Origin(source, nextEventId.incrementAndGet());
+    }
+
+    /**
+     * @param persistenceType A persistence type
+     * @return true if the change was first applied to the given persistence type
+     */
+    public boolean isFrom(PersistenceType persistenceType) {
+        return source == persistenceType;
+    }
+
+    @Override
+    public String toString() {
+        return source + "#" + eventId;
+    }
+}
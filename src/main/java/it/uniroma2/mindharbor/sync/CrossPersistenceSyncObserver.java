@@ -3,14 +3,27 @@ package it.uniroma2.mindharbor.sync;
 import it.uniroma2.mindharbor.beans.PatientBean;
 import it.uniroma2.mindharbor.beans.PsychologistBean;
 import it.uniroma2.mindharbor.beans.UserBean;
-import it.uniroma2.mindharbor.dao.*;
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Appointment;
 import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
 import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
 import it.uniroma2.mindharbor.patterns.observer.DaoObserver;
+import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,26 +36,53 @@ import java.util.logging.Logger;
  * across both storage mechanisms.
  * </p>
  * <p>
- * The observer handles three types of operations:
+ * The observer receives typed {@link ChangeEvent}s and handles three types of operations:
  * <ul>
  *   <li><strong>INSERT</strong>: Receives Bean objects from the UI layer</li>
  *   <li><strong>UPDATE</strong>: Receives Model objects with updated data</li>
  *   <li><strong>DELETE</strong>: Receives entity identifiers for removal</li>
  * </ul>
+ * Each entity kind is applied by its own replicator, looked up in a table built once per class,
+ * so no change is dispatched by comparing entity names.
+ * </p>
+ * <p>
+ * The callbacks do not write to the target persistence themselves: they hand the change to the
+ * {@link ReplicationQueue}, whose worker thread later calls back {@link #replicate(List)}.
+ * To prevent infinite synchronization loops, only events whose {@link Origin} is the source
+ * persistence type are replicated: the worker writes each change with its original origin, so the
+ * events it raises on the target are recognized as echoes whatever thread the worker runs on.
  * </p>
  * <p>
- * To prevent infinite synchronization loops, this observer checks {@link SyncContext}
- * before processing any operation and sets the sync flag during execution.
+ * Every change is first recorded in the {@link ReplicationOutbox} of the source persistence and
+ * acknowledged there once applied, so a change that cannot be replicated now survives a restart
+ * and is replayed by the {@link OutboxReplayer}. The DAOs hand the change over before applying it
+ * ({@link #beforeChanges(List)}), or, for MySQL, inside the transaction applying it
+ * ({@link #beforeChanges(Connection, List)}): a crash can then leave an entry for a change that was
+ * not applied, which the replay finds already aligned, but never a change without its entry.
  * </p>
  *
  * @see DaoObserver for the observer interface contract
- * @see SyncContext for synchronization loop prevention
+ * @see ReplicationQueue for the asynchronous, batched application of the changes
+ * @see Origin for synchronization loop prevention
  * @see InitialSyncManager for initial data synchronization
  */
 public class CrossPersistenceSyncObserver implements DaoObserver {
 
     private static final Logger logger = Logger.getLogger(CrossPersistenceSyncObserver.class.getName());
+    private static final Map<EntityKind, EntityReplicator> REPLICATORS = new EnumMap<>(EntityKind.class);
+
+    static {
+        REPLICATORS.put(EntityKind.USER, new UserReplicator());
+        REPLICATORS.put(EntityKind.PATIENT, new PatientReplicator());
+        REPLICATORS.put(EntityKind.PSYCHOLOGIST, new PsychologistReplicator());
+        REPLICATORS.put(EntityKind.APPOINTMENT, new AppointmentReplicator());
+    }
+
     private final PersistenceType sourceType;
+    private final ReplicationOutbox outbox;
+    // Sequenze delle modifiche registrate prima di essere applicate, in attesa della notifica;
+    // le voci di una modifica poi fallita spariscono con il suo evento
+    private final Map<ChangeEvent, Long> recorded = Collections.synchronizedMap(new WeakHashMap<>());
 
     /**
      * Creates a new cross-persistence synchronization observer.
@@ -50,197 +90,429 @@ public class CrossPersistenceSyncObserver implements DaoObserver {
      * @param sourceType The persistence type that this observer is monitoring for changes
      */
     public CrossPersistenceSyncObserver(PersistenceType sourceType) {
+        this(sourceType, ReplicationOutbox.forSource(sourceType));
+    }
+
+    /**
+     * Creates an observer recording its changes in the given outbox.
+     *
+     * @param sourceType The persistence type that this observer is monitoring for changes
+     * @param outbox     The outbox of the source persistence, or null not to record the changes
+     */
+    CrossPersistenceSyncObserver(PersistenceType sourceType, ReplicationOutbox outbox) {
         this.sourceType = sourceType;
+        this.outbox = outbox;
+    }
+
+    /**
+     * @return The persistence type that this observer is monitoring for changes
+     */
+    PersistenceType getSourceType() {
+        return sourceType;
     }
 
     /**
      * Determines the target persistence type for synchronization.
      * <p>
-     * The target is always the opposite of the source type:
-     * if source is CSV, target is MySQL, and vice versa.
+     * The target is the {@link PersistenceType#counterpart() counterpart} of the source type:
+     * MySQL for the file stores, the configured local file store for MySQL.
      * </p>
      *
      * @return The target persistence type for replication
      */
     private PersistenceType getTargetType() {
-        return sourceType == PersistenceType.CSV ? PersistenceType.MYSQL : PersistenceType.CSV;
+        return sourceType.counterpart();
     }
 
     /**
-     * Gets a DAO factory configured for the target persistence type.
+     * Gets the DAO facade used to reach the target persistence.
      * <p>
-     * This method configures the singleton factory to use the target persistence
-     * type for the current synchronization operation.
+     * The target DAOs are looked up by persistence type, so replication never
+     * changes the persistence type configured for the rest of the application.
      * </p>
      *
-     * @return DaoFactoryFacade configured for target persistence
+     * @return The DaoFactoryFacade singleton
      */
     private DaoFactoryFacade getTargetFactory() {
-        DaoFactoryFacade factory = DaoFactoryFacade.getInstance();
-        factory.setPersistenceType(getTargetType());
-        return factory;
+        return DaoFactoryFacade.getInstance();
     }
 
     /**
-     * Handles entity insertion synchronization.
-     * <p>
-     * When a new entity is inserted in the source persistence, this method
-     * replicates the insertion to the target persistence. For INSERT operations,
-     * the system always receives Bean objects from the UI layer, which contain
-     * all necessary data for persistence.
-     * </p>
+     * Handles a change of the source persistence.
      * <p>
-     * Supported entity types:
-     * <ul>
-     *   <li><strong>Patient</strong>: Receives PatientBean</li>
-     *   <li><strong>Psychologist</strong>: Receives PsychologistBean</li>
-     *   <li><strong>Appointment</strong>: Receives array with Appointment and patient username</li>
-     * </ul>
+     * The change is recorded in the outbox and queued for replication to the target persistence.
+     * Echoes of changes replicated from the target, and changes the target has no use for, like the
+     * user rows written by the patient and psychologist DAOs themselves, are dropped here, before
+     * they cost an outbox write.
      * </p>
      *
-     * @param entityType The type of entity being inserted (Patient, Psychologist, Appointment)
-     * @param entityId The unique identifier of the inserted entity
-     * @param entity The entity data (Bean object for insertions)
+     * @param event The change applied to the source persistence
      */
     @Override
-    public void onAfterInsert(String entityType, String entityId, Object entity) {
-        if (SyncContext.isSyncing()) return;
-        SyncContext.startSync();
-        try {
-            logger.log(Level.INFO, "SYNC INSERT: Propagating {0} ({1}) from {2} to {3}", new Object[]{entityType, entityId, sourceType, getTargetType()});
-
-            switch (entityType) {
-                // per l'INSERT si riceve sempre un ogetto di tipo bean
-                case "Patient" -> {
-                    PatientDao targetDao = getTargetFactory().getPatientDao();
-                    // casto a bean perche riceviamo un bean
-                    targetDao.savePatient((PatientBean) entity);
-                }
-                case "Psychologist" -> {
-                    PsychologistDao targetDao = getTargetFactory().getPsychologistDao();
-                    // come sopra
-                    targetDao.savePsychologist((PsychologistBean) entity);
-                }
-                case "Appointment" -> {
-                    AppointmentDao targetDao = getTargetFactory().getAppointmentDao();
-                    Object[] syncPackage = (Object[]) entity;
-                    Appointment app = (Appointment) syncPackage[0];
-                    String patientUsername = (String) syncPackage[1];
-                    targetDao.saveAppointment(app, patientUsername);
+    public void onChange(ChangeEvent event) {
+        onChanges(List.of(event));
+    }
+
+    /**
+     * Handles a batch of changes, recording in the outbox, with a single write, those the DAO has
+     * not recorded before applying them.
+     */
+    @Override
+    public void onChanges(List<? extends ChangeEvent> events) {
+        List<ChangeEvent> replicated = replicatedOf(events);
+        if (replicated.isEmpty()) {
+            return;
+        }
+        long[] sequences = new long[replicated.size()];
+        List<OutboxEntry> missing = new ArrayList<>();
+        for (int i = 0; i < replicated.size(); i++) {
+            Long sequence = recorded.remove(replicated.get(i));
+            if (sequence != null) {
+                sequences[i] = sequence;
+            } else {
+                missing.add(toOutboxEntry(replicated.get(i)));
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<OutboxEntry> late = record(missing);
+            for (int i = 0, next = 0; i < replicated.size(); i++) {
+                if (sequences[i] == 0) {
+                    sequences[i] = late.get(next++).sequence();
                 }
-                default -> logger.log(Level.WARNING, "Sync INSERT not handled for entity type: {0}", entityType);
             }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Sync INSERT failed", e);
-        } finally {
-            SyncContext.endSync();
+        }
+        for (int i = 0; i < replicated.size(); i++) {
+            ReplicationQueue.getInstance().enqueue(new ReplicationTask(this, replicated.get(i), sequences[i]));
         }
     }
 
     /**
-     * Handles entity update synchronization.
-     * <p>
-     * When an entity is updated in the source persistence, this method
-     * replicates the update to the target persistence. For UPDATE operations,
-     * the system always receives Model objects that contain the updated data.
-     * </p>
+     * Records in the outbox the changes a file store is about to apply.
+     */
+    @Override
+    public void beforeChanges(List<? extends ChangeEvent> events) throws DAOException {
+        List<ChangeEvent> replicated = replicatedOf(events);
+        if (outbox != null && !replicated.isEmpty()) {
+            remember(replicated, outbox.append(toOutboxEntries(replicated)));
+        }
+    }
+
+    /**
+     * Records in the outbox, inside the transaction of the MySQL DAO, the changes it is about to commit.
+     */
+    @Override
+    public void beforeChanges(Connection connection, List<? extends ChangeEvent> events) throws SQLException {
+        List<ChangeEvent> replicated = replicatedOf(events);
+        if (outbox != null && !replicated.isEmpty()) {
+            remember(replicated, outbox.append(connection, toOutboxEntries(replicated)));
+        }
+    }
+
+    private void remember(List<ChangeEvent> events, List<OutboxEntry> entries) {
+        for (int i = 0; i < events.size(); i++) {
+            recorded.put(events.get(i), entries.get(i).sequence());
+        }
+    }
+
+    private List<ChangeEvent> replicatedOf(List<? extends ChangeEvent> events) {
+        List<ChangeEvent> replicated = new ArrayList<>(events.size());
+        for (ChangeEvent event : events) {
+            if (isReplicated(event)) {
+                replicated.add(event);
+            }
+        }
+        return replicated;
+    }
+
+    private boolean isReplicated(ChangeEvent event) {
+        return event.origin().isFrom(sourceType) && REPLICATORS.get(event.kind()).replicates(event.operation());
+    }
+
+    private static List<OutboxEntry> toOutboxEntries(List<ChangeEvent> events) {
+        List<OutboxEntry> entries = new ArrayList<>(events.size());
+        for (ChangeEvent event : events) {
+            entries.add(toOutboxEntry(event));
+        }
+        return entries;
+    }
+
+    private static OutboxEntry toOutboxEntry(ChangeEvent event) {
+        // Per reinserire un appuntamento serve il paziente, che il modello non contiene
+        String parentId = event instanceof ChangeEvent.AppointmentInserted inserted ? inserted.patientUsername() : null;
+        return new OutboxEntry(0, event.operation(), event.kind(), event.entityId(), parentId, 0);
+    }
+
+    /**
+     * Records in the outbox, after they were applied, changes the DAO did not record beforehand;
+     * when it cannot be written, the changes are still replicated, but only from memory.
+     *
+     * @return The changes with their sequence, or unchanged if they were not recorded
+     */
+    private List<OutboxEntry> record(List<OutboxEntry> changes) {
+        if (outbox == null) {
+            return changes;
+        }
+        try {
+            return outbox.append(changes);
+        } catch (DAOException e) {
+            logger.log(Level.WARNING, "Cannot record " + changes.size() + " changes in the replication outbox of " + sourceType, e);
+            return changes;
+        }
+    }
+
+    /**
+     * Acknowledges in the outbox changes applied to the target persistence or superseded by later ones.
+     * A failure is only logged: the changes are then replayed, harmlessly, at the next start.
+     *
+     * @param tasks The acknowledged changes
+     */
+    void acknowledge(List<ReplicationTask> tasks) {
+        List<Long> sequences = sequencesOf(tasks);
+        if (outbox == null || sequences.isEmpty()) {
+            return;
+        }
+        try {
+            outbox.acknowledge(sequences);
+        } catch (DAOException e) {
+            logger.log(Level.WARNING, "Cannot acknowledge replicated changes in the outbox of " + sourceType, e);
+        }
+    }
+
+    /**
+     * Leaves in the outbox changes whose replication has been given up, for the next replay,
+     * counting the failure so that a change failing at every start ends in the dead letters.
+     *
+     * @param tasks The abandoned changes
+     */
+    void release(List<ReplicationTask> tasks) {
+        if (outbox == null) {
+            return;
+        }
+        List<Long> sequences = sequencesOf(tasks);
+        outbox.release(sequences);
+        try {
+            outbox.recordFailure(sequences);
+        } catch (DAOException e) {
+            logger.log(Level.WARNING, "Cannot count the failed replication in the outbox of " + sourceType, e);
+        }
+    }
+
+    private static List<Long> sequencesOf(List<ReplicationTask> tasks) {
+        List<Long> sequences = new ArrayList<>(tasks.size());
+        for (ReplicationTask task : tasks) {
+            if (task.sequence() > 0) {
+                sequences.add(task.sequence());
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * Applies queued changes to the target persistence.
      * <p>
-     * Since DAO update methods require UserBean objects for user-related entities,
-     * this method constructs appropriate UserBean instances from the Model objects,
-     * excluding password updates which are not handled through this synchronization flow.
+     * Called by the {@link ReplicationQueue} worker with either a single change or a run of insertions
+     * of the same entity type, which is replicated with the corresponding bulk method of the target DAO.
      * </p>
      *
-     * @param entityType The type of entity being updated
-     * @param entityId The unique identifier of the updated entity
-     * @param entity The entity data (Model object for updates)
+     * @param tasks The changes to apply, in order
+     * @throws DAOException If the target persistence rejects the changes; the queue retries them
      */
-    @Override
-    public void onAfterUpdate(String entityType, String entityId, Object entity) {
-        if (SyncContext.isSyncing()) return;
-        SyncContext.startSync();
-        try {
-            logger.log(Level.INFO, "SYNC UPDATE: Propagating {0} ({1}) from {2} to {3}", new Object[]{entityType, entityId, sourceType, getTargetType()});
-            switch (entityType) {
-                // Per l'UPDATE, si riceve sempre un oggetto del MODELLO.
-                case "Patient" -> {
-                    PatientDao targetDao = getTargetFactory().getPatientDao();
-                    // Il cast corretto è al Model
-                    Patient patient = (Patient) entity;
-                    // Il metodo updatePatient richiede un UserBean, quindi lo costruiamo dal modello.
-                    UserBean userBean = new UserBean.Builder<>()
-                            .username(patient.getUsername())
-                            .name(patient.getName())
-                            .surname(patient.getSurname())
-                            .gender(patient.getGender())
-                            .type("PATIENT")
-                            .password(null) // La password non viene aggiornata da questo flusso
-                            .build();
-                    targetDao.updatePatient(patient, userBean);
-                }
-                case "Psychologist" -> {
-                    PsychologistDao targetDao = getTargetFactory().getPsychologistDao();
-                    // Il cast corretto è al Model
-                    Psychologist psychologist = (Psychologist) entity;
-                    UserBean userBean = new UserBean.Builder<>()
-                            .username(psychologist.getUsername())
-                            .name(psychologist.getName())
-                            .surname(psychologist.getSurname())
-                            .gender(psychologist.getGender())
-                            .type("PSYCHOLOGIST")
-                            .password(null)
-                            .build();
-                    targetDao.updatePsychologist(psychologist, userBean);
-                }
-                case "Appointment" -> {
-                    AppointmentDao targetDao = getTargetFactory().getAppointmentDao();
-                    // L'update dell'appuntamento riceve e usa direttamente il modello.
-                    targetDao.updateAppointment((Appointment) entity);
-                }
-                default -> logger.log(Level.WARNING, "Sync UPDATE not handled for entity type: {0}", entityType);
+    void replicate(List<ReplicationTask> tasks) throws DAOException {
+        ReplicationTask first = tasks.get(0);
+        EntityReplicator replicator = REPLICATORS.get(first.kind());
+        if (tasks.size() > 1) {
+            List<ChangeEvent> events = new ArrayList<>(tasks.size());
+            for (ReplicationTask task : tasks) {
+                events.add(task.event());
             }
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Sync UPDATE failed", e);
-        } finally {
-            SyncContext.endSync();
+            logger.log(Level.INFO, "SYNC BATCH INSERT: Propagating {0} {1} from {2} to {3}", new Object[]{tasks.size(), first.kind(), sourceType, getTargetType()});
+            replicator.insertAll(events, getTargetFactory(), getTargetType());
+            return;
+        }
+        ChangeEvent event = first.event();
+        logger.log(Level.INFO, "SYNC {0}: Propagating {1} ({2}) from {3} to {4}", new Object[]{first.operation(), first.kind(), event.entityId(), sourceType, getTargetType()});
+        switch (first.operation()) {
+            case INSERT -> replicator.insert(event, getTargetFactory(), getTargetType());
+            case UPDATE -> replicator.update(event, getTargetFactory(), getTargetType());
+            case DELETE -> replicator.delete(event, getTargetFactory(), getTargetType());
         }
     }
 
     /**
-     * Handles entity deletion synchronization.
+     * Applies the changes of one entity kind to the target persistence.
      * <p>
-     * When an entity is deleted from the source persistence, this method
-     * replicates the deletion to the target persistence. For DELETE operations,
-     * only the entity type and identifier are needed to perform the operation.
+     * Each implementation receives only the events of its kind, so it can cast them to the
+     * corresponding {@link ChangeEvent} records without checking. Every write carries the origin of
+     * the replicated event; a bulk write carries the origin of its first event.
      * </p>
      * <p>
-     * The method handles different entity types appropriately:
-     * <ul>
-     *   <li><strong>User, Patient, Psychologist</strong>: Use string identifier (username)</li>
-     *   <li><strong>Appointment</strong>: Use integer identifier (appointment ID)</li>
-     * </ul>
+     * Only the operations accepted by {@link #replicates(DaoOperation)} are handed to a replicator,
+     * so a kind that does not replicate an operation simply keeps its default no-op method.
      * </p>
-     *
-     * @param entityType The type of entity being deleted
-     * @param entityId The unique identifier of the deleted entity
      */
-    @Override
-    public void onAfterDelete(String entityType, String entityId) {
-        if (SyncContext.isSyncing()) return;
-        SyncContext.startSync();
-        try {
-            logger.log(Level.INFO, "SYNC DELETE: Propagating {0} ({1}) from {2} to {3}", new Object[]{entityType, entityId, sourceType, getTargetType()});
-            DaoFactoryFacade targetFactory = getTargetFactory();
-            switch (entityType) {
-                case "User" -> targetFactory.getUserDao().deleteUser(entityId);
-                case "Patient" -> targetFactory.getPatientDao().deletePatient(entityId);
-                case "Psychologist" -> targetFactory.getPsychologistDao().deletePsychologist(entityId);
-                case "Appointment" -> targetFactory.getAppointmentDao().deleteAppointment(Integer.parseInt(entityId));
-                default -> logger.log(Level.WARNING, "Sync DELETE not handled for entity type: {0}", entityType);
+    private interface EntityReplicator {
+
+        /**
+         * @param operation An operation on the source persistence
+         * @return true if the operation has to be replicated for this entity kind
+         */
+        default boolean replicates(DaoOperation operation) {
+            return true;
+        }
+
+        /**
+         * Replicates a single insertion; the event always carries a Bean object.
+         */
+        default void insert(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+        }
+
+        /**
+         * Replicates several insertions with the bulk method of the target DAO,
+         * so the batch costs one write on the target persistence instead of one per entity.
+         */
+        default void insertAll(List<ChangeEvent> events, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+        }
+
+        /**
+         * Replicates an update; the event always carries a Model object.
+         */
+        default void update(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+        }
+
+        /**
+         * Replicates a deletion.
+         */
+        default void delete(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+        }
+    }
+
+    /**
+     * Users are inserted and updated together with their patient or psychologist, so only the
+     * deletion of a user row is replicated on its own.
+     * <p>
+     * A standalone {@link it.uniroma2.mindharbor.dao.UserDao#updateUser} call, such as a password
+     * change, is therefore <strong>not</strong> replicated: the application has no such flow today,
+     * and one would have to replicate the {@code UPDATE} of users here.
+     * </p>
+     */
+    private static final class UserReplicator implements EntityReplicator {
+
+        @Override
+        public boolean replicates(DaoOperation operation) {
+            return operation == DaoOperation.DELETE;
+        }
+
+        @Override
+        public void delete(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            factory.getUserDao(target).deleteUser(event.entityId(), event.origin());
+        }
+    }
+
+    private static final class PatientReplicator implements EntityReplicator {
+
+        @Override
+        public void insert(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            factory.getPatientDao(target).savePatient(((ChangeEvent.PatientInserted) event).patient(), event.origin());
+        }
+
+        @Override
+        public void insertAll(List<ChangeEvent> events, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            List<PatientBean> patients = new ArrayList<>(events.size());
+            for (ChangeEvent event : events) {
+                patients.add(((ChangeEvent.PatientInserted) event).patient());
             }
-        } catch (DAOException e) {
-            logger.log(Level.SEVERE, "Sync DELETE failed", e);
-        } finally {
-            SyncContext.endSync();
+            factory.getPatientDao(target).savePatients(patients, events.get(0).origin());
+        }
+
+        @Override
+        public void update(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            Patient patient = ((ChangeEvent.PatientUpdated) event).patient();
+            // Il metodo updatePatient richiede un UserBean, quindi lo costruiamo dal modello.
+            UserBean userBean = new UserBean.Builder<>()
+                    .username(patient.getUsername())
+                    .name(patient.getName())
+                    .surname(patient.getSurname())
+                    .gender(patient.getGender())
+                    .type("PATIENT")
+                    .password(null) // La password non viene aggiornata da questo flusso
+                    .build();
+            factory.getPatientDao(target).updatePatient(patient, userBean, event.origin());
+        }
+
+        @Override
+        public void delete(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            factory.getPatientDao(target).deletePatient(event.entityId(), event.origin());
+        }
+    }
+
+    private static final class PsychologistReplicator implements EntityReplicator {
+
+        @Override
+        public void insert(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            factory.getPsychologistDao(target).savePsychologist(((ChangeEvent.PsychologistInserted) event).psychologist(), event.origin());
+        }
+
+        @Override
+        public void insertAll(List<ChangeEvent> events, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            List<PsychologistBean> psychologists = new ArrayList<>(events.size());
+            for (ChangeEvent event : events) {
+                psychologists.add(((ChangeEvent.PsychologistInserted) event).psychologist());
+            }
+            factory.getPsychologistDao(target).savePsychologists(psychologists, events.get(0).origin());
+        }
+
+        @Override
+        public void update(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            Psychologist psychologist = ((ChangeEvent.PsychologistUpdated) event).psychologist();
+            UserBean userBean = new UserBean.Builder<>()
+                    .username(psychologist.getUsername())
+                    .name(psychologist.getName())
+                    .surname(psychologist.getSurname())
+                    .gender(psychologist.getGender())
+                    .type("PSYCHOLOGIST")
+                    .password(null)
+                    .build();
+            factory.getPsychologistDao(target).updatePsychologist(psychologist, userBean, event.origin());
+        }
+
+        @Override
+        public void delete(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            factory.getPsychologistDao(target).deletePsychologist(event.entityId(), event.origin());
+        }
+    }
+
+    private static final class AppointmentReplicator implements EntityReplicator {
+
+        @Override
+        public void insert(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            ChangeEvent.AppointmentInserted inserted = (ChangeEvent.AppointmentInserted) event;
+            factory.getAppointmentDao(target).saveAppointment(inserted.appointment(), inserted.patientUsername(), event.origin());
+        }
+
+        /**
+         * Appointments are grouped by patient, since {@code saveAppointments} takes a single patient.
+         */
+        @Override
+        public void insertAll(List<ChangeEvent> events, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            Map<String, List<Appointment>> appointmentsByPatient = new LinkedHashMap<>();
+            for (ChangeEvent event : events) {
+                ChangeEvent.AppointmentInserted inserted = (ChangeEvent.AppointmentInserted) event;
+                appointmentsByPatient.computeIfAbsent(inserted.patientUsername(), k -> new ArrayList<>())
+                        .add(inserted.appointment());
+            }
+            for (Map.Entry<String, List<Appointment>> entry : appointmentsByPatient.entrySet()) {
+                factory.getAppointmentDao(target).saveAppointments(entry.getValue(), entry.getKey(), events.get(0).origin());
+            }
+        }
+
+        @Override
+        public void update(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            factory.getAppointmentDao(target).updateAppointment(((ChangeEvent.AppointmentUpdated) event).appointment(), event.origin());
+        }
+
+        @Override
+        public void delete(ChangeEvent event, DaoFactoryFacade factory, PersistenceType target) throws DAOException {
+            factory.getAppointmentDao(target).deleteAppointment(Integer.parseInt(event.entityId()), event.origin());
         }
     }
 }
@@ -0,0 +1,240 @@
+package it.uniroma2.mindharbor.sync;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvMalformedLineException;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+import it.uniroma2.mindharbor.utilities.CsvUtilities;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link ReplicationOutbox} stored in an append-only local CSV file.
+ * <p>
+ * Every change is appended as an {@code E} line carrying its sequence, operation, entity type,
+ * identifier, parent and failed attempts; an acknowledgement is appended as an {@code A} line listing
+ * the acknowledged sequences, a failed replay as an {@code F} line listing the failed ones. The file is loaded once, the pending entries are then kept in memory,
+ * and it is emptied as soon as every entry has been acknowledged, which is the usual state
+ * between two writes. A truncated last line, left by a crash during an append, is ignored.
+ * </p>
+ * <p>
+ * Dead letters are appended to a second file as {@code E} lines followed by the reason; they are
+ * written and forced before being acknowledged in the outbox, so a crash in between leaves the
+ * entry in both files rather than in neither.
+ * </p>
+ */
+class FileReplicationOutbox extends ReplicationOutbox {
+
+    private static final Logger logger = Logger.getLogger(FileReplicationOutbox.class.getName());
+
+    private static final String ENTRY = "E";
+    private static final String ACK = "A";
+    private static final String FAILURE = "F";
+
+    private final File file;
+    private final File deadLetterFile;
+    private final boolean forceSync;
+    private final TreeMap<Long, OutboxEntry> entries = new TreeMap<>();
+    private long lastSequence;
+    private boolean loaded;
+
+    /**
+     * Creates an outbox stored in the given file.
+     *
+     * @param file           The outbox file
+     * @param deadLetterFile The file receiving the entries that cannot be replicated
+     * @param forceSync      Whether every append must be forced to the storage device before returning
+     */
+    FileReplicationOutbox(File file, File deadLetterFile, boolean forceSync) {
+        this.file = file;
+        this.deadLetterFile = deadLetterFile;
+        this.forceSync = forceSync;
+    }
+
+    @Override
+    synchronized List<OutboxEntry> write(List<OutboxEntry> changes) throws DAOException {
+        ensureLoaded();
+        List<OutboxEntry> appended = new ArrayList<>(changes.size());
+        List<String[]> lines = new ArrayList<>(changes.size());
+        for (OutboxEntry change : changes) {
+            OutboxEntry entry = change.at(++lastSequence);
+            appended.add(entry);
+            lines.add(toLine(entry));
+        }
+        writeTo(file, lines, true);
+        for (OutboxEntry entry : appended) {
+            entries.put(entry.sequence(), entry);
+        }
+        return appended;
+    }
+
+    @Override
+    synchronized void remove(Collection<Long> sequences) throws DAOException {
+        ensureLoaded();
+        List<String> line = new ArrayList<>(sequences.size() + 1);
+        line.add(ACK);
+        for (Long sequence : sequences) {
+            if (entries.remove(sequence) != null) {
+                line.add(String.valueOf(sequence));
+            }
+        }
+        if (line.size() == 1) {
+            return;
+        }
+        if (entries.isEmpty()) {
+            // Niente più da rigiocare: il file può ripartire vuoto
+            writeTo(file, List.of(), false);
+        } else {
+            writeTo(file, List.<String[]>of(line.toArray(new String[0])), true);
+        }
+    }
+
+    @Override
+    synchronized void incrementAttempts(Collection<Long> sequences) throws DAOException {
+        ensureLoaded();
+        List<String> line = new ArrayList<>(sequences.size() + 1);
+        line.add(FAILURE);
+        for (Long sequence : sequences) {
+            OutboxEntry entry = entries.get(sequence);
+            if (entry != null) {
+                entries.put(sequence, entry.failedAgain());
+                line.add(String.valueOf(sequence));
+            }
+        }
+        if (line.size() > 1) {
+            writeTo(file, List.<String[]>of(line.toArray(new String[0])), true);
+        }
+    }
+
+    @Override
+    synchronized void moveToDeadLetter(List<OutboxEntry> deadLetters, String reason) throws DAOException {
+        ensureLoaded();
+        List<String[]> lines = new ArrayList<>(deadLetters.size());
+        List<Long> sequences = new ArrayList<>(deadLetters.size());
+        for (OutboxEntry entry : deadLetters) {
+            String[] line = toLine(entry);
+            String[] deadLetter = Arrays.copyOf(line, line.length + 1);
+            deadLetter[line.length] = reason == null ? "" : reason;
+            lines.add(deadLetter);
+            sequences.add(entry.sequence());
+        }
+        writeTo(deadLetterFile, lines, true, true);
+        remove(sequences);
+    }
+
+    @Override
+    synchronized List<OutboxEntry> read() throws DAOException {
+        ensureLoaded();
+        return new ArrayList<>(entries.values());
+    }
+
+    @Override
+    synchronized void compact() throws DAOException {
+        ensureLoaded();
+        File tmp = new File(file.getAbsolutePath() + ".tmp");
+        List<String[]> lines = new ArrayList<>(entries.size());
+        for (OutboxEntry entry : entries.values()) {
+            lines.add(toLine(entry));
+        }
+        // La copia va forzata sul disco prima di prendere il posto dell'originale
+        writeTo(tmp, lines, false, true);
+        CsvUtilities.replace(tmp, file);
+    }
+
+    private void ensureLoaded() throws DAOException {
+        if (loaded) {
+            return;
+        }
+        boolean tornTail = false;
+        if (file.exists() && file.length() > 0) {
+            try (CSVReader reader = CsvUtilities.openReader(file)) {
+                String[] line;
+                while ((line = reader.readNext()) != null) {
+                    applyLine(line);
+                }
+            } catch (CsvException | CsvMalformedLineException e) {
+                logger.log(Level.WARNING, "Truncated entry at the end of {0}, ignoring the rest of the outbox", file);
+                tornTail = true;
+            } catch (IOException e) {
+                throw new DAOException(String.format(CsvUtilities.ERR_ACCESS, file), e);
+            }
+        }
+        loaded = true;
+        if (tornTail) {
+            // Le nuove righe non devono finire in coda a quella danneggiata
+            compact();
+        }
+        if (!entries.isEmpty()) {
+            logger.log(Level.INFO, "{0} changes waiting for replication in {1}", new Object[]{entries.size(), file});
+        }
+    }
+
+    private void applyLine(String[] line) {
+        try {
+            if (ENTRY.equals(line[0]) && line.length >= 6) {
+                // Le righe scritte prima del conteggio dei tentativi non hanno la settima colonna
+                int attempts = line.length >= 7 ? Integer.parseInt(line[6]) : 0;
+                OutboxEntry entry = new OutboxEntry(Long.parseLong(line[1]), DaoOperation.valueOf(line[2]),
+                        EntityKind.fromLabel(line[3]), line[4], line[5].isEmpty() ? null : line[5], attempts);
+                entries.put(entry.sequence(), entry);
+                lastSequence = Math.max(lastSequence, entry.sequence());
+                return;
+            }
+            if (ACK.equals(line[0])) {
+                for (int i = 1; i < line.length; i++) {
+                    entries.remove(Long.parseLong(line[i]));
+                }
+                return;
+            }
+            if (FAILURE.equals(line[0])) {
+                for (int i = 1; i < line.length; i++) {
+                    entries.computeIfPresent(Long.parseLong(line[i]), (sequence, entry) -> entry.failedAgain());
+                }
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            // Gestita sotto come riga non valida
+        }
+        logger.log(Level.WARNING, "Skipping malformed outbox line in {0}: {1}", new Object[]{file, String.join(",", line)});
+    }
+
+    private static String[] toLine(OutboxEntry entry) {
+        return new String[]{ENTRY, String.valueOf(entry.sequence()), entry.operation().name(),
+                entry.kind().label(), entry.entityId(), entry.parentId() == null ? "" : entry.parentId(),
+                String.valueOf(entry.attempts())};
+    }
+
+    private void writeTo(File target, List<String[]> lines, boolean append) throws DAOException {
+        writeTo(target, lines, append, forceSync);
+    }
+
+    private void writeTo(File target, List<String[]> lines, boolean append, boolean force) throws DAOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            logger.log(Level.WARNING, "Cannot create directory {0}", parent);
+        }
+        try (FileOutputStream out = new FileOutputStream(target, append);
+             CSVWriter writer = new CSVWriter(new OutputStreamWriter(out))) {
+            writer.writeAll(lines);
+            writer.flush();
+            if (force) {
+                out.getChannel().force(false);
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(CsvUtilities.ERR_ACCESS, target), e);
+        }
+    }
+}
@@ -2,6 +2,11 @@ package it.uniroma2.mindharbor.sync;
 
 import it.uniroma2.mindharbor.beans.PatientBean;
 import it.uniroma2.mindharbor.beans.PsychologistBean;
+import it.uniroma2.mindharbor.dao.AppointmentDao;
+import it.uniroma2.mindharbor.dao.AppointmentEntry;
+import it.uniroma2.mindharbor.dao.DaoCursor;
+import it.uniroma2.mindharbor.dao.PatientDao;
+import it.uniroma2.mindharbor.dao.PsychologistDao;
 import it.uniroma2.mindharbor.dao.UserDao;
 import it.uniroma2.mindharbor.exception.DAOException;
 import it.uniroma2.mindharbor.model.Appointment;
@@ -9,11 +14,28 @@ import it.uniroma2.mindharbor.model.Patient;
 import it.uniroma2.mindharbor.model.Psychologist;
 import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
 import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.sync.MerkleReconciler.KeyRange;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,45 +54,131 @@ import java.util.logging.Logger;
  *   <li>Conflict detection and resolution</li>
  * </ul>
  * </p>
+ * <p>
+ * The work runs on a bounded pool of {@code sync.initial.threads} workers, so that the
+ * synchronization can proceed in the background while the user interface starts; its
+ * state is published through a {@link SyncProgress}.
+ * </p>
  *
  * @see CrossPersistenceSyncObserver for real-time synchronization
- * @see SyncContext for preventing synchronization loops
+ * @see Origin for preventing synchronization loops
  */
 public class InitialSyncManager {
 
     private static final Logger logger = Logger.getLogger(InitialSyncManager.class.getName());
+    private static final int APPOINTMENT_BATCH_SIZE = 500;
+    private static final boolean INCREMENTAL = AppConfig.getBoolean("sync.incremental.enabled", true);
+    private static final long CLOCK_SKEW_MARGIN_MS = AppConfig.getLong("sync.watermark.clockSkewMarginMs", 60000);
+    private static final int THREADS = Math.max(1, AppConfig.getInt("sync.initial.threads", 4));
+    private static final boolean MERKLE = AppConfig.getBoolean("sync.merkle.enabled", true);
+
+    private static volatile SyncProgress currentProgress;
+
+    private final SyncWatermark watermark = new SyncWatermark(
+            new File(AppConfig.getString("sync.watermark.file", "db/sync_watermark.properties")));
+
+    /**
+     * Returns the progress of the last initial synchronization started in this process.
+     *
+     * @return The progress, or null if no synchronization has been started
+     */
+    public static SyncProgress getCurrentProgress() {
+        return currentProgress;
+    }
+
+    /**
+     * Performs a complete initial synchronization and waits for it to end.
+     *
+     * @param primaryType The primary persistence type that takes precedence in conflict resolution
+     * @see #performInitialSyncAsync(PersistenceType)
+     */
+    public void performInitialSync(PersistenceType primaryType) {
+        performInitialSyncAsync(primaryType).whenReady().join();
+    }
 
     /**
-     * Performs a complete initial synchronization between primary and secondary persistence types.
+     * Starts a complete initial synchronization between primary and secondary persistence types
+     * in the background.
+     * <p>
+     * Patients and psychologists are synchronized concurrently, since a patient can be copied
+     * without its psychologist; only the update of a conflicting patient, which may assign it a
+     * psychologist, waits for the psychologists to be aligned. Appointments, which depend on
+     * patients, start once the patients are aligned: a single merge pass reads both sides and the
+     * resulting writes are partitioned by patient and handed to the workers.
+     * </p>
+     * <p>
+     * Only the records changed since the {@link SyncWatermark} of the last successful run are
+     * compared; when there is no watermark, or {@code sync.incremental.enabled} is false, the whole
+     * data set is. On success the watermark is moved to the start of this run, minus
+     * {@code sync.watermark.clockSkewMarginMs} to absorb the difference between the clock of the
+     * database server, which stamps MySQL rows, and the local clock, which stamps CSV records.
+     * </p>
      * <p>
-     * This method coordinates the synchronization of all entities in the correct order:
-     * patients first (since they can exist independently), then psychologists,
-     * and finally appointments (which depend on patients).
+     * The changes left in the {@link ReplicationOutbox} by a previous run are replayed first, so that
+     * rows deleted on one side only are not copied back by the comparison.
      * </p>
      * <p>
-     * The synchronization is performed within a {@link SyncContext} to prevent
-     * observer notifications that could cause infinite loops.
+     * A full comparison first looks for the key ranges that differ with the {@link MerkleReconciler},
+     * unless {@code sync.merkle.enabled} is false, and only compares the rows of those ranges.
+     * </p>
+     * <p>
+     * Every write is tagged with an {@link Origin} in the persistence type the data are copied from,
+     * so the observers of the written persistence type do not replicate it back.
      * </p>
      *
      * @param primaryType The primary persistence type that takes precedence in conflict resolution
+     * @return The progress of the synchronization, completed when it ends
      */
-    public void performInitialSync(PersistenceType primaryType) {
-        logger.info("Starting initial synchronization...");
-        SyncContext.startSync();
-        try {
-            PersistenceType secondaryType = (primaryType == PersistenceType.MYSQL) ? PersistenceType.CSV : PersistenceType.MYSQL;
-
-            // Synchronize entities in dependency order
-            List<Patient> syncedPatients = syncPatients(primaryType, secondaryType);
-            syncPsychologists(primaryType, secondaryType);
-            syncAppointments(syncedPatients, primaryType, secondaryType);
+    public SyncProgress performInitialSyncAsync(PersistenceType primaryType) {
+        SyncProgress progress = new SyncProgress();
+        currentProgress = progress;
+        Thread coordinator = new Thread(() -> runSync(primaryType, progress), "initial-sync");
+        coordinator.setDaemon(true);
+        coordinator.start();
+        return progress;
+    }
 
-            logger.info("Initial synchronization completed successfully.");
+    private void runSync(PersistenceType primaryType, SyncProgress progress) {
+        long startedAt = System.currentTimeMillis();
+        long since = INCREMENTAL ? watermark.load() : 0;
+        logger.info(since > 0 ? "Starting incremental synchronization of changes since " + Instant.ofEpochMilli(since) + "..."
+                : "Starting initial synchronization...");
+        PersistenceType secondaryType = primaryType.counterpart();
+        ThreadPoolExecutor executor = newExecutor();
+        boolean success = false;
+        try {
+            // Prima le modifiche rimaste nell'outbox: una cancellazione persa verrebbe annullata dal confronto
+            progress.setPhase(SyncProgress.Phase.OUTBOX);
+            OutboxReplayer.replay(primaryType, secondaryType);
+            OutboxReplayer.replay(secondaryType, primaryType);
+
+            progress.setPhase(SyncProgress.Phase.USERS);
+            CompletableFuture<Void> psychologists = submit(() -> {
+                syncPsychologists(primaryType, secondaryType, since, progress);
+                return null;
+            }, executor);
+            CompletableFuture<List<Patient>> patients = submit(
+                    () -> syncPatients(primaryType, secondaryType, since, progress), executor);
+
+            // Gli appuntamenti richiedono che i pazienti esistano su entrambi i lati
+            List<Patient> conflicts = await(patients);
+            CompletableFuture<Void> patientUpdates = psychologists.thenCompose(v -> submit(() -> {
+                updatePatients(conflicts, primaryType, secondaryType);
+                return null;
+            }, executor));
+
+            progress.setPhase(SyncProgress.Phase.APPOINTMENTS);
+            syncAppointments(primaryType, secondaryType, since, executor, progress);
+            await(patientUpdates);
+
+            watermark.save(startedAt - CLOCK_SKEW_MARGIN_MS);
+            success = true;
+            logger.info("Initial synchronization completed successfully: " + progress);
         } catch (DAOException e) {
             logger.log(Level.SEVERE, "Initial synchronization failed.", e);
         } finally {
-            SyncContext.endSync();
-            logger.info("Real-time synchronization observers reactivated.");
+            executor.shutdown();
+            progress.complete(success);
         }
     }
 
@@ -84,49 +192,98 @@ public class InitialSyncManager {
      *   <li>Ensures data consistency across both systems</li>
      * </ul>
      * </p>
+     * <p>
+     * The two sides are compared through the {@link ContentDigest content digest} of each patient:
+     * only the patients to copy and the ones whose digests differ are materialized, and their
+     * password is read only when they have to be written.
+     * </p>
+     * <p>
+     * Conflicts are not applied here but returned, because the primary version may reference
+     * a psychologist that is still being copied.
+     * </p>
      *
      * @param primary The primary persistence type
      * @param secondary The secondary persistence type
-     * @return List of synchronized patients from the primary persistence
+     * @param since The watermark; only patients changed on either side since then are compared
+     * @param progress The progress to update
+     * @return The primary version of the patients whose data differ between the two sides
      * @throws DAOException if patient data access or synchronization fails
      */
-    private List<Patient> syncPatients(PersistenceType primary, PersistenceType secondary) throws DAOException {
+    private List<Patient> syncPatients(PersistenceType primary, PersistenceType secondary, long since,
+                                       SyncProgress progress) throws DAOException {
         logger.info("Synchronizing patients...");
         DaoFactoryFacade factory = DaoFactoryFacade.getInstance();
+        PatientDao primaryDao = factory.getPatientDao(primary);
+        PatientDao secondaryDao = factory.getPatientDao(secondary);
+
+        Map<String, String> primaryDigests;
+        Map<String, String> secondaryDigests;
+        if (since == 0 && MERKLE) {
+            primaryDigests = new HashMap<>();
+            secondaryDigests = new HashMap<>();
+            for (KeyRange range : MerkleReconciler.mismatchingRanges("patients",
+                    primaryDao::summarizePatients, secondaryDao::summarizePatients, MerkleReconciler.USERNAMES)) {
+                primaryDigests.putAll(primaryDao.retrievePatientDigestsInRange(range.from(), range.to()));
+                secondaryDigests.putAll(secondaryDao.retrievePatientDigestsInRange(range.from(), range.to()));
+            }
+        } else {
+            primaryDigests = primaryDao.retrievePatientDigestsModifiedSince(since);
+            secondaryDigests = secondaryDao.retrievePatientDigestsModifiedSince(since);
+            // Un paziente cambiato da una sola parte va confrontato con la versione (non cambiata) dell'altra
+            completeWith(primaryDigests, secondaryDigests.keySet(), primaryDao::retrievePatientDigest);
+            completeWith(secondaryDigests, primaryDigests.keySet(), secondaryDao::retrievePatientDigest);
+        }
 
-        factory.setPersistenceType(primary);
-        Map<String, Patient> primaryMap = listToMap(factory.getPatientDao().retrieveAllPatients());
-
-        factory.setPersistenceType(secondary);
-        Map<String, Patient> secondaryMap = listToMap(factory.getPatientDao().retrieveAllPatients());
-
-        Set<String> allKeys = new HashSet<>(primaryMap.keySet());
-        allKeys.addAll(secondaryMap.keySet());
+        Set<String> allKeys = new HashSet<>(primaryDigests.keySet());
+        allKeys.addAll(secondaryDigests.keySet());
 
+        List<Patient> conflicts = new ArrayList<>();
         for (String key : allKeys) {
-            Patient primaryPatient = primaryMap.get(key);
-            Patient secondaryPatient = secondaryMap.get(key);
-
-            if (primaryPatient != null && secondaryPatient == null) {
-                logger.info("Sync: Copying patient " + key + " from " + primary + " to " + secondary);
-                PatientBean beanToSave = createPatientBeanFromModel(primaryPatient, factory, primary);
-                factory.setPersistenceType(secondary);
-                factory.getPatientDao().savePatient(beanToSave);
-            } else if (primaryPatient == null && secondaryPatient != null) {
-                logger.info("Sync: Copying patient " + key + " from " + secondary + " to " + primary);
-                PatientBean beanToSave = createPatientBeanFromModel(secondaryPatient, factory, secondary);
-                factory.setPersistenceType(primary);
-                factory.getPatientDao().savePatient(beanToSave);
-            } else if (primaryPatient != null && !primaryPatient.isDataEquivalent(secondaryPatient)) {
-                logger.info("Sync Conflict: Different data for patient " + key + ". Primary source " + primary + " takes precedence.");
-                PatientBean beanToUpdate = createPatientBeanFromModel(primaryPatient, factory, primary);
-                factory.setPersistenceType(secondary); // Si scrive sulla destinazione secondaria
-                factory.getPatientDao().updatePatient(primaryPatient, beanToUpdate);
+            String primaryDigest = primaryDigests.get(key);
+            String secondaryDigest = secondaryDigests.get(key);
+
+            if (primaryDigest != null && secondaryDigest == null) {
+                Patient primaryPatient = primaryDao.retrievePatient(key);
+                if (primaryPatient != null) {
+                    logger.info("Sync: Copying patient " + key + " from " + primary + " to " + secondary);
+                    copyUnlessPresent("patient " + key,
+                            () -> secondaryDao.savePatient(createPatientBeanFromModel(primaryPatient, factory, primary), Origin.of(primary)),
+                            () -> secondaryDao.retrievePatient(key) != null);
+                }
+            } else if (primaryDigest == null && secondaryDigest != null) {
+                Patient secondaryPatient = secondaryDao.retrievePatient(key);
+                if (secondaryPatient != null) {
+                    logger.info("Sync: Copying patient " + key + " from " + secondary + " to " + primary);
+                    copyUnlessPresent("patient " + key,
+                            () -> primaryDao.savePatient(createPatientBeanFromModel(secondaryPatient, factory, secondary), Origin.of(secondary)),
+                            () -> primaryDao.retrievePatient(key) != null);
+                }
+            } else if (!sameContent(primaryDigest, secondaryDigest)) {
+                Patient primaryPatient = primaryDao.retrievePatient(key);
+                if (primaryPatient != null) {
+                    conflicts.add(primaryPatient);
+                }
             }
         }
+        progress.patientsCompared(allKeys.size());
+        return conflicts;
+    }
 
-        factory.setPersistenceType(primary);
-        return factory.getPatientDao().retrieveAllPatients();
+    /**
+     * Overwrites the secondary version of the conflicting patients with the primary one.
+     *
+     * @param conflicts The primary version of the conflicting patients
+     * @param primary The primary persistence type
+     * @param secondary The secondary persistence type
+     * @throws DAOException if an update fails
+     */
+    private void updatePatients(List<Patient> conflicts, PersistenceType primary, PersistenceType secondary) throws DAOException {
+        DaoFactoryFacade factory = DaoFactoryFacade.getInstance();
+        for (Patient primaryPatient : conflicts) {
+            logger.info("Sync Conflict: Different data for patient " + primaryPatient.getUsername() + ". Primary source " + primary + " takes precedence.");
+            PatientBean beanToUpdate = createPatientBeanFromModel(primaryPatient, factory, primary);
+            factory.getPatientDao(secondary).updatePatient(primaryPatient, beanToUpdate, Origin.of(primary));
+        }
     }
 
     /**
@@ -139,146 +296,455 @@ public class InitialSyncManager {
      *
      * @param primary The primary persistence type
      * @param secondary The secondary persistence type
+     * @param since The watermark; only psychologists changed on either side since then are compared
+     * @param progress The progress to update
      * @throws DAOException if psychologist data access or synchronization fails
      */
-    private void syncPsychologists(PersistenceType primary, PersistenceType secondary) throws DAOException {
+    private void syncPsychologists(PersistenceType primary, PersistenceType secondary, long since,
+                                   SyncProgress progress) throws DAOException {
         logger.info("Synchronizing psychologists...");
         DaoFactoryFacade factory = DaoFactoryFacade.getInstance();
+        PsychologistDao primaryDao = factory.getPsychologistDao(primary);
+        PsychologistDao secondaryDao = factory.getPsychologistDao(secondary);
+
+        Map<String, String> primaryDigests;
+        Map<String, String> secondaryDigests;
+        if (since == 0 && MERKLE) {
+            primaryDigests = new HashMap<>();
+            secondaryDigests = new HashMap<>();
+            for (KeyRange range : MerkleReconciler.mismatchingRanges("psychologists",
+                    primaryDao::summarizePsychologists, secondaryDao::summarizePsychologists, MerkleReconciler.USERNAMES)) {
+                primaryDigests.putAll(primaryDao.retrievePsychologistDigestsInRange(range.from(), range.to()));
+                secondaryDigests.putAll(secondaryDao.retrievePsychologistDigestsInRange(range.from(), range.to()));
+            }
+        } else {
+            primaryDigests = primaryDao.retrievePsychologistDigestsModifiedSince(since);
+            secondaryDigests = secondaryDao.retrievePsychologistDigestsModifiedSince(since);
+            completeWith(primaryDigests, secondaryDigests.keySet(), primaryDao::retrievePsychologistDigest);
+            completeWith(secondaryDigests, primaryDigests.keySet(), secondaryDao::retrievePsychologistDigest);
+        }
 
-        factory.setPersistenceType(primary);
-        Map<String, Psychologist> primaryMap = listToMapPsychologist(factory.getPsychologistDao().retrieveAllPsychologists());
-
-        factory.setPersistenceType(secondary);
-        Map<String, Psychologist> secondaryMap = listToMapPsychologist(factory.getPsychologistDao().retrieveAllPsychologists());
-
-        Set<String> allKeys = new HashSet<>(primaryMap.keySet());
-        allKeys.addAll(secondaryMap.keySet());
+        Set<String> allKeys = new HashSet<>(primaryDigests.keySet());
+        allKeys.addAll(secondaryDigests.keySet());
 
         for (String key : allKeys) {
-            Psychologist primaryPsy = primaryMap.get(key);
-            Psychologist secondaryPsy = secondaryMap.get(key);
-            if (primaryPsy != null && secondaryPsy == null) {
+            String primaryDigest = primaryDigests.get(key);
+            String secondaryDigest = secondaryDigests.get(key);
+            if (sameContent(primaryDigest, secondaryDigest)) {
+                continue;
+            }
+            // Si materializza solo lo psicologo da scrivere
+            Psychologist source = primaryDigest != null ? primaryDao.retrievePsychologist(key) : secondaryDao.retrievePsychologist(key);
+            if (source == null) {
+                continue;
+            }
+            if (secondaryDigest == null) {
                 logger.info("Sync: Copying psychologist " + key + " from " + primary + " to " + secondary);
-                PsychologistBean bean = createPsychologistBeanFromModel(primaryPsy, factory, primary);
-                factory.setPersistenceType(secondary);
-                factory.getPsychologistDao().savePsychologist(bean);
-            } else if (primaryPsy == null && secondaryPsy != null) {
+                copyUnlessPresent("psychologist " + key,
+                        () -> secondaryDao.savePsychologist(createPsychologistBeanFromModel(source, factory, primary), Origin.of(primary)),
+                        () -> secondaryDao.retrievePsychologist(key) != null);
+            } else if (primaryDigest == null) {
                 logger.info("Sync: Copying psychologist " + key + " from " + secondary + " to " + primary);
-                PsychologistBean bean = createPsychologistBeanFromModel(secondaryPsy, factory, secondary);
-                factory.setPersistenceType(primary);
-                factory.getPsychologistDao().savePsychologist(bean);
-            } else if (primaryPsy != null && !primaryPsy.isDataEquivalent(secondaryPsy)) {
-                logger.info("Sync Conflict: Different data for psychologist " + key + ". Primary source " + primary + " takes precedence.");                PsychologistBean beanToUpdate = createPsychologistBeanFromModel(primaryPsy, factory, primary);
-                factory.setPersistenceType(secondary);
-                factory.getPsychologistDao().updatePsychologist(primaryPsy, beanToUpdate);
+                copyUnlessPresent("psychologist " + key,
+                        () -> primaryDao.savePsychologist(createPsychologistBeanFromModel(source, factory, secondary), Origin.of(secondary)),
+                        () -> primaryDao.retrievePsychologist(key) != null);
+            } else {
+                logger.info("Sync Conflict: Different data for psychologist " + key + ". Primary source " + primary + " takes precedence.");
+                secondaryDao.updatePsychologist(source, createPsychologistBeanFromModel(source, factory, primary), Origin.of(primary));
             }
         }
+        progress.psychologistsCompared(allKeys.size());
     }
 
     /**
-     * Synchronizes appointment data for all patients between persistence types.
+     * Synchronizes appointment data between persistence types with a single merge pass.
+     * <p>
+     * Both persistence types are read through a cursor ordered by appointment ID and the two
+     * streams are merged like the sides of a sort-merge join: an ID found on one side only is
+     * copied to the other, an ID found on both sides with different data is overwritten with the
+     * primary version. Each table is therefore read once, whatever the number of patients, and
+     * only the copies waiting to be written are kept in memory.
+     * </p>
+     * <p>
+     * With a watermark the cursors only return the appointments changed since then, so an ID
+     * found on one side only may just be unchanged on the other: the digest of that side is then
+     * looked up by ID before deciding whether the appointment is missing.
+     * </p>
+     * <p>
+     * Versions are compared through their {@link ContentDigest content digest}; a version that is
+     * not already at hand is read only when the digests differ.
+     * </p>
      * <p>
-     * This method processes appointments for each patient individually, ensuring
-     * that appointment schedules are consistent across both storage systems.
-     * Since appointments are patient-specific, this method requires the list
-     * of synchronized patients to process.
+     * Without a watermark, the merge only covers the ID ranges the {@link MerkleReconciler} found
+     * to differ, each read through its own pair of cursors.
+     * </p>
+     * <p>
+     * The merge runs on the calling thread, while the writes are partitioned by patient and
+     * executed by the workers in batches of {@value #APPOINTMENT_BATCH_SIZE}, copies grouped by
+     * patient so that each group is written with a single bulk call.
      * </p>
      *
-     * @param syncedPatients List of patients whose appointments should be synchronized
      * @param primary The primary persistence type
      * @param secondary The secondary persistence type
+     * @param since The watermark, or {@code 0} to compare every appointment
+     * @param executor The workers executing the writes
+     * @param progress The progress to update
      * @throws DAOException if appointment data access or synchronization fails
      */
-    private void syncAppointments(List<Patient> syncedPatients, PersistenceType primary, PersistenceType secondary) throws DAOException {
+    private void syncAppointments(PersistenceType primary, PersistenceType secondary, long since,
+                                  Executor executor, SyncProgress progress) throws DAOException {
         logger.info("Synchronizing appointments...");
         DaoFactoryFacade factory = DaoFactoryFacade.getInstance();
-
-        for (Patient patient : syncedPatients) {
-            String username = patient.getUsername();
-
-            factory.setPersistenceType(primary);
-            Map<Integer, Appointment> primaryMap = listToMapAppointments(factory.getAppointmentDao().retrieveAppointmentsByPatient(username));
-
-            factory.setPersistenceType(secondary);
-            Map<Integer, Appointment> secondaryMap = listToMapAppointments(factory.getAppointmentDao().retrieveAppointmentsByPatient(username));
-
-            Set<Integer> allIds = new HashSet<>(primaryMap.keySet());
-            allIds.addAll(secondaryMap.keySet());
-
-            for (Integer id : allIds) {
-                Appointment primaryApp = primaryMap.get(id);
-                Appointment secondaryApp = secondaryMap.get(id);
-
-                if (primaryApp != null && secondaryApp == null) {
-                    logger.info("Sync: Copying appointment " + id + " from " + primary + " to " + secondary);                    factory.setPersistenceType(secondary);
-                    factory.getAppointmentDao().saveAppointment(primaryApp, username);
-                } else if (primaryApp == null && secondaryApp != null) {
-                    logger.info("Sync: Copying appointment " + id + " from " + secondary + " to " + primary);
-                    factory.setPersistenceType(primary);
-                    factory.getAppointmentDao().saveAppointment(secondaryApp, username);
-                } else if (primaryApp != null && !primaryApp.isDataEquivalent(secondaryApp)) {
-                    logger.info("Sync Conflict: Different data for appointment " + id + ". Primary source " + primary + " takes precedence.");
-                    factory.setPersistenceType(secondary);
-                    factory.getAppointmentDao().updateAppointment(primaryApp);
+        AppointmentDao primaryDao = factory.getAppointmentDao(primary);
+        AppointmentDao secondaryDao = factory.getAppointmentDao(secondary);
+        AppointmentWriter toSecondary = new AppointmentWriter(secondaryDao, primary, executor);
+        AppointmentWriter toPrimary = new AppointmentWriter(primaryDao, secondary, executor);
+
+        List<KeyRange> ranges = since == 0 && MERKLE
+                ? MerkleReconciler.mismatchingRanges("appointments",
+                        primaryDao::summarizeAppointments, secondaryDao::summarizeAppointments, MerkleReconciler.APPOINTMENT_IDS)
+                : List.of(MerkleReconciler.APPOINTMENT_IDS);
+        try {
+            for (KeyRange range : ranges) {
+                try (DaoCursor<AppointmentEntry> primaryCursor = openCursor(primaryDao, range, since);
+                     DaoCursor<AppointmentEntry> secondaryCursor = openCursor(secondaryDao, range, since)) {
+                    AppointmentEntry primaryEntry = primaryCursor.next();
+                    AppointmentEntry secondaryEntry = secondaryCursor.next();
+
+                    while (primaryEntry != null || secondaryEntry != null) {
+                        int order = compareIds(primaryEntry, secondaryEntry);
+                        if (order < 0) {
+                            int id = primaryEntry.appointment().getId();
+                            String secondaryDigest = since > 0 ? secondaryDao.retrieveAppointmentDigest(id) : null;
+                            if (secondaryDigest == null) {
+                                logger.fine("Sync: Copying appointment " + id + " from " + primary + " to " + secondary);
+                                toSecondary.insert(primaryEntry);
+                            } else if (!sameContent(primaryEntry.digest(), secondaryDigest)) {
+                                resolveConflict(primaryEntry.appointment(), primaryEntry.patientUsername(), toSecondary, primary);
+                            }
+                            primaryEntry = primaryCursor.next();
+                        } else if (order > 0) {
+                            int id = secondaryEntry.appointment().getId();
+                            String primaryDigest = since > 0 ? primaryDao.retrieveAppointmentDigest(id) : null;
+                            if (primaryDigest == null) {
+                                logger.fine("Sync: Copying appointment " + id + " from " + secondary + " to " + primary);
+                                toPrimary.insert(secondaryEntry);
+                            } else if (!sameContent(primaryDigest, secondaryEntry.digest())) {
+                                Appointment primaryApp = primaryDao.retrieveAppointment(id);
+                                if (primaryApp != null) {
+                                    resolveConflict(primaryApp, secondaryEntry.patientUsername(), toSecondary, primary);
+                                }
+                            }
+                            secondaryEntry = secondaryCursor.next();
+                        } else {
+                            if (!sameContent(primaryEntry.digest(), secondaryEntry.digest())) {
+                                resolveConflict(primaryEntry.appointment(), primaryEntry.patientUsername(), toSecondary, primary);
+                            }
+                            primaryEntry = primaryCursor.next();
+                            secondaryEntry = secondaryCursor.next();
+                        }
+                        progress.appointmentCompared();
+                    }
                 }
             }
+        } finally {
+            // Anche in caso di errore si attendono le scritture già affidate ai worker
+            toSecondary.flushAll();
+            toPrimary.flushAll();
         }
+        int writtenToSecondary = toSecondary.await();
+        int writtenToPrimary = toPrimary.await();
+        logger.info("Appointments copied: " + writtenToSecondary + " to " + secondary + ", " + writtenToPrimary + " to " + primary);
     }
 
-    // Helper Methods
+    /**
+     * Opens the cursor over the appointments of a key range to merge, or over the appointments
+     * changed since the watermark.
+     */
+    private static DaoCursor<AppointmentEntry> openCursor(AppointmentDao dao, KeyRange range, long since) throws DAOException {
+        if (since > 0) {
+            return dao.openAppointmentCursor(since);
+        }
+        return range.equals(MerkleReconciler.APPOINTMENT_IDS)
+                ? dao.openAppointmentCursor()
+                : dao.openAppointmentRangeCursor(range.from(), range.to());
+    }
+
+    /**
+     * Schedules the overwrite of the secondary version of an appointment with the primary one.
+     */
+    private void resolveConflict(Appointment primaryApp, String patientUsername,
+                                 AppointmentWriter toSecondary, PersistenceType primary) {
+        logger.info("Sync Conflict: Different data for appointment " + primaryApp.getId() + ". Primary source " + primary + " takes precedence.");
+        toSecondary.update(primaryApp, patientUsername);
+    }
+
+    /**
+     * Compares the IDs at the head of the two cursors; an exhausted cursor sorts after any ID.
+     */
+    private static int compareIds(AppointmentEntry primaryEntry, AppointmentEntry secondaryEntry) {
+        if (secondaryEntry == null) {
+            return -1;
+        }
+        if (primaryEntry == null) {
+            return 1;
+        }
+        return Integer.compare(primaryEntry.appointment().getId(), secondaryEntry.appointment().getId());
+    }
 
     /**
-     * Converts a list of patients to a map with username as key.
+     * Writes of appointments to one persistence type, partitioned by patient.
      * <p>
-     * This helper method facilitates efficient lookup and comparison
-     * of patient records during synchronization.
+     * Every patient belongs to one of {@code sync.initial.threads} partitions; a partition
+     * collects copies, grouped by patient so that each group can be written with
+     * {@link AppointmentDao#saveAppointments}, and conflict updates, and hands them to the
+     * workers as one task when it holds {@value #APPOINTMENT_BATCH_SIZE} of them.
+     * When the workers are all busy the task runs on the merging thread, which slows
+     * the merge down to the pace of the writes.
      * </p>
-     *
-     * @param list List of patients to convert
-     * @return Map with username as key and Patient object as value
      */
-    private Map<String, Patient> listToMap(List<Patient> list) {
-        Map<String, Patient> map = new HashMap<>();
-        for (Patient p : list) {
-            map.put(p.getUsername(), p);
+    private static class AppointmentWriter {
+        private final AppointmentDao target;
+        private final PersistenceType source;
+        private final Executor executor;
+        private final Partition[] partitions = new Partition[THREADS];
+        private final List<CompletableFuture<Integer>> writes = new ArrayList<>();
+
+        AppointmentWriter(AppointmentDao target, PersistenceType source, Executor executor) {
+            this.target = target;
+            this.source = source;
+            this.executor = executor;
+            for (int i = 0; i < partitions.length; i++) {
+                partitions[i] = new Partition();
+            }
+        }
+
+        void insert(AppointmentEntry entry) {
+            Partition partition = partitionOf(entry.patientUsername());
+            partition.copies.computeIfAbsent(entry.patientUsername(), k -> new ArrayList<>()).add(entry.appointment());
+            if (++partition.size >= APPOINTMENT_BATCH_SIZE) {
+                flush(partition);
+            }
+        }
+
+        void update(Appointment appointment, String patientUsername) {
+            Partition partition = partitionOf(patientUsername);
+            partition.updates.add(appointment);
+            if (++partition.size >= APPOINTMENT_BATCH_SIZE) {
+                flush(partition);
+            }
+        }
+
+        void flushAll() {
+            for (Partition partition : partitions) {
+                flush(partition);
+            }
+        }
+
+        /**
+         * Waits for every write handed to the workers.
+         *
+         * @return The number of appointments copied
+         * @throws DAOException if a write failed
+         */
+        int await() throws DAOException {
+            int written = 0;
+            for (CompletableFuture<Integer> write : writes) {
+                written += InitialSyncManager.await(write);
+            }
+            return written;
+        }
+
+        private Partition partitionOf(String patientUsername) {
+            return partitions[Math.floorMod(Objects.hashCode(patientUsername), partitions.length)];
+        }
+
+        private void flush(Partition partition) {
+            if (partition.size == 0) {
+                return;
+            }
+            Map<String, List<Appointment>> copies = new LinkedHashMap<>(partition.copies);
+            List<Appointment> updates = new ArrayList<>(partition.updates);
+            partition.copies.clear();
+            partition.updates.clear();
+            partition.size = 0;
+            writes.add(submit(() -> {
+                int copied = 0;
+                for (Map.Entry<String, List<Appointment>> group : copies.entrySet()) {
+                    copied += copy(group.getValue(), group.getKey());
+                }
+                for (Appointment appointment : updates) {
+                    target.updateAppointment(appointment, Origin.of(source));
+                }
+                return copied;
+            }, executor));
+        }
+
+        /**
+         * Copies the appointments of a patient with a single bulk call; if the call fails, for
+         * instance because the user interface booked one of them in the meantime, copies them one
+         * at a time and skips the ones already present.
+         *
+         * @return The number of appointments copied
+         */
+        private int copy(List<Appointment> appointments, String patientUsername) throws DAOException {
+            try {
+                target.saveAppointments(appointments, patientUsername, Origin.of(source));
+                return appointments.size();
+            } catch (DAOException e) {
+                logger.log(Level.FINE, "Bulk copy of the appointments of " + patientUsername + " failed, copying them one at a time", e);
+            }
+            int copied = 0;
+            for (Appointment appointment : appointments) {
+                if (copyUnlessPresent("appointment " + appointment.getId(),
+                        () -> target.saveAppointment(appointment, patientUsername, Origin.of(source)),
+                        () -> target.appointmentExists(appointment.getId()))) {
+                    copied++;
+                }
+            }
+            return copied;
         }
-        return map;
     }
 
     /**
-     * Converts a list of psychologists to a map with username as key.
+     * Appointments of the patients of one partition waiting to be written.
+     */
+    private static class Partition {
+        private final Map<String, List<Appointment>> copies = new LinkedHashMap<>();
+        private final List<Appointment> updates = new ArrayList<>();
+        private int size;
+    }
+
+    // Helper Methods
+
+    /**
+     * Unit of work executed by the synchronization workers.
+     */
+    @FunctionalInterface
+    private interface SyncTask<T> {
+        T run() throws DAOException;
+    }
+
+    /**
+     * Single write of the synchronization.
+     */
+    @FunctionalInterface
+    private interface SyncWrite {
+        void run() throws DAOException;
+    }
+
+    /**
+     * Creates the bounded pool of workers; when its queue is full a task runs on the submitting thread.
+     */
+    private static ThreadPoolExecutor newExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(THREADS * 2),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "initial-sync-worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Submits a task to the workers.
+     */
+    private static <T> CompletableFuture<T> submit(SyncTask<T> task, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.run();
+            } catch (DAOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for a task and rethrows its failure as a {@link DAOException}.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws DAOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof DAOException daoException) {
+                throw daoException;
+            }
+            throw new DAOException("Initial synchronization task failed", e.getCause());
+        }
+    }
+
+    /**
+     * Copies an entity unless it has been written to the target in the meantime.
      * <p>
-     * This helper method facilitates efficient lookup and comparison
-     * of psychologist records during synchronization.
+     * The user interface keeps writing while the synchronization runs, so an entity found missing
+     * by the comparison may reach the target, through replication, before the copy: the copy then
+     * fails on the duplicate key. The entity is then already present in a version at least as
+     * recent as the compared one and the copy is skipped instead of failing the run; a difference
+     * left by the concurrent write is found by the next run, since it is newer than the watermark.
      * </p>
      *
-     * @param list List of psychologists to convert
-     * @return Map with username as key and Psychologist object as value
+     * @param entity The entity, for logging
+     * @param copy The copy
+     * @param present Whether the entity exists on the target
+     * @return true if the entity was copied, false if it was already present
+     * @throws DAOException if the copy failed and the entity is not on the target
      */
-    private Map<String, Psychologist> listToMapPsychologist(List<Psychologist> list) {
-        Map<String, Psychologist> map = new HashMap<>();
-        for (Psychologist p : list) {
-            map.put(p.getUsername(), p);
+    private static boolean copyUnlessPresent(String entity, SyncWrite copy, SyncTask<Boolean> present) throws DAOException {
+        try {
+            copy.run();
+            return true;
+        } catch (DAOException e) {
+            if (!present.run()) {
+                throw e;
+            }
+            logger.info("Sync: " + entity + " was written meanwhile, skipping the copy");
+            return false;
         }
-        return map;
     }
 
     /**
-     * Converts a list of appointments to a map with appointment ID as key.
+     * Lookup of a single entity by key, used to complete a change set.
+     */
+    @FunctionalInterface
+    private interface KeyLookup<T> {
+        T retrieve(String key) throws DAOException;
+    }
+
+    /**
+     * Adds to a change set the current version of the entities that changed only on the other side.
      * <p>
-     * This helper method facilitates efficient lookup and comparison
-     * of appointment records during synchronization.
+     * An entity missing from {@code changed} but present in {@code otherKeys} either has not changed
+     * since the watermark or does not exist on this side; it is looked up so that the caller can tell
+     * the two cases apart. Entities that do not exist stay absent from the map.
      * </p>
      *
-     * @param list List of appointments to convert
-     * @return Map with appointment ID as key and Appointment object as value
+     * @param changed The entities, or their digests, changed on this side, keyed by username; completed in place
+     * @param otherKeys The keys of the entities changed on the other side
+     * @param lookup The lookup of a single entity on this side
+     * @throws DAOException if a lookup fails
      */
-    private Map<Integer, Appointment> listToMapAppointments(List<Appointment> list) {
-        Map<Integer, Appointment> map = new HashMap<>();
-        for (Appointment a : list) {
-            map.put(a.getId(), a);
+    private <T> void completeWith(Map<String, T> changed, Set<String> otherKeys, KeyLookup<T> lookup) throws DAOException {
+        for (String key : new ArrayList<>(otherKeys)) {
+            if (!changed.containsKey(key)) {
+                T current = lookup.retrieve(key);
+                if (current != null) {
+                    changed.put(key, current);
+                }
+            }
         }
-        return map;
+    }
+
+    /**
+     * Tells whether two versions of an entity have the same content; an unknown digest never matches.
+     *
+     * @param primaryDigest The digest of the primary version
+     * @param secondaryDigest The digest of the secondary version
+     * @return true if both digests are known and equal
+     */
+    private static boolean sameContent(String primaryDigest, String secondaryDigest) {
+        return primaryDigest != null && primaryDigest.equals(secondaryDigest);
     }
 
     /**
@@ -295,21 +761,15 @@ public class InitialSyncManager {
      * @return A PatientBean with complete information for persistence operations
      * @throws DAOException if user data retrieval fails
      */
-    private PatientBean createPatientBeanFromModel(Patient patient, DaoFactoryFacade factory, PersistenceType sourcePersistence) throws DAOException {
-        PersistenceType originalType = factory.getPersistenceType();
-        try {
-            factory.setPersistenceType(sourcePersistence);
-            UserDao userDao = factory.getUserDao();
-            String[] userInfo = userDao.retrieveUser(patient.getUsername());
-            String hashedPassword = (userInfo != null && userInfo.length > 1) ? userInfo[1] : "";
-
-            return new PatientBean.Builder()
-                    .username(patient.getUsername()).password(hashedPassword).name(patient.getName())
-                    .surname(patient.getSurname()).gender(patient.getGender()).birthDate(patient.getBirthday())
-                    .type("PATIENT").build();
-        } finally {
-            factory.setPersistenceType(originalType);
-        }
+    static PatientBean createPatientBeanFromModel(Patient patient, DaoFactoryFacade factory, PersistenceType sourcePersistence) throws DAOException {
+        UserDao userDao = factory.getUserDao(sourcePersistence);
+        String[] userInfo = userDao.retrieveUser(patient.getUsername());
+        String hashedPassword = (userInfo != null && userInfo.length > 1) ? userInfo[1] : "";
+
+        return new PatientBean.Builder()
+                .username(patient.getUsername()).password(hashedPassword).name(patient.getName())
+                .surname(patient.getSurname()).gender(patient.getGender()).birthDate(patient.getBirthday())
+                .type("PATIENT").build();
     }
 
     /**
@@ -326,20 +786,14 @@ public class InitialSyncManager {
      * @return A PsychologistBean with complete information for persistence operations
      * @throws DAOException if user data retrieval fails
      */
-    private PsychologistBean createPsychologistBeanFromModel(Psychologist psy, DaoFactoryFacade factory, PersistenceType sourcePersistence) throws DAOException {
-        PersistenceType originalType = factory.getPersistenceType();
-        try {
-            factory.setPersistenceType(sourcePersistence);
-            UserDao userDao = factory.getUserDao();
-            String[] userInfo = userDao.retrieveUser(psy.getUsername());
-            String hashedPassword = (userInfo != null && userInfo.length > 1) ? userInfo[1] : "";
-
-            return new PsychologistBean.Builder()
-                    .username(psy.getUsername()).password(hashedPassword).name(psy.getName())
-                    .surname(psy.getSurname()).gender(psy.getGender()).office(psy.getOffice())
-                    .hourlyCost(Double.parseDouble(psy.getHourlyCost())).type("PSYCHOLOGIST").build();
-        } finally {
-            factory.setPersistenceType(originalType);
-        }
+    static PsychologistBean createPsychologistBeanFromModel(Psychologist psy, DaoFactoryFacade factory, PersistenceType sourcePersistence) throws DAOException {
+        UserDao userDao = factory.getUserDao(sourcePersistence);
+        String[] userInfo = userDao.retrieveUser(psy.getUsername());
+        String hashedPassword = (userInfo != null && userInfo.length > 1) ? userInfo[1] : "";
+
+        return new PsychologistBean.Builder()
+                .username(psy.getUsername()).password(hashedPassword).name(psy.getName())
+                .surname(psy.getSurname()).gender(psy.getGender()).office(psy.getOffice())
+                .hourlyCost(Double.parseDouble(psy.getHourlyCost())).type("PSYCHOLOGIST").build();
     }
 }
\ No newline at end of file
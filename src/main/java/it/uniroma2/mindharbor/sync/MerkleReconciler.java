@@ -0,0 +1,109 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.dao.KeyRangeSummary;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Finds the key ranges of a table whose content differs between two persistence types.
+ * <p>
+ * The key space is seen as a tree: every range is split into {@code sync.merkle.fanout} parts of
+ * equal width, whose {@link KeyRangeSummary summaries} both persistence types compute on request.
+ * The descent starts from the whole key space and only enters the parts whose summaries differ,
+ * until a part holds at most {@code sync.merkle.leafRows} rows on each side: those parts are the
+ * only ones whose rows have to be compared. When the two sides are aligned, a single round of
+ * summaries is enough to prove it.
+ * </p>
+ */
+final class MerkleReconciler {
+
+    private static final Logger logger = Logger.getLogger(MerkleReconciler.class.getName());
+    private static final int FANOUT = Math.max(2, AppConfig.getInt("sync.merkle.fanout", 16));
+    private static final int LEAF_ROWS = Math.max(1, AppConfig.getInt("sync.merkle.leafRows", 256));
+
+    /**
+     * The key space of usernames, placed by their CRC-32.
+     */
+    static final KeyRange USERNAMES = new KeyRange(0, 1L << 32);
+
+    /**
+     * The key space of appointment IDs.
+     */
+    static final KeyRange APPOINTMENT_IDS = new KeyRange(0, Integer.MAX_VALUE + 1L);
+
+    /**
+     * A range {@code [from, to)} of the key space.
+     */
+    record KeyRange(long from, long to) {
+    }
+
+    /**
+     * Summarizes the parts of a key range on one persistence type.
+     */
+    @FunctionalInterface
+    interface RangeSummarizer {
+        Map<Integer, KeyRangeSummary> summarize(long from, long to, int parts) throws DAOException;
+    }
+
+    private MerkleReconciler() {
+        /* no instance */
+    }
+
+    /**
+     * Descends the key space and returns the ranges whose content differs between the two sides.
+     *
+     * @param table     The name of the table, for logging
+     * @param primary   The summaries of the primary persistence type
+     * @param secondary The summaries of the secondary persistence type
+     * @param root      The key space of the table
+     * @return The mismatching ranges, in ascending key order
+     * @throws DAOException if a summary cannot be computed
+     */
+    static List<KeyRange> mismatchingRanges(String table, RangeSummarizer primary, RangeSummarizer secondary,
+                                            KeyRange root) throws DAOException {
+        List<KeyRange> mismatching = new ArrayList<>();
+        Deque<KeyRange> pending = new ArrayDeque<>();
+        pending.push(root);
+        int summarized = 0;
+        while (!pending.isEmpty()) {
+            KeyRange range = pending.pop();
+            Map<Integer, KeyRangeSummary> primaryParts = primary.summarize(range.from(), range.to(), FANOUT);
+            Map<Integer, KeyRangeSummary> secondaryParts = secondary.summarize(range.from(), range.to(), FANOUT);
+            summarized++;
+
+            long width = KeyRangeSummary.partWidth(range.from(), range.to(), FANOUT);
+            Set<Integer> parts = new TreeSet<>(primaryParts.keySet());
+            parts.addAll(secondaryParts.keySet());
+            for (int part : parts) {
+                KeyRangeSummary primarySummary = primaryParts.getOrDefault(part, KeyRangeSummary.EMPTY);
+                KeyRangeSummary secondarySummary = secondaryParts.getOrDefault(part, KeyRangeSummary.EMPTY);
+                if (primarySummary.equals(secondarySummary)) {
+                    continue;
+                }
+                long from = range.from() + part * width;
+                KeyRange child = new KeyRange(from, Math.min(range.to(), from + width));
+                // Si scende solo finché conviene rispetto al confronto riga per riga
+                if (Math.max(primarySummary.count(), secondarySummary.count()) <= LEAF_ROWS
+                        || child.to() - child.from() <= FANOUT) {
+                    mismatching.add(child);
+                } else {
+                    pending.push(child);
+                }
+            }
+        }
+        mismatching.sort(Comparator.comparingLong(KeyRange::from));
+        logger.info("Merkle reconciliation of " + table + ": " + mismatching.size()
+                + " mismatching ranges found with " + summarized + " range summaries");
+        return mismatching;
+    }
+}
@@ -0,0 +1,138 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.dao.ConnectionFactory;
+import it.uniroma2.mindharbor.dao.StatementCache;
+import it.uniroma2.mindharbor.dao.mysql.constants.ReplicationOutboxMySqlQueries;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link ReplicationOutbox} stored in the {@code ReplicationOutbox} table of the MySQL database.
+ * <p>
+ * The sequence is the auto-increment key of the table and an acknowledged change is deleted,
+ * so the table only holds the changes still waiting to be replicated. Dead letters are copied to the
+ * {@code ReplicationDeadLetter} table and deleted from the outbox in the same transaction.
+ * </p>
+ */
+class MySqlReplicationOutbox extends ReplicationOutbox {
+
+    @Override
+    List<OutboxEntry> write(List<OutboxEntry> changes) throws DAOException {
+        try (Connection connection = ConnectionFactory.getConnection()) {
+            return write(connection, changes);
+        } catch (SQLException e) {
+            throw new DAOException("Error appending to the replication outbox: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    List<OutboxEntry> write(Connection connection, List<OutboxEntry> changes) throws SQLException {
+        List<OutboxEntry> appended = new ArrayList<>(changes.size());
+        // Le chiavi generate richiedono un prepareStatement dedicato, fuori dalla cache
+        try (PreparedStatement stmt = connection.prepareStatement(ReplicationOutboxMySqlQueries.INSERT_OUTBOX_ENTRY,
+                Statement.RETURN_GENERATED_KEYS)) {
+            for (OutboxEntry change : changes) {
+                stmt.setString(1, change.operation().name());
+                stmt.setString(2, change.kind().label());
+                stmt.setString(3, change.entityId());
+                stmt.setString(4, change.parentId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                for (OutboxEntry change : changes) {
+                    if (!keys.next()) {
+                        throw new SQLException("Missing generated sequence for the replication outbox");
+                    }
+                    appended.add(change.at(keys.getLong(1)));
+                }
+            }
+        }
+        return appended;
+    }
+
+    @Override
+    void remove(Collection<Long> sequences) throws DAOException {
+        try (Connection connection = ConnectionFactory.getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, ReplicationOutboxMySqlQueries.DELETE_OUTBOX_ENTRY)) {
+            for (Long sequence : sequences) {
+                stmt.setLong(1, sequence);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            throw new DAOException("Error acknowledging replication outbox entries: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    void incrementAttempts(Collection<Long> sequences) throws DAOException {
+        try (Connection connection = ConnectionFactory.getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, ReplicationOutboxMySqlQueries.INCREMENT_OUTBOX_ATTEMPTS)) {
+            for (Long sequence : sequences) {
+                stmt.setLong(1, sequence);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            throw new DAOException("Error counting failed replays in the replication outbox: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    void moveToDeadLetter(List<OutboxEntry> entries, String reason) throws DAOException {
+        try (Connection connection = ConnectionFactory.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = StatementCache.prepare(connection, ReplicationOutboxMySqlQueries.INSERT_DEAD_LETTER);
+                 PreparedStatement delete = StatementCache.prepare(connection, ReplicationOutboxMySqlQueries.DELETE_OUTBOX_ENTRY)) {
+                for (OutboxEntry entry : entries) {
+                    insert.setLong(1, entry.sequence());
+                    insert.setString(2, entry.operation().name());
+                    insert.setString(3, entry.kind().label());
+                    insert.setString(4, entry.entityId());
+                    insert.setString(5, entry.parentId());
+                    insert.setInt(6, entry.attempts());
+                    insert.setString(7, reason == null || reason.length() <= 1000 ? reason : reason.substring(0, 1000));
+                    insert.addBatch();
+                    delete.setLong(1, entry.sequence());
+                    delete.addBatch();
+                }
+                insert.executeBatch();
+                delete.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new DAOException("Error moving replication outbox entries to the dead letters: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    List<OutboxEntry> read() throws DAOException {
+        List<OutboxEntry> entries = new ArrayList<>();
+        try (Connection connection = ConnectionFactory.getConnection();
+             PreparedStatement stmt = StatementCache.prepare(connection, ReplicationOutboxMySqlQueries.SELECT_PENDING_OUTBOX_ENTRIES);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                entries.add(new OutboxEntry(rs.getLong("seq"), DaoOperation.valueOf(rs.getString("operation")),
+                        EntityKind.fromLabel(rs.getString("entity_type")), rs.getString("entity_id"), rs.getString("parent_id"),
+                        rs.getInt("attempts")));
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            throw new DAOException("Error reading the replication outbox: " + e.getMessage(), e);
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,45 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+
+/**
+ * A change recorded in a {@link ReplicationOutbox} until the target persistence acknowledges it.
+ * <p>
+ * The entry only identifies the changed entity: the replay reads its current state from the
+ * source persistence, so applying the same entry twice has the same effect as applying it once.
+ * </p>
+ *
+ * @param sequence   The position of the entry in the outbox, {@code 0} before it is appended
+ * @param operation  The operation performed on the source persistence
+ * @param kind       The type of the changed entity
+ * @param entityId   The unique identifier of the changed entity
+ * @param parentId   The username of the patient owning an appointment, {@code null} when unknown
+ * @param attempts   The replays of the entry that failed so far
+ */
+record OutboxEntry(long sequence, DaoOperation operation, EntityKind kind, String entityId, String parentId, int attempts) {
+
+    /**
+     * Returns the same entry at the given position of the outbox.
+     *
+     * @param sequence The position assigned by the outbox
+     * @return The positioned entry
+     */
+    OutboxEntry at(long sequence) {
+        return new OutboxEntry(sequence, operation, kind, entityId, parentId, attempts);
+    }
+
+    /**
+     * @return The same entry with one more failed replay
+     */
+    OutboxEntry failedAgain() {
+        return new OutboxEntry(sequence, operation, kind, entityId, parentId, attempts + 1);
+    }
+
+    /**
+     * @return The key identifying the changed entity within its outbox.
+     */
+    String key() {
+        return kind.label() + ":" + entityId;
+    }
+}
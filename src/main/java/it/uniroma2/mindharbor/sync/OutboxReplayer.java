@@ -0,0 +1,243 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.dao.AppointmentDao;
+import it.uniroma2.mindharbor.dao.PatientDao;
+import it.uniroma2.mindharbor.dao.PsychologistDao;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+import it.uniroma2.mindharbor.patterns.facade.DaoFactoryFacade;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import it.uniroma2.mindharbor.utilities.ContentDigest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replays the changes left unacknowledged in a {@link ReplicationOutbox}.
+ * <p>
+ * The replay does not repeat the recorded operation: it reads the current state of the entity on
+ * the source persistence and makes the target match it, inserting, updating or deleting as needed.
+ * Replaying an entry that had already been applied therefore changes nothing, and several entries
+ * of the same entity are replayed once. Each entity is acknowledged as soon as it is aligned, so an
+ * interrupted replay resumes from the entities still pending.
+ * </p>
+ * <p>
+ * Deletions are the reason the replay runs before the {@link InitialSyncManager} compares the two
+ * sides: a row deleted on one side only would otherwise be copied back from the other.
+ * </p>
+ * <p>
+ * A failed replay is counted in the entries of the entity, which stay in the outbox. Once they have
+ * failed {@code sync.outbox.maxAttempts} times, or at once if the failure is not a persistence error
+ * (an identifier that cannot be parsed, say), they are moved to the dead letters with a single
+ * {@code SEVERE} log, so a change that can never be applied is not replayed at every start.
+ * </p>
+ */
+final class OutboxReplayer {
+
+    private static final Logger logger = Logger.getLogger(OutboxReplayer.class.getName());
+
+    private OutboxReplayer() {
+        /* no instance */
+    }
+
+    /**
+     * Makes the target version of an entity match the source one.
+     */
+    @FunctionalInterface
+    interface EntityAligner {
+
+        /**
+         * @param entries The outbox entries of the entity, in order
+         * @throws DAOException If the target persistence cannot be aligned now
+         */
+        void align(List<OutboxEntry> entries) throws DAOException;
+    }
+
+    /**
+     * Replays the outbox of a persistence type onto the other one, tagging the writes with an {@link Origin} in the
+     * source persistence type so that they are not replicated back.
+     * Failures are logged and leave the affected entries in the outbox.
+     *
+     * @param sourceType The persistence type whose outbox is replayed
+     * @param targetType The persistence type to align
+     * @return The number of entities replayed
+     */
+    static int replay(PersistenceType sourceType, PersistenceType targetType) {
+        ReplicationOutbox outbox = ReplicationOutbox.forSource(sourceType);
+        if (outbox == null) {
+            return 0;
+        }
+        return replay(outbox, sourceType + " to " + targetType, entries -> align(entries, sourceType, targetType));
+    }
+
+    /**
+     * Replays an outbox with the given aligner.
+     *
+     * @param outbox    The outbox to replay
+     * @param direction The source and target persistence types, for the logs
+     * @param aligner   The alignment of one entity
+     * @return The number of entities replayed
+     */
+    static int replay(ReplicationOutbox outbox, String direction, EntityAligner aligner) {
+        Map<String, List<OutboxEntry>> byEntity = new LinkedHashMap<>();
+        try {
+            for (OutboxEntry entry : outbox.unacknowledged()) {
+                byEntity.computeIfAbsent(entry.key(), k -> new ArrayList<>()).add(entry);
+            }
+        } catch (DAOException e) {
+            logger.log(Level.WARNING, "Cannot read the replication outbox " + direction + ", replay skipped", e);
+            return 0;
+        }
+
+        int replayed = 0;
+        for (List<OutboxEntry> entries : byEntity.values()) {
+            List<Long> sequences = new ArrayList<>(entries.size());
+            for (OutboxEntry entry : entries) {
+                sequences.add(entry.sequence());
+            }
+            try {
+                aligner.align(entries);
+                outbox.acknowledge(sequences);
+                replayed++;
+            } catch (DAOException | RuntimeException e) {
+                fail(outbox, direction, entries, sequences, e);
+            }
+        }
+        try {
+            outbox.compact();
+        } catch (DAOException e) {
+            logger.log(Level.WARNING, "Cannot compact the replication outbox " + direction, e);
+        }
+        if (replayed > 0) {
+            logger.info("Replayed " + replayed + " entities from the replication outbox " + direction);
+        }
+        return replayed;
+    }
+
+    /**
+     * Counts a failed replay of an entity, moving its entries to the dead letters when the failure
+     * cannot go away by itself or has happened too many times.
+     */
+    private static void fail(ReplicationOutbox outbox, String direction, List<OutboxEntry> entries,
+                             List<Long> sequences, Exception error) {
+        OutboxEntry last = entries.get(entries.size() - 1);
+        int attempts = 0;
+        for (OutboxEntry entry : entries) {
+            attempts = Math.max(attempts, entry.attempts() + 1);
+        }
+        try {
+            if (error instanceof DAOException && attempts < ReplicationOutbox.MAX_ATTEMPTS) {
+                outbox.recordFailure(sequences);
+                logger.log(Level.WARNING, "Replay of " + last.kind() + " " + last.entityId() + " " + direction
+                        + " failed (attempt " + attempts + "), kept in the outbox", error);
+                return;
+            }
+            List<OutboxEntry> deadLetters = new ArrayList<>(entries.size());
+            for (OutboxEntry entry : entries) {
+                deadLetters.add(new OutboxEntry(entry.sequence(), entry.operation(), entry.kind(), entry.entityId(),
+                        entry.parentId(), attempts));
+            }
+            outbox.deadLetter(deadLetters, String.valueOf(error));
+            logger.log(Level.SEVERE, "Replay of " + last.kind() + " " + last.entityId() + " " + direction
+                    + " failed after " + attempts + " attempts, moved to the dead letters", error);
+        } catch (DAOException e) {
+            logger.log(Level.WARNING, "Cannot record the failed replay of " + last.kind() + " " + last.entityId()
+                    + " in the replication outbox " + direction, e);
+        }
+    }
+
+    /**
+     * Makes the target version of an entity match the source one.
+     *
+     * @param entries The outbox entries of the entity, in order
+     */
+    private static void align(List<OutboxEntry> entries, PersistenceType source, PersistenceType target) throws DAOException {
+        OutboxEntry last = entries.get(entries.size() - 1);
+        String id = last.entityId();
+        DaoFactoryFacade factory = DaoFactoryFacade.getInstance();
+        switch (last.kind()) {
+            case PATIENT -> alignPatient(id, factory, source, target);
+            case PSYCHOLOGIST -> alignPsychologist(id, factory, source, target);
+            case APPOINTMENT -> alignAppointment(Integer.parseInt(id), parentOf(entries), factory, source, target);
+            case USER -> {
+                UserDao targetDao = factory.getUserDao(target);
+                if (factory.getUserDao(source).retrieveUser(id) == null && targetDao.retrieveUser(id) != null) {
+                    targetDao.deleteUser(id, Origin.of(source));
+                }
+            }
+        }
+    }
+
+    private static void alignPatient(String username, DaoFactoryFacade factory, PersistenceType source,
+                                     PersistenceType target) throws DAOException {
+        PatientDao targetDao = factory.getPatientDao(target);
+        Patient sourcePatient = factory.getPatientDao(source).retrievePatient(username);
+        Patient targetPatient = targetDao.retrievePatient(username);
+        if (sourcePatient == null) {
+            if (targetPatient != null) {
+                targetDao.deletePatient(username, Origin.of(source));
+            }
+        } else if (targetPatient == null) {
+            targetDao.savePatient(InitialSyncManager.createPatientBeanFromModel(sourcePatient, factory, source), Origin.of(source));
+        } else if (!ContentDigest.of(sourcePatient).equals(ContentDigest.of(targetPatient))) {
+            targetDao.updatePatient(sourcePatient, InitialSyncManager.createPatientBeanFromModel(sourcePatient, factory, source),
+                    Origin.of(source));
+        }
+    }
+
+    private static void alignPsychologist(String username, DaoFactoryFacade factory, PersistenceType source,
+                                          PersistenceType target) throws DAOException {
+        PsychologistDao targetDao = factory.getPsychologistDao(target);
+        Psychologist sourcePsychologist = factory.getPsychologistDao(source).retrievePsychologist(username);
+        Psychologist targetPsychologist = targetDao.retrievePsychologist(username);
+        if (sourcePsychologist == null) {
+            if (targetPsychologist != null) {
+                targetDao.deletePsychologist(username, Origin.of(source));
+            }
+        } else if (targetPsychologist == null) {
+            targetDao.savePsychologist(InitialSyncManager.createPsychologistBeanFromModel(sourcePsychologist, factory, source),
+                    Origin.of(source));
+        } else if (!ContentDigest.of(sourcePsychologist).equals(ContentDigest.of(targetPsychologist))) {
+            targetDao.updatePsychologist(sourcePsychologist,
+                    InitialSyncManager.createPsychologistBeanFromModel(sourcePsychologist, factory, source), Origin.of(source));
+        }
+    }
+
+    private static void alignAppointment(int id, String patientUsername, DaoFactoryFacade factory, PersistenceType source,
+                                         PersistenceType target) throws DAOException {
+        AppointmentDao targetDao = factory.getAppointmentDao(target);
+        Appointment sourceApp = factory.getAppointmentDao(source).retrieveAppointment(id);
+        Appointment targetApp = targetDao.retrieveAppointment(id);
+        if (sourceApp == null) {
+            if (targetApp != null) {
+                targetDao.deleteAppointment(id, Origin.of(source));
+            }
+        } else if (targetApp == null) {
+            if (patientUsername == null) {
+                // Senza il paziente l'appuntamento verrà copiato dalla prossima sincronizzazione completa
+                logger.log(Level.WARNING, "Cannot replay appointment {0}: patient unknown", id);
+                return;
+            }
+            targetDao.saveAppointment(sourceApp, patientUsername, Origin.of(source));
+        } else if (!ContentDigest.of(sourceApp).equals(ContentDigest.of(targetApp))) {
+            targetDao.updateAppointment(sourceApp, Origin.of(source));
+        }
+    }
+
+    private static String parentOf(List<OutboxEntry> entries) {
+        for (OutboxEntry entry : entries) {
+            if (entry.parentId() != null) {
+                return entry.parentId();
+            }
+        }
+        return null;
+    }
+}
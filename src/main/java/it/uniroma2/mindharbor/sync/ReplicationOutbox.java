@@ -0,0 +1,238 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Durable record of the changes observed on a persistence type and not yet replicated.
+ * <p>
+ * {@link CrossPersistenceSyncObserver} appends every change before handing it to the
+ * {@link ReplicationQueue}, which acknowledges it once the target persistence has applied it.
+ * Changes that could not be applied, because the retries were exhausted or the application
+ * stopped first, stay in the outbox and are replayed by the {@link OutboxReplayer} at the next
+ * start, instead of waiting for a full synchronization to notice them.
+ * </p>
+ * <p>
+ * Every failed replay is counted in the entry itself. An entry that cannot be replayed at all, or
+ * whose attempts reach {@code sync.outbox.maxAttempts}, is moved to a dead letter store next to the
+ * outbox, where it waits for an operator instead of being replayed at every start.
+ * </p>
+ * <p>
+ * Each outbox lives next to the persistence type it records: CSV changes go to an append-only
+ * local file ({@code sync.outbox.file}), binary and embedded store changes to files of their own
+ * ({@code sync.outbox.binaryFile}, {@code sync.outbox.embeddedFile}), MySQL changes to the
+ * {@code ReplicationOutbox} table. The dead letters of a file go to a {@code _dead_letter} file
+ * beside it, those of MySQL to the {@code ReplicationDeadLetter} table.
+ * </p>
+ */
+abstract class ReplicationOutbox {
+
+    private static final boolean ENABLED = AppConfig.getBoolean("sync.outbox.enabled", true);
+    static final int MAX_ATTEMPTS = Math.max(1, AppConfig.getInt("sync.outbox.maxAttempts", 5));
+    private static final Map<PersistenceType, ReplicationOutbox> outboxes = new EnumMap<>(PersistenceType.class);
+
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Returns the outbox recording the changes of a persistence type.
+     *
+     * @param sourceType The persistence type whose changes are recorded
+     * @return The outbox, or null if {@code sync.outbox.enabled} is false
+     */
+    static synchronized ReplicationOutbox forSource(PersistenceType sourceType) {
+        if (!ENABLED) {
+            return null;
+        }
+        return outboxes.computeIfAbsent(sourceType, type -> switch (type) {
+            case MYSQL -> new MySqlReplicationOutbox();
+            case CSV -> fileOutbox(AppConfig.getString("sync.outbox.file", "db/replication_outbox.csv"));
+            case BINARY -> fileOutbox(AppConfig.getString("sync.outbox.binaryFile", "db/replication_outbox_binary.csv"));
+            case EMBEDDED -> fileOutbox(AppConfig.getString("sync.outbox.embeddedFile", "db/replication_outbox_embedded.csv"));
+        });
+    }
+
+    private static ReplicationOutbox fileOutbox(String path) {
+        File file = new File(path);
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String deadLetterName = dot > 0
+                ? name.substring(0, dot) + "_dead_letter" + name.substring(dot)
+                : name + "_dead_letter";
+        return new FileReplicationOutbox(file, new File(file.getAbsoluteFile().getParentFile(), deadLetterName),
+                AppConfig.getBoolean("sync.outbox.sync", true));
+    }
+
+    /**
+     * Appends changes to the outbox.
+     *
+     * @param changes The changes, in the order they were made
+     * @return The same changes with the sequence assigned by the outbox
+     * @throws DAOException If the outbox cannot be written
+     */
+    final List<OutboxEntry> append(List<OutboxEntry> changes) throws DAOException {
+        return inFlight(write(changes));
+    }
+
+    /**
+     * Appends changes to the outbox inside the database transaction applying them, so that the
+     * entries are committed or rolled back with the changes.
+     *
+     * @param connection The connection of the transaction
+     * @param changes    The changes, in the order they were made
+     * @return The same changes with the sequence assigned by the outbox
+     * @throws SQLException If the outbox cannot be written
+     */
+    final List<OutboxEntry> append(Connection connection, List<OutboxEntry> changes) throws SQLException {
+        return inFlight(write(connection, changes));
+    }
+
+    private List<OutboxEntry> inFlight(List<OutboxEntry> appended) {
+        for (OutboxEntry entry : appended) {
+            inFlight.add(entry.sequence());
+        }
+        return appended;
+    }
+
+    /**
+     * Removes changes that the target persistence has applied, or that a later change has superseded.
+     *
+     * @param sequences The sequences of the entries to acknowledge
+     * @throws DAOException If the outbox cannot be written
+     */
+    final void acknowledge(Collection<Long> sequences) throws DAOException {
+        if (sequences.isEmpty()) {
+            return;
+        }
+        remove(sequences);
+        inFlight.removeAll(sequences);
+    }
+
+    /**
+     * Reads the changes left unacknowledged by a previous run, or given up by the queue.
+     * The changes appended by this process and still handled by the {@link ReplicationQueue} are
+     * excluded, so that a replay never races with their regular replication.
+     *
+     * @return The changes to replay, in ascending sequence order
+     * @throws DAOException If the outbox cannot be read
+     */
+    final List<OutboxEntry> unacknowledged() throws DAOException {
+        List<OutboxEntry> entries = read();
+        entries.removeIf(entry -> inFlight.contains(entry.sequence()));
+        return entries;
+    }
+
+    /**
+     * Marks changes appended by this process as no longer handled by the queue, so that the
+     * next replay picks them up; used when their replication has been given up.
+     *
+     * @param sequences The sequences of the abandoned entries
+     */
+    final void release(Collection<Long> sequences) {
+        inFlight.removeAll(sequences);
+    }
+
+    /**
+     * Counts a failed replication of changes, so that a change failing at every start is
+     * eventually moved to the dead letters.
+     *
+     * @param sequences The sequences of the failed entries
+     * @throws DAOException If the outbox cannot be written
+     */
+    final void recordFailure(Collection<Long> sequences) throws DAOException {
+        if (!sequences.isEmpty()) {
+            incrementAttempts(sequences);
+        }
+    }
+
+    /**
+     * Moves changes that cannot be replicated out of the outbox, to the dead letters.
+     *
+     * @param entries The entries, with the attempts counted so far
+     * @param reason  Why they cannot be replicated
+     * @throws DAOException If the outbox or the dead letters cannot be written
+     */
+    final void deadLetter(List<OutboxEntry> entries, String reason) throws DAOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        moveToDeadLetter(entries, reason);
+        for (OutboxEntry entry : entries) {
+            inFlight.remove(entry.sequence());
+        }
+    }
+
+    /**
+     * Reclaims the space taken by acknowledged entries, if the storage keeps them.
+     *
+     * @throws DAOException If the outbox cannot be rewritten
+     */
+    void compact() throws DAOException {
+        /* nothing to reclaim by default */
+    }
+
+    /**
+     * Stores new entries and assigns their sequence.
+     *
+     * @param changes The changes to store, in order
+     * @return The stored entries
+     * @throws DAOException If the storage cannot be written
+     */
+    abstract List<OutboxEntry> write(List<OutboxEntry> changes) throws DAOException;
+
+    /**
+     * Stores new entries with the connection of a database transaction; only an outbox kept in
+     * the same database can do it.
+     *
+     * @param connection The connection of the transaction
+     * @param changes    The changes to store, in order
+     * @return The stored entries
+     * @throws SQLException If the storage cannot be written
+     */
+    List<OutboxEntry> write(Connection connection, List<OutboxEntry> changes) throws SQLException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " is not kept in the database");
+    }
+
+    /**
+     * Deletes acknowledged entries from the storage.
+     *
+     * @param sequences The sequences of the entries
+     * @throws DAOException If the storage cannot be written
+     */
+    abstract void remove(Collection<Long> sequences) throws DAOException;
+
+    /**
+     * Adds one to the attempts of entries.
+     *
+     * @param sequences The sequences of the entries
+     * @throws DAOException If the storage cannot be written
+     */
+    abstract void incrementAttempts(Collection<Long> sequences) throws DAOException;
+
+    /**
+     * Stores entries in the dead letters, then deletes them from the outbox.
+     *
+     * @param entries The entries
+     * @param reason  Why they cannot be replicated
+     * @throws DAOException If the storage cannot be written
+     */
+    abstract void moveToDeadLetter(List<OutboxEntry> entries, String reason) throws DAOException;
+
+    /**
+     * Reads every entry not acknowledged yet.
+     *
+     * @return The entries, in ascending sequence order
+     * @throws DAOException If the storage cannot be read
+     */
+    abstract List<OutboxEntry> read() throws DAOException;
+}
@@ -0,0 +1,512 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.utilities.AppConfig;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded queue that applies cross-persistence replication on a background worker thread.
+ * <p>
+ * {@link CrossPersistenceSyncObserver} only enqueues the changes it observes, so a DAO call returns
+ * as soon as the primary persistence has been written. The single worker thread drains the queue
+ * in batches and applies the changes to the target persistence, using the bulk DAO methods for
+ * consecutive insertions of the same entity type.
+ * </p>
+ * <p>
+ * Changes are applied in the order they were made, across all entities, so a change never reaches
+ * the target before a change it may depend on (a patient referencing a psychologist inserted just
+ * before it). Pending changes are coalesced per entity without moving any of them ahead: a deletion
+ * cancels the insertion that never reached the target, and drops the updates still waiting for the
+ * same entity; a new update replaces the previous update still waiting. An update is only dropped if
+ * no deletion has been enqueued after it, since that deletion may rely on it (a patient unlinked from
+ * the psychologist being deleted).
+ * </p>
+ * <p>
+ * The queue is bounded ({@code sync.queue.capacity}): when it is full, producers block until the worker
+ * catches up, so a burst of writes cannot grow memory without limit. A change that fails is put back
+ * at the head of the queue and retried with exponential backoff ({@code sync.retry.*}); meanwhile every
+ * later change waits behind it, whatever its entity, since it cannot tell whether it depends on the
+ * failed one. A failed bulk insertion is retried one change at a time, so the changes before the failing
+ * one are applied. Once the attempts are exhausted a change is left in the {@link ReplicationOutbox},
+ * like the changes still pending at shutdown, to be replayed at the next start, and the queue goes on
+ * with the next change. Applied and coalesced changes are acknowledged in the outbox.
+ * {@link #shutdown(long)} must be called when the application stops to flush what is still pending.
+ * </p>
+ */
+public class ReplicationQueue {
+
+    private static final Logger logger = Logger.getLogger(ReplicationQueue.class.getName());
+
+    private static ReplicationQueue instance;
+
+    /**
+     * A pending change, with its position in the queue and its failed attempts.
+     */
+    private static final class Entry {
+        private final long order;
+        private final ReplicationTask task;
+        private int attempts;
+
+        private Entry(long order, ReplicationTask task) {
+            this.order = order;
+            this.task = task;
+        }
+    }
+
+    // Ordine globale di arrivo: le modifiche vengono applicate in quest'ordine
+    private final TreeMap<Long, Entry> queue = new TreeMap<>();
+    private final Map<String, Deque<Entry>> pending = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+    private final Thread worker;
+    private final int capacity;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private long nextOrder;
+    private long lastDeleteOrder = -1;
+    private int inFlight;
+    // Istante (System.nanoTime) prima del quale la testa della coda, fallita, non va ritentata
+    private long retryAt;
+    private boolean retryPending;
+    private boolean running = true;
+
+    /**
+     * Private constructor to enforce Singleton pattern; reads the settings from the configuration.
+     */
+    private ReplicationQueue() {
+        this(AppConfig.getInt("sync.queue.capacity", 1000),
+                AppConfig.getInt("sync.queue.batchSize", 50),
+                AppConfig.getInt("sync.retry.maxAttempts", 5),
+                AppConfig.getLong("sync.retry.initialBackoffMs", 200),
+                AppConfig.getLong("sync.retry.maxBackoffMs", 10000));
+    }
+
+    /**
+     * Creates a queue with explicit settings and starts its worker thread.
+     *
+     * @param capacity         The maximum number of pending changes
+     * @param batchSize        The maximum number of changes drained at once
+     * @param maxAttempts      The attempts after which a failing change is left in the outbox
+     * @param initialBackoffMs The delay before the first retry, doubled at every failure
+     * @param maxBackoffMs     The longest delay between two retries
+     */
+    ReplicationQueue(int capacity, int batchSize, int maxAttempts, long initialBackoffMs, long maxBackoffMs) {
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        worker = new Thread(this::runWorker, "sync-replication");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Returns the singleton instance of the replication queue.
+     *
+     * @return The ReplicationQueue instance
+     */
+    public static synchronized ReplicationQueue getInstance() {
+        if (instance == null) {
+            instance = new ReplicationQueue();
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a change to the queue, coalescing it with the changes still pending for the same entity.
+     * <p>
+     * Blocks while the queue is full. After {@link #shutdown(long)} the change is applied
+     * synchronously on the calling thread, so late writes are not lost.
+     * </p>
+     *
+     * @param task The change to replicate
+     */
+    void enqueue(ReplicationTask task) {
+        boolean accepted;
+        List<ReplicationTask> superseded = Collections.emptyList();
+        lock.lock();
+        try {
+            // Una modifica a un'entità già in coda non occupa nuovo spazio, quindi non deve attendere
+            if (running && queue.size() >= capacity && !pending.containsKey(task.key())) {
+                logger.log(Level.FINE, "Replication queue full, waiting for the worker to catch up");
+                while (running && queue.size() >= capacity) {
+                    notFull.await();
+                }
+            }
+            accepted = running;
+            if (accepted) {
+                superseded = coalesce(task);
+                notEmpty.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        } finally {
+            lock.unlock();
+        }
+        if (!superseded.isEmpty()) {
+            // Le modifiche assorbite da una successiva non vanno più rigiocate
+            task.replicator().acknowledge(superseded);
+        }
+        if (!accepted) {
+            apply(Collections.singletonList(task));
+        }
+    }
+
+    /**
+     * Waits until every pending change has been applied.
+     *
+     * @param timeoutMs The maximum time to wait, in milliseconds
+     * @return true if the queue was drained, false if the timeout elapsed first
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public boolean flush(long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (!queue.isEmpty() || inFlight > 0) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = idle.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the pending changes and stops the worker thread.
+     * <p>
+     * Changes still pending when the timeout elapses are logged and discarded.
+     * </p>
+     *
+     * @param timeoutMs The maximum time to wait for the flush, in milliseconds
+     */
+    public void shutdown(long timeoutMs) {
+        try {
+            if (!flush(timeoutMs)) {
+                logger.log(Level.WARNING, "Replication queue not drained within {0} ms", timeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int lost;
+        lock.lock();
+        try {
+            running = false;
+            lost = queue.size();
+            queue.clear();
+            pending.clear();
+            retryPending = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (lost > 0) {
+            logger.log(Level.SEVERE, "Replication queue stopped with {0} changes not replicated, left in the outbox", lost);
+        }
+        logger.info("Replication queue stopped");
+    }
+
+    /**
+     * @return The number of changes waiting to be applied.
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return queue.size() + inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a task at the end of the queue, coalescing it with the pending changes of its entity.
+     *
+     * @return The tasks that will never be applied because of this one, including the task itself
+     * if it cancels an insertion.
+     */
+    private List<ReplicationTask> coalesce(ReplicationTask task) {
+        List<ReplicationTask> superseded = new ArrayList<>();
+        Deque<Entry> entries = pending.computeIfAbsent(task.key(), k -> new ArrayDeque<>());
+        if (task.operation() == DaoOperation.UPDATE) {
+            // Basta l'ultimo stato dell'entità
+            if (isDroppableUpdate(entries.peekLast())) {
+                superseded.add(remove(entries.peekLast()));
+            }
+        } else if (task.operation() == DaoOperation.DELETE) {
+            while (isDroppableUpdate(entries.peekLast())) {
+                superseded.add(remove(entries.peekLast()));
+            }
+            // Un'entità inserita e cancellata prima di essere replicata non deve mai arrivare alla destinazione
+            if (!entries.isEmpty() && entries.peekLast().task.operation() == DaoOperation.INSERT) {
+                superseded.add(remove(entries.peekLast()));
+                superseded.add(task);
+                if (entries.isEmpty()) {
+                    pending.remove(task.key());
+                }
+                notFull.signalAll();
+                return superseded;
+            }
+        }
+        Entry entry = new Entry(nextOrder++, task);
+        if (task.operation() == DaoOperation.DELETE) {
+            lastDeleteOrder = entry.order;
+        }
+        queue.put(entry.order, entry);
+        entries.addLast(entry);
+        if (!superseded.isEmpty()) {
+            notFull.signalAll();
+        }
+        return superseded;
+    }
+
+    /**
+     * Tells whether a pending change is an update that a later change of its entity can replace:
+     * no deletion enqueued after it may depend on it.
+     */
+    private boolean isDroppableUpdate(Entry entry) {
+        return entry != null && entry.task.operation() == DaoOperation.UPDATE && entry.order > lastDeleteOrder;
+    }
+
+    /**
+     * Removes a pending change from the queue and from the changes of its entity.
+     */
+    private ReplicationTask remove(Entry entry) {
+        queue.remove(entry.order);
+        pending.get(entry.task.key()).remove(entry);
+        return entry.task;
+    }
+
+    /**
+     * Takes the first changes of the queue, in order, unless its head is waiting for a retry.
+     */
+    private List<Entry> drain(long now) {
+        if (retryPending && retryAt - now > 0) {
+            return Collections.emptyList();
+        }
+        retryPending = false;
+        List<Entry> batch = new ArrayList<>();
+        Iterator<Entry> iterator = queue.values().iterator();
+        while (iterator.hasNext() && batch.size() < batchSize) {
+            Entry entry = iterator.next();
+            String key = entry.task.key();
+            iterator.remove();
+            Deque<Entry> entries = pending.get(key);
+            entries.pollFirst();
+            if (entries.isEmpty()) {
+                pending.remove(key);
+            }
+            batch.add(entry);
+        }
+        inFlight += batch.size();
+        if (!batch.isEmpty()) {
+            notFull.signalAll();
+        }
+        return batch;
+    }
+
+    /**
+     * @return How long the worker can sleep before the change at the head of the queue is due, in nanoseconds
+     */
+    private long nextRetryDelay(long now) {
+        return Math.max(1, retryAt - now);
+    }
+
+    private void runWorker() {
+        while (true) {
+            List<Entry> batch;
+            lock.lock();
+            try {
+                while (true) {
+                    if (!running) {
+                        return;
+                    }
+                    long now = System.nanoTime();
+                    batch = queue.isEmpty() ? Collections.emptyList() : drain(now);
+                    if (!batch.isEmpty()) {
+                        break;
+                    }
+                    if (queue.isEmpty()) {
+                        notEmpty.await();
+                    } else {
+                        notEmpty.awaitNanos(nextRetryDelay(now));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            List<Entry> retries = Collections.emptyList();
+            try {
+                retries = applyBatch(batch);
+            } finally {
+                lock.lock();
+                try {
+                    requeue(retries);
+                    inFlight -= batch.size();
+                    if (queue.isEmpty() && inFlight == 0) {
+                        idle.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a batch drained by the worker, grouping consecutive batchable insertions into one bulk call.
+     *
+     * @return The changes to put back in the queue: the failed one and every change after it
+     */
+    private List<Entry> applyBatch(List<Entry> batch) {
+        int start = 0;
+        while (start < batch.size()) {
+            Entry first = batch.get(start);
+            int end = start + 1;
+            while (end < batch.size() && batch.get(end).task.isBatchableWith(first.task)) {
+                end++;
+            }
+            List<Entry> group = batch.subList(start, end);
+            Exception error = group.size() > 1 ? tryApply(tasksOf(group)) : null;
+            if (group.size() == 1 || error != null) {
+                if (error != null) {
+                    logger.log(Level.WARNING, "Bulk replication of {0} {1} {2} failed, applying them one by one: {3}",
+                            new Object[]{group.size(), first.task.operation(), first.task.kind(), error.getMessage()});
+                }
+                for (int i = start; i < end; i++) {
+                    if (!applyOrSchedule(batch.get(i))) {
+                        // Le modifiche successive, di qualunque entità, aspettano quella fallita
+                        return new ArrayList<>(batch.subList(i, batch.size()));
+                    }
+                }
+            }
+            start = end;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Applies a single change; if it fails, schedules its retry, which holds back the whole queue.
+     *
+     * @return {@code false} if the change has to be retried
+     */
+    private boolean applyOrSchedule(Entry entry) {
+        Exception error = tryApply(Collections.singletonList(entry.task));
+        if (error == null || !countFailure(entry, error)) {
+            return true;
+        }
+        long backoff = backoffOf(entry);
+        logger.log(Level.WARNING, "Replication of {0} {1} failed (attempt {2}), retrying in {3} ms: {4}",
+                new Object[]{entry.task.operation(), entry.task.kind(), entry.attempts, backoff, error.getMessage()});
+        lock.lock();
+        try {
+            retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+            retryPending = true;
+        } finally {
+            lock.unlock();
+        }
+        return false;
+    }
+
+    /**
+     * Applies and acknowledges changes on the calling thread.
+     *
+     * @return {@code null} if the changes were applied, otherwise the failure
+     */
+    private static Exception tryApply(List<ReplicationTask> tasks) {
+        ReplicationTask first = tasks.get(0);
+        try {
+            first.replicator().replicate(tasks);
+            first.replicator().acknowledge(tasks);
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    /**
+     * Counts a failed attempt of a change, and gives it up if its attempts are exhausted.
+     *
+     * @return {@code true} if the change has to be retried
+     */
+    private boolean countFailure(Entry entry, Exception error) {
+        entry.attempts++;
+        if (entry.attempts < maxAttempts) {
+            return true;
+        }
+        ReplicationTask task = entry.task;
+        logger.log(Level.SEVERE, String.format("Replication of %s %s %s failed after %d attempts, left in the outbox",
+                task.operation(), task.kind(), task.event().entityId(), entry.attempts), error);
+        task.replicator().release(Collections.singletonList(task));
+        return false;
+    }
+
+    private long backoffOf(Entry entry) {
+        return Math.min(initialBackoffMs << Math.min(entry.attempts - 1, 30), maxBackoffMs);
+    }
+
+    /**
+     * Puts changes back in their place in the queue, ahead of the later changes.
+     */
+    private void requeue(List<Entry> entries) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            queue.put(entry.order, entry);
+            pending.computeIfAbsent(entry.task.key(), k -> new ArrayDeque<>()).addFirst(entry);
+        }
+    }
+
+    /**
+     * Applies a list of changes in order on the calling thread, after the queue has been shut down.
+     */
+    private void apply(List<ReplicationTask> tasks) {
+        for (ReplicationTask task : tasks) {
+            Entry entry = new Entry(-1, task);
+            Exception error;
+            while ((error = tryApply(Collections.singletonList(task))) != null && countFailure(entry, error)) {
+                try {
+                    Thread.sleep(backoffOf(entry));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    task.replicator().release(Collections.singletonList(task));
+                    return;
+                }
+            }
+        }
+    }
+
+    private static List<ReplicationTask> tasksOf(List<Entry> entries) {
+        List<ReplicationTask> tasks = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            tasks.add(entry.task);
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,50 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+
+/**
+ * A change waiting in the {@link ReplicationQueue} to be applied to the target persistence.
+ *
+ * @param replicator The observer that knows how to apply the change on its target persistence
+ * @param event      The change observed on the source persistence
+ * @param sequence   The sequence of the change in the {@link ReplicationOutbox}, {@code 0} if it was not recorded
+ */
+record ReplicationTask(CrossPersistenceSyncObserver replicator, ChangeEvent event, long sequence) {
+
+    /**
+     * @return The operation performed on the source persistence
+     */
+    DaoOperation operation() {
+        return event.operation();
+    }
+
+    /**
+     * @return The type of the changed entity
+     */
+    EntityKind kind() {
+        return event.kind();
+    }
+
+    /**
+     * Returns the key used to coalesce changes: two tasks with the same key refer to the same
+     * entity replicated in the same direction.
+     *
+     * @return The coalescing key of this task
+     */
+    String key() {
+        return replicator.getSourceType() + ":" + event.kind().label() + ":" + event.entityId();
+    }
+
+    /**
+     * Tells whether this task can be applied in the same bulk call as another one.
+     *
+     * @param other The task to compare with
+     * @return true if both are insertions of the same entity type in the same direction
+     */
+    boolean isBatchableWith(ReplicationTask other) {
+        return operation() == DaoOperation.INSERT && other.operation() == DaoOperation.INSERT
+                && replicator == other.replicator && kind() == other.kind();
+    }
+}
@@ -0,0 +1,121 @@
+package it.uniroma2.mindharbor.sync;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress and completion signal of an initial synchronization running in the background.
+ * <p>
+ * The user interface can start while the synchronization is still running: it can show
+ * {@link #getPhase()} and the counters, and register a callback on {@link #whenReady()} to
+ * know when both persistence types are aligned.
+ * </p>
+ */
+public class SyncProgress {
+
+    /**
+     * The phases of an initial synchronization.
+     */
+    public enum Phase {
+        PENDING, OUTBOX, USERS, APPOINTMENTS, COMPLETED, FAILED
+    }
+
+    private final CompletableFuture<Boolean> ready = new CompletableFuture<>();
+    private final AtomicInteger patients = new AtomicInteger();
+    private final AtomicInteger psychologists = new AtomicInteger();
+    private final AtomicInteger appointments = new AtomicInteger();
+    private volatile Phase phase = Phase.PENDING;
+
+    /**
+     * @return The current phase of the synchronization.
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return true once the synchronization has ended, successfully or not.
+     */
+    public boolean isReady() {
+        return ready.isDone();
+    }
+
+    /**
+     * Returns the completion signal of the synchronization.
+     *
+     * @return A future completed with true if the synchronization succeeded, false if it failed
+     */
+    public CompletableFuture<Boolean> whenReady() {
+        return ready;
+    }
+
+    /**
+     * Waits for the synchronization to end.
+     *
+     * @param timeoutMs The maximum time to wait, in milliseconds
+     * @return true if the synchronization ended within the timeout
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public boolean await(long timeoutMs) throws InterruptedException {
+        try {
+            ready.get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // Il future viene sempre completato normalmente
+            return true;
+        }
+    }
+
+    /**
+     * @return The number of patients compared so far.
+     */
+    public int getPatients() {
+        return patients.get();
+    }
+
+    /**
+     * @return The number of psychologists compared so far.
+     */
+    public int getPsychologists() {
+        return psychologists.get();
+    }
+
+    /**
+     * @return The number of appointments compared so far.
+     */
+    public int getAppointments() {
+        return appointments.get();
+    }
+
+    void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    void patientsCompared(int count) {
+        patients.addAndGet(count);
+    }
+
+    void psychologistsCompared(int count) {
+        psychologists.addAndGet(count);
+    }
+
+    void appointmentCompared() {
+        appointments.incrementAndGet();
+    }
+
+    void complete(boolean success) {
+        phase = success ? Phase.COMPLETED : Phase.FAILED;
+        ready.complete(success);
+    }
+
+    @Override
+    public String toString() {
+        return "SyncProgress{phase=" + phase + ", patients=" + patients + ", psychologists=" + psychologists
+                + ", appointments=" + appointments + "}";
+    }
+}
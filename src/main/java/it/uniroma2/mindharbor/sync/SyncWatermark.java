@@ -0,0 +1,80 @@
+package it.uniroma2.mindharbor.sync;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persisted watermark of the initial synchronization.
+ * <p>
+ * The watermark is the instant from which the next initial synchronization has to look for
+ * changes: every record inserted or updated at or after it, on either persistence type, is
+ * compared, while older records are known to be in sync already. It is stored in a small
+ * properties file and only advanced after a synchronization completes without errors.
+ * </p>
+ * <p>
+ * A missing or unreadable file yields a watermark of {@code 0}, which makes the next
+ * synchronization compare the full data set.
+ * </p>
+ */
+public class SyncWatermark {
+
+    private static final Logger logger = Logger.getLogger(SyncWatermark.class.getName());
+    private static final String KEY_LAST_SYNC = "lastSync";
+
+    private final File file;
+
+    /**
+     * Creates a watermark stored in the given file.
+     *
+     * @param file The properties file holding the watermark
+     */
+    public SyncWatermark(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the watermark.
+     *
+     * @return The watermark in epoch milliseconds, or {@code 0} if none has been saved yet
+     */
+    public long load() {
+        if (!file.exists()) {
+            return 0;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader(file)) {
+            properties.load(reader);
+            return Long.parseLong(properties.getProperty(KEY_LAST_SYNC, "0"));
+        } catch (IOException | NumberFormatException e) {
+            logger.log(Level.WARNING, "Unreadable sync watermark " + file + ", falling back to a full synchronization", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Stores a new watermark, replacing the previous one.
+     * A failure is only logged: the next synchronization then starts from the old watermark.
+     *
+     * @param watermark The new watermark in epoch milliseconds
+     */
+    public void save(long watermark) {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_LAST_SYNC, String.valueOf(watermark));
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            logger.log(Level.WARNING, "Cannot create directory {0}", parent);
+        }
+        try (Writer writer = new FileWriter(file)) {
+            properties.store(writer, "Initial synchronization watermark");
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot save sync watermark " + file, e);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package it.uniroma2.mindharbor.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Utility class giving read-only access to the application settings stored in {@code config.properties}.
+ * <p>
+ * The file is loaded from the classpath once, the first time the class is used. Missing keys,
+ * a missing file and malformed numeric values all fall back to the default supplied by the caller,
+ * so every setting is optional.
+ * </p>
+ */
+public class AppConfig {
+    private static final Logger logger = Logger.getLogger(AppConfig.class.getName());
+    private static final String CONFIG_FILE = "config.properties";
+    private static final Properties properties = new Properties();
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private AppConfig() {
+        /* no instance */
+    }
+
+    static {
+        try (InputStream input = AppConfig.class.getClassLoader().getResourceAsStream(CONFIG_FILE)) {
+            if (input == null) {
+                logger.warning("Unable to find " + CONFIG_FILE + ", using default settings");
+            } else {
+                properties.load(input);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to load " + CONFIG_FILE + ", using default settings", e);
+        }
+    }
+
+    /**
+     * Returns the value of a setting as a string.
+     *
+     * @param key          The name of the setting.
+     * @param defaultValue The value returned when the setting is not defined.
+     * @return The configured value, or {@code defaultValue}.
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * Returns the value of a setting as an integer.
+     *
+     * @param key          The name of the setting.
+     * @param defaultValue The value returned when the setting is not defined or not a number.
+     * @return The configured value, or {@code defaultValue}.
+     */
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    /**
+     * Returns the value of a setting as a long.
+     *
+     * @param key          The name of the setting.
+     * @param defaultValue The value returned when the setting is not defined or not a number.
+     * @return The configured value, or {@code defaultValue}.
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            logger.log(Level.WARNING, "Invalid numeric value for {0}: {1}", new Object[]{key, value});
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value of a setting as a boolean.
+     *
+     * @param key          The name of the setting.
+     * @param defaultValue The value returned when the setting is not defined.
+     * @return {@code true} if the setting equals "true" (ignoring case), {@code defaultValue} if it is not defined.
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
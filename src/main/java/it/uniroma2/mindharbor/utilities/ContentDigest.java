@@ -0,0 +1,222 @@
+package it.uniroma2.mindharbor.utilities;
+
+import it.uniroma2.mindharbor.model.Appointment;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.model.Psychologist;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.zip.CRC32;
+
+/**
+ * Utility class computing the content digest of the persisted entities.
+ * <p>
+ * A digest is the SHA-1, in lowercase hexadecimal, of the canonical form of the fields compared
+ * by the {@code isDataEquivalent} methods of the model, joined by the unit separator character
+ * ({@code U+001F}). Two versions of an entity have the same digest exactly when their data are
+ * equivalent, so the synchronization can compare digests instead of materialized objects.
+ * </p>
+ * <p>
+ * The canonical form is the one MySQL produces when casting the columns to text: dates as
+ * {@code yyyy-MM-dd}, times as {@code HH:mm:ss}, amounts with two decimals, flags as {@code 0}
+ * or {@code 1} and missing values as the empty string. This allows the {@code content_digest}
+ * columns of the MySQL schema to be generated by the database with the same expression, while
+ * the CSV tables compute the same value from their records. Primary keys are not part of the
+ * digest, because it is always compared between rows with the same key.
+ * </p>
+ * <p>
+ * Entities spanning two tables, like patients and psychologists with their user row,
+ * have the {@link #combine(String...) combination} of the two row digests as digest.
+ * </p>
+ * <p>
+ * To summarize whole key ranges, each row is also given a 64-bit {@link #rowHash(String, String) hash}
+ * of its key and digest: the summary of a range is the XOR of the hashes of its rows, which both
+ * MySQL ({@code BIT_XOR}) and the CSV tables can compute without ordering the rows. Username keys
+ * are placed in the key space by their {@link #keyPosition(String) CRC-32}, appointment IDs by
+ * their value.
+ * </p>
+ */
+public class ContentDigest {
+
+    private static final String SEPARATOR = "\u001F";
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private ContentDigest() {
+        /* no instance */
+    }
+
+    /**
+     * Computes the digest of a list of canonical fields; {@code null} fields count as empty.
+     *
+     * @param fields The fields, in canonical form
+     * @return The digest of the fields
+     */
+    public static String of(String... fields) {
+        StringBuilder canonical = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                canonical.append(SEPARATOR);
+            }
+            canonical.append(fields[i] == null ? "" : fields[i]);
+        }
+        return sha1(canonical.toString());
+    }
+
+    /**
+     * Combines the digests of the rows an entity is made of.
+     *
+     * @param digests The row digests
+     * @return The digest of the entity, or null if one of the row digests is unknown
+     */
+    public static String combine(String... digests) {
+        for (String digest : digests) {
+            if (digest == null) {
+                return null;
+            }
+        }
+        return sha1(String.join("", digests));
+    }
+
+    /**
+     * Computes the digest of the data of a user row.
+     *
+     * @param firstName The first name
+     * @param lastName  The last name
+     * @param gender    The gender
+     * @return The digest of the row
+     */
+    public static String ofUser(String firstName, String lastName, String gender) {
+        return of(firstName, lastName, gender);
+    }
+
+    /**
+     * Computes the digest of the data of a patient row.
+     *
+     * @param birthDate    The birth date
+     * @param psychologist The username of the assigned psychologist
+     * @return The digest of the row
+     */
+    public static String ofPatientRow(LocalDate birthDate, String psychologist) {
+        return of(date(birthDate), psychologist);
+    }
+
+    /**
+     * Computes the digest of the data of a psychologist row.
+     *
+     * @param office     The office
+     * @param hourlyCost The hourly cost, in any decimal notation
+     * @return The digest of the row
+     */
+    public static String ofPsychologistRow(String office, String hourlyCost) {
+        return of(office, amount(hourlyCost));
+    }
+
+    /**
+     * Computes the digest of the data of an appointment row.
+     *
+     * @param date        The date
+     * @param time        The time
+     * @param description The description
+     * @param notified    Whether the patient has been notified
+     * @return The digest of the row
+     */
+    public static String ofAppointment(LocalDate date, LocalTime time, String description, boolean notified) {
+        return of(date(date), time == null ? null : time.format(TIME_FORMATTER), description, notified ? "1" : "0");
+    }
+
+    /**
+     * @param patient A patient
+     * @return The digest of the patient, combining its user and patient data
+     */
+    public static String of(Patient patient) {
+        return combine(ofUser(patient.getName(), patient.getSurname(), patient.getGender()),
+                ofPatientRow(patient.getBirthday(), patient.getPsychologist()));
+    }
+
+    /**
+     * @param psychologist A psychologist
+     * @return The digest of the psychologist, combining its user and psychologist data
+     */
+    public static String of(Psychologist psychologist) {
+        return combine(ofUser(psychologist.getName(), psychologist.getSurname(), psychologist.getGender()),
+                ofPsychologistRow(psychologist.getOffice(), psychologist.getHourlyCost()));
+    }
+
+    /**
+     * @param appointment An appointment
+     * @return The digest of the appointment
+     */
+    public static String of(Appointment appointment) {
+        return ofAppointment(appointment.getDate(), appointment.getTime(), appointment.getDescription(), appointment.isNotified());
+    }
+
+    /**
+     * Computes the hash of a row used in range summaries: the first 64 bits of the SHA-1 of the key,
+     * a colon and the content digest.
+     *
+     * @param key    The primary key of the row
+     * @param digest The content digest of the row
+     * @return The hash of the row
+     */
+    public static long rowHash(String key, String digest) {
+        return Long.parseUnsignedLong(sha1(key + ":" + digest).substring(0, 16), 16);
+    }
+
+    /**
+     * Formats the XOR of row hashes as 16 lowercase hexadecimal digits, as MySQL does for {@code BIT_XOR}.
+     *
+     * @param xor The XOR of the row hashes
+     * @return The hash of the range
+     */
+    public static String rangeHash(long xor) {
+        return String.format("%016x", xor);
+    }
+
+    /**
+     * Places a username in the key space used to split users into ranges.
+     *
+     * @param username A username
+     * @return The CRC-32 of the username, in {@code [0, 2^32)}
+     */
+    public static long keyPosition(String username) {
+        CRC32 crc = new CRC32();
+        crc.update(username.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    private static String date(LocalDate date) {
+        return date == null ? null : date.toString();
+    }
+
+    private static String amount(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim()).setScale(2, RoundingMode.HALF_UP).toPlainString();
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+
+    private static String sha1(String canonical) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HEX.formatHex(digest.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 è tra gli algoritmi che ogni JVM deve fornire
+            throw new IllegalStateException(e);
+        }
+    }
+}
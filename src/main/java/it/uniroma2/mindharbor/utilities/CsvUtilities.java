@@ -4,18 +4,33 @@ import com.opencsv.exceptions.CsvException;
 import it.uniroma2.mindharbor.exception.DAOException;
 
 import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
 import com.opencsv.CSVWriter;
+import com.opencsv.RFC4180Parser;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Utility class providing static methods to read and write CSV files. This class is designed to handle
  * common CSV operations such as reading all data, updating a file, and writing new records.
+ * <p>
+ * Every file has its own read/write lock, returned by {@link #lockFor(File)}: reads of a file share it,
+ * writes hold it exclusively, and operations on different files never wait for each other.
+ * </p>
  */
 public class CsvUtilities {
+
+    private static final Map<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
+
     /**
      * Private constructor to prevent instantiation of this utility class.
      */
@@ -37,37 +52,111 @@ public class CsvUtilities {
      * @throws DAOException If there are any issues accessing or parsing the CSV file.
      */
     public static List<String[]> readAll(File fd) throws DAOException {
-        try (CSVReader reader = new CSVReader(new FileReader(fd))) {
+        ReentrantReadWriteLock lock = lockFor(fd);
+        lock.readLock().lock();
+        try (CSVReader reader = openReader(fd)) {
             return reader.readAll();
         } catch (IOException e) {
             throw new DAOException(String.format(ERR_ACCESS, fd), e);
         } catch (CsvException e) {
             throw new DAOException(String.format(ERR_PARSER, fd), e);
+        } finally {
+            lock.readLock().unlock();
         }
     }
 
+    /**
+     * Opens a reader of the records of a CSV file.
+     * <p>
+     * The records are parsed as RFC 4180, the grammar {@link CSVWriter} writes with its default settings
+     * and the one of the memory-mapped reader of the CSV tables; carriage returns are kept as data.
+     * The default parser of OpenCSV would instead take backslashes as escape characters and drop them,
+     * so that {@code C:\temp} read back as {@code C:temp}: every CSV file of the application must be
+     * read through this method.
+     * </p>
+     *
+     * @param fd The CSV file to read.
+     * @return A reader positioned before the first record.
+     * @throws FileNotFoundException If the file cannot be opened.
+     */
+    public static CSVReader openReader(File fd) throws FileNotFoundException {
+        return new CSVReaderBuilder(new FileReader(fd)).withCSVParser(new RFC4180Parser())
+                .withKeepCarriageReturn(true).build();
+    }
+
+    /**
+     * Returns the read/write lock of a file; the same file always gets the same lock.
+     * <p>
+     * Callers that read a file, change its content and write it back can hold the write lock
+     * for the whole sequence: the lock is reentrant, so the methods of this class can still be
+     * called while holding it.
+     * </p>
+     *
+     * @param fd The file.
+     * @return The lock guarding the file.
+     */
+    public static ReentrantReadWriteLock lockFor(File fd) {
+        return locks.computeIfAbsent(fd.getAbsolutePath(), path -> new ReentrantReadWriteLock());
+    }
+
     /**
      * Updates a CSV file by writing a new table of data to a temporary file, including a specified header.
-     * After successful writing, the temporary file replaces the original file.
-     * This method is synchronized to ensure thread safety when accessing the file system.
+     * After successful writing, the temporary file is forced to the storage device and replaces the
+     * original file as described in {@link #replace(File, File)}, so on return the new content is durable.
+     * The write lock of the file is held until the original file has been replaced.
      *
      * @param fd     The CSV file to update.
      * @param header An array representing the header row, to be added at the beginning of the file.
      * @param table  A list of string arrays, where each array represents a row in the updated CSV file.
      * @throws DAOException If there are any issues writing to or replacing the original CSV file.
      */
-    public static synchronized void updateFile(File fd, String[] header, List<String[]> table) throws DAOException {
-        File fdTmp = new File(fd.getAbsolutePath() + ".tmp");
-        try (CSVWriter writer = new CSVWriter(new FileWriter(fdTmp))) {
-            table.addFirst(header);  // Adding header as the first row
-            writer.writeAll(table);
-        } catch (IOException e) {
-            throw new DAOException(String.format(ERR_ACCESS, fdTmp), e);
+    public static void updateFile(File fd, String[] header, List<String[]> table) throws DAOException {
+        ReentrantReadWriteLock lock = lockFor(fd);
+        lock.writeLock().lock();
+        try {
+            File fdTmp = new File(fd.getAbsolutePath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(fdTmp);
+                 CSVWriter writer = new CSVWriter(new OutputStreamWriter(out))) {
+                table.addFirst(header);  // Adding header as the first row
+                writer.writeAll(table);
+                writer.flush();
+                out.getChannel().force(true);
+            } catch (IOException e) {
+                throw new DAOException(String.format(ERR_ACCESS, fdTmp), e);
+            }
+            replace(fdTmp, fd);
+        } finally {
+            lock.writeLock().unlock();
         }
+    }
+
+    /**
+     * Replaces a file with another one, already forced to the storage device, written next to it.
+     * <p>
+     * The file is renamed atomically where the file system supports it, and the directory is then
+     * forced so that the rename itself survives a crash: a caller can discard whatever the old
+     * content depended on, such as a journal, once this method returns.
+     * </p>
+     *
+     * @param source The new content of the file.
+     * @param target The file to replace.
+     * @throws DAOException If the file cannot be replaced.
+     */
+    public static void replace(File source, File target) throws DAOException {
         try {
-            Files.move(fdTmp.toPath(), fd.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new DAOException(String.format(ERR_MOVE_FILE, source, target), e);
+        }
+        File directory = target.getAbsoluteFile().getParentFile();
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
         } catch (IOException e) {
-            throw new DAOException(String.format(ERR_MOVE_FILE, fdTmp, fd), e);
+            // Alcuni sistemi (es. Windows) non permettono di aprire una directory: lì il rename è già persistente
         }
     }
 
@@ -78,11 +167,34 @@ public class CsvUtilities {
      * @param tableRecord An array of strings, each representing a column value of the record to be written.
      * @throws DAOException If there is an error writing to the CSV file.
      */
-    public static synchronized void writeFile(File fd, String[] tableRecord) throws DAOException {
+    public static void writeFile(File fd, String[] tableRecord) throws DAOException {
+        ReentrantReadWriteLock lock = lockFor(fd);
+        lock.writeLock().lock();
         try (CSVWriter writer = new CSVWriter(new FileWriter(fd, true))) {
             writer.writeNext(tableRecord);
         } catch (IOException e) {
             throw new DAOException(e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes several records to the end of a specified CSV file with a single append.
+     *
+     * @param fd           The CSV file to which the records will be appended.
+     * @param tableRecords The records to be written, in order.
+     * @throws DAOException If there is an error writing to the CSV file.
+     */
+    public static void writeFile(File fd, List<String[]> tableRecords) throws DAOException {
+        ReentrantReadWriteLock lock = lockFor(fd);
+        lock.writeLock().lock();
+        try (CSVWriter writer = new CSVWriter(new FileWriter(fd, true))) {
+            writer.writeAll(tableRecords);
+        } catch (IOException e) {
+            throw new DAOException(e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 }
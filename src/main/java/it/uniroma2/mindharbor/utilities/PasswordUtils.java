@@ -2,9 +2,26 @@ package it.uniroma2.mindharbor.utilities;
 
 import org.mindrot.jbcrypt.BCrypt;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Utility class for secure password operations including hashing and verification.
  * This class uses BCrypt algorithm which automatically includes salt in the hash.
+ * <p>
+ * BCrypt is deliberately slow, so {@link #runAsync(PasswordTask)} runs the logins and sign-ups on a dedicated pool of
+ * {@code security.bcrypt.threads} workers (half the processors by default) instead of the calling
+ * thread, such as the JavaFX application thread. At most {@code security.bcrypt.queueCapacity}
+ * tasks wait for a worker: beyond that, new tasks fail with a {@link java.util.concurrent.RejectedExecutionException},
+ * so a burst of logins or sign-ups cannot take every core or queue up without limit.
+ * </p>
  */
 public class PasswordUtils {
 
@@ -16,6 +33,71 @@ public class PasswordUtils {
     // Higher values are more secure but slower
     private static final int DEFAULT_COST = 12;
 
+    /**
+     * A task doing BCrypt work, such as a login whose DAO verifies the password.
+     *
+     * @param <T> The type of the result
+     * @param <E> The type of the checked exception thrown by the task
+     */
+    @FunctionalInterface
+    public interface PasswordTask<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /**
+     * Holder of the BCrypt workers, started on first use.
+     */
+    private static final class Workers {
+        private static final int THREADS = Math.max(1, AppConfig.getInt("security.bcrypt.threads",
+                Runtime.getRuntime().availableProcessors() / 2));
+        private static final int QUEUE_CAPACITY = Math.max(1, AppConfig.getInt("security.bcrypt.queueCapacity", 64));
+        private static final ThreadPoolExecutor EXECUTOR = newExecutor();
+
+        private Workers() {
+            /* no instance */
+        }
+
+        private static ThreadPoolExecutor newExecutor() {
+            AtomicInteger counter = new AtomicInteger();
+            return new ThreadPoolExecutor(THREADS, THREADS, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "bcrypt-worker-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy()); // mai sul thread chiamante, che può essere quello della UI
+        }
+    }
+
+    /**
+     * Runs a task on the BCrypt workers.
+     * <p>
+     * The returned future fails with a {@link CompletionException} wrapping the exception thrown by
+     * the task, or with a {@link java.util.concurrent.RejectedExecutionException} if too many tasks
+     * are already waiting for a worker.
+     * </p>
+     *
+     * @param task The task
+     * @param <T>  The type of the result
+     * @return The future result of the task
+     */
+    public static <T> CompletableFuture<T> runAsync(PasswordTask<T, ?> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.run();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, Workers.EXECUTOR);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Hashes a password using BCrypt with a randomly generated salt.
      *
@@ -30,6 +112,36 @@ public class PasswordUtils {
         return BCrypt.hashpw(plainTextPassword, salt);
     }
 
+    /**
+     * Hashes a list of passwords on the BCrypt workers, a few at a time so the batch never fills
+     * the queue shared with logins and sign-ups.
+     * <p>
+     * A password the workers reject is hashed on the calling thread, which is expected to be a
+     * background one (bulk saves come from the synchronization, never from the UI).
+     * </p>
+     *
+     * @param plainTextPasswords The passwords to hash
+     * @return The hashes, in the same order as the passwords
+     */
+    public static List<String> hashPasswords(List<String> plainTextPasswords) {
+        List<String> hashes = new ArrayList<>(plainTextPasswords.size());
+        for (int from = 0; from < plainTextPasswords.size(); from += Workers.THREADS) {
+            List<String> window = plainTextPasswords.subList(from, Math.min(from + Workers.THREADS, plainTextPasswords.size()));
+            List<CompletableFuture<String>> futures = new ArrayList<>(window.size());
+            for (String password : window) {
+                futures.add(runAsync(() -> hashPassword(password)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    hashes.add(futures.get(i).join());
+                } catch (CompletionException | CancellationException e) {
+                    hashes.add(hashPassword(window.get(i)));
+                }
+            }
+        }
+        return hashes;
+    }
+
     /**
      * Verifies a plaintext password against a hashed password.
      *
@@ -0,0 +1,133 @@
+package it.uniroma2.mindharbor.dao.cache;
+
+import it.uniroma2.mindharbor.beans.CredentialsBean;
+import it.uniroma2.mindharbor.beans.PatientBean;
+import it.uniroma2.mindharbor.beans.UserBean;
+import it.uniroma2.mindharbor.dao.AbstractObservableDao;
+import it.uniroma2.mindharbor.dao.UserDao;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingUserDaoTest {
+
+    private final InMemoryUserDao store = new InMemoryUserDao();
+    private final InMemoryPatientDao patients = new InMemoryPatientDao(store);
+    private final CachingUserDao users = new CachingUserDao(store);
+
+    @BeforeEach
+    void observe() {
+        store.addObserver(users);
+        patients.addObserver(users);
+    }
+
+    @Test
+    void usernameIsTakenOnceAPatientIsSavedWithIt() throws DAOException {
+        assertFalse(users.isUsernameTaken("alice"));
+        patients.savePatient(patient("alice"));
+        assertTrue(users.isUsernameTaken("alice"));
+    }
+
+    @Test
+    void missingUserIsReadAgainOnceAPatientIsSavedWithIt() throws DAOException {
+        assertNull(users.retrieveUser("alice"));
+        patients.savePatient(patient("alice"));
+        assertNotNull(users.retrieveUser("alice"));
+    }
+
+    private static PatientBean patient(String username) {
+        return new PatientBean.Builder()
+                .username(username).password("hash").name("Alice").surname("Rossi").gender("F")
+                .birthDate(LocalDate.of(1990, 1, 1)).type("PATIENT").build();
+    }
+
+    /**
+     * User store whose rows are also written, without notifications, by the patient DAO,
+     * like the user DAO a patient DAO creates for itself.
+     */
+    private static final class InMemoryUserDao extends AbstractObservableDao implements UserDao {
+
+        private final Map<String, String[]> rows = new ConcurrentHashMap<>();
+
+        InMemoryUserDao() {
+            super(PersistenceType.CSV);
+        }
+
+        void put(UserBean user) {
+            rows.put(user.getUsername(), new String[]{user.getUsername(), user.getPassword(), user.getType()});
+        }
+
+        @Override
+        public void validateUser(CredentialsBean credentials) {
+        }
+
+        @Override
+        public void saveUser(UserBean user, Origin origin) {
+            put(user);
+            notifyObservers(new ChangeEvent.UserInserted(user, originOf(origin)));
+        }
+
+        @Override
+        public void saveUsers(List<? extends UserBean> users, Origin origin) {
+            for (UserBean user : users) {
+                saveUser(user, origin);
+            }
+        }
+
+        @Override
+        public String[] retrieveUser(String username) {
+            return rows.get(username);
+        }
+
+        @Override
+        public boolean isUsernameTaken(String username) {
+            return rows.containsKey(username);
+        }
+
+        @Override
+        public List<String> retrieveAllUsernames() {
+            return new ArrayList<>(rows.keySet());
+        }
+
+        @Override
+        public void updateUser(UserBean user, Origin origin) {
+            put(user);
+            notifyObservers(new ChangeEvent.UserUpdated(user, originOf(origin)));
+        }
+
+        @Override
+        public void deleteUser(String username, Origin origin) {
+            rows.remove(username);
+            notifyObservers(new ChangeEvent.UserDeleted(username, originOf(origin)));
+        }
+    }
+
+    private static final class InMemoryPatientDao extends AbstractObservableDao {
+
+        private final InMemoryUserDao users;
+
+        InMemoryPatientDao(InMemoryUserDao users) {
+            super(PersistenceType.CSV);
+            this.users = users;
+        }
+
+        void savePatient(PatientBean patient) {
+            users.put(patient);
+            notifyObservers(new ChangeEvent.PatientInserted(patient, originOf(null)));
+        }
+    }
+}
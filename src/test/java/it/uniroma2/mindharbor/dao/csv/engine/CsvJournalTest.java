@@ -0,0 +1,68 @@
+package it.uniroma2.mindharbor.dao.csv.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvJournalTest {
+
+    private static final int COLUMNS = 3;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void replayStopsAtLastLineCutAtFieldBoundary() throws DAOException, IOException {
+        File base = new File(directory, "users.csv");
+        CsvJournal journal = new CsvJournal(base, false);
+        journal.appendPut(CsvJournal.OP_INSERT, new String[]{"alice", "Alice", "F"});
+        journal.appendPut(CsvJournal.OP_UPDATE, new String[]{"alice", "Alicia", "F"});
+        File journalFile = new File(base.getPath() + ".journal");
+        long intact = journalFile.length();
+        journal.appendPut(CsvJournal.OP_UPDATE, new String[]{"alice", "Alice", "F"});
+        // Crash during the append: the last entry ends right after its second field
+        String content = Files.readString(journalFile.toPath(), StandardCharsets.UTF_8);
+        int cut = content.indexOf(',', content.indexOf("\"U\",\"alice\"", (int) intact) + 4) + 1;
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(cut);
+        }
+
+        Map<String, String[]> rows = new LinkedHashMap<>();
+        CsvJournal replayed = new CsvJournal(base, false);
+        replayed.replay(rows, 0, COLUMNS);
+
+        assertArrayEquals(new String[]{"alice", "Alicia", "F"}, rows.get("alice"));
+        assertEquals(2, replayed.size());
+        assertTrue(replayed.hasTornTail());
+    }
+
+    @Test
+    void replayAppliesCompleteJournal() throws DAOException {
+        File base = new File(directory, "users.csv");
+        CsvJournal journal = new CsvJournal(base, false);
+        journal.appendPut(CsvJournal.OP_INSERT, new String[]{"alice", "Alice", "F"});
+        journal.appendPut(CsvJournal.OP_INSERT, new String[]{"bob", "Bob", "M"});
+        journal.appendDelete("alice");
+
+        Map<String, String[]> rows = new LinkedHashMap<>();
+        CsvJournal replayed = new CsvJournal(base, false);
+        replayed.replay(rows, 0, COLUMNS);
+
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[]{"bob", "Bob", "M"}, rows.get("bob"));
+        assertFalse(replayed.hasTornTail());
+    }
+}
@@ -0,0 +1,69 @@
+package it.uniroma2.mindharbor.dao.csv.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.utilities.CsvUtilities;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class MappedCsvReaderTest {
+
+    private static final List<String[]> RECORDS = List.of(
+            new String[]{"alice", "C:\\temp\\x", "ends with \\"},
+            new String[]{"bob", "say \"hi\", then \\\"leave\\\"", "first line\nsecond line"},
+            new String[]{"carol", "", "\\\\server\\share,\"quoted\"\r\nnext"},
+            new String[]{"dave", "città", "\"\""});
+
+    @TempDir
+    File directory;
+
+    @Test
+    void mappedAndParsedReadsGiveBackWhatWasWritten() throws DAOException {
+        File file = new File(directory, "users.csv");
+        CsvUtilities.writeFile(file, RECORDS);
+
+        assertRecords(RECORDS, CsvUtilities.readAll(file));
+        assertRecords(RECORDS, readMapped(file));
+    }
+
+    @Test
+    void journalGivesBackWhatWasWritten() throws DAOException {
+        File base = new File(directory, "users.csv");
+        CsvJournal journal = new CsvJournal(base, false);
+        for (String[] tableRecord : RECORDS) {
+            journal.appendPut(CsvJournal.OP_INSERT, tableRecord);
+        }
+
+        Map<String, String[]> rows = new LinkedHashMap<>();
+        CsvJournal replayed = new CsvJournal(base, false);
+        replayed.replay(rows, 0, RECORDS.get(0).length);
+
+        assertFalse(replayed.hasTornTail());
+        assertRecords(RECORDS, new ArrayList<>(rows.values()));
+    }
+
+    private static List<String[]> readMapped(File file) throws DAOException {
+        List<String[]> records = new ArrayList<>();
+        MappedCsvReader reader = MappedCsvReader.open(file);
+        while (reader.next()) {
+            records.add(reader.record());
+        }
+        return records;
+    }
+
+    private static void assertRecords(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPlusTreeTest {
+
+    // Chiavi grandi: pochi separatori per nodo interno, così bastano poche chiavi per avere più livelli
+    private static final int KEY_SIZE = 1000;
+    private static final int KEYS = 500;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void splitsAcrossSeveralLevelsAndScansInKeyOrder() throws DAOException {
+        EmbeddedStore store = EmbeddedStore.of(new File(directory, "tree.db"));
+        BPlusTree tree = store.tree("test");
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+        for (int start = 0; start < KEYS; start += 50) {
+            List<Integer> batch = order.subList(start, start + 50);
+            store.write(() -> {
+                for (int i : batch) {
+                    tree.put(key(i), value(i));
+                }
+                return null;
+            });
+        }
+
+        assertTrue(store.read(() -> height(store, tree)) >= 3);
+        List<Integer> scanned = new ArrayList<>();
+        store.read(() -> {
+            tree.scan(null, null, (key, value) -> {
+                assertArrayEquals(value(indexOf(key)), value);
+                scanned.add(indexOf(key));
+                return true;
+            });
+            return null;
+        });
+        List<Integer> expected = new ArrayList<>(order);
+        Collections.sort(expected);
+        assertEquals(expected, scanned);
+
+        List<Integer> range = new ArrayList<>();
+        store.read(() -> {
+            tree.scan(key(100), key(200), (key, value) -> range.add(indexOf(key)));
+            return null;
+        });
+        assertEquals(expected.subList(100, 200), range);
+        assertArrayEquals(value(321), store.read(() -> tree.get(key(321))));
+    }
+
+    private static int height(EmbeddedStore store, BPlusTree tree) throws DAOException {
+        Node node = store.pool().get(store.root(tree.name()));
+        int height = 1;
+        while (!node.leaf) {
+            node = store.pool().get(node.children.get(0));
+            height++;
+        }
+        return height;
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(KEY_SIZE).putInt(i).array();
+    }
+
+    private static int indexOf(byte[] key) {
+        return ByteBuffer.wrap(key).getInt();
+    }
+
+    private static byte[] value(int i) {
+        return ("value " + i).getBytes();
+    }
+}
@@ -0,0 +1,57 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BufferPoolTest {
+
+    private static final int CAPACITY = 16;
+    private static final int NODES = 3 * CAPACITY;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void evictionKeepsDirtyNodesAndDropsCleanOnes() throws DAOException {
+        PageFile pageFile = new PageFile(new File(directory, "store.db"), false);
+        pageFile.open();
+        BufferPool pool = new BufferPool(pageFile, CAPACITY);
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            Node node = new Node(i, true);
+            node.keys.add(new byte[]{(byte) i});
+            node.values.add(new byte[]{(byte) i});
+            pool.markDirty(node);
+            nodes.add(node);
+        }
+
+        // Nessuna pagina è ancora nel file: un nodo sporco scartato non si potrebbe rileggere
+        pool.evict();
+        for (Node node : nodes) {
+            assertSame(node, pool.get(node.pageId));
+        }
+
+        pageFile.commit(pool.dirtyPages());
+        pool.markClean();
+        Node changed = nodes.get(0);
+        changed.values.set(0, new byte[]{42});
+        pool.markDirty(changed);
+        pool.evict();
+
+        // Il nodo modificato è il meno usato di recente, ma resta con la modifica non ancora scritta
+        assertSame(changed, pool.get(0));
+        assertArrayEquals(new byte[]{42}, pool.get(0).values.get(0));
+        Node reread = pool.get(1);
+        assertNotSame(nodes.get(1), reread);
+        assertArrayEquals(new byte[]{1}, reread.values.get(0));
+    }
+}
@@ -0,0 +1,82 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EmbeddedStoreTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void failedWriteIsRolledBack() throws DAOException, IOException {
+        File file = new File(directory, "store.db");
+        EmbeddedStore store = EmbeddedStore.of(file);
+        BPlusTree tree = store.tree("test");
+        store.write(() -> {
+            for (int i = 0; i < 20; i++) {
+                tree.put(key(i), value(i));
+            }
+            return null;
+        });
+
+        // La scrittura fallita divide foglie e crea una nuova radice prima di lanciare l'eccezione
+        DAOException failure = assertThrows(DAOException.class, () -> store.write(() -> {
+            for (int i = 20; i < 200; i++) {
+                tree.put(key(i), value(i));
+            }
+            tree.remove(key(0));
+            throw new DAOException("Simulated failure");
+        }));
+        assertEquals("Simulated failure", failure.getMessage());
+
+        assertEquals(range(0, 20), store.read(() -> keys(tree)));
+        assertArrayEquals(value(0), store.read(() -> tree.get(key(0))));
+        assertNull(store.read(() -> tree.get(key(100))));
+
+        // Le pagine allocate dalla scrittura annullata vengono riusate da quella successiva
+        store.write(() -> tree.put(key(20), value(20)));
+        assertEquals(range(0, 21), store.read(() -> keys(tree)));
+
+        // Anche il file contiene solo le scritture confermate
+        File copy = new File(directory, "copy.db");
+        Files.copy(file.toPath(), copy.toPath());
+        EmbeddedStore reopened = EmbeddedStore.of(copy);
+        assertEquals(range(0, 21), reopened.read(() -> keys(reopened.tree("test"))));
+    }
+
+    private static List<Integer> keys(BPlusTree tree) throws DAOException {
+        List<Integer> keys = new ArrayList<>();
+        tree.scan(null, null, (key, value) -> keys.add(ByteBuffer.wrap(key).getInt()));
+        return keys;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> range = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
+    }
+
+    private static byte[] value(int i) {
+        return new byte[500 + i];
+    }
+}
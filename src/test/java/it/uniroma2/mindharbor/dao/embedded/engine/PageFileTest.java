@@ -0,0 +1,83 @@
+package it.uniroma2.mindharbor.dao.embedded.engine;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageFileTest {
+
+    @TempDir
+    File directory;
+
+    private File file;
+    private File journal;
+
+    @BeforeEach
+    void setUp() throws DAOException {
+        file = new File(directory, "store.db");
+        journal = new File(file.getPath() + ".journal");
+        PageFile pageFile = new PageFile(file, false);
+        pageFile.open();
+        pageFile.commit(Map.of(0, page(1), 1, page(1)));
+        pageFile.close();
+    }
+
+    @Test
+    void completeJournalIsAppliedOnOpen() throws DAOException {
+        interruptCommitAfterJournal();
+
+        PageFile reopened = new PageFile(file, false);
+        assertEquals(3, reopened.open());
+        assertEquals(1, reopened.read(0).get());
+        assertEquals(2, reopened.read(1).get());
+        assertEquals(2, reopened.read(2).get());
+        assertEquals(0, journal.length());
+    }
+
+    @Test
+    void tornJournalIsDiscardedOnOpen() throws DAOException, IOException {
+        interruptCommitAfterJournal();
+        // Il crash ha interrotto la scrittura del journal prima del marcatore di commit
+        try (RandomAccessFile log = new RandomAccessFile(journal, "rw")) {
+            log.setLength(log.length() - 3);
+        }
+
+        PageFile reopened = new PageFile(file, false);
+        assertEquals(2, reopened.open());
+        assertEquals(1, reopened.read(0).get());
+        assertEquals(1, reopened.read(1).get());
+        assertEquals(0, journal.length());
+    }
+
+    /**
+     * Commits pages 1 and 2 with the file closed: the journal is written, the pages are not.
+     */
+    private void interruptCommitAfterJournal() {
+        PageFile pageFile = new PageFile(file, false);
+        assertThrows(DAOException.class, () -> {
+            pageFile.open();
+            pageFile.close();
+            pageFile.commit(Map.of(1, page(2), 2, page(2)));
+        });
+        assertTrue(journal.length() > 0);
+    }
+
+    private static ByteBuffer page(int fill) {
+        ByteBuffer page = ByteBuffer.allocate(PageFile.PAGE_SIZE);
+        while (page.hasRemaining()) {
+            page.put((byte) fill);
+        }
+        return page.flip();
+    }
+}
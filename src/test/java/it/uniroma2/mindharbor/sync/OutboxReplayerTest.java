@@ -0,0 +1,169 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.patterns.observer.DaoOperation;
+import it.uniroma2.mindharbor.patterns.observer.EntityKind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxReplayerTest {
+
+    @TempDir
+    File dir;
+
+    private File file;
+    private File deadLetterFile;
+    private final List<String> aligned = new ArrayList<>();
+    private final List<LogRecord> severe = new ArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord logRecord) {
+            if (logRecord.getLevel() == Level.SEVERE) {
+                severe.add(logRecord);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        file = new File(dir, "outbox.csv");
+        deadLetterFile = new File(dir, "outbox_dead_letter.csv");
+        Logger.getLogger(OutboxReplayer.class.getName()).addHandler(handler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Logger.getLogger(OutboxReplayer.class.getName()).removeHandler(handler);
+    }
+
+    @Test
+    void tornEntryAtTheEndIsIgnoredAndTheRestReplayed() throws DAOException, IOException {
+        newOutbox().append(List.of(change(DaoOperation.INSERT, "alice"), change(DaoOperation.DELETE, "bob")));
+        // Un crash durante l'append lascia l'ultima riga a metà
+        Files.writeString(file.toPath(), "E,3,INSERT,patient,\"car", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ReplicationOutbox reopened = newOutbox();
+        assertEquals(2, OutboxReplayer.replay(reopened, "test", this::record));
+        assertEquals(List.of("alice", "bob"), aligned);
+
+        // Le righe successive non finiscono in coda a quella danneggiata
+        reopened.append(List.of(change(DaoOperation.UPDATE, "dave")));
+        assertEquals(List.of("dave"), idsOf(newOutbox().unacknowledged()));
+    }
+
+    @Test
+    void entityIsReplayedOnceAndNotAgainOnceAcknowledged() throws DAOException {
+        newOutbox().append(List.of(change(DaoOperation.INSERT, "alice"), change(DaoOperation.UPDATE, "alice"),
+                change(DaoOperation.INSERT, "bob"), change(DaoOperation.DELETE, "alice")));
+
+        ReplicationOutbox outbox = newOutbox();
+        assertEquals(2, OutboxReplayer.replay(outbox, "test", this::record));
+        assertEquals(List.of("alice", "bob"), aligned);
+
+        assertEquals(0, OutboxReplayer.replay(newOutbox(), "test", this::record));
+        assertEquals(List.of("alice", "bob"), aligned);
+    }
+
+    @Test
+    void acknowledgedEntriesAreDroppedByCompaction() throws DAOException, IOException {
+        ReplicationOutbox outbox = newOutbox();
+        List<OutboxEntry> appended = outbox.append(List.of(change(DaoOperation.INSERT, "alice"),
+                change(DaoOperation.INSERT, "bob"), change(DaoOperation.INSERT, "carol")));
+        outbox.acknowledge(List.of(appended.get(0).sequence(), appended.get(2).sequence()));
+
+        assertEquals(List.of("bob"), idsOf(newOutbox().unacknowledged()));
+        outbox.compact();
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).contains("bob"));
+
+        // Senza più nulla da rigiocare il file riparte vuoto
+        outbox.acknowledge(List.of(appended.get(1).sequence()));
+        assertEquals(0, file.length());
+    }
+
+    @Test
+    void changeFailingAtEveryReplayEndsInTheDeadLetters() throws DAOException {
+        newOutbox().append(List.of(change(DaoOperation.UPDATE, "alice"), change(DaoOperation.UPDATE, "bob")));
+        OutboxReplayer.EntityAligner failingAlice = entries -> {
+            if (entries.get(0).entityId().equals("alice")) {
+                throw new DAOException("Simulated failure");
+            }
+            record(entries);
+        };
+
+        for (int attempt = 1; attempt < ReplicationOutbox.MAX_ATTEMPTS; attempt++) {
+            OutboxReplayer.replay(newOutbox(), "test", failingAlice);
+            List<OutboxEntry> pending = newOutbox().unacknowledged();
+            assertEquals(List.of("alice"), idsOf(pending));
+            assertEquals(attempt, pending.get(0).attempts());
+        }
+        assertTrue(severe.isEmpty());
+        assertFalse(deadLetterFile.exists());
+
+        OutboxReplayer.replay(newOutbox(), "test", failingAlice);
+        assertTrue(newOutbox().unacknowledged().isEmpty());
+        assertTrue(deadLetterFile.length() > 0);
+        assertEquals(1, severe.size());
+
+        // Una volta spostata non viene più rigiocata né segnalata
+        OutboxReplayer.replay(newOutbox(), "test", failingAlice);
+        assertEquals(1, severe.size());
+    }
+
+    @Test
+    void changeThatCannotBeParsedGoesToTheDeadLettersAtOnce() throws DAOException {
+        newOutbox().append(List.of(new OutboxEntry(0, DaoOperation.DELETE, EntityKind.APPOINTMENT, "not-a-number", null, 0)));
+
+        OutboxReplayer.replay(newOutbox(), "test", entries -> Integer.parseInt(entries.get(0).entityId()));
+        assertTrue(newOutbox().unacknowledged().isEmpty());
+        assertTrue(deadLetterFile.length() > 0);
+        assertEquals(1, severe.size());
+    }
+
+    private ReplicationOutbox newOutbox() {
+        return new FileReplicationOutbox(file, deadLetterFile, false);
+    }
+
+    private void record(List<OutboxEntry> entries) {
+        aligned.add(entries.get(entries.size() - 1).entityId());
+    }
+
+    private static OutboxEntry change(DaoOperation operation, String username) {
+        return new OutboxEntry(0, operation, EntityKind.PATIENT, username, null, 0);
+    }
+
+    private static List<String> idsOf(List<OutboxEntry> entries) {
+        List<String> ids = new ArrayList<>();
+        for (OutboxEntry entry : entries) {
+            ids.add(entry.entityId());
+        }
+        return ids;
+    }
+}
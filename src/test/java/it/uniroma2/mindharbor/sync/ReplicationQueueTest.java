@@ -0,0 +1,240 @@
+package it.uniroma2.mindharbor.sync;
+
+import it.uniroma2.mindharbor.beans.PatientBean;
+import it.uniroma2.mindharbor.beans.PsychologistBean;
+import it.uniroma2.mindharbor.exception.DAOException;
+import it.uniroma2.mindharbor.model.Patient;
+import it.uniroma2.mindharbor.patterns.facade.PersistenceType;
+import it.uniroma2.mindharbor.patterns.observer.ChangeEvent;
+import it.uniroma2.mindharbor.patterns.observer.Origin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicationQueueTest {
+
+    private static final Origin ORIGIN = Origin.of(PersistenceType.CSV);
+    private static final long BACKOFF_MS = 20;
+
+    private final FakeReplicator replicator = new FakeReplicator();
+    private ReplicationQueue queue;
+
+    @AfterEach
+    void stop() {
+        replicator.gate.countDown();
+        if (queue != null) {
+            queue.shutdown(5000);
+        }
+    }
+
+    @Test
+    void insertionAndDeletionWaitingTogetherCancelEachOther() throws InterruptedException {
+        queue = new ReplicationQueue(100, 50, 3, BACKOFF_MS, BACKOFF_MS);
+        holdWorker();
+        queue.enqueue(task(new ChangeEvent.PatientInserted(patientBean("alice"), ORIGIN)));
+        queue.enqueue(task(new ChangeEvent.PatientDeleted("alice", ORIGIN)));
+        replicator.gate.countDown();
+
+        assertTrue(queue.flush(5000));
+        assertEquals(List.of("DELETE gate"), replicator.applied);
+    }
+
+    @Test
+    void updateReplacesTheUpdateStillWaiting() throws InterruptedException {
+        queue = new ReplicationQueue(100, 50, 3, BACKOFF_MS, BACKOFF_MS);
+        holdWorker();
+        queue.enqueue(task(new ChangeEvent.PatientUpdated(patient("alice", "Old"), ORIGIN)));
+        queue.enqueue(task(new ChangeEvent.PatientUpdated(patient("alice", "New"), ORIGIN)));
+        replicator.gate.countDown();
+
+        assertTrue(queue.flush(5000));
+        assertEquals(List.of("DELETE gate", "UPDATE alice New"), replicator.applied);
+    }
+
+    @Test
+    void changesAreAppliedInOrderAndWaitBehindAFailedOne() throws InterruptedException {
+        queue = new ReplicationQueue(100, 50, 5, BACKOFF_MS, BACKOFF_MS);
+        replicator.failures.put("INSERT doctor", new AtomicInteger(2));
+        queue.enqueue(task(new ChangeEvent.PsychologistInserted(psychologistBean("doctor"), ORIGIN)));
+        queue.enqueue(task(new ChangeEvent.PatientInserted(patientBean("alice"), ORIGIN)));
+        queue.enqueue(task(new ChangeEvent.PatientDeleted("bob", ORIGIN)));
+
+        assertTrue(queue.flush(5000));
+        // Il paziente, che può dipendere dallo psicologo, non lo scavalca mai
+        assertEquals(List.of("INSERT doctor", "INSERT doctor", "INSERT doctor", "INSERT alice", "DELETE bob"),
+                replicator.attempted);
+        assertEquals(List.of("INSERT doctor", "INSERT alice", "DELETE bob"), replicator.applied);
+    }
+
+    @Test
+    void failedChangeIsRetriedWithGrowingBackoff() throws InterruptedException {
+        queue = new ReplicationQueue(100, 50, 5, BACKOFF_MS, 10 * BACKOFF_MS);
+        replicator.failures.put("DELETE alice", new AtomicInteger(2));
+        queue.enqueue(task(new ChangeEvent.PatientDeleted("alice", ORIGIN)));
+
+        assertTrue(queue.flush(5000));
+        List<Long> times = replicator.attemptTimes;
+        assertEquals(3, times.size());
+        assertTrue(times.get(1) - times.get(0) >= TimeUnit.MILLISECONDS.toNanos(BACKOFF_MS));
+        assertTrue(times.get(2) - times.get(1) >= TimeUnit.MILLISECONDS.toNanos(2 * BACKOFF_MS));
+        assertEquals(List.of("DELETE alice"), replicator.applied);
+    }
+
+    @Test
+    void changeIsGivenUpOnceItsAttemptsAreExhausted() throws InterruptedException {
+        queue = new ReplicationQueue(100, 50, 3, BACKOFF_MS, BACKOFF_MS);
+        replicator.failures.put("DELETE alice", new AtomicInteger(Integer.MAX_VALUE));
+        queue.enqueue(task(new ChangeEvent.PatientDeleted("alice", ORIGIN)));
+        queue.enqueue(task(new ChangeEvent.PatientDeleted("bob", ORIGIN)));
+
+        assertTrue(queue.flush(5000));
+        assertEquals(List.of("DELETE alice", "DELETE alice", "DELETE alice", "DELETE bob"), replicator.attempted);
+        assertEquals(List.of("DELETE bob"), replicator.applied);
+    }
+
+    @Test
+    void producerBlocksWhileTheQueueIsFull() throws InterruptedException {
+        queue = new ReplicationQueue(2, 50, 3, BACKOFF_MS, BACKOFF_MS);
+        holdWorker();
+        queue.enqueue(task(new ChangeEvent.PatientDeleted("alice", ORIGIN)));
+        queue.enqueue(task(new ChangeEvent.PatientDeleted("bob", ORIGIN)));
+
+        CountDownLatch enqueued = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            queue.enqueue(task(new ChangeEvent.PatientDeleted("carol", ORIGIN)));
+            enqueued.countDown();
+        });
+        producer.start();
+        assertFalse(enqueued.await(200, TimeUnit.MILLISECONDS));
+
+        replicator.gate.countDown();
+        assertTrue(enqueued.await(5, TimeUnit.SECONDS));
+        assertTrue(queue.flush(5000));
+        assertEquals(List.of("DELETE gate", "DELETE alice", "DELETE bob", "DELETE carol"), replicator.applied);
+    }
+
+    @Test
+    void shutdownFlushesThePendingChanges() {
+        queue = new ReplicationQueue(100, 2, 3, BACKOFF_MS, BACKOFF_MS);
+        replicator.delayMs = 10;
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            queue.enqueue(task(new ChangeEvent.PatientDeleted("patient" + i, ORIGIN)));
+            expected.add("DELETE patient" + i);
+        }
+
+        queue.shutdown(5000);
+        assertEquals(expected, replicator.applied);
+        assertEquals(0, queue.getPendingCount());
+
+        // Dopo lo spegnimento la modifica si applica sul thread chiamante
+        queue.enqueue(task(new ChangeEvent.PatientDeleted("late", ORIGIN)));
+        assertEquals("DELETE late", replicator.applied.get(replicator.applied.size() - 1));
+    }
+
+    /**
+     * Enqueues a change whose replication waits for {@code replicator.gate}, and waits until the
+     * worker has taken it, so the next changes stay in the queue.
+     */
+    private void holdWorker() throws InterruptedException {
+        replicator.held = "DELETE gate";
+        queue.enqueue(task(new ChangeEvent.PsychologistDeleted("gate", ORIGIN)));
+        assertTrue(replicator.entered.await(5, TimeUnit.SECONDS));
+    }
+
+    private ReplicationTask task(ChangeEvent event) {
+        return new ReplicationTask(replicator, event, 0);
+    }
+
+    private static PatientBean patientBean(String username) {
+        return new PatientBean.Builder()
+                .username(username).password("secret").name("Alice").surname("Rossi").gender("F")
+                .birthDate(LocalDate.of(1990, 1, 1)).type("PATIENT").build();
+    }
+
+    private static PsychologistBean psychologistBean(String username) {
+        return new PsychologistBean.Builder()
+                .office("Roma").hourlyCost(80)
+                .username(username).password("secret").name("Mario").surname("Bianchi").gender("M")
+                .type("PSYCHOLOGIST").build();
+    }
+
+    private static Patient patient(String username, String name) {
+        return new Patient(username, name, "Rossi", "F", "doctor", LocalDate.of(1990, 1, 1));
+    }
+
+    /**
+     * Records the changes handed to it instead of writing to a persistence.
+     */
+    private static final class FakeReplicator extends CrossPersistenceSyncObserver {
+
+        private final List<String> attempted = Collections.synchronizedList(new ArrayList<>());
+        private final List<Long> attemptTimes = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private volatile String held;
+        private volatile long delayMs;
+
+        FakeReplicator() {
+            super(PersistenceType.CSV, null);
+        }
+
+        @Override
+        void replicate(List<ReplicationTask> tasks) throws DAOException {
+            for (ReplicationTask task : tasks) {
+                String change = describe(task.event());
+                attempted.add(change);
+                attemptTimes.add(System.nanoTime());
+                AtomicInteger remaining = failures.get(change);
+                if (remaining != null && remaining.getAndDecrement() > 0) {
+                    throw new DAOException("Simulated failure of " + change);
+                }
+            }
+            for (ReplicationTask task : tasks) {
+                String change = describe(task.event());
+                if (change.equals(held)) {
+                    entered.countDown();
+                    await(gate);
+                }
+                sleep(delayMs);
+                applied.add(change + (task.event() instanceof ChangeEvent.PatientUpdated updated
+                        ? " " + updated.patient().getName() : ""));
+            }
+        }
+
+        private static String describe(ChangeEvent event) {
+            return event.operation() + " " + event.entityId();
+        }
+
+        private static void await(CountDownLatch latch) {
+            try {
+                latch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}